@@ -83,4 +83,18 @@ public class IoFormatType
      * ArcInfo ASCII grid format.
      */
     public static final String ARCINFO_ASCII_GRID = "ArcIGrd";
+
+    /**
+     * File-format type identifier to be used to process elevation-grids in 
+     * the framework's native binary format. This format holds the grid 
+     * values in separately compressed tiles, thus windows of large grids can 
+     * be read without accessing the whole file.
+     */
+    public static final String BINARY_GRID = "T3dGrid";
+
+    /**
+     * File-format type identifier to be used for binary glTF 2.0 files 
+     * (GLB).
+     */
+    public static final String GLB = "GLB";
 }
\ No newline at end of file
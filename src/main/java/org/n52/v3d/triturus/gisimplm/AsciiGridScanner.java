@@ -0,0 +1,372 @@
+/**
+ * Copyright (C) 2007-2016 52North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+import org.n52.v3d.triturus.core.T3dException;
+
+/**
+ * Byte-level scanner for ASCII grid files. The input is read into a re-used 
+ * byte buffer; numbers are parsed in place without allocating objects. The 
+ * parsing results are exactly the same as the results of 
+ * <tt>Double.parseDouble()</tt> and <tt>Float.parseFloat()</tt>; for the 
+ * (rare) cases where this can not be guaranteed by the fast path, the 
+ * scanner falls back to these methods.
+ * <br/>
+ * The scanner reads either sequentially from a channel or a given byte 
+ * range from a file channel using positional reads. The latter allows to 
+ * process different parts of a file in parallel.
+ * 
+ * @author Benno Schmidt
+ * @see IoElevationGridReader
+ */
+class AsciiGridScanner 
+{
+    private final static int cBufferSize = 1 << 20;
+    private final static int cLookAhead = 64; // max. length of tokens parsed in one pass
+
+    private final static float cMinNormalFloat = 1.17549435E-38f;
+
+    private final static double[] cPow10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private ReadableByteChannel mChannel = null; // sequential source
+    private FileChannel mFile = null; // positional source
+    private long mFilePos, mFileEnd;
+
+    private byte[] mBytes = new byte[cBufferSize];
+    private ByteBuffer mBuf = ByteBuffer.wrap(mBytes);
+    private int mPos = 0, mLimit = 0; // valid bytes: mBytes[mPos] ... mBytes[mLimit - 1]
+    private long mOffset; // stream position of mBytes[0]
+    private boolean mEOF = false;
+    private int mTokenStart; // start of the token parsed by parseFast()
+
+    /**
+     * Constructor. The channel will be read sequentially.
+     * 
+     * @param pChannel Input channel
+     */
+    AsciiGridScanner(ReadableByteChannel pChannel) {
+        mChannel = pChannel;
+        mOffset = 0L;
+    }
+
+    /**
+     * Constructor. The byte range <i>pFrom ... pTo - 1</i> of the given file
+     * will be scanned. The file channel's position will not be modified.
+     * 
+     * @param pFile File channel
+     * @param pFrom Start position
+     * @param pTo End position (exclusive)
+     */
+    AsciiGridScanner(FileChannel pFile, long pFrom, long pTo) {
+        mFile = pFile;
+        mFilePos = pFrom;
+        mFileEnd = pTo;
+        mOffset = pFrom;
+    }
+
+    /**
+     * returns the current stream position.
+     */
+    long position() {
+        return mOffset + mPos;
+    }
+
+    // Appends new input to the valid bytes. The valid bytes will be moved to 
+    // the buffer start before. Returns false at the end of the input. 
+    private boolean fill() throws IOException 
+    {
+        if (mPos > 0) {
+            int rem = mLimit - mPos;
+            System.arraycopy(mBytes, mPos, mBytes, 0, rem);
+            mOffset += mPos;
+            mPos = 0;
+            mLimit = rem;
+        }
+        if (mLimit == mBytes.length)
+            throw new T3dException("Token too long at position " + this.position() + ".");
+        
+        int n = 0;
+        while (n == 0 && !mEOF) {
+            mBuf.limit(mBytes.length);
+            mBuf.position(mLimit);
+            if (mFile != null) {
+                long lRem = mFileEnd - mFilePos;
+                if (lRem <= 0L) {
+                    mEOF = true;
+                    break;
+                }
+                if (lRem < mBuf.remaining())
+                    mBuf.limit(mLimit + (int) lRem);
+                n = mFile.read(mBuf, mFilePos);
+                if (n > 0) mFilePos += n;
+            }
+            else 
+                n = mChannel.read(mBuf);
+            if (n < 0)
+                mEOF = true;
+        }
+        if (n <= 0)
+            return false;
+        mLimit += n;
+        return true;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f';
+    }
+
+    /**
+     * skips white space. Returns <i>false</i> at the end of the input.
+     */
+    boolean hasNext() throws IOException
+    {
+        while (true) {
+            while (mPos < mLimit && isWhitespace(mBytes[mPos])) mPos++;
+            if (mPos < mLimit) 
+                return true;
+            if (!this.fill()) 
+                return false;
+        }
+    }
+
+    /**
+     * returns <i>true</i>, if the next token starts with a letter.
+     */
+    boolean nextIsAlpha() throws IOException
+    {
+        if (!this.hasNext()) 
+            return false;
+        byte b = mBytes[mPos];
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+
+    // Determines the end of the token starting at mPos (exclusive). The token 
+    // will be completely held in the buffer afterwards.
+    private int tokenEnd() throws IOException
+    {
+        if (!this.hasNext())
+            throw new EOFException("Unexpected end of file.");
+        int e = mPos;
+        while (true) {
+            while (e < mLimit && !isWhitespace(mBytes[e])) e++;
+            if (e < mLimit) 
+                return e;
+            int lOff = e - mPos;
+            if (!this.fill()) 
+                return mLimit;
+            e = mPos + lOff;
+        }
+    }
+
+    /**
+     * returns the next token as string, or <i>null</i> at the end of input. 
+     */
+    String nextToken() throws IOException
+    {
+        if (!this.hasNext())
+            return null;
+        int e = this.tokenEnd();
+        String res = this.toString(mPos, e);
+        mPos = e;
+        return res;
+    }
+
+    /**
+     * skips the next token. Returns <i>false</i> at the end of the input.
+     */
+    boolean skipToken() throws IOException
+    {
+        if (!this.hasNext())
+            return false;
+        while (true) {
+            while (mPos < mLimit && !isWhitespace(mBytes[mPos])) mPos++;
+            if (mPos < mLimit || !this.fill()) 
+                return true;
+        }
+    }
+
+    /**
+     * skips the rest of the current line.
+     */
+    void skipLine() throws IOException
+    {
+        while (true) {
+            while (mPos < mLimit && mBytes[mPos] != '\n') mPos++;
+            if (mPos < mLimit) {
+                mPos++;
+                return;
+            }
+            if (!this.fill()) 
+                return;
+        }
+    }
+
+    /**
+     * counts the remaining tokens.
+     */
+    long countTokens() throws IOException
+    {
+        long ct = 0L;
+        while (this.skipToken()) ct++;
+        return ct;
+    }
+
+    /**
+     * parses the next token as double value.
+     * 
+     * @throws NumberFormatException if the token is not a number
+     * @throws EOFException at the end of the input
+     */
+    double nextDouble() throws IOException
+    {
+        double d = this.parseFast();
+        if (!Double.isNaN(d)) 
+            return d;
+        int e = this.tokenEnd(), s = mPos;
+        mPos = e;
+        return Double.parseDouble(this.toString(s, e));
+    }
+
+    /**
+     * parses the next token as float value.
+     * 
+     * @throws NumberFormatException if the token is not a number
+     * @throws EOFException at the end of the input
+     */
+    float nextFloat() throws IOException
+    {
+        double d = this.parseFast();
+        if (!Double.isNaN(d)) {
+            // Converting the correctly rounded double value to float gives 
+            // the correctly rounded float value, unless the double value is 
+            // exactly the midpoint of two float values (or subnormal, or 
+            // out of range):
+            float f = (float) d;
+            long lBits = Double.doubleToRawLongBits(d);
+            if ((lBits & 0x1fffffffL) != 0x10000000L 
+                && (Math.abs(f) >= cMinNormalFloat || d == 0.) 
+                && !Float.isInfinite(f))
+                return f;
+            mPos = mTokenStart; // token will be re-parsed
+        }
+        int e = this.tokenEnd(), s = mPos;
+        mPos = e;
+        return Float.parseFloat(this.toString(s, e));
+    }
+
+    // Parses the next token in one pass, if it is a decimal number with at 
+    // most 18 significant digits and a decimal exponent inside [-22, 22]. In 
+    // this case, the result will be exact, and the scanner will be advanced. 
+    // Else, NaN will be returned, and the scanner position will not change.
+    private double parseFast() throws IOException
+    {
+        if (!this.hasNext())
+            throw new EOFException("Unexpected end of file.");
+        if (mLimit - mPos < cLookAhead && !mEOF) 
+            this.fill();
+
+        int p = mPos, e = mLimit;
+        boolean neg = false;
+        if (mBytes[p] == '-' || mBytes[p] == '+') {
+            neg = (mBytes[p] == '-');
+            p++;
+        }
+        long m = 0L;
+        int nDigits = 0, nSig = 0, exp = 0;
+        byte b;
+        while (p < e && (b = mBytes[p]) >= '0' && b <= '9') {
+            m = 10L * m + (b - '0');
+            if (m != 0L) nSig++;
+            nDigits++;
+            p++;
+        }
+        if (p < e && mBytes[p] == '.') {
+            p++;
+            while (p < e && (b = mBytes[p]) >= '0' && b <= '9') {
+                m = 10L * m + (b - '0');
+                if (m != 0L) nSig++;
+                nDigits++;
+                exp--;
+                p++;
+            }
+        }
+        if (nDigits == 0 || nSig > 18)
+            return Double.NaN;
+        if (p < e && (mBytes[p] == 'e' || mBytes[p] == 'E')) {
+            p++;
+            boolean lNegExp = false;
+            if (p < e && (mBytes[p] == '-' || mBytes[p] == '+')) {
+                lNegExp = (mBytes[p] == '-');
+                p++;
+            }
+            int x = 0, nx = 0;
+            while (p < e && (b = mBytes[p]) >= '0' && b <= '9' && nx < 6) {
+                x = 10 * x + (b - '0');
+                nx++;
+                p++;
+            }
+            if (nx == 0) 
+                return Double.NaN;
+            exp += lNegExp ? -x : x;
+        }
+        // The token has to end here:
+        if (p < e ? !isWhitespace(mBytes[p]) : !mEOF)
+            return Double.NaN;
+
+        double d;
+        if (m == 0L)
+            d = 0.;
+        else if (m >= (1L << 53) || exp < -22 || exp > 22) 
+            return Double.NaN;
+        else 
+            d = (exp < 0) ? (double) m / cPow10[-exp] : (double) m * cPow10[exp];
+        mTokenStart = mPos;
+        mPos = p;
+        return neg ? -d : d;
+    }
+
+    private String toString(int s, int e) {
+        StringBuilder sb = new StringBuilder(e - s);
+        for (int i = s; i < e; i++) 
+            sb.append((char) (mBytes[i] & 0xff));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2007-2016 52North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+import org.n52.v3d.triturus.core.T3dException;
+
+/**
+ * Read-only elevation grid storage providing the element-wise difference 
+ * <i>z2 - z1</i> of two storages of equal size. The values will be computed 
+ * on access, so that the difference of two grids can be passed to a writer 
+ * without holding the result in memory. Elements that are unset in one of 
+ * the source storages are unset.
+ * 
+ * @author Benno Schmidt
+ * @see FltElevationGridDifference
+ */
+class DifferenceGridStorage extends GmElevationGridStorage
+{
+    private final GmElevationGridStorage s1, s2;
+
+    DifferenceGridStorage(GmElevationGridStorage s1, GmElevationGridStorage s2) 
+    {
+        if (s1.numberOfElements() != s2.numberOfElements())
+            throw new T3dException("Storage sizes differ.");
+        this.s1 = s1;
+        this.s2 = s2;
+    }
+
+    public int numberOfElements() {
+        return s1.numberOfElements();
+    }
+
+    public boolean isSinglePrecision() {
+        return s1.isSinglePrecision() && s2.isSinglePrecision();
+    }
+
+    public double get(int pIdx) {
+        // Note that NaN - z and z - NaN give NaN:
+        return s2.get(pIdx) - s1.get(pIdx);
+    }
+
+    public void set(int pIdx, double pVal) {
+        throw new T3dException("Difference grid storage is read-only.");
+    }
+
+    public void unset(int pIdx) {
+        throw new T3dException("Difference grid storage is read-only.");
+    }
+}
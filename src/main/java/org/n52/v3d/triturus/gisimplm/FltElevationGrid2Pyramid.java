@@ -0,0 +1,246 @@
+/**
+ * Copyright (C) 2007-2016 52North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.core.T3dProcFilter;
+
+/**
+ * Filter to generate multi-resolution pyramids (&quot;overviews&quot;) for 
+ * elevation grids. Starting with the full-resolution grid, each level will 
+ * be computed from its predecessor by doubling the cell-size. The vertices 
+ * of a coarser level coincide with every second vertex (in both directions) 
+ * of its predecessor; the elevation values are aggregated from the 3 x 3 
+ * neighborhood of these vertices. For mean, minimum and maximum 
+ * aggregation, unset elements (no data) will be ignored; a coarse element 
+ * remains unset only if all elements of its neighborhood are unset. For 
+ * nearest neighbor aggregation, a coarse element is unset whenever the 
+ * coinciding vertex of its predecessor is unset.
+ * <p>
+ * Levels will be generated until the number of rows and the number of 
+ * columns do not exceed the minimal size (see 
+ * <tt>this.setMinimalSize()</tt>), or until the maximal number of levels 
+ * has been reached.
+ * 
+ * @author Benno Schmidt
+ * @see GmElevationGridPyramid
+ */
+public class FltElevationGrid2Pyramid extends T3dProcFilter
+{
+    private String mLogString = "";
+
+    /**
+     * Identifier for mean aggregation. The neighborhood elements will be 
+     * weighted by a tent filter (center 4, edges 2, corners 1) to avoid 
+     * aliasing. This is the default setting.
+     */
+    public final static short cMean = 1;
+
+    /**
+     * Identifier for minimum aggregation. Coarser levels will never 
+     * overestimate the minimal elevations of their predecessors.
+     */
+    public final static short cMinimum = 2;
+
+    /**
+     * Identifier for maximum aggregation. Coarser levels will never 
+     * underestimate the maximal elevations of their predecessors, e.g. for 
+     * obstacle detection.
+     */
+    public final static short cMaximum = 3;
+
+    /**
+     * Identifier for nearest neighbor aggregation, i.e. the coarser levels 
+     * will hold the original elevation values at their vertex positions. 
+     * Unset elements (no data) at these positions will be kept; the 
+     * neighborhood will not be used to fill them.
+     */
+    public final static short cNearest = 4;
+
+    private short mAggregation = cMean;
+    private int mMinimalSize = 32;
+    private int mMaxLevels = 0; // unlimited
+
+    /**
+     * Constructor. Mean aggregation will be used.
+     */
+    public FltElevationGrid2Pyramid() {
+        mLogString = this.getClass().getName();
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param pAggregation Aggregation method, e.g. <tt>cMean</tt>
+     */
+    public FltElevationGrid2Pyramid(short pAggregation) {
+        this();
+        this.setAggregation(pAggregation);
+    }
+
+    public String log() {
+        return mLogString;
+    }
+
+    /**
+     * sets the aggregation method.
+     * 
+     * @param pAggregation <tt>cMean</tt>, <tt>cMinimum</tt>, <tt>cMaximum</tt> or <tt>cNearest</tt>
+     * @throws T3dException if an illegal identifier is given
+     */
+    public void setAggregation(short pAggregation) throws T3dException
+    {
+        if (pAggregation < cMean || pAggregation > cNearest)
+            throw new T3dException("Illegal aggregation identifier: " + pAggregation);
+        mAggregation = pAggregation;
+    }
+
+    /**
+     * sets the minimal size of the coarsest level. No further level will be 
+     * generated, if the number of rows and the number of columns of the 
+     * current level do not exceed this value. The default value is 32.
+     * 
+     * @param pSize Minimal number of rows or columns &gt; 0
+     */
+    public void setMinimalSize(int pSize) 
+    {
+        if (pSize < 1)
+            throw new T3dException("Invalid minimal size (" + pSize + ").");
+        mMinimalSize = pSize;
+    }
+
+    /**
+     * sets the maximal number of levels, including the full-resolution 
+     * level. A value of 0 (default) means that the number of levels is 
+     * controlled by the minimal size only.
+     * 
+     * @param pMaxLevels Maximal number of levels
+     */
+    public void setMaximalNumberOfLevels(int pMaxLevels) {
+        mMaxLevels = pMaxLevels;
+    }
+
+    /**
+     * generates the pyramid for a given elevation grid. The given grid will 
+     * be used as level 0 (without copying it).
+     * 
+     * @param pGrid Full-resolution elevation grid
+     * @return Elevation grid pyramid
+     * @throws T3dException
+     */
+    public GmElevationGridPyramid transform(GmSimpleElevationGrid pGrid) throws T3dException
+    {
+        if (pGrid == null)
+            throw new T3dException("Source grid is missing.");
+
+        List<GmSimpleElevationGrid> lLevels = new ArrayList<GmSimpleElevationGrid>();
+        GmSimpleElevationGrid g = pGrid;
+        lLevels.add(g);
+        while (g.numberOfColumns() > mMinimalSize || g.numberOfRows() > mMinimalSize) {
+            if (mMaxLevels > 0 && lLevels.size() >= mMaxLevels)
+                break;
+            g = this.reduce(g);
+            lLevels.add(g);
+        }
+        return new GmElevationGridPyramid(lLevels);
+    }
+
+    /**
+     * computes the next coarser level for a given grid, i.e. a grid with 
+     * doubled cell-sizes. The result will use the given grid's storage 
+     * precision.
+     * 
+     * @param pGrid Elevation grid
+     * @return Coarser elevation grid
+     */
+    public GmSimpleElevationGrid reduce(GmSimpleElevationGrid pGrid)
+    {
+        GmSimple2dGridGeometry lGeom = (GmSimple2dGridGeometry) pGrid.getGeometry();
+        int lRows = lGeom.numberOfRows(), lCols = lGeom.numberOfColumns();
+        int lResRows = (lRows + 1) / 2, lResCols = (lCols + 1) / 2;
+
+        GmElevationGridStorage lSrc = pGrid.getStorage();
+        GmSimpleElevationGrid lRes = new GmSimpleElevationGrid(
+            new GmSimple2dGridGeometry(
+                lResCols, lResRows, 
+                lGeom.getOrigin(), 
+                2. * lGeom.getDeltaX(), 2. * lGeom.getDeltaY()),
+            lSrc.isSinglePrecision() ? 
+                GmSimpleElevationGrid.cSinglePrecision : GmSimpleElevationGrid.cDoublePrecision);
+        GmElevationGridStorage lDst = lRes.getStorage();
+
+        for (int ii = 0; ii < lResRows; ii++) {
+            int i = 2 * ii;
+            int iFrom = Math.max(0, i - 1), iTo = Math.min(lRows - 1, i + 1);
+            for (int jj = 0; jj < lResCols; jj++) {
+                int j = 2 * jj;
+                if (mAggregation == cNearest) {
+                    lDst.set(ii * lResCols + jj, lSrc.get(i * lCols + j));
+                    continue;
+                }
+                int jFrom = Math.max(0, j - 1), jTo = Math.min(lCols - 1, j + 1);
+                double lSum = 0., lWeights = 0.;
+                double lMin = Double.POSITIVE_INFINITY, lMax = Double.NEGATIVE_INFINITY;
+                for (int k = iFrom; k <= iTo; k++) {
+                    for (int l = jFrom; l <= jTo; l++) {
+                        double z = lSrc.get(k * lCols + l);
+                        if (Double.isNaN(z)) 
+                            continue;
+                        double w = (k == i ? 2. : 1.) * (l == j ? 2. : 1.);
+                        lSum += w * z;
+                        lWeights += w;
+                        if (z < lMin) lMin = z;
+                        if (z > lMax) lMax = z;
+                    }
+                }
+                double lVal = Double.NaN;
+                if (lWeights > 0.) {
+                    switch (mAggregation) {
+                        case cMean: lVal = lSum / lWeights; break;
+                        case cMinimum: lVal = lMin; break;
+                        case cMaximum: lVal = lMax; break;
+                    }
+                }
+                lDst.set(ii * lResCols + jj, lVal);
+            }
+        }
+
+        if (pGrid.isLatticeInterpretation())
+            lRes.setLatticeInterpretation();
+        lRes.setZBoundsInvalid();
+        return lRes;
+    }
+}
@@ -33,15 +33,28 @@ package org.n52.v3d.triturus.gisimplm;
 
 import org.n52.v3d.triturus.core.T3dProcFilter;
 import org.n52.v3d.triturus.core.T3dException;
-import org.n52.v3d.triturus.core.T3dNotYetImplException;
+import org.n52.v3d.triturus.vgis.VgPoint;
 
 /** 
  * Filter to transform a <tt>GmSimpleElevationGrid</tt>-object into a <tt>GmSimpleTINFeature</tt>.
+ * <br/>
+ * The TIN will be computed by greedy insertion: Starting with the grid's 
+ * corner points, the grid point with the largest vertical error will be 
+ * inserted into a Delaunay triangulation until the maximal vertical error 
+ * (see <tt>this.setMaximalError()</tt>) is reached or the TIN consists of a 
+ * given number of triangles (see <tt>this.setMaximalNumberOfTriangles()</tt>).
+ * For smooth terrain surfaces, the resulting TIN usually consists of far 
+ * less triangles than the regular grid mesh. Unset grid elements will be 
+ * ignored.
+ * 
  * @author Benno Schmidt
  */
 public class FltElevationGrid2TIN extends T3dProcFilter
 {
     private String mLogString = "";
+    private double mMaxError = 0.;
+    private int mMaxTriangles = 0;
+    private double mError = 0.;
 
     public FltElevationGrid2TIN() {
         mLogString = this.getClass().getName();
@@ -51,11 +64,76 @@ public class FltElevationGrid2TIN extends T3dProcFilter
         return mLogString;
     }
 
+    /**
+     * sets the maximal vertical error, i.e. the maximal absolute difference 
+     * between a grid element's z-value and the TIN surface. The default value 
+     * is 0, i.e. the TIN will represent the grid's elevations exactly.
+     * 
+     * @param pMaxError Maximal vertical error (in z-units)
+     */
+    public void setMaximalError(double pMaxError) {
+        mMaxError = Math.max(0., pMaxError);
+    }
+
+    /**
+     * sets the maximal number of triangles of the resulting TIN. If this 
+     * number has been reached, no further grid points will be inserted, even 
+     * if the maximal error given by <tt>this.setMaximalError()</tt> has not 
+     * been reached yet. The default value is 0, which means that the number 
+     * of triangles will not be limited.
+     * 
+     * @param pMaxTriangles Maximal number of triangles
+     */
+    public void setMaximalNumberOfTriangles(int pMaxTriangles) {
+        mMaxTriangles = Math.max(0, pMaxTriangles);
+    }
+
+    /**
+     * returns the maximal vertical error of the TIN that has been computed 
+     * by the last call of <tt>this.transform()</tt>.
+     * 
+     * @return Maximal vertical error (in z-units)
+     */
+    public double maximalError() {
+        return mError;
+    }
+
     /**
      * performs the described filter operation.
+     * 
+     * @param pGrid Elevation grid
+     * @return TIN
      */
     public GmSimpleTINFeature transform(GmSimpleElevationGrid pGrid) throws T3dException
     {
-    	throw new T3dNotYetImplException();
+    	int nx = pGrid.numberOfColumns(), ny = pGrid.numberOfRows();
+    	GreedyGridTriangulator tri = 
+    		new GreedyGridTriangulator(pGrid.getStorage(), nx, ny);
+    	tri.refine(mMaxError, mMaxTriangles);
+    	mError = tri.maximalError();
+
+    	GmSimple2dGridGeometry geom = (GmSimple2dGridGeometry) pGrid.getGeometry();
+    	VgPoint orig = geom.getOrigin();
+    	double dx = geom.getDeltaX(), dy = geom.getDeltaY();
+
+    	GmSimpleTINGeometry tin = 
+    		new GmSimpleTINGeometry(tri.numberOfVertices(), tri.numberOfTriangles());
+    	for (int i = 0; i < tri.numberOfVertices(); i++) {
+    		int idx = tri.vertexIndex(i);
+    		VgPoint p = new GmPoint(
+    			orig.getX() + (idx % nx) * dx, 
+    			orig.getY() + (idx / nx) * dy, 
+    			tri.vertexElevation(i));
+    		p.setSRS(geom.getSRS());
+    		tin.setPoint(i, p);
+    	}
+    	for (int i = 0; i < tri.numberOfTriangles(); i++) {
+    		tin.setTriangle(i, 
+    			tri.triangleVertex(i, 0), tri.triangleVertex(i, 1), tri.triangleVertex(i, 2));
+    	}
+
+    	GmSimpleTINFeature res = new GmSimpleTINFeature();
+    	res.setGeometry(tin);
+    	return res;
     }
 }
@@ -32,18 +32,42 @@
  */
 package org.n52.v3d.triturus.gisimplm;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.n52.v3d.triturus.core.T3dException;
 import org.n52.v3d.triturus.core.T3dProcFilter;
 
 /**
  * Computation of the difference of two elevation-grids. Both input grids must 
  * refer to the same geometry, otherwise the computation will not be done.
+ * <br/>
+ * The computation operates on the grids' storage backends in chunks of 
+ * consecutive rows, which optionally will be processed in parallel (see 
+ * <tt>this.setNumberOfThreads()</tt>). Together with the difference, cut 
+ * and fill statistics will be computed. For very large grids, the 
+ * difference can be written directly to a file without building the result 
+ * grid in memory (see 
+ * {@link #transform(GmSimpleElevationGrid, GmSimpleElevationGrid, IoElevationGridWriter, String)}).
  *
  * @author Benno Schmidt
  */
 public class FltElevationGridDifference extends T3dProcFilter
 {
     private String logString = "";
+    private int numberOfThreads = 1;
+
+    private final static int cChunkSize = 1 << 16; // approx. number of elements per chunk
+
+    // Cut and fill statistics of the most recent computation:
+    private long nCompared, nCut, nFill;
+    private double cutVolume, fillVolume;
+    private double cellArea;
 
     public FltElevationGridDifference() {
         logString = this.getClass().getName();
@@ -53,11 +77,24 @@ public class FltElevationGridDifference extends T3dProcFilter
         return logString;
     }
 
+    /**
+     * sets the number of threads to be used for the computation. The results 
+     * will be exactly the same as for sequential processing. The default 
+     * value is 1.
+     * 
+     * @param numberOfThreads Number of threads
+     */
+    public void setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = Math.max(1, numberOfThreads);
+    }
+
     /** 
-     * calculates the difference of two elevation-grids.
+     * calculates the difference <i>grid2 - grid1</i> of two elevation-grids.
+     * Grid elements that are unset in one of the input grids will be unset 
+     * in the resulting grid.
      *
-     * @param grid1 Minuend
-     * @param grid2 Subtrahend
+     * @param grid1 Subtrahend (e.g. the earlier survey epoch)
+     * @param grid2 Minuend (e.g. the later survey epoch)
      * @return Difference grid
      * @throws T3dException
      */
@@ -75,17 +112,215 @@ public class FltElevationGridDifference extends T3dProcFilter
              ((GmSimple2dGridGeometry) grid1.getGeometry()).getDeltaX(),
              ((GmSimple2dGridGeometry) grid1.getGeometry()).getDeltaY());
 
-        for (int i = 0; i < gridRes.numberOfRows(); i++) {
-            for (int j = 0; j < gridRes.numberOfColumns(); j++) {
-                if (grid1.isSet(i, j) && grid2.isSet(i, j)) {
-                    gridRes.setValue(i, j, grid2.getValue(i, j) - grid1.getValue(i, j));
-                } else {
-                    gridRes.unset(i, j);
-                }
-            }
+        this.compute(grid1, grid2, ((GmDoubleGridStorage) gridRes.getStorage()).getArray());
+        gridRes.setZBoundsInvalid();
+        return gridRes;
+    }
+
+    /** 
+     * calculates the difference <i>grid2 - grid1</i> of two elevation-grids 
+     * and writes it to a file. The difference values will be computed while 
+     * the writer processes the grid, i.e. the resulting grid will not be 
+     * held in memory. Thus, in combination with memory-mapped input grids 
+     * (see {@link GmMappedElevationGrid}) and a row- or tile-oriented output 
+     * format (e.g. &quot;BSQ&quot; or {@link IoFormatType#BINARY_GRID}), 
+     * grids larger than the available heap-space can be processed. The cut 
+     * and fill statistics will be provided as well.
+     *
+     * @param grid1 Subtrahend (e.g. the earlier survey epoch)
+     * @param grid2 Minuend (e.g. the later survey epoch)
+     * @param writer Writer for the target format
+     * @param filename Target file name (with path optionally)
+     * @throws T3dException
+     */
+    public void transform(
+    	GmSimpleElevationGrid grid1, GmSimpleElevationGrid grid2, 
+    	IoElevationGridWriter writer, String filename) 
+    	throws T3dException
+    {
+        boolean sameGeometry = this.checkGeometry(grid1, grid2);
+        if (!sameGeometry) 
+        	throw new T3dException("Elevation grids differ in geometry!");
+
+        this.compute(grid1, grid2, null);
+
+        GmSimple2dGridGeometry geom = new GmSimple2dGridGeometry(
+             grid1.numberOfColumns(), grid1.numberOfRows(),
+             ((GmSimple2dGridGeometry) grid1.getGeometry()).getOrigin(),
+             ((GmSimple2dGridGeometry) grid1.getGeometry()).getDeltaX(),
+             ((GmSimple2dGridGeometry) grid1.getGeometry()).getDeltaY());
+        GmSimpleElevationGrid gridRes = new GmSimpleElevationGrid(
+             geom, new DifferenceGridStorage(grid1.getStorage(), grid2.getStorage()));
+        if (grid1.isLatticeInterpretation())
+        	gridRes.setLatticeInterpretation();
+        writer.writeToFile(gridRes, filename);
+    }
+
+    /**
+     * returns the number of grid elements that have been set in both input 
+     * grids of the most recent computation.
+     * 
+     * @return Number of compared grid elements
+     */
+    public long numberOfComparedElements() {
+        return nCompared;
+    }
+
+    /**
+     * returns the number of grid elements with <i>z2 &lt; z1</i> ("cut").
+     * 
+     * @return Number of grid elements
+     */
+    public long numberOfCutElements() {
+        return nCut;
+    }
+
+    /**
+     * returns the number of grid elements with <i>z2 &gt; z1</i> ("fill").
+     * 
+     * @return Number of grid elements
+     */
+    public long numberOfFillElements() {
+        return nFill;
+    }
+
+    /**
+     * returns the cut volume of the most recent computation, i.e. the sum of 
+     * the negative differences <i>z1 - z2</i> multiplied by the grid cell 
+     * area <i>|dx * dy|</i>. Note that the value is positive.
+     * 
+     * @return Cut volume (in cubic x-y-z-units)
+     */
+    public double cutVolume() {
+        return cutVolume;
+    }
+
+    /**
+     * returns the fill volume of the most recent computation, i.e. the sum 
+     * of the positive differences <i>z2 - z1</i> multiplied by the grid cell 
+     * area <i>|dx * dy|</i>.
+     * 
+     * @return Fill volume (in cubic x-y-z-units)
+     */
+    public double fillVolume() {
+        return fillVolume;
+    }
+
+    /**
+     * returns the area covered by cut elements (number of cut elements 
+     * multiplied by the grid cell area).
+     * 
+     * @return Cut area (in square x-y-units)
+     */
+    public double cutArea() {
+        return nCut * this.cellArea;
+    }
+
+    /**
+     * returns the area covered by fill elements (number of fill elements 
+     * multiplied by the grid cell area).
+     * 
+     * @return Fill area (in square x-y-units)
+     */
+    public double fillArea() {
+        return nFill * this.cellArea;
+    }
+
+    // Computes the differences (if res != null) and the cut and fill 
+    // statistics. The chunking does not depend on the number of threads, and 
+    // the chunk statistics are summed up in chunk order, so that the results 
+    // are deterministic.
+    private void compute(GmSimpleElevationGrid grid1, GmSimpleElevationGrid grid2, final double[] res)
+    {
+        final GmElevationGridStorage s1 = grid1.getStorage(), s2 = grid2.getStorage();
+        final int n = s1.numberOfElements();
+        cellArea = Math.abs(grid1.getDeltaX() * grid1.getDeltaY());
+
+        int nCols = Math.max(1, grid1.numberOfColumns());
+        int chunk = Math.max(1, cChunkSize / nCols) * nCols; // whole rows
+        int nChunks = (int) (((long) n + chunk - 1) / chunk);
+        final double[][] stats = new double[nChunks][];
+
+        if (numberOfThreads <= 1 || nChunks <= 1) {
+        	for (int c = 0; c < nChunks; c++)
+        		stats[c] = difference(s1, s2, res, c * chunk, Math.min(n, (c + 1) * chunk));
+        }
+        else {
+        	List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        	for (int c = 0; c < nChunks; c++) {
+        		final int k = c, from = c * chunk, to = Math.min(n, (c + 1) * chunk);
+        		tasks.add(new Callable<Object>() {
+        			public Object call() {
+        				stats[k] = difference(s1, s2, res, from, to);
+        				return null;
+        			}
+        		});
+        	}
+        	this.execute(tasks);
         }
 
-        return gridRes;
+        nCompared = nCut = nFill = 0;
+        cutVolume = fillVolume = 0.;
+        for (int c = 0; c < nChunks; c++) {
+        	nCompared += (long) stats[c][0];
+        	nCut += (long) stats[c][1];
+        	nFill += (long) stats[c][2];
+        	cutVolume += stats[c][3] * cellArea;
+        	fillVolume += stats[c][4] * cellArea;
+        }
+    }
+
+    // Processes the elements from ... to - 1 and returns the chunk 
+    // statistics {compared, cut, fill, cut sum, fill sum}:
+    private static double[] difference(
+    	GmElevationGridStorage s1, GmElevationGridStorage s2, double[] res, int from, int to)
+    {
+        float[] f1 = s1 instanceof GmFloatGridStorage ? ((GmFloatGridStorage) s1).getArray() : null;
+        float[] f2 = s2 instanceof GmFloatGridStorage ? ((GmFloatGridStorage) s2).getArray() : null;
+        double[] d1 = s1 instanceof GmDoubleGridStorage ? ((GmDoubleGridStorage) s1).getArray() : null;
+        double[] d2 = s2 instanceof GmDoubleGridStorage ? ((GmDoubleGridStorage) s2).getArray() : null;
+
+        long nCompared = 0, nCut = 0, nFill = 0;
+        double cutSum = 0., fillSum = 0.;
+        for (int i = from; i < to; i++) {
+        	double z1 = f1 != null ? f1[i] : (d1 != null ? d1[i] : s1.get(i));
+        	double z2 = f2 != null ? f2[i] : (d2 != null ? d2[i] : s2.get(i));
+        	double dz = z2 - z1; // NaN, if one of the elements is unset
+        	if (res != null)
+        		res[i] = dz;
+        	if (Double.isNaN(dz))
+        		continue;
+        	nCompared++;
+        	if (dz < 0.) {
+        		nCut++;
+        		cutSum -= dz;
+        	}
+        	else if (dz > 0.) {
+        		nFill++;
+        		fillSum += dz;
+        	}
+        }
+        return new double[] {nCompared, nCut, nFill, cutSum, fillSum};
+    }
+
+    private void execute(List<Callable<Object>> tasks) throws T3dException
+    {
+        ExecutorService exec = Executors.newFixedThreadPool(numberOfThreads);
+        try {
+        	for (Future<Object> f : exec.invokeAll(tasks)) 
+        		f.get();
+        }
+        catch (InterruptedException e) {
+        	throw new T3dException("Difference computation interrupted.");
+        }
+        catch (ExecutionException e) {
+        	if (e.getCause() instanceof T3dException)
+        		throw (T3dException) e.getCause();
+        	throw new T3dException("Difference computation failed: " + e.getCause());
+        }
+        finally {
+        	exec.shutdown();
+        }
     }
     
     private boolean checkGeometry(
@@ -32,6 +32,12 @@
  */
 package org.n52.v3d.triturus.gisimplm;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
 import org.n52.v3d.triturus.core.T3dException;
 import org.n52.v3d.triturus.core.T3dProcFilter;
 import org.n52.v3d.triturus.vgis.VgElevationGrid;
@@ -49,7 +55,12 @@ import org.n52.v3d.triturus.vgis.VgPoint;
  * water-level z'. For those areas that are not flooded, since they are
  * situated above the level z', or since their is a terrain barrier in between
  * so that the water will not run to there, the resulting grid's elevation
- * values are not set (no-data value).
+ * values are not set (no-data value). Unset elements of the source grid act 
+ * as barriers.
+ * <br/>
+ * The fill is performed iteratively line by line (scanline fill), thus 
+ * large basins will not lead to stack overflows. The work buffers will be 
+ * re-used for subsequent calls of <tt>transform()</tt>.
  *  
  * @author Benno Schmidt
  */
@@ -57,10 +68,46 @@ public class FltElevationGridFloodFill extends T3dProcFilter
 {
     private String mLogString = "";
 
+    /**
+     * Identifier for 4-neighborhood, i.e. water will run to the horizontal 
+     * and vertical neighbor elements only.
+     */
+    public final static short cFourNeighborhood = 1;
+
+    /**
+     * Identifier for 8-neighborhood, i.e. water will run to the diagonal 
+     * neighbor elements, too.
+     */
+    public final static short cEightNeighborhood = 2;
+
+    private short mNeighborhood = cFourNeighborhood;
+
+    // Work buffers and state of the current fill:
+    private int[] mStack = new int[1024];
+    private int mStackSize = 0;
+    private long[] mVisited = new long[0];
+    private int mRows, mCols;
+    private GmElevationGridStorage mSrcStorage, mResStorage;
+    private VgElevationGrid mSrcGrid;
+
     public String log() {
         return mLogString;
     }
 
+    /**
+     * sets the neighborhood to be considered. The default value is 
+     * <tt>cFourNeighborhood</tt>.
+     * 
+     * @param pNeighborhood <tt>cFourNeighborhood</tt> or <tt>cEightNeighborhood</tt>
+     * @throws T3dException if an illegal identifier is given
+     */
+    public void setNeighborhood(short pNeighborhood) throws T3dException
+    {
+        if (pNeighborhood != cFourNeighborhood && pNeighborhood != cEightNeighborhood)
+            throw new T3dException("Illegal neighborhood identifier: " + pNeighborhood);
+        mNeighborhood = pNeighborhood;
+    }
+
     /** 
      * performs the flood fill. The Seed-point gives the water-level z' for 
      * the position (x, y).
@@ -71,6 +118,23 @@ public class FltElevationGridFloodFill extends T3dProcFilter
      */
     public VgElevationGrid transform(VgElevationGrid pElevationGrid, VgPoint pSeedPoint) 
     	throws T3dException
+    {
+        List<VgPoint> lSeeds = new ArrayList<VgPoint>(1);
+        lSeeds.add(pSeedPoint);
+        return this.transform(pElevationGrid, lSeeds);
+    }
+
+    /** 
+     * performs the flood fill for multiple seed-points. Each seed-point gives 
+     * the water-level z' for its position (x, y). If flooded areas overlap, 
+     * the highest water-level will be taken.
+     * 
+     * @param pElevationGrid Elevation-grid
+     * @param pSeedPoints Seed-points 
+     * @throws T3dException
+     */
+    public VgElevationGrid transform(VgElevationGrid pElevationGrid, List<VgPoint> pSeedPoints) 
+    	throws T3dException
     {   	
         if (pElevationGrid == null) {
             throw new T3dException("Source grid is missing.");
@@ -80,69 +144,158 @@ public class FltElevationGridFloodFill extends T3dProcFilter
         if (!(lGeom instanceof GmSimple2dGridGeometry)) {
             throw new T3dException("Unexpected grid geometry.");        	
         }
-        
-        GmSimpleElevationGrid lResultGrid = 
-        	this.setUpResultGrid((GmSimple2dGridGeometry) lGeom);
-        
-        try {
-        	int[] indices = 
-        		((GmSimple2dGridGeometry) lGeom).getIndices(pSeedPoint);
+        GmSimple2dGridGeometry lGridGeom = (GmSimple2dGridGeometry) lGeom;
+
+        // Determine start elements:
+        int nSeeds = pSeedPoints.size();
+        int[] lSeedIdx = new int[nSeeds];
+        for (int s = 0; s < nSeeds; s++) {
+        	int[] indices = lGridGeom.getIndices(pSeedPoints.get(s));
         	if (indices == null) {
                 throw new T3dException("Seed point outside elevation grid.");
         	}
-        	int row = indices[0], col = indices[1];
-        	
-        	// Start recursion:
-        	this.fillElement(
-        			lResultGrid, pElevationGrid, 
-        			row, col, 
-        			pSeedPoint.getZ());
+        	lSeedIdx[s] = indices[0] * lGridGeom.numberOfColumns() + indices[1];
+        }
+
+        GmSimpleElevationGrid lResultGrid = this.setUpResultGrid(pElevationGrid, lGridGeom);
+        this.setUpWorkBuffers(pElevationGrid, lResultGrid);
+        
+        try {
+        	// Fill from the highest water-level downwards. Areas flooded from 
+        	// lower seeds are either disjoint from or contained in areas 
+        	// flooded from higher seeds, so that visited elements can be 
+        	// skipped.
+        	Integer[] lOrder = new Integer[nSeeds];
+        	for (int s = 0; s < nSeeds; s++) lOrder[s] = s;
+        	final List<VgPoint> lSeeds = pSeedPoints;
+        	Arrays.sort(lOrder, Collections.reverseOrder(new Comparator<Integer>() {
+        		public int compare(Integer a, Integer b) {
+        			return Double.compare(lSeeds.get(a).getZ(), lSeeds.get(b).getZ());
+        		}
+        	}));
+        	for (int s = 0; s < nSeeds; s++) {
+        		int k = lOrder[s];
+        		this.fill(lSeedIdx[k], pSeedPoints.get(k).getZ());
+        	}
         }
-        catch (T3dException e) {
-            throw e;
+        finally {
+        	mSrcGrid = null;
+        	mSrcStorage = null;
+        	mResStorage = null;
         }
 
+        lResultGrid.setZBoundsInvalid();
         return lResultGrid;
     }    
 
-    private GmSimpleElevationGrid setUpResultGrid(GmSimple2dGridGeometry pGeom)
+    private GmSimpleElevationGrid setUpResultGrid(
+    	VgElevationGrid pSrcGrid, GmSimple2dGridGeometry pGeom)
     {
-    	GmSimpleElevationGrid lResultGrid = new GmSimpleElevationGrid(pGeom);
+    	// All elements of a new grid are unset, initially.
+    	short lPrecision = GmSimpleElevationGrid.cDoublePrecision;
+    	if (pSrcGrid instanceof GmSimpleElevationGrid 
+    		&& ((GmSimpleElevationGrid) pSrcGrid).getStorage().isSinglePrecision())
+    		lPrecision = GmSimpleElevationGrid.cSinglePrecision;
+    	return new GmSimpleElevationGrid(pGeom, lPrecision);
+    }
+
+    private void setUpWorkBuffers(VgElevationGrid pSrcGrid, GmSimpleElevationGrid pResultGrid)
+    {
+    	mRows = pResultGrid.numberOfRows();
+    	mCols = pResultGrid.numberOfColumns();
+    	mResStorage = pResultGrid.getStorage();
+    	mSrcGrid = pSrcGrid;
+    	mSrcStorage = null;
+    	if (pSrcGrid instanceof GmSimpleElevationGrid)
+    		mSrcStorage = ((GmSimpleElevationGrid) pSrcGrid).getStorage();
+
+    	int lWords = (int) (((long) mRows * mCols + 63) >> 6);
+    	if (mVisited.length < lWords)
+    		mVisited = new long[lWords];
+    	else
+    		Arrays.fill(mVisited, 0, lWords, 0L);
+    	mStackSize = 0;
+    }
+
+    private boolean isVisited(int k) {
+    	return (mVisited[k >>> 6] & (1L << k)) != 0L;
+    }
 
-    	// Usually, the following lines should not be necessary:
-    	for (int i = 0; i < lResultGrid.numberOfRows(); i++) {
-    		for (int j = 0; j < lResultGrid.numberOfColumns(); j++) {
-    			lResultGrid.unset(i, j);
-    		}
+    private void setVisited(int k) {
+    	mVisited[k >>> 6] |= 1L << k;
+    }
+
+    private double sourceValue(int k) 
+    {
+    	if (mSrcStorage != null) 
+    		return mSrcStorage.get(k); // NaN, if unset
+    	try {
+    		return mSrcGrid.getValue(k / mCols, k % mCols);
+    	}
+    	catch (T3dException e) {
+    		return Double.NaN; // unset element
     	}
-    	
-    	return lResultGrid;
     }
 
-	private void fillElement(
-			GmSimpleElevationGrid targetGrd, 
-			VgElevationGrid srcGrd,
-			int i, 
-			int j,
-			double zFlood) 
+    private boolean isFloodable(int k, double zFlood) {
+    	return !this.isVisited(k) && this.sourceValue(k) < zFlood; // false for NaN
+    }
+
+    private void push(int k) 
+    {
+    	if (mStackSize == mStack.length) {
+    		int[] lStack = new int[2 * mStack.length];
+    		System.arraycopy(mStack, 0, lStack, 0, mStackSize);
+    		mStack = lStack;
+    	}
+    	mStack[mStackSize++] = k;
+    }
+
+	private void fill(int pSeed, double zFlood) 
 	{
-		if (
-			i < 0 || i >= srcGrd.numberOfRows() || 
-			j < 0 || j >= srcGrd.numberOfColumns()) 
-		{
-			return;
-		}
-		if (targetGrd.isSet(i, j)) {
+		if (!this.isFloodable(pSeed, zFlood))
 			return;
+		this.push(pSeed);
+		
+		while (mStackSize > 0) {
+			int k = mStack[--mStackSize];
+			if (this.isVisited(k))
+				continue; // already filled by another span
+			int lRowStart = k - k % mCols, lRowEnd = lRowStart + mCols - 1;
+
+			// Determine the floodable span inside the current row:
+			int l = k, r = k;
+			while (l > lRowStart && this.isFloodable(l - 1, zFlood)) l--;
+			while (r < lRowEnd && this.isFloodable(r + 1, zFlood)) r++;
+			for (int m = l; m <= r; m++) {
+				this.setVisited(m);
+				mResStorage.set(m, zFlood);
+			}
+
+			// Push the floodable runs in the adjacent rows:
+			if (mNeighborhood == cEightNeighborhood) {
+				if (l > lRowStart) l--;
+				if (r < lRowEnd) r++;
+			}
+			if (lRowStart > 0) 
+				this.pushRuns(l - mCols, r - mCols, zFlood);
+			if (lRowEnd < mRows * mCols - 1) 
+				this.pushRuns(l + mCols, r + mCols, zFlood);
 		}
-		// else:
-		double z = srcGrd.getValue(i, j);
-		if (z < zFlood) {
-			targetGrd.setValue(i, j, zFlood);
-			fillElement(targetGrd, srcGrd, i - 1, j, zFlood);
-			fillElement(targetGrd, srcGrd, i + 1, j, zFlood);
-			fillElement(targetGrd, srcGrd, i, j - 1, zFlood);
-			fillElement(targetGrd, srcGrd, i, j + 1, zFlood);
+	}
+
+	private void pushRuns(int l, int r, double zFlood)
+	{
+		boolean lInRun = false;
+		for (int m = l; m <= r; m++) {
+			if (this.isFloodable(m, zFlood)) {
+				if (!lInRun) {
+					this.push(m);
+					lInRun = true;
+				}
+			} 
+			else
+				lInRun = false;
 		}
 	}
 }
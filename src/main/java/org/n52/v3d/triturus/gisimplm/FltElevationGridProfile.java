@@ -32,15 +32,38 @@
  */
 package org.n52.v3d.triturus.gisimplm;
 
-import org.n52.v3d.triturus.core.T3dNotYetImplException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.n52.v3d.triturus.core.T3dException;
 import org.n52.v3d.triturus.core.T3dProcFilter;
 import org.n52.v3d.triturus.vgis.VgLineString;
+import org.n52.v3d.triturus.vgis.VgPoint;
 import org.n52.v3d.triturus.vgis.VgProfile;
 
 /**
- * @deprecated
  * Filter to calculate cross-sections for equidistant elevation-grids that are 
  * parallel to the x- and y-axis.
+ * <br/>
+ * For each segment of the definition line, the grid will be traversed once 
+ * by a DDA algorithm (Amanatides/Woo), i.e. the intersections with the 
+ * vertical and horizontal grid lines will be visited in the order of 
+ * increasing stations. The elevation values will be written to primitive 
+ * arrays; no intermediate point or triangle objects will be created. As in 
+ * {@link FltElevationGrid2Profile}, the profile consists of the definition 
+ * line's vertices and the grid line intersections; the z-values along grid 
+ * lines will be interpolated linearly, the z-values of the vertices will be 
+ * interpolated by subdividing the grid cell into four triangles.
+ * <br/>
+ * To cut many cross-sections from the same grid (e.g. the profiles read by 
+ * {@link IoWSPReader}), a list of definition lines can be processed by a 
+ * single call, optionally in parallel (see 
+ * <tt>this.setNumberOfThreads()</tt>).
  * 
  * @author Benno Schmidt
  * @see FltElevationGrid2Profile
@@ -48,18 +71,393 @@ import org.n52.v3d.triturus.vgis.VgProfile;
 public class FltElevationGridProfile extends T3dProcFilter
 {
     private String logString = "";
+    private int numberOfThreads = 1;
+    private double[] processingTimes = null;
+
+    private final static double cEps = 1e-12; // tolerance for segment parameters
+
+    // Grid lookup state:
+    private GmElevationGridStorage storage;
+    private int nx, ny;
+    private double x0, y0, dx, dy;
+
+    public FltElevationGridProfile() {
+        logString = this.getClass().getName();
+    }
 
     public String log() {
         return logString;
     }
 
+    /**
+     * sets the number of threads to be used for processing lists of 
+     * definition lines. The default value is 1.
+     * 
+     * @param numberOfThreads Number of threads
+     * @see #transform(GmSimpleElevationGrid, List)
+     */
+    public void setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = Math.max(1, numberOfThreads);
+    }
+
     /**
      * performs the described filter operation.
-     * <br/>
-     * <i>Sorry, this method has not been implemented yet...</i>
+     * 
+     * @param grid Elevation-grid
+     * @param defLine 2-D definition line ("base line")
+     * @return 3-D cross-section
      */
     public VgProfile transform(GmSimpleElevationGrid grid, VgLineString defLine)
+        throws T3dException
+    {
+        if (defLine.numberOfVertices() <= 0)
+            return null;
+        if (grid == null)
+        	return null;
+
+        double[][] tz = this.computeStations(grid, defLine);
+        return this.toProfile(defLine, tz[0], tz[1], tz[0].length);
+    }
+
+    /**
+     * computes the cross-sections for a list of definition lines. The grid 
+     * lookup state will be set up once and shared by all lines; for more 
+     * than one thread, the lines will be processed in parallel. The 
+     * resulting profiles will be returned in the order of the given 
+     * definition lines; for definition lines without vertices, the list will 
+     * contain <i>null</i>. The processing time needed for each line can be 
+     * queried by <tt>this.processingTimes()</tt> afterwards.
+     * 
+     * @param grid Elevation-grid
+     * @param defLines 2-D definition lines ("base lines")
+     * @return 3-D cross-sections
+     */
+    public List<GmProfile> transform(GmSimpleElevationGrid grid, final List<VgLineString> defLines)
+        throws T3dException
+    {
+        this.setGrid(grid);
+
+        final int n = defLines.size();
+        final GmProfile[] res = new GmProfile[n];
+        final double[] times = new double[n];
+
+        int nTasks = Math.min(numberOfThreads, n);
+        if (nTasks <= 1) {
+        	this.transform(defLines, 0, n, 1, res, times);
+        }
+        else {
+        	List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        	for (int k = 0; k < nTasks; k++) {
+        		final int first = k, step = nTasks;
+        		tasks.add(new Callable<Object>() {
+        			public Object call() {
+        				transform(defLines, first, n, step, res, times);
+        				return null;
+        			}
+        		});
+        	}
+        	this.execute(tasks);
+        }
+
+        processingTimes = times;
+        List<GmProfile> list = new ArrayList<GmProfile>(n);
+        for (int i = 0; i < n; i++)
+        	list.add(res[i]);
+        return list;
+    }
+
+    /**
+     * returns the processing times needed for the definition lines given to 
+     * the most recent call of <tt>this.transform(GmSimpleElevationGrid, 
+     * List)</tt>.
+     * 
+     * @return Processing time per line (in milliseconds)
+     */
+    public double[] processingTimes() {
+        return processingTimes;
+    }
+
+    // Computes the profiles for the lines first, first + step, ...:
+    private void transform(
+        List<VgLineString> defLines, int first, int n, int step, GmProfile[] res, double[] times)
+    {
+        Stations st = new Stations(2 * (nx + ny));
+        for (int i = first; i < n; i += step) {
+        	long t0 = System.nanoTime();
+        	VgLineString defLine = defLines.get(i);
+        	if (defLine != null && defLine.numberOfVertices() > 0) {
+        		this.traverse(defLine, st);
+        		res[i] = this.toProfile(defLine, st.t, st.z, st.n);
+        	}
+        	times[i] = (System.nanoTime() - t0) / 1e6;
+        }
+    }
+
+    private void execute(List<Callable<Object>> tasks) throws T3dException
+    {
+        ExecutorService exec = Executors.newFixedThreadPool(numberOfThreads);
+        try {
+        	for (Future<Object> f : exec.invokeAll(tasks)) 
+        		f.get();
+        }
+        catch (InterruptedException e) {
+        	throw new T3dException("Profile computation interrupted.");
+        }
+        catch (ExecutionException e) {
+        	if (e.getCause() instanceof T3dException)
+        		throw (T3dException) e.getCause();
+        	throw new T3dException("Profile computation failed: " + e.getCause());
+        }
+        finally {
+        	exec.shutdown();
+        }
+    }
+
+    /**
+     * computes the stations and elevations of the cross-section for a given 
+     * elevation-grid. The result consists of two arrays holding the station 
+     * values <i>t</i> (in increasing order) and the corresponding z-values; 
+     * unset z-values are given as <tt>Double.NaN</tt>.
+     * 
+     * @param grid Elevation-grid
+     * @param defLine 2-D definition line ("base line")
+     * @return Array <i>{t[], z[]}</i>
+     */
+    public double[][] computeStations(GmSimpleElevationGrid grid, VgLineString defLine)
+        throws T3dException
+    {
+        this.setGrid(grid);
+        Stations st = new Stations(2 * (nx + ny) + defLine.numberOfVertices());
+        this.traverse(defLine, st);
+        return st.toArrays();
+    }
+
+    void setGrid(GmSimpleElevationGrid grid) 
+    {
+        GmSimple2dGridGeometry geom = (GmSimple2dGridGeometry) grid.getGeometry();
+        storage = grid.getStorage();
+        nx = geom.numberOfColumns();
+        ny = geom.numberOfRows();
+        x0 = geom.getOrigin().getX();
+        y0 = geom.getOrigin().getY();
+        dx = geom.getDeltaX();
+        dy = geom.getDeltaY();
+        if (nx < 2 || ny < 2)
+        	throw new T3dException("Grid must have at least 2 rows and 2 columns.");
+    }
+
+    GmProfile toProfile(VgLineString defLine, double[] t, double[] z, int n)
     {
-    	throw new T3dNotYetImplException();
+        GmProfile res = new GmProfile(defLine);
+        for (int i = 0; i < n; i++) {
+        	Double[] tzp = new Double[2];
+        	tzp[0] = t[i];
+        	tzp[1] = Double.isNaN(z[i]) ? null : Double.valueOf(z[i]);
+        	res.addTZPair(tzp);
+        }
+        return res;
+    }
+
+    // Computes the stations for the given definition line. This method does 
+    // not modify the object's state, so that it may be called concurrently.
+    void traverse(VgLineString defLine, Stations st)
+    {
+        st.n = 0;
+        VgPoint p = defLine.getVertex(0);
+        double uPrev = (p.getX() - x0) / dx, vPrev = (p.getY() - y0) / dy;
+        double xPrev = p.getX(), yPrev = p.getY();
+        st.add(0., this.cellElevation(uPrev, vPrev));
+
+        double t = 0.;
+        for (int k = 1; k < defLine.numberOfVertices(); k++) {
+        	p = defLine.getVertex(k);
+        	double u = (p.getX() - x0) / dx, v = (p.getY() - y0) / dy;
+        	double len = Math.sqrt(
+        		(p.getX() - xPrev) * (p.getX() - xPrev) + (p.getY() - yPrev) * (p.getY() - yPrev));
+
+        	this.traverseSegment(uPrev, vPrev, u, v, t, len, st);
+        	t += len;
+        	st.add(t, this.cellElevation(u, v));
+
+        	uPrev = u; 
+        	vPrev = v;
+        	xPrev = p.getX(); 
+        	yPrev = p.getY();
+        }
+    }
+
+    // Visits the grid line intersections of the segment (u0, v0) - (u1, v1) 
+    // (given in floating-point grid indices), excluding its end-points:
+    private void traverseSegment(
+        double u0, double v0, double u1, double v1, double t0, double len, Stations st)
+    {
+        double du = u1 - u0, dv = v1 - v0;
+
+        // Clip segment parameter range to grid extent:
+        double[] range = {cEps, 1. - cEps};
+        if (!clip(u0, du, nx - 1, range) || !clip(v0, dv, ny - 1, range))
+        	return;
+        double sa = range[0], sb = range[1];
+
+        // Set up traversal of vertical (x = const.) and horizontal (y = 
+        // const.) grid lines:
+        int stepU = du > 0. ? 1 : -1, stepV = dv > 0. ? 1 : -1;
+        int ku = 0, kuEnd = -1, kv = 0, kvEnd = -1;
+        if (du != 0.) {
+        	double ua = u0 + sa * du, ub = u0 + sb * du;
+        	ku = (int) (stepU > 0 ? Math.ceil(ua) : Math.floor(ua));
+        	kuEnd = (int) (stepU > 0 ? Math.floor(ub) : Math.ceil(ub));
+        }
+        if (dv != 0.) {
+        	double va = v0 + sa * dv, vb = v0 + sb * dv;
+        	kv = (int) (stepV > 0 ? Math.ceil(va) : Math.floor(va));
+        	kvEnd = (int) (stepV > 0 ? Math.floor(vb) : Math.ceil(vb));
+        }
+        boolean moreU = du != 0. && (ku - kuEnd) * stepU <= 0;
+        boolean moreV = dv != 0. && (kv - kvEnd) * stepV <= 0;
+        double sU = moreU ? (ku - u0) / du : Double.POSITIVE_INFINITY;
+        double sV = moreV ? (kv - v0) / dv : Double.POSITIVE_INFINITY;
+
+        while (moreU || moreV) {
+        	double s, z;
+        	if (moreU && moreV && Math.abs(sU - sV) <= cEps) {
+        		// grid vertex
+        		s = sU;
+        		z = this.elevation(kv, ku);
+        		ku += stepU;
+        		kv += stepV;
+        	}
+        	else if (sU < sV) {
+        		s = sU;
+        		z = this.elevationOnColumn(ku, v0 + s * dv);
+        		ku += stepU;
+        	}
+        	else {
+        		s = sV;
+        		z = this.elevationOnRow(kv, u0 + s * du);
+        		kv += stepV;
+        	}
+        	if (s >= sa && s <= sb)
+        		st.add(t0 + s * len, z);
+
+        	moreU = du != 0. && (ku - kuEnd) * stepU <= 0;
+        	moreV = dv != 0. && (kv - kvEnd) * stepV <= 0;
+        	sU = moreU ? (ku - u0) / du : Double.POSITIVE_INFINITY;
+        	sV = moreV ? (kv - v0) / dv : Double.POSITIVE_INFINITY;
+        }
+    }
+
+    // Restricts the parameter range [range[0], range[1]] such that 0 <= c0 + 
+    // s * dc <= cMax:
+    private static boolean clip(double c0, double dc, double cMax, double[] range)
+    {
+        if (dc == 0.)
+        	return c0 >= 0. && c0 <= cMax;
+        double sLo = (0. - c0) / dc, sHi = (cMax - c0) / dc;
+        if (sLo > sHi) { 
+        	double h = sLo; sLo = sHi; sHi = h; 
+        }
+        range[0] = Math.max(range[0], sLo);
+        range[1] = Math.min(range[1], sHi);
+        return range[0] <= range[1];
+    }
+
+    private double elevation(int row, int col) {
+        return storage.get(row * nx + col);
+    }
+
+    // Elevation on vertical grid line (column col) at floating-point row v:
+    private double elevationOnColumn(int col, double v)
+    {
+        int r = Math.min((int) Math.floor(v), ny - 2);
+        double f = v - r;
+        return lerp(this.elevation(r, col), this.elevation(r + 1, col), f);
+    }
+
+    // Elevation on horizontal grid line (row row) at floating-point column u:
+    private double elevationOnRow(int row, double u)
+    {
+        int c = Math.min((int) Math.floor(u), nx - 2);
+        double f = u - c;
+        return lerp(this.elevation(row, c), this.elevation(row, c + 1), f);
+    }
+
+    // Linear interpolation; if one of the values is unset, the other value 
+    // will be taken:
+    private static double lerp(double z1, double z2, double f) 
+    {
+        if (Double.isNaN(z1)) 
+        	return z2;
+        if (Double.isNaN(z2))
+        	return z1;
+        return z1 + f * (z2 - z1);
+    }
+
+    // Elevation at floating-point grid indices (u, v). The grid cell will be 
+    // subdivided into four triangles given by the cell corners and the cell 
+    // center (holding the corners' mean elevation).
+    private double cellElevation(double u, double v)
+    {
+        if (!(u >= 0. && u <= nx - 1 && v >= 0. && v <= ny - 1))
+        	return Double.NaN;
+        int jl = Math.min((int) Math.floor(u), nx - 2), il = Math.min((int) Math.floor(v), ny - 2);
+        double a = u - jl, b = v - il;
+        double 
+        	zll = this.elevation(il, jl), 
+        	zlr = this.elevation(il, jl + 1), 
+        	zul = this.elevation(il + 1, jl), 
+        	zur = this.elevation(il + 1, jl + 1);
+        if (Double.isNaN(zll) || Double.isNaN(zlr) || Double.isNaN(zul) || Double.isNaN(zur))
+        	return Double.NaN;
+        double zm = 0.25 * (zll + zlr + zul + zur);
+
+        if (b <= a) {
+        	if (b <= 1. - a) // lower triangle
+        		return zll + (zlr - zll) * a + (2. * zm - zll - zlr) * b;
+        	else // right triangle
+        		return zlr + (zur - zlr) * b + (2. * zm - zlr - zur) * (1. - a);
+        }
+        else {
+        	if (b >= 1. - a) // upper triangle
+        		return zul + (zur - zul) * a + (2. * zm - zul - zur) * (1. - b);
+        	else // left triangle
+        		return zll + (zul - zll) * b + (2. * zm - zll - zul) * a;
+        }
+    }
+
+    /**
+     * Growable station and elevation arrays.
+     */
+    static class Stations 
+    {
+        double[] t, z;
+        int n = 0;
+
+        Stations(int capacity) {
+        	t = new double[Math.max(capacity, 16)];
+        	z = new double[t.length];
+        }
+
+        void add(double tVal, double zVal) 
+        {
+        	if (n == t.length) {
+        		double[] tNew = new double[2 * n], zNew = new double[2 * n];
+        		System.arraycopy(t, 0, tNew, 0, n);
+        		System.arraycopy(z, 0, zNew, 0, n);
+        		t = tNew;
+        		z = zNew;
+        	}
+        	t[n] = tVal;
+        	z[n] = zVal;
+        	n++;
+        }
+
+        double[][] toArrays() 
+        {
+        	double[][] res = new double[2][n];
+        	System.arraycopy(t, 0, res[0], 0, n);
+        	System.arraycopy(z, 0, res[1], 0, n);
+        	return res;
+        }
     }
 }
@@ -36,17 +36,29 @@ import org.n52.v3d.triturus.core.T3dProcFilter;
 import org.n52.v3d.triturus.core.T3dException;
 import org.n52.v3d.triturus.vgis.VgPoint;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /** 
  * This class allows to construct a grid model (&quot;gridding&quot;) for a 
  * collection of scattered (3-D) data points. The result will be given as 
  * {@link GmSimpleElevationGrid}-object. Various sampling-methods can be used 
  * to determine the grid-vertices' z-values.
+ * <br/>
+ * Besides point lists, point streams can be processed incrementally in 
+ * constant memory, e.g. by passing the filter to 
+ * {@link IoPointListReader#readFromFile(String, PointBatchHandler)} (see 
+ * {@link #transform(IoPointListReader, String)}).
  * 
  * @author Benno Schmidt
  */
-public class FltPointSet2ElevationGrid extends T3dProcFilter
+public class FltPointSet2ElevationGrid extends T3dProcFilter implements PointBatchHandler
 {
     private String mLogString = "";
 
@@ -76,8 +88,40 @@ public class FltPointSet2ElevationGrid extends T3dProcFilter
     // Note: For a search-radius of 100 m and a distnce of 1 cm this would result in a 
     // weight of approx. 10.000; this the proposed value of 1e10 should do...
 
+    /**
+     * Identifier for inverse distance weighting of the k nearest points 
+     * inside the search-radius as gridding method. This method will always 
+     * be performed vertex-driven.
+     * 
+     * @see FltPointSet2ElevationGrid#setNumberOfNeighbors(int)
+     * @see FltPointSet2ElevationGrid#cVertexDriven
+     */
+    public final static short cKNearestInverseDist = 5;
+    private int mNumberOfNeighbors = 8;
+
     private short mWeightFnc = 1; // Nearest-Neighbor as default
 
+    /**
+     * Identifier for point-driven evaluation: For each input point, the 
+     * contributions to all grid vertices inside the search-circle will be 
+     * accumulated.
+     */
+    public final static short cPointDriven = 1;
+
+    /**
+     * Identifier for vertex-driven evaluation: The input points will be sorted 
+     * into a bucket index first; then, each grid vertex will be evaluated 
+     * against the points in its neighborhood. For the nearest neighbor method, 
+     * the result will be the same as for point-driven evaluation; for the 
+     * weighting methods, the results might differ in the last digits since 
+     * the summation order differs.
+     */
+    public final static short cVertexDriven = 2;
+
+    private short mEvaluationMode = 1; // point-driven as default
+
+    private int mNumberOfThreads = 1;
+
     private double mRadius; // search radius (given in geo-coordinates)
 
     // The value of a grid-cell/vertex will be given by the weighted sum of the values 
@@ -86,6 +130,11 @@ public class FltPointSet2ElevationGrid extends T3dProcFilter
     private double mSumZ[];
     private double mSumN[];
 
+    // Thread pool and band assignment buffers for parallel processing; for 
+    // point streams, these will be held from beginStream() to endStream():
+    private ExecutorService mExecutor = null;
+    private int mBandFirst[], mBandLast[], mBandStart[], mBandFill[], mBandPoints[];
+
     
     /**
      * Constructor. Target geometry and search-radius have to be given as input 
@@ -110,6 +159,7 @@ public class FltPointSet2ElevationGrid extends T3dProcFilter
      * <tr><td><tt>this.cInverseDist</tt></td><td>Inverse distances (selectable exponent)</td></tr>
      * <tr><td><tt>this.cTriangleFnc</tt></td><td>Triangle function<td></td></tr>
      * <tr><td><tt>this.cFrankeLittle</tt></td><td>Franke/Little-Weighting<td></td></tr>
+     * <tr><td><tt>this.cKNearestInverseDist</tt></td><td>Inverse distances of the k nearest points<td></td></tr>
      * </table><p>
      * 
      * @param pGeom the target-grid's geometry
@@ -143,6 +193,46 @@ public class FltPointSet2ElevationGrid extends T3dProcFilter
         mInvDistExp = pExp;
     }
 
+    /**
+     * sets the number of nearest points to be considered by the k-nearest 
+     * inverse distance weight-function (if this method is to be used).
+     * 
+     * @param pK Number of neighbors (default-value is 8)
+     * @see FltPointSet2ElevationGrid#cKNearestInverseDist
+     */
+    public void setNumberOfNeighbors(int pK) {
+        if (pK < 1)
+            throw new T3dException("Illegal number of neighbors: " + pK);
+        mNumberOfNeighbors = pK;
+    }
+
+    /**
+     * sets the evaluation mode. Vertex-driven evaluation is recommended for 
+     * large point sets, especially in combination with the nearest neighbor 
+     * method. 
+     * 
+     * @param pMode <tt>cPointDriven</tt> (default) or <tt>cVertexDriven</tt>
+     * @see FltPointSet2ElevationGrid#cPointDriven
+     * @see FltPointSet2ElevationGrid#cVertexDriven
+     */
+    public void setEvaluationMode(short pMode) {
+        if (pMode != cPointDriven && pMode != cVertexDriven)
+            throw new T3dException("Illegal evaluation mode: " + pMode);
+        mEvaluationMode = pMode;
+    }
+
+    /**
+     * sets the number of threads to be used for the gridding. For values 
+     * &gt; 1, the target grid will be split into row bands that will be 
+     * processed in parallel. The result will be exactly the same as for 
+     * sequential processing. The default value is 1.
+     * 
+     * @param pNumberOfThreads Number of threads
+     */
+    public void setNumberOfThreads(int pNumberOfThreads) {
+        mNumberOfThreads = Math.max(1, pNumberOfThreads);
+    }
+
     /**
      * sets the target-grid's geometry.
      * 
@@ -216,6 +306,136 @@ public class FltPointSet2ElevationGrid extends T3dProcFilter
      */
     public GmSimpleElevationGrid transform(List<VgPoint> pPointSet) throws T3dException
     {   	
+        this.initAccumulation();
+
+        try {
+            if (mEvaluationMode == cVertexDriven || mWeightFnc == cKNearestInverseDist)
+                this.processVertices(pPointSet);
+            else if (mNumberOfThreads > 1)
+                this.processPointsParallel(null, pPointSet, pPointSet.size());
+            else
+                this.processPoints(pPointSet);
+            this.putToElevationGrid();
+        }
+        catch (T3dException e) {
+            throw e;
+        }
+        finally {
+            this.release();
+        }
+
+        return mGrid;
+    }
+
+    /** 
+     * performs the grid calculation for the points read from the given file. 
+     * The points will be processed batch-wise, i.e. the point-set will not be 
+     * held in memory. Note that this is possible for the point-driven 
+     * evaluation mode only.
+     * 
+     * @param pReader Point-list reader
+     * @param pFilename File name (with path optionally)
+     * @throws T3dException
+     * @see IoPointListReader#setSpatialFilter(org.n52.v3d.triturus.vgis.VgEnvelope)
+     */
+    public GmSimpleElevationGrid transform(IoPointListReader pReader, String pFilename) 
+        throws T3dException
+    {
+        this.beginStream();
+        try {
+            pReader.readFromFile(pFilename, this);
+        }
+        catch (T3dException e) {
+            this.release();
+            throw e;
+        }
+        return this.endStream();
+    }
+
+    /**
+     * starts the incremental processing of a point stream. After this call, 
+     * the points have to be passed in by (multiple) calls of 
+     * {@link #processBatch(double[], int)}; finally, the result will be 
+     * provided by {@link #endStream()}. Note that incremental processing is 
+     * possible for the point-driven evaluation mode only.
+     * 
+     * @throws T3dException if vertex-driven evaluation is required
+     */
+    public void beginStream() throws T3dException
+    {
+        if (mEvaluationMode == cVertexDriven || mWeightFnc == cKNearestInverseDist)
+            throw new T3dException("Point streams require point-driven evaluation.");
+        this.release();
+        this.initAccumulation();
+        if (mNumberOfThreads > 1)
+            mExecutor = Executors.newFixedThreadPool(mNumberOfThreads);
+    }
+
+    /**
+     * processes a batch of points. If {@link #beginStream()} has not been 
+     * called before, a new stream will be started.
+     * 
+     * @param pXYZ Point coordinates <i>(x<sub>0</sub>, y<sub>0</sub>, 
+     * z<sub>0</sub>, x<sub>1</sub>, ...)</i>
+     * @param pCount Number of points held in the array
+     */
+    public void processBatch(double[] pXYZ, int pCount) throws T3dException
+    {
+        if (mSumZ == null)
+            this.beginStream();
+
+        try {
+            if (mNumberOfThreads > 1)
+                this.processPointsParallel(pXYZ, null, pCount);
+            else {
+                for (int i = 0; i < pCount; i++) 
+                    this.processPoint(pXYZ[3 * i], pXYZ[3 * i + 1], pXYZ[3 * i + 2], 0, mNY);
+            }
+        }
+        catch (T3dException e) {
+            this.release();
+            throw e;
+        }
+    }
+
+    /**
+     * finishes the incremental processing of a point stream.
+     * 
+     * @return Elevation grid
+     * @throws T3dException if no stream has been started
+     */
+    public GmSimpleElevationGrid endStream() throws T3dException
+    {
+        if (mSumZ == null)
+            throw new T3dException("No point stream has been started.");
+        try {
+            this.putToElevationGrid();
+        }
+        finally {
+            this.release();
+        }
+        return mGrid;
+    }
+
+    // Releases accumulation arrays, thread pool and band buffers:
+    private void release()
+    {
+        mSumZ = null;
+        mSumN = null;
+        if (mExecutor != null) {
+            mExecutor.shutdown();
+            mExecutor = null;
+        }
+        mBandFirst = null;
+        mBandLast = null;
+        mBandStart = null;
+        mBandFill = null;
+        mBandPoints = null;
+    }
+
+    // Allocation and initialization of the accumulation arrays:
+    private void initAccumulation() throws T3dException
+    {
         if (mGrid == null) {
             throw new T3dException("Destination grid-geometry is missing.");
         }
@@ -241,15 +461,13 @@ public class FltPointSet2ElevationGrid extends T3dProcFilter
                 mSumN[i] = -1.; // will have the meaning: "did not store a distance yet"
         }
 
-        try {
-            this.processPoints(pPointSet);
-            this.putToElevationGrid();
-        }
-        catch (T3dException e) {
-            throw e;
-        }
+        // Search-radius referring to matrix coordinates:
+        mRadIdxX = (int)(Math.floor(mRadius / mDX)) + 1;
+        mRadIdxY = (int)(Math.floor(mRadius / mDY)) + 1;
 
-        return mGrid;
+        // Helpers:
+        mFaktorX = ((double)mNX - 1.) / (mXMax - mXMin);
+        mFaktorY = ((double)mNY - 1.) / (mYMax - mYMin);
     }
 
     // Computation of the distance of the position (is, js) (referring to 
@@ -265,88 +483,282 @@ public class FltPointSet2ElevationGrid extends T3dProcFilter
     // values to mSumZ[] and mSumN[]:
     private void processPoints(List<VgPoint> pPointSet)
     {
-        // Search-radius rfering to matrix coordinates:
-        int radIdxX = (int)(Math.floor(mRadius / mDX)) + 1;
-        int radIdxY = (int)(Math.floor(mRadius / mDY)) + 1;
+        VgPoint pnt;
 
-        // Helpers:
-        double faktorX = ((double)mNX - 1.) / (mXMax - mXMin);
-        double faktorY = ((double)mNY - 1.) / (mYMax - mYMin);
+        for (int i = 0; i < pPointSet.size(); i++) // for all points in the list
+        {
+            pnt = ((VgPoint) pPointSet.get(i));
+            this.processPoint(pnt.getX(), pnt.getY(), pnt.getZ(), 0, mNY);
+        }
+    } // processPoints()
 
+    // Assignment of the point (x, y, z) to mSumZ[] and mSumN[] for the grid
+    // rows pRowFrom ... pRowTo - 1:
+    private void processPoint(double x, double y, double z, int pRowFrom, int pRowTo)
+    {
         int ii, jj, index;
-        double x, y, z;
         double is, js;
         double r, weight = 0.;
-        VgPoint pnt;
 
-        for (int i = 0; i < pPointSet.size(); i++) // for all points in the list
+        // (real) grid-indices:
+        js = mFaktorX * (x - mXMin);
+        is = mFaktorY * (y - mYMin);
+
+        for (jj = (((int)Math.floor(js)) - mRadIdxX - 1);  // -1 just to be sure
+             jj <= ((int)Math.floor(js)) + mRadIdxX + 1;
+             jj++)
         {
-            pnt = ((VgPoint) pPointSet.get(i));
-            x = pnt.getX();
-            y = pnt.getY();
-            z = pnt.getZ();
-      
-            // (real) grid-indices:
-            js = faktorX * (x - mXMin);
-            is = faktorY * (y - mYMin);
-
-            for (jj = (((int)Math.floor(js)) - radIdxX - 1);  // -1 just to be sure
-                 jj <= ((int)Math.floor(js)) + radIdxX + 1;
-                 jj++)
+            for (ii = (((int)Math.floor(is)) - mRadIdxY - 1); 
+                 ii <= ((int)Math.floor(is)) + mRadIdxY + 1; 
+                 ii++)
             {
-                for (ii = (((int)Math.floor(is)) - radIdxY - 1); 
-                     ii <= ((int)Math.floor(is)) + radIdxY + 1; 
-                     ii++)
+                if (jj >= 0 && jj <= mNX - 1 && ii >= pRowFrom && ii < pRowTo) 
                 {
-                    if (jj >= 0 && jj <= mNX - 1 && ii >= 0 && ii <= mNY - 1) 
+                    r = iDistance(jj, ii, js, is);
+
+                    if (r <= mRadius)
                     {
-                        r = iDistance(jj, ii, js, is);
-
-                        if (r <= mRadius)
-                        {
-                            index = jj * mNY + ii;
-                  
-                            switch (mWeightFnc) 
-                            {
-                                case cTriangleFnc:
-                                    weight = 1. - r / mRadius;
-                                    break;
-                    
-                                case cInverseDist:
-                                    if (r > Math.pow(cMaxWeight, -1. / (double)mInvDistExp))
-                                        weight = 1. / Math.pow(r, (double)mInvDistExp);
-                                    else
-                                        weight = cMaxWeight;
-                                    break;
-
-                                case cFrankeLittle:
-                                    if (mRadius - r <= Math.sqrt(cMaxWeight) * mRadius * r) {
-                                        weight = (mRadius - r) / (mRadius * r);
-                                        weight = weight * weight;
-                                    } else
-                                        weight = cMaxWeight;                        
-                                    break;
-                     
-                                case cNearestNeighbor:        
-                                    if (mSumN[index] < 0. || (mSumN[index] >= 0. && r < mSumN[index])) {
-                                        mSumZ[index] = z;
-                                        mSumN[index] = r;
-                                    }
-                                    break;
-   
-                                default: throw new T3dException("Unexpected error.");
+                        index = jj * mNY + ii;
+              
+                        if (mWeightFnc == cNearestNeighbor) {
+                            if (mSumN[index] < 0. || (mSumN[index] >= 0. && r < mSumN[index])) {
+                                mSumZ[index] = z;
+                                mSumN[index] = r;
                             }
+                        }
+                        else {
+                            weight = this.weight(r);
+                            mSumZ[index] += weight * z;
+                            mSumN[index] += weight;
+                        }
+                    }
+                }
+            } // for ii (rows)
+        } // for jj (columns)
+    } // processPoint()
+
+    // Parallel processing of all points of the given point-list. The grid 
+    // rows will be split into bands; each point will be assigned to all bands
+    // touched by its search-circle (in the order given by the point-list), so
+    // that the results will be the same as for processPoints().
+    // The points are given either by the coordinate array pXYZ or by the 
+    // point-list pPointSet.
+    private void processPointsParallel(
+        final double[] pXYZ, final List<VgPoint> pPointSet, int n) throws T3dException
+    {
+        int nBands = this.numberOfBands();
+        final int lBandRows = (mNY + nBands - 1) / nBands;
+        nBands = (mNY + lBandRows - 1) / lBandRows;
+
+        // Halo-aware assignment of points to bands (counting sort); the 
+        // buffers will be re-used for subsequent batches of a point stream:
+        if (mBandFirst == null || mBandFirst.length < n) {
+            mBandFirst = new int[n];
+            mBandLast = new int[n];
+        }
+        if (mBandStart == null || mBandStart.length != nBands + 1) {
+            mBandStart = new int[nBands + 1];
+            mBandFill = new int[nBands];
+        }
+        int[] lFirstBand = mBandFirst, lLastBand = mBandLast;
+        final int[] lFirst = mBandStart;
+        Arrays.fill(lFirst, 0);
+        for (int i = 0; i < n; i++) {
+            double y = (pXYZ != null) ? pXYZ[3 * i + 1] : pPointSet.get(i).getY();
+            double is = mFaktorY * (y - mYMin);
+            if (Double.isNaN(is)) {
+                lFirstBand[i] = 0; lLastBand[i] = -1;
+                continue;
+            }
+            long lo = (long) Math.floor(is) - mRadIdxY - 1, hi = (long) Math.floor(is) + mRadIdxY + 1;
+            lFirstBand[i] = (int) Math.max(lo, 0L) / lBandRows;
+            lLastBand[i] = (int) Math.min(hi, (long) mNY - 1) / lBandRows;
+            if (hi < 0 || lo > mNY - 1) 
+                lLastBand[i] = lFirstBand[i] - 1; // outside grid
+            for (int b = lFirstBand[i]; b <= lLastBand[i]; b++) 
+                lFirst[b + 1]++;
+        }
+        for (int b = 0; b < nBands; b++) 
+            lFirst[b + 1] += lFirst[b];
+        if (mBandPoints == null || mBandPoints.length < lFirst[nBands])
+            mBandPoints = new int[lFirst[nBands]];
+        final int[] lPoints = mBandPoints;
+        int[] lFill = mBandFill;
+        Arrays.fill(lFill, 0);
+        for (int i = 0; i < n; i++) {
+            for (int b = lFirstBand[i]; b <= lLastBand[i]; b++) 
+                lPoints[lFirst[b] + lFill[b]++] = i;
+        }
 
-                            if (mWeightFnc != cNearestNeighbor) {
-                                mSumZ[index] += weight * z;
-                                mSumN[index] += weight;
+        List<Callable<Object>> lTasks = new ArrayList<Callable<Object>>();
+        for (int b = 0; b < nBands; b++) {
+            final int lBand = b;
+            lTasks.add(new Callable<Object>() {
+                public Object call() {
+                    int lRowFrom = lBand * lBandRows, lRowTo = Math.min(lRowFrom + lBandRows, mNY);
+                    VgPoint pnt;
+                    int i;
+                    for (int k = lFirst[lBand]; k < lFirst[lBand + 1]; k++) {
+                        i = lPoints[k];
+                        if (pXYZ != null)
+                            processPoint(pXYZ[3 * i], pXYZ[3 * i + 1], pXYZ[3 * i + 2], lRowFrom, lRowTo);
+                        else {
+                            pnt = pPointSet.get(i);
+                            processPoint(pnt.getX(), pnt.getY(), pnt.getZ(), lRowFrom, lRowTo);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        this.execute(lTasks);
+    } // processPointsParallel()
+
+    // Weight-function for a point in the distance r from a grid vertex:
+    private double weight(double r)
+    {
+        double weight;
+        
+        switch (mWeightFnc) 
+        {
+            case cTriangleFnc:
+                return 1. - r / mRadius;
+
+            case cInverseDist:
+            case cKNearestInverseDist:
+                if (r > Math.pow(cMaxWeight, -1. / (double)mInvDistExp))
+                    return 1. / Math.pow(r, (double)mInvDistExp);
+                else
+                    return cMaxWeight;
+
+            case cFrankeLittle:
+                if (mRadius - r <= Math.sqrt(cMaxWeight) * mRadius * r) {
+                    weight = (mRadius - r) / (mRadius * r);
+                    return weight * weight;
+                } else
+                    return cMaxWeight;                        
+
+            default: throw new T3dException("Unexpected error.");
+        }
+    }
+
+    // Vertex-driven processing: Sorting of the points into a bucket index and 
+    // assignment of values to mSumZ[] and mSumN[] for all grid vertices:
+    private void processVertices(List<VgPoint> pPointSet) throws T3dException
+    {
+        final GridBucketIndex lIndex = new GridBucketIndex(
+            pPointSet, mNX, mNY, mXMin, mYMin, mDX, mDY, mFaktorX, mFaktorY, 
+            mRadIdxX + 1, mRadIdxY + 1);
+
+        if (mNumberOfThreads <= 1) {
+            this.processVertices(lIndex, 0, mNY);
+            return;
+        }
+
+        int nBands = this.numberOfBands();
+        final int lBandRows = (mNY + nBands - 1) / nBands;
+        List<Callable<Object>> lTasks = new ArrayList<Callable<Object>>();
+        for (int lRow = 0; lRow < mNY; lRow += lBandRows) {
+            final int lRowFrom = lRow;
+            lTasks.add(new Callable<Object>() {
+                public Object call() {
+                    processVertices(lIndex, lRowFrom, Math.min(lRowFrom + lBandRows, mNY));
+                    return null;
+                }
+            });
+        }
+        this.execute(lTasks);
+    }
+
+    // Vertex-driven processing of the grid rows pRowFrom ... pRowTo - 1:
+    private void processVertices(GridBucketIndex pIndex, int pRowFrom, int pRowTo)
+    {
+        int radIdxX = mRadIdxX, radIdxY = mRadIdxY;
+        int k = (mWeightFnc == cNearestNeighbor) ? 1 : mNumberOfNeighbors;
+        int[] lPos = new int[k];
+        double[] lDist = new double[k];
+        int index, ct, pos;
+        double r, weight, sumZ, sumN;
+
+        for (int ii = pRowFrom; ii < pRowTo; ii++) {
+            for (int jj = 0; jj < mNX; jj++) 
+            {
+                index = jj * mNY + ii;
+
+                if (mWeightFnc == cNearestNeighbor || mWeightFnc == cKNearestInverseDist) {
+                    ct = pIndex.nearest(jj, ii, mRadius, lPos, lDist);
+                    if (mWeightFnc == cNearestNeighbor) {
+                        mSumZ[index] = (ct > 0) ? pIndex.mZ[lPos[0]] : 0.;
+                        mSumN[index] = (ct > 0) ? lDist[0] : -1.;
+                    } 
+                    else {
+                        sumZ = 0.; 
+                        sumN = 0.;
+                        for (int m = 0; m < ct; m++) {
+                            weight = this.weight(lDist[m]);
+                            sumZ += weight * pIndex.mZ[lPos[m]];
+                            sumN += weight;
+                        }
+                        mSumZ[index] = sumZ;
+                        mSumN[index] = sumN;
+                    }
+                    continue;
+                }
+
+                // Radius-based weighting, consider all buckets in the search 
+                // rectangle:
+                int bc0 = pIndex.bucketCol(jj - radIdxX - 1), bc1 = pIndex.bucketCol(jj + radIdxX + 1);
+                int br0 = pIndex.bucketRow(ii - radIdxY - 1), br1 = pIndex.bucketRow(ii + radIdxY + 1);
+                sumZ = 0.; 
+                sumN = 0.;
+                for (int br = br0; br <= br1; br++) {
+                    for (int bc = bc0; bc <= bc1; bc++) {
+                        int end = pIndex.endPoint(br, bc);
+                        for (pos = pIndex.firstPoint(br, bc); pos < end; pos++) {
+                            r = pIndex.distance(pos, jj, ii);
+                            if (r <= mRadius) {
+                                weight = this.weight(r);
+                                sumZ += weight * pIndex.mZ[pos];
+                                sumN += weight;
                             }
                         }
                     }
-                } // for ii (rows)
-            } // for jj (columns)
-        } // for i (all points)
-    } // processPoints()
+                }
+                mSumZ[index] = sumZ;
+                mSumN[index] = sumN;
+            }
+        }
+    } // processVertices()
+
+    // Number of row bands for parallel processing:
+    private int numberOfBands() {
+        return Math.max(1, Math.min(4 * mNumberOfThreads, mNY / (2 * mRadIdxY + 3)));
+    }
+
+    private void execute(List<Callable<Object>> pTasks) throws T3dException
+    {
+        // Use the stream's thread pool, if present:
+        ExecutorService exec = mExecutor;
+        if (exec == null)
+            exec = Executors.newFixedThreadPool(mNumberOfThreads);
+        try {
+            List<Future<Object>> lRes = exec.invokeAll(pTasks);
+            for (Future<Object> f : lRes) 
+                f.get();
+        }
+        catch (InterruptedException e) {
+            throw new T3dException("Gridding interrupted.");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof T3dException)
+                throw (T3dException) e.getCause();
+            throw new T3dException("Gridding failed: " + e.getCause());
+        }
+        finally {
+            if (exec != mExecutor)
+                exec.shutdown();
+        }
+    }
 
     // Assignment of values to the target grid:
     private void putToElevationGrid() 
@@ -378,6 +790,8 @@ public class FltPointSet2ElevationGrid extends T3dProcFilter
     // More private helpers:
 
     private int mNX, mNY;
+    private int mRadIdxX, mRadIdxY; // search-radius in matrix coordinates
+    private double mFaktorX, mFaktorY; // geo-coordinates -> matrix coordinates
     private double mDX, mDY;
     private double mXMin, mXMax, mYMin, mYMax;
     
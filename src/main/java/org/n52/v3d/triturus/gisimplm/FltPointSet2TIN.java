@@ -35,6 +35,7 @@ package org.n52.v3d.triturus.gisimplm;
 import org.n52.v3d.triturus.core.T3dProcFilter;
 import org.n52.v3d.triturus.core.T3dException;
 import org.n52.v3d.triturus.core.T3dNotYetImplException;
+import org.n52.v3d.triturus.t3dutil.DivideAndConquerDelaunay;
 import org.n52.v3d.triturus.t3dutil.SimpleDelaunay;
 import org.n52.v3d.triturus.vgis.VgPoint;
 import org.n52.v3d.triturus.vgis.VgTIN;
@@ -52,12 +53,25 @@ public class FltPointSet2TIN extends T3dProcFilter
     private String mLogString = "";
 
     /**
-     * Identifier for simple incremental Delaunay method. Note that this 
-     * implementation is inefficient, since it requires O(n^2) runtime!
+     * Identifier for simple incremental Delaunay method. The points will be 
+     * inserted in BRIO/Hilbert-sorted order, which results in an expected 
+     * runtime of about O(n log n).
+     * 
+     * @see SimpleDelaunay#SimpleDelaunay(List, boolean)
      */
     public final static short cSimpleDelaunay = 1;
 
+    /**
+     * Identifier for divide-and-conquer Delaunay method (Guibas/Stolfi). This 
+     * method requires O(n log n) runtime and can be performed in parallel.
+     * 
+     * @see FltPointSet2TIN#setNumberOfThreads(int)
+     * @see DivideAndConquerDelaunay
+     */
+    public final static short cDivideAndConquerDelaunay = 2;
+
     private short mAlgorithm = 1; // simple Delaunay as default
+    private int mNumberOfThreads = 1;
 
     /**
      * Constructor.
@@ -71,6 +85,17 @@ public class FltPointSet2TIN extends T3dProcFilter
         return mLogString;
     }
 
+    /**
+     * sets the number of threads to be used for the triangulation. Note that 
+     * this parameter is considered for the 
+     * <tt>cDivideAndConquerDelaunay</tt> method only. The default value is 1.
+     * 
+     * @param pNumberOfThreads Number of threads
+     */
+    public void setNumberOfThreads(int pNumberOfThreads) {
+        mNumberOfThreads = pNumberOfThreads;
+    }
+
     /** 
      * triangulates a set of points.
      * 
@@ -82,7 +107,7 @@ public class FltPointSet2TIN extends T3dProcFilter
     	
     	switch (mAlgorithm) {
     		case cSimpleDelaunay:
-    	        int[] res = SimpleDelaunay.triangulate(points);
+    	        int[] res = SimpleDelaunay.triangulate(points, true);
     	        tin = new XTIN();
     	        for (int i = 0; i < points.size(); i++) {
     	        	((XTIN) tin).addLocation(i, points.get(i));
@@ -91,6 +116,24 @@ public class FltPointSet2TIN extends T3dProcFilter
     	        	((XTIN) tin).addTriangle(res[3*i], res[3*i+1], res[3*i+2]);
     	        }
     			break;
+    		case cDivideAndConquerDelaunay:
+    			double[] xy = new double[2 * points.size()];
+    	        for (int i = 0; i < points.size(); i++) {
+    	        	xy[2 * i] = points.get(i).getX();
+    	        	xy[2 * i + 1] = points.get(i).getY();
+    	        }
+    	        int[] ind = new DivideAndConquerDelaunay(xy, mNumberOfThreads).getIndices();
+    	        xy = null;
+    	        GmSimpleTINGeometry geom = 
+    	        	new GmSimpleTINGeometry(points.size(), ind.length / 3);
+    	        for (int i = 0; i < points.size(); i++) {
+    	        	geom.setPoint(i, points.get(i));
+    	        }
+    	        for (int i = 0; i < ind.length / 3; i++) {
+    	        	geom.setTriangle(i, ind[3*i], ind[3*i+1], ind[3*i+2]);
+    	        }
+    	        tin = geom;
+    			break;
     		default:
     	    	throw new T3dNotYetImplException();
     	}
@@ -34,8 +34,12 @@ package org.n52.v3d.triturus.gisimplm;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import org.n52.v3d.triturus.core.T3dNotYetImplException;
 import org.n52.v3d.triturus.core.T3dProcFilter;
 import org.n52.v3d.triturus.core.T3dException;
 import org.n52.v3d.triturus.vgis.VgElevationGrid;
@@ -44,13 +48,21 @@ import org.n52.v3d.triturus.vgis.VgEquidistGrid;
 import org.n52.v3d.triturus.vgis.VgIndexedTIN;
 import org.n52.v3d.triturus.vgis.VgLineSegment;
 import org.n52.v3d.triturus.vgis.VgPoint;
-import org.n52.v3d.triturus.vgis.VgTriangle;
 
 /** 
  * Filter to transform a <tt>GmSimpleTINFeature</tt>-object to a 
  * <tt>GmSimpleElevationGrid</tt>. Basically, this implementation provides a 
  * "rasterizer" to transform a given TIN (e.g. a terrain surface) to a lattice 
  * of elevation values.
+ * <br/>
+ * The triangles will be processed by a scanline algorithm: For each lattice 
+ * row, the covered column span will be computed from the triangle's edges, 
+ * and the elevations will be interpolated incrementally along the span. 
+ * Lattice points on triangle edges will be assigned to all adjacent 
+ * triangles. The TIN's vertices and triangles will be copied to arrays once 
+ * in advance; no triangle objects will be created. Optionally, the target 
+ * grid's rows can be processed in parallel (see 
+ * <tt>this.setNumberOfThreads()</tt>).
  * 
  * @author Benno Schmidt
  */
@@ -73,12 +85,24 @@ public class FltTIN2ElevationGrid extends T3dProcFilter
     public static final int CONFLICT_TAKE_MIN_Z = 2;
     /**
      * Identifier for z-conflict handler which take the average z-value if the 
-     * source TIN gives more than one z-value. (Note that this method has not 
-     * been implemented yet.)
+     * source TIN gives more than one z-value. 
      */
     public static final int CONFLICT_TAKE_AVG_Z = 3;
     
     private int zConflictHandler = CONFLICT_TAKE_MAX_Z;
+    private int numberOfThreads = 1;
+
+    private final static double cEps = 1e-7; // tolerance for lattice points on triangle edges (in cell units)
+
+    // State of the current transformation:
+    private double[] vx, vy, vz; // vertex coordinates
+    private int[] tri; // vertex indices, 3 per triangle
+    private int[] triRowFrom, triRowTo; // covered lattice rows per triangle (inclusive)
+    private double xMin, yMin, xMax, yMax, fx, fy;
+    private int nx, ny;
+    private GmSimpleElevationGrid target;
+    private GmElevationGridStorage storage;
+    private int[] counts; // number of z-values per element (for CONFLICT_TAKE_AVG_Z)
     
     /**
      * Constructor.
@@ -101,13 +125,27 @@ public class FltTIN2ElevationGrid extends T3dProcFilter
     }
 
     /**
+     * sets the z-conflict handler, which will be applied to lattice points 
+     * covered by more than one triangle.
      * 
-     * @param method
+     * @param method <tt>CONFLICT_TAKE_MAX_Z</tt>, <tt>CONFLICT_TAKE_MIN_Z</tt> or <tt>CONFLICT_TAKE_AVG_Z</tt>
      */
     public void setZConflictHandler(int method) {
         this.zConflictHandler = method;
     }
 
+    /**
+     * sets the number of threads to be used for the rasterization. For 
+     * values &gt; 1, the target grid will be split into row bands that will 
+     * be processed in parallel. The resulting elevation values will be 
+     * exactly the same as for sequential processing. The default value is 1.
+     * 
+     * @param numberOfThreads Number of threads
+     */
+    public void setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = Math.max(1, numberOfThreads);
+    }
+
     /**
      * performs the described filter operation.
      * 
@@ -116,59 +154,44 @@ public class FltTIN2ElevationGrid extends T3dProcFilter
      */
     public VgElevationGrid transform(GmSimpleTINFeature tin) throws T3dException
     {
-    	GmSimpleElevationGrid target = prepareTargetGrid();
+    	target = prepareTargetGrid();
+    	storage = target.getStorage();
     	
     	VgEnvelope envGeom = grdGeom.envelope(); 
         VgIndexedTIN geom = (VgIndexedTIN) tin.getGeometry();
 
-        double 
-    		xMin = envGeom.getXMin(),
-	   		xMax = envGeom.getXMax(),
-    		yMin = envGeom.getYMin(),
-       		yMax = envGeom.getYMax();
-    	long 
-    		nx = grdGeom.numberOfColumns(),
-    		ny = grdGeom.numberOfRows();    			
-    	double
-    		fx = (((double) nx) - 1.) / (xMax - xMin),
-    		fy = (((double) ny) - 1.) / (yMax - yMin);
-    	int iFrom, iTo, jFrom, jTo, ii, jj;
-    	double z;
-    	VgPoint p = new GmPoint();
-    	conflicts = new ArrayList<VgLineSegment>();
-
-        for (int i = 0; i < geom.numberOfTriangles(); i++) {
-        	VgTriangle tri = geom.getTriangle(i);
-        	VgEnvelope envTri = tri.envelope();
-   
-        	jFrom = (int)(fx * (envTri.getXMin() - xMin));
-        	jTo = (int)(fx * (envTri.getXMax() - xMin)) + 1;
-        	iFrom = (int)(fy * (envTri.getYMin() - yMin));
-        	iTo = (int)(fy * (envTri.getYMax() - yMin)) + 1;
-        	
-        	for (jj = jFrom; jj <= jTo; jj++) {
-            	for (ii = iFrom; ii <= iTo; ii++) {
-            		if (ii >= 0 && ii < ny && jj >= 0 && jj < nx) {
-            			p.setX(xMin + (xMax - xMin) * (((double) jj) / (double)(nx - 1)));
-            			p.setY(yMin + (yMax - yMin) * (((double) ii) / (double)(ny - 1)));
-            			
-            			try {
-	            			if (tri.isInsideXY(p, true)) {
-	            				z = tri.interpolateZ(p);
-	            				if (target.isSet(ii, jj)) {
-	            					// non "2.5-D" case detected
-	            					z = handleConflict(target, ii, jj, z, p);
-	            				}
-	            				target.setValue(ii, jj, z);
-	            			}
-            			} catch (Exception e) {
-            				e.printStackTrace();
-            			}
-            		}
-            	}
-        	}
+   		xMin = envGeom.getXMin();
+   		xMax = envGeom.getXMax();
+   		yMin = envGeom.getYMin();
+   		yMax = envGeom.getYMax();
+   		nx = grdGeom.numberOfColumns();
+   		ny = grdGeom.numberOfRows();
+   		fx = (((double) nx) - 1.) / (xMax - xMin);
+   		fy = (((double) ny) - 1.) / (yMax - yMin);
+   		counts = zConflictHandler == CONFLICT_TAKE_AVG_Z ? new int[nx * ny] : null;
+
+        this.copyTIN(geom);
+
+        try {
+	    	conflicts = new ArrayList<VgLineSegment>();
+	    	int nBands = Math.max(1, Math.min(4 * numberOfThreads, ny));
+	    	if (numberOfThreads <= 1 || nBands == 1) {
+	    		this.rasterize(0, ny, null, conflicts);
+	    	}
+	    	else {
+	    		this.rasterizeParallel(nBands);
+	    	}
+	    	target.setZBoundsInvalid();
+	    	return target;
+        }
+        finally {
+        	// Release the work arrays:
+        	vx = vy = vz = null;
+        	tri = triRowFrom = triRowTo = null;
+        	counts = null;
+        	storage = null;
+        	target = null;
         }
-    	return target;
     }
 
 	private GmSimpleElevationGrid prepareTargetGrid() 
@@ -178,53 +201,233 @@ public class FltTIN2ElevationGrid extends T3dProcFilter
     	if (!(grdGeom instanceof GmSimple2dGridGeometry)) 
     		throw new T3dException("Unexpected grid geometry class type!");  
     	    	
+    	// Note that the GmSimpleElevationGrid constructor initializes all 
+    	// grid cells as unset.
     	GmSimpleElevationGrid target = 
     		new GmSimpleElevationGrid((GmSimple2dGridGeometry) grdGeom);
     	((GmSimpleElevationGrid) target).setLatticeInterpretation();
-    	
-    	for (int ii = 0; ii < target.numberOfRows(); ii++) {
-        	for (int jj = 0; jj < target.numberOfColumns(); jj++) {
-        		target.unset(ii, jj);
-        		// This is redundant, since the GmSimpleElevationGrid 
-        		// constructor should initialize all grid cells as unset.
-        	}
-    	}
-        	
 		return target;
 	}
 
-	private double handleConflict(
-		GmSimpleElevationGrid target, int ii, int jj, double z, VgPoint p) 
+	// Copies the TIN's vertices and triangles to arrays and determines the 
+	// lattice rows covered by each triangle:
+	private void copyTIN(VgIndexedTIN geom)
+	{
+		int nv = geom.numberOfPoints(), nt = geom.numberOfTriangles();
+		vx = new double[nv];
+		vy = new double[nv];
+		vz = new double[nv];
+		for (int i = 0; i < nv; i++) {
+			VgPoint p = geom.getPoint(i);
+			vx[i] = p.getX();
+			vy[i] = p.getY();
+			vz[i] = p.getZ();
+		}
+
+		tri = new int[3 * nt];
+		triRowFrom = new int[nt];
+		triRowTo = new int[nt];
+		for (int t = 0; t < nt; t++) {
+			int[] ind = geom.getTriangleVertexIndices(t);
+			tri[3 * t] = ind[0];
+			tri[3 * t + 1] = ind[1];
+			tri[3 * t + 2] = ind[2];
+			double 
+				yLo = Math.min(vy[ind[0]], Math.min(vy[ind[1]], vy[ind[2]])),
+				yHi = Math.max(vy[ind[0]], Math.max(vy[ind[1]], vy[ind[2]]));
+			triRowFrom[t] = Math.max(0, (int) Math.ceil(fy * (yLo - yMin) - cEps));
+			triRowTo[t] = Math.min(ny - 1, (int) Math.floor(fy * (yHi - yMin) + cEps));
+		}
+	}
+
+	// Rasterizes the triangles (all triangles, if tris is null) for the 
+	// lattice rows rowFrom ... rowTo - 1. Detected conflicts will be added 
+	// to the given list.
+	private void rasterize(int rowFrom, int rowTo, int[] tris, List<VgLineSegment> res)
 	{
-		VgPoint 
-			p1 = target.getPoint(ii, jj),
-			p2 = new GmPoint(p.getX(), p.getY(), z);
-		p2.setSRS(p1.getSRS());
+		int n = tris == null ? triRowFrom.length : tris.length;
+		double dxCol = (xMax - xMin) / (double)(nx - 1);
+		double[] px = new double[3], py = new double[3];
+
+		for (int k = 0; k < n; k++) {
+			int t = tris == null ? k : tris[k];
+			int iFrom = Math.max(rowFrom, triRowFrom[t]), iTo = Math.min(rowTo - 1, triRowTo[t]);
+			if (iFrom > iTo)
+				continue;
+
+			int a = tri[3 * t], b = tri[3 * t + 1], c = tri[3 * t + 2];
+			px[0] = vx[a]; px[1] = vx[b]; px[2] = vx[c];
+			py[0] = vy[a]; py[1] = vy[b]; py[2] = vy[c];
+			double 
+				x0 = px[0] - px[2], y0 = py[0] - py[2], z0 = vz[a] - vz[c],
+				x1 = px[1] - px[2], y1 = py[1] - py[2], z1 = vz[b] - vz[c];
+			double det = x0 * y1 - x1 * y0;
+			if (det == 0.)
+				continue; // degenerated triangle (with respect to the x-y-plane)
+
+			// Plane gradient: z = vz[c] + gx * (x - px[2]) + gy * (y - py[2])
+			double gx = (y1 * z0 - y0 * z1) / det, gy = (x0 * z1 - x1 * z0) / det;
+
+			for (int ii = iFrom; ii <= iTo; ii++) {
+				double y = yMin + (yMax - yMin) * (((double) ii) / (double)(ny - 1));
+
+				// Determine the span covered by the triangle:
+				double xl = Double.POSITIVE_INFINITY, xr = Double.NEGATIVE_INFINITY;
+				for (int e = 0; e < 3; e++) {
+					int f = e == 2 ? 0 : e + 1;
+					double ya = py[e], yb = py[f];
+					if ((y < ya && y < yb) || (y > ya && y > yb))
+						continue;
+					double xs;
+					if (ya == yb) {
+						// horizontal edge on the scanline
+						xl = Math.min(xl, Math.min(px[e], px[f]));
+						xr = Math.max(xr, Math.max(px[e], px[f]));
+						continue;
+					}
+					xs = px[e] + (y - ya) * (px[f] - px[e]) / (yb - ya);
+					if (xs < xl) xl = xs;
+					if (xs > xr) xr = xs;
+				}
+				if (xl > xr)
+					continue;
+				int jFrom = Math.max(0, (int) Math.ceil(fx * (xl - xMin) - cEps));
+				int jTo = Math.min(nx - 1, (int) Math.floor(fx * (xr - xMin) + cEps));
+				if (jFrom > jTo)
+					continue;
+
+				// Interpolate incrementally along the span:
+				double x = xMin + (xMax - xMin) * (((double) jFrom) / (double)(nx - 1));
+				double z = vz[c] + gx * (x - px[2]) + gy * (y - py[2]);
+				double dz = gx * dxCol;
+				int idx = ii * nx + jFrom;
+				for (int jj = jFrom; jj <= jTo; jj++, idx++, z += dz) {
+					double zOld = storage.get(idx);
+					if (Double.isNaN(zOld)) {
+						storage.set(idx, z);
+						if (counts != null) 
+							counts[idx] = 1;
+					}
+					else {
+						// non "2.5-D" case detected
+						storage.set(idx, this.handleConflict(ii, jj, zOld, z, res));
+					}
+				}
+			}
+		}
+	}
+
+	private void rasterizeParallel(int nBands) throws T3dException
+	{
+		int nt = triRowFrom.length;
+		final int[] bandStart = new int[nBands + 1];
+		for (int b = 0; b <= nBands; b++)
+			bandStart[b] = (int) ((long) ny * b / nBands);
+
+		// Assign triangles to the row bands they cover (in triangle order, so 
+		// that conflicts will be resolved as for sequential processing):
+		int[] ct = new int[nBands + 1];
+		for (int t = 0; t < nt; t++) {
+			if (triRowFrom[t] > triRowTo[t]) 
+				continue;
+			for (int b = this.band(triRowFrom[t], bandStart); b <= this.band(triRowTo[t], bandStart); b++)
+				ct[b + 1]++;
+		}
+		for (int b = 0; b < nBands; b++)
+			ct[b + 1] += ct[b];
+		final int[] first = ct.clone();
+		int[] pos = ct.clone();
+		final int[] list = new int[ct[nBands]];
+		for (int t = 0; t < nt; t++) {
+			if (triRowFrom[t] > triRowTo[t]) 
+				continue;
+			for (int b = this.band(triRowFrom[t], bandStart); b <= this.band(triRowTo[t], bandStart); b++)
+				list[pos[b]++] = t;
+		}
+
+		final List<List<VgLineSegment>> bandConflicts = new ArrayList<List<VgLineSegment>>();
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int b = 0; b < nBands; b++) {
+			final int band = b;
+			final List<VgLineSegment> lRes = new ArrayList<VgLineSegment>();
+			bandConflicts.add(lRes);
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					int[] tris = new int[first[band + 1] - first[band]];
+					System.arraycopy(list, first[band], tris, 0, tris.length);
+					rasterize(bandStart[band], bandStart[band + 1], tris, lRes);
+					return null;
+				}
+			});
+		}
+
+		ExecutorService exec = Executors.newFixedThreadPool(numberOfThreads);
+		try {
+			for (Future<Object> f : exec.invokeAll(tasks)) 
+				f.get();
+		}
+		catch (InterruptedException e) {
+			throw new T3dException("Rasterization interrupted.");
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof T3dException)
+				throw (T3dException) e.getCause();
+			throw new T3dException("Rasterization failed: " + e.getCause());
+		}
+		finally {
+			exec.shutdown();
+		}
+
+		for (List<VgLineSegment> lRes : bandConflicts)
+			conflicts.addAll(lRes);
+	}
+
+	// Row band containing the given row:
+	private int band(int row, int[] bandStart) 
+	{
+		int lo = 0, hi = bandStart.length - 2;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (bandStart[mid] <= row) lo = mid; else hi = mid - 1;
+		}
+		return lo;
+	}
+
+	private double handleConflict(int ii, int jj, double z1, double z2, List<VgLineSegment> res) 
+	{
+		if (z1 != z2) {
+			VgPoint 
+				p1 = target.getPoint(ii, jj),
+				p2 = new GmPoint(p1.getX(), p1.getY(), z2);
+			p2.setSRS(p1.getSRS());
 				
-		VgLineSegment line = new GmLineSegment(p1, p2);
-		line.setSRS(p1.getSRS());
-		conflicts.add(line);
+			VgLineSegment line = new GmLineSegment(p1, p2);
+			line.setSRS(p1.getSRS());
+			res.add(line);
+		}
 		
-		double z1 = p1.getZ(), z2 = z, res = z2;
+		double z = z2;
 		switch (zConflictHandler) {
 			case CONFLICT_TAKE_MIN_Z:
-				res = Math.min(z1, z2);
+				z = Math.min(z1, z2);
 				break;
 			case CONFLICT_TAKE_MAX_Z:
-				res = Math.max(z1, z2);
+				z = Math.max(z1, z2);
 				break;
 			case CONFLICT_TAKE_AVG_Z:
-				// Note for implementers: The implementation would require to 
-				// store the number of candidate elevations, which might be 
-				// > 2!
-				throw new T3dNotYetImplException();
+				// running mean of all candidate elevations:
+				int idx = ii * nx + jj;
+				counts[idx]++;
+				z = z1 + (z2 - z1) / counts[idx];
+				break;
 		}
-		return res;
+		return z;
 	}
 
     /**
-     * returns the 2-D locations of detected conflicts. The z-values give the 
-     * conflicting z-values at these locations.
+     * returns the 2-D locations of detected conflicts, i.e. of lattice 
+     * points for which the source TIN gives different z-values. The 
+     * z-values give the conflicting z-values at these locations.
      * 
      * @return List of vertically oriented line segments
      */
@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2007-2016 52North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.vgis.VgEnvelope;
+
+/**
+ * Multi-resolution pyramid for elevation grids. Level 0 holds the 
+ * full-resolution grid; each further level (&quot;overview&quot;) has 
+ * twice the cell-size of its predecessor. All levels share the same origin, 
+ * i.e. the vertices of level <i>k</i> coincide with every 2<sup>k</sup>-th 
+ * vertex of the full-resolution grid.
+ * <p>
+ * Usually, pyramids will be generated by {@link FltElevationGrid2Pyramid}. 
+ * To visualize a region at a given output resolution, the coarsest 
+ * sufficient level can be selected by <tt>this.selectLevel()</tt>, or the 
+ * corresponding grid window can be fetched directly by 
+ * <tt>this.getGrid()</tt>.
+ * 
+ * @author Benno Schmidt
+ * @see FltElevationGrid2Pyramid
+ * @see IoElevationGridWriter#writeOverviews(GmElevationGridPyramid, String)
+ * @see IoElevationGridReader#readPyramid(String)
+ */
+public class GmElevationGridPyramid 
+{
+    private List<GmSimpleElevationGrid> mLevels;
+
+    /**
+     * Constructor.
+     * 
+     * @param pLevels Grids ordered by increasing cell-size, starting with the full-resolution grid
+     * @throws T3dException if no level is given
+     */
+    public GmElevationGridPyramid(List<GmSimpleElevationGrid> pLevels) throws T3dException
+    {
+        if (pLevels == null || pLevels.size() < 1)
+            throw new T3dException("Elevation grid pyramid needs at least one level.");
+        mLevels = new ArrayList<GmSimpleElevationGrid>(pLevels);
+    }
+
+    /**
+     * returns the number of levels (including the full-resolution level 0).
+     * 
+     * @return Number of levels
+     */
+    public int numberOfLevels() {
+        return mLevels.size();
+    }
+
+    /**
+     * returns the grid of the given level.
+     * 
+     * @param pLevel Level index, 0 for full resolution
+     * @return Elevation grid
+     * @throws T3dException if the level index is out of range
+     */
+    public GmSimpleElevationGrid getLevel(int pLevel) throws T3dException
+    {
+        if (pLevel < 0 || pLevel >= mLevels.size())
+            throw new T3dException("Pyramid level out of range: " + pLevel);
+        return mLevels.get(pLevel);
+    }
+
+    /**
+     * returns the full-resolution grid (level 0).
+     * 
+     * @return Elevation grid
+     */
+    public GmSimpleElevationGrid getBaseGrid() {
+        return mLevels.get(0);
+    }
+
+    /**
+     * selects the coarsest level whose cell-sizes do not exceed the given 
+     * cell-size. If even the full-resolution grid is coarser, level 0 will 
+     * be returned.
+     * 
+     * @param pCellSize Required cell-size
+     * @return Level index
+     */
+    public int selectLevel(double pCellSize)
+    {
+        double tol = 1. + 1e-9;
+        for (int k = mLevels.size() - 1; k > 0; k--) {
+            GmSimpleElevationGrid g = mLevels.get(k);
+            if (g.getDeltaX() <= pCellSize * tol && g.getDeltaY() <= pCellSize * tol)
+                return k;
+        }
+        return 0;
+    }
+
+    /**
+     * selects the coarsest level that provides at least the given output 
+     * resolution for the given region, i.e. at least <tt>pWidth</tt> 
+     * vertices in x-direction and <tt>pHeight</tt> vertices in y-direction.
+     * 
+     * @param pEnv Target region
+     * @param pWidth Output resolution in x-direction
+     * @param pHeight Output resolution in y-direction
+     * @return Level index
+     */
+    public int selectLevel(VgEnvelope pEnv, int pWidth, int pHeight)
+    {
+        return this.selectLevel(Math.min(
+            pEnv.getExtentX() / Math.max(1, pWidth - 1), 
+            pEnv.getExtentY() / Math.max(1, pHeight - 1)));
+    }
+
+    /**
+     * provides the part of the grid that lies inside the given region with 
+     * (at least) the given output resolution (see 
+     * {@link #selectLevel(VgEnvelope, int, int)}). The result will be taken 
+     * from the selected level.
+     * 
+     * @param pEnv Target region
+     * @param pWidth Output resolution in x-direction
+     * @param pHeight Output resolution in y-direction
+     * @return Elevation grid
+     * @throws T3dException if the region does not intersect the grid
+     */
+    public GmSimpleElevationGrid getGrid(VgEnvelope pEnv, int pWidth, int pHeight) 
+        throws T3dException
+    {
+        GmSimpleElevationGrid g = mLevels.get(this.selectLevel(pEnv, pWidth, pHeight));
+        return GridWindow.extract(g, pEnv, 1);
+    }
+
+    public String toString() {
+        return "[" + mLevels.size() + " levels, base: " + this.getBaseGrid().getGeometry() + "]";
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2007-2016 52North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+/**
+ * Abstract base class for the storage backends holding the elevation values 
+ * of a {@link GmSimpleElevationGrid}. The grid elements are addressed by a 
+ * single row-major index, i.e. the element <i>(row, col)</i> is stored at 
+ * position <tt>row * numberOfColumns + col</tt>. Unset grid elements 
+ * (&quot;no data&quot;) are encoded as <tt>Double.NaN</tt> (or 
+ * <tt>Float.NaN</tt>), so that no separate flag matrix is needed.<p>
+ * Note that for performance reasons, the storage's access methods do not 
+ * perform any range-checks.
+ * 
+ * @author Benno Schmidt
+ * @see GmDoubleGridStorage
+ * @see GmFloatGridStorage
+ */
+abstract public class GmElevationGridStorage
+{
+    /**
+     * returns the number of elements held by the storage.
+     * 
+     * @return Number of grid elements
+     */
+    abstract public int numberOfElements();
+
+    /**
+     * returns the value stored for the given index. For unset elements, 
+     * <tt>Double.NaN</tt> will be returned.
+     * 
+     * @param pIdx Row-major index
+     * @return Elevation value or <tt>Double.NaN</tt>
+     */
+    abstract public double get(int pIdx);
+
+    /**
+     * stores a value for the given index. Note that assigning 
+     * <tt>Double.NaN</tt> is equivalent to unsetting the element.
+     * 
+     * @param pIdx Row-major index
+     * @param pVal Elevation value
+     */
+    abstract public void set(int pIdx, double pVal);
+
+    /**
+     * marks the element with the given index as unset (&quot;no data&quot;).
+     * 
+     * @param pIdx Row-major index
+     */
+    abstract public void unset(int pIdx);
+
+    /**
+     * returns <i>true</i>, if the values are held with single-precision 
+     * (<tt>float</tt>).
+     * 
+     * @return <i>true</i> for single-precision storage
+     */
+    abstract public boolean isSinglePrecision();
+
+    /**
+     * returns <i>true</i>, if a value is assigned to the element with the 
+     * given index.
+     * 
+     * @param pIdx Row-major index
+     * @return <i>false</i> for &quot;no data&quot; elements
+     */
+    public boolean isSet(int pIdx) {
+        return !Double.isNaN(this.get(pIdx));
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2007-2016 52North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+import java.util.Arrays;
+
+/**
+ * Elevation grid storage holding single-precision values in one contiguous 
+ * row-major array. Compared to {@link GmDoubleGridStorage}, this storage 
+ * needs half of the memory. Unset elements are encoded as <tt>Float.NaN</tt>.
+ * 
+ * @author Benno Schmidt
+ */
+public class GmFloatGridStorage extends GmElevationGridStorage
+{
+    private float[] mVal;
+
+    /**
+     * Constructor. This will generate a storage with all elements unset.
+     * 
+     * @param pNumberOfElements Number of grid elements
+     */
+    public GmFloatGridStorage(int pNumberOfElements) 
+    {
+        mVal = new float[pNumberOfElements];
+        Arrays.fill(mVal, Float.NaN);
+    }
+
+    /**
+     * Constructor. The given array will be used as backing array without 
+     * copying it.
+     * 
+     * @param pVal Row-major elevation values, <tt>Float.NaN</tt> for unset elements
+     */
+    public GmFloatGridStorage(float[] pVal) {
+        mVal = pVal;
+    }
+
+    public int numberOfElements() {
+        return mVal.length;
+    }
+
+    public double get(int pIdx) {
+        return mVal[pIdx];
+    }
+
+    public void set(int pIdx, double pVal) {
+        mVal[pIdx] = (float) pVal;
+    }
+
+    public void unset(int pIdx) {
+        mVal[pIdx] = Float.NaN;
+    }
+
+    public boolean isSet(int pIdx) {
+        return !Float.isNaN(mVal[pIdx]);
+    }
+
+    public boolean isSinglePrecision() {
+        return true;
+    }
+
+    /**
+     * provides direct access to the backing array. Bulk operations may read 
+     * and write this array directly; note that unset elements have to be 
+     * encoded as <tt>Float.NaN</tt>.
+     * 
+     * @return Row-major value array
+     */
+    public float[] getArray() {
+        return mVal;
+    }
+}
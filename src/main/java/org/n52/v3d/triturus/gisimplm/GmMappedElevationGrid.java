@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2007-2016 52North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+import java.io.File;
+import java.nio.ByteOrder;
+
+import org.n52.v3d.triturus.core.T3dException;
+
+/**
+ * Elevation grid whose values are held in a memory-mapped raw float file 
+ * instead of the heap (&quot;out-of-core&quot; grid). Since this class is a 
+ * {@link GmSimpleElevationGrid}, it can be passed to all filters and writers 
+ * processing elevation grids, e.g. {@link FltElevationGrid2Profile}, 
+ * {@link FltElevationGridDifference} or {@link IoElevationGridWriter}. Only 
+ * those parts of the file that are actually accessed will be paged in.<p>
+ * Existing BSQ files can be opened without copying them by using 
+ * {@link IoElevationGridReader#readMapped(String)}.
+ * 
+ * @author Benno Schmidt
+ * @see GmMappedGridStorage
+ */
+public class GmMappedElevationGrid extends GmSimpleElevationGrid
+{
+    /**
+     * Constructor. Opens a raw float file as elevation grid.
+     * 
+     * @param pGeom Grid geometry
+     * @param pFilename Raw float file
+     * @param pOffset Header size, i.e. byte position of the first value
+     * @param pByteOrder Byte order of the stored values
+     * @param pTopDown <i>true</i>, if the first row in the file is the 
+     * grid's upper (northern) row
+     * @param pWritable <i>true</i> to allow modifications of the file. If the 
+     * file does not exist yet, it will be created.
+     * @throws T3dException if the file can not be accessed
+     */
+    public GmMappedElevationGrid(
+    		GmSimple2dGridGeometry pGeom, 
+    		String pFilename, long pOffset, 
+    		ByteOrder pByteOrder, boolean pTopDown, boolean pWritable) 
+    	throws T3dException
+    {
+        super(pGeom, new GmMappedGridStorage(
+            new File(pFilename), 
+            pGeom.numberOfRows(), pGeom.numberOfColumns(), 
+            pOffset, pByteOrder, pTopDown, pWritable));
+        this.setName(pFilename);
+    }
+
+    /**
+     * sets the value that marks unset elements inside the file.
+     * 
+     * @param pNoData No-data value
+     * @see GmMappedGridStorage#setNoDataValue(float)
+     */
+    public void setNoDataValue(float pNoData) 
+    {
+        ((GmMappedGridStorage) this.getStorage()).setNoDataValue(pNoData);
+        this.setZBoundsInvalid();
+    }
+
+    /**
+     * writes pending modifications back to the file.
+     */
+    public void flush() {
+        ((GmMappedGridStorage) this.getStorage()).flush();
+    }
+
+    /**
+     * flushes pending modifications and closes the underlying file. 
+     * Afterwards, the grid must not be accessed any more.
+     * 
+     * @throws T3dException if an I/O error occurs
+     */
+    public void close() throws T3dException {
+        ((GmMappedGridStorage) this.getStorage()).close();
+    }
+}
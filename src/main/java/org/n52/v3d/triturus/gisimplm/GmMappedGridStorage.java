@@ -0,0 +1,253 @@
+/**
+ * Copyright (C) 2007-2016 52North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.n52.v3d.triturus.core.T3dException;
+
+/**
+ * Elevation grid storage backed by a memory-mapped file holding raw 32-bit 
+ * float values (e.g. ESRI band-sequential &quot;BSQ&quot; files or raw 
+ * float files as processed by 
+ * {@link IoElevationGridReader#readRawFloats(java.io.InputStream, org.n52.v3d.triturus.vgis.VgEnvelope, int, int)}). 
+ * The file is mapped in windows of consecutive rows. A window will be 
+ * mapped not until one of its elements is accessed for the first time, so 
+ * that only the parts of the file a computation actually touches will be 
+ * paged in by the operating system. Thus, grids larger than the available 
+ * heap-space can be processed.<p>
+ * Elements holding the no-data value (by default <tt>Float.NaN</tt>) are 
+ * treated as unset.
+ * 
+ * @author Benno Schmidt
+ * @see GmMappedElevationGrid
+ */
+public class GmMappedGridStorage extends GmElevationGridStorage
+{
+    // Maximum size of a mapped window in bytes:
+    private final static long cMaxWindowSize = 64L * 1024L * 1024L;
+
+    private RandomAccessFile mFile;
+    private FileChannel mChannel;
+    private boolean mWritable;
+    private ByteOrder mByteOrder;
+    private int mRows, mCols;
+    private long mOffset;
+    private boolean mTopDown;
+    private int mWindowRows;
+    private AtomicReferenceArray<MappedByteBuffer> mWindows; // safe publication of lazily mapped windows
+    private float mNoData = Float.NaN;
+
+    /**
+     * Constructor. The given file will be opened for memory-mapped access. 
+     * If the storage is opened writable and the file does not exist or is 
+     * too short, it will be created or extended accordingly.
+     * 
+     * @param pFile Raw float file
+     * @param pRows Number of grid rows
+     * @param pCols Number of grid columns
+     * @param pOffset Header size, i.e. byte position of the first value
+     * @param pByteOrder Byte order of the stored values
+     * @param pTopDown <i>true</i>, if the first row in the file is the 
+     * grid's upper (northern) row, as it is the case for BSQ files
+     * @param pWritable <i>true</i> to allow modifications of the file
+     * @throws T3dException if the file can not be accessed
+     */
+    public GmMappedGridStorage(
+    		File pFile, int pRows, int pCols, long pOffset, 
+    		ByteOrder pByteOrder, boolean pTopDown, boolean pWritable) 
+    	throws T3dException
+    {
+        mRows = pRows;
+        mCols = pCols;
+        mOffset = pOffset;
+        mByteOrder = pByteOrder;
+        mTopDown = pTopDown;
+        mWritable = pWritable;
+
+        if ((long) mRows * (long) mCols > Integer.MAX_VALUE)
+            throw new T3dException("Grid too large (" + mRows + " x " + mCols + ").");
+
+        long rowSize = 4L * (long) mCols;
+        mWindowRows = (int) Math.max(1L, Math.min((long) mRows, cMaxWindowSize / rowSize));
+        mWindows = new AtomicReferenceArray<MappedByteBuffer>((mRows + mWindowRows - 1) / mWindowRows);
+
+        long size = mOffset + rowSize * (long) mRows;
+        try {
+            mFile = new RandomAccessFile(pFile, mWritable ? "rw" : "r");
+            if (mFile.length() < size) {
+                if (mWritable) 
+                    mFile.setLength(size);
+                else {
+                    mFile.close();
+                    throw new T3dException("File \"" + pFile + "\" is too short.");
+                }
+            }
+            mChannel = mFile.getChannel();
+        }
+        catch (IOException e) {
+            throw new T3dException("Could not access file \"" + pFile + "\".");
+        }
+    }
+
+    /**
+     * sets the value that marks unset elements inside the file. The default 
+     * value is <tt>Float.NaN</tt>.
+     * 
+     * @param pNoData No-data value
+     */
+    public void setNoDataValue(float pNoData) {
+        mNoData = pNoData;
+    }
+
+    /**
+     * gets the value that marks unset elements inside the file.
+     * 
+     * @return No-data value
+     */
+    public float getNoDataValue() {
+        return mNoData;
+    }
+
+    public int numberOfElements() {
+        return mRows * mCols;
+    }
+
+    public boolean isSinglePrecision() {
+        return true;
+    }
+
+    public double get(int pIdx) 
+    {
+        int row = pIdx / mCols;
+        float z = this.window(row).getFloat(this.position(row, pIdx - row * mCols));
+        if (z == mNoData || Float.isNaN(z))
+            return Double.NaN;
+        return z;
+    }
+
+    public void set(int pIdx, double pVal) throws T3dException
+    {
+        if (!mWritable)
+            throw new T3dException("read-only grid storage");
+        int row = pIdx / mCols;
+        float z = Double.isNaN(pVal) ? mNoData : (float) pVal;
+        this.window(row).putFloat(this.position(row, pIdx - row * mCols), z);
+    }
+
+    public void unset(int pIdx) {
+        this.set(pIdx, Double.NaN);
+    }
+
+    /**
+     * writes modified windows back to the file.
+     */
+    public void flush() 
+    {
+        if (!mWritable) 
+            return;
+        for (int k = 0; k < mWindows.length(); k++) {
+            MappedByteBuffer buf = mWindows.get(k);
+            if (buf != null)
+                buf.force();
+        }
+    }
+
+    /**
+     * flushes pending modifications and closes the underlying file. Note 
+     * that afterwards the storage must not be accessed any more.
+     * 
+     * @throws T3dException if an I/O error occurs
+     */
+    public void close() throws T3dException
+    {
+        this.flush();
+        for (int k = 0; k < mWindows.length(); k++) {
+            mWindows.set(k, null);
+        }
+        try {
+            mChannel.close();
+            mFile.close();
+        }
+        catch (IOException e) {
+            throw new T3dException(e.getMessage());
+        }
+    }
+
+    // Byte position of element (row, col) inside the row's window:
+    private int position(int pRow, int pCol) 
+    {
+        int fileRow = mTopDown ? mRows - 1 - pRow : pRow;
+        return ((fileRow % mWindowRows) * mCols + pCol) << 2;
+    }
+
+    private MappedByteBuffer window(int pRow) 
+    {
+        int fileRow = mTopDown ? mRows - 1 - pRow : pRow;
+        int w = fileRow / mWindowRows;
+        MappedByteBuffer buf = mWindows.get(w);
+        if (buf == null) {
+            buf = this.map(w);
+        }
+        return buf;
+    }
+
+    private synchronized MappedByteBuffer map(int pWindow) throws T3dException
+    {
+        MappedByteBuffer mapped = mWindows.get(pWindow);
+        if (mapped != null)
+            return mapped;
+
+        long rowSize = 4L * (long) mCols;
+        int firstRow = pWindow * mWindowRows;
+        int nRows = Math.min(mWindowRows, mRows - firstRow);
+        try {
+            MappedByteBuffer buf = mChannel.map(
+                mWritable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                mOffset + rowSize * (long) firstRow, 
+                rowSize * (long) nRows);
+            buf.order(mByteOrder);
+            mWindows.set(pWindow, buf);
+            return buf;
+        }
+        catch (IOException e) {
+            throw new T3dException("Could not map grid rows: " + e.getMessage());
+        }
+    }
+}
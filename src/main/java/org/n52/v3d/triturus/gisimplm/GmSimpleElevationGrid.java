@@ -49,11 +49,23 @@ import java.util.ArrayList;
 public class GmSimpleElevationGrid extends VgElevationGrid
 {
     private GmSimple2dGridGeometry mGeom;
-    private double[][] mVal;
-    private boolean[][] mIsSetFl;
+    private GmElevationGridStorage mStorage;
+    private int mCols, mRows;
     private boolean mLatticeMode = false;
     private String mTheme = "Elevations";
 
+    /**
+     * Identifier for double-precision storage of elevation values (default).
+     */
+    public final static short cDoublePrecision = 1;
+
+    /**
+     * Identifier for single-precision storage of elevation values. This 
+     * storage type needs half of the memory compared to 
+     * <tt>cDoublePrecision</tt>.
+     */
+    public final static short cSinglePrecision = 2;
+
     
     /**
      * Constructor. This will generate a grid will all elements unset.
@@ -69,21 +81,11 @@ public class GmSimpleElevationGrid extends VgElevationGrid
     		VgPoint pOrigin, 
     		double pDeltaX, double pDeltaY)
     {
-		mGeom = new GmSimple2dGridGeometry(
+		this(new GmSimple2dGridGeometry(
 			pCols, pRows, 
 			pOrigin, 
-			pDeltaX, pDeltaY);
-	
-		mVal = new double[pRows][pCols]; 
-		mIsSetFl = new boolean[pRows][pCols]; 
-		for (int i = 0; i < pRows; i++) {
-		    for (int j = 0; j < pCols; j++) {
-		        mIsSetFl[i][j] = false;
-		    }
-		}
-		
-		this.setName("unnamed elevation grid");
-}
+			pDeltaX, pDeltaY));
+    }
 
     /**
      * Constructor. This will generate a grid will all elements unset.
@@ -91,23 +93,91 @@ public class GmSimpleElevationGrid extends VgElevationGrid
      * @param pGeom Existing grid geometry
      */
     public GmSimpleElevationGrid(GmSimple2dGridGeometry pGeom) 
+    {
+        this(pGeom, cDoublePrecision);
+    }
+
+    /**
+     * Constructor. This will generate a grid will all elements unset. The 
+     * elevation values will be held in one contiguous array with the given 
+     * precision.
+     * 
+     * @param pGeom Existing grid geometry
+     * @param pPrecision <tt>cDoublePrecision</tt> or <tt>cSinglePrecision</tt>
+     * @throws T3dException if an illegal precision identifier is given
+     * @see GmSimpleElevationGrid#cDoublePrecision
+     * @see GmSimpleElevationGrid#cSinglePrecision
+     */
+    public GmSimpleElevationGrid(GmSimple2dGridGeometry pGeom, short pPrecision) 
     {
         mGeom = pGeom;
       
-        int nRows = mGeom.numberOfRows();
-        int nCols = mGeom.numberOfColumns();
+        mRows = mGeom.numberOfRows();
+        mCols = mGeom.numberOfColumns();
+        long n = (long) mRows * (long) mCols;
+        if (n > Integer.MAX_VALUE)
+            throw new T3dException("Grid too large (" + mRows + " x " + mCols + ").");
  
-        mVal = new double[nRows][nCols]; 
-        mIsSetFl = new boolean[nRows][nCols]; 
-        for (int i = 0; i < nRows; i++) {
-            for (int j = 0; j < nCols; j++) {
-                mIsSetFl[i][j] = false;
-            }
+        switch (pPrecision) {
+            case cDoublePrecision:
+                mStorage = new GmDoubleGridStorage((int) n); break;
+            case cSinglePrecision:
+                mStorage = new GmFloatGridStorage((int) n); break;
+            default:
+                throw new T3dException("Illegal precision identifier: " + pPrecision);
         }
         
         this.setName("unnamed elevation grid");
     }
 
+    /**
+     * Constructor. The grid will use the given storage backend, e.g. to wrap 
+     * a value array that has been filled by a reader. Note that the 
+     * storage's number of elements must match the grid geometry.
+     * 
+     * @param pGeom Existing grid geometry
+     * @param pStorage Storage holding the elevation values in row-major order
+     * @throws T3dException if the storage size does not match the geometry
+     */
+    public GmSimpleElevationGrid(GmSimple2dGridGeometry pGeom, GmElevationGridStorage pStorage) 
+    {
+        mGeom = pGeom;
+        mRows = mGeom.numberOfRows();
+        mCols = mGeom.numberOfColumns();
+        if ((long) mRows * (long) mCols != pStorage.numberOfElements())
+            throw new T3dException("Storage size does not match grid geometry.");
+        mStorage = pStorage;
+
+        this.setName("unnamed elevation grid");
+    }
+
+    /**
+     * provides access to the storage backend holding the grid's elevation 
+     * values. Bulk operations might access the storage directly; note that 
+     * after modifying the values this way, <tt>this.setZBoundsInvalid()</tt> 
+     * has to be called.
+     * 
+     * @return Storage backend
+     */
+    public GmElevationGridStorage getStorage() {
+        return mStorage;
+    }
+
+    /**
+     * returns the row-major storage index of the element <i>(pRow, pCol)</i>.
+     * 
+     * @param pRow Row-index
+     * @param pCol Column-index
+     * @return Storage index
+     * @throws T3dException if the indices are out of range
+     */
+    public int storageIndex(int pRow, int pCol) throws T3dException
+    {
+        if (pRow < 0 || pRow >= mRows || pCol < 0 || pCol >= mCols)
+            throw new T3dException("Index out of bounds (" + pRow + ", " + pCol + ").");
+        return pRow * mCols + pCol;
+    }
+
     /** 
      * provides thematic meta-information.
      * 
@@ -159,11 +229,11 @@ public class GmSimpleElevationGrid extends VgElevationGrid
     }
 
     public int numberOfColumns() {
-        return mGeom.numberOfColumns();
+        return mCols;
     }
     
     public int numberOfRows() {
-        return mGeom.numberOfRows();
+        return mRows;
     }
   
     /**
@@ -194,13 +264,22 @@ public class GmSimpleElevationGrid extends VgElevationGrid
        mLatticeMode = false;
     }
 
+    /**
+     * returns <i>true</i>, if vertex-based interpretation mode is set, and 
+     * <i>false</i> for cell-based interpretation mode.
+     */
+    public boolean isLatticeInterpretation() {
+       return mLatticeMode;
+    }
+
     /**
      * sets the elevation value <tt>pZ</tt> for the row index <tt>pRow</tt> 
      * and the column index <tt>pCol</tt>. If one of the assertions 
      * <i>0 &lt;= pRow &lt; this.numberOfRows(), 
      * 0 &lt;= pCol &lt; this.numberOfColumns()</i>
      * is violated, a <tt>T3dException</tt> will be thrown. Post-condition: 
-     * <tt>this.isSet(pRow, pCol) = true</tt>
+     * <tt>this.isSet(pRow, pCol) = true</tt>. Note that setting the value 
+     * <tt>Double.NaN</tt> is equivalent to <tt>this.unset(pRow, pCol)</tt>.
      * 
      * @param pRow Row-index
      * @param pCol Column-index
@@ -208,16 +287,14 @@ public class GmSimpleElevationGrid extends VgElevationGrid
      */
     public void setValue(int pRow, int pCol, double pZ) throws T3dException 
     {
-        try {
-            double zOld = mVal[pRow][pCol];
-            mVal[pRow][pCol] = pZ;
-            mIsSetFl[pRow][pCol] = true;
-            this.updateZBounds(zOld, pZ);
-        }
-        catch (Exception e) {
+        if (pRow < 0 || pRow >= mRows || pCol < 0 || pCol >= mCols) {
             throw new T3dException(
             	"Could not set grid value (" + pRow + ", " + pCol + ").");
         }
+        int idx = pRow * mCols + pCol;
+        double zOld = mStorage.get(idx);
+        mStorage.set(idx, pZ);
+        this.updateZBounds(zOld, pZ);
     }
 
     /** 
@@ -233,12 +310,7 @@ public class GmSimpleElevationGrid extends VgElevationGrid
      */
     public boolean isSet(int pRow, int pCol) throws T3dException
     {
-        try {
-            return mIsSetFl[pRow][pCol];
-        }
-        catch (Exception e) {
-            throw new T3dException(e.getMessage());
-        }
+        return mStorage.isSet(this.storageIndex(pRow, pCol));
     }
 
     /** 
@@ -246,10 +318,9 @@ public class GmSimpleElevationGrid extends VgElevationGrid
      */
     public boolean isSet()
     {
-        for (int i = 0; i < this.numberOfRows(); i++) {
-            for (int j = 0; j < this.numberOfColumns(); j++) {
-                if (!mIsSetFl[i][j]) return false; 
-            }
+        int n = mStorage.numberOfElements();
+        for (int k = 0; k < n; k++) {
+            if (!mStorage.isSet(k)) return false; 
         }
         return true;
     }
@@ -268,11 +339,12 @@ public class GmSimpleElevationGrid extends VgElevationGrid
      */
     public void unset(int pRow, int pCol) throws T3dException
     {
-        try {
-            mIsSetFl[pRow][pCol] = false;
-        }
-        catch (Exception e) {
-            throw new T3dException(e.getMessage());
+        int idx = this.storageIndex(pRow, pCol);
+        if (mStorage.isSet(idx)) {
+            double zOld = mStorage.get(idx);
+            mStorage.unset(idx);
+            if (mCalculated && (zOld <= mZMin || zOld >= mZMax))
+                mCalculated = false; // re-computation will be necessary later
         }
     }
 
@@ -292,17 +364,16 @@ public class GmSimpleElevationGrid extends VgElevationGrid
      */
     public double getValue(int pRow, int pCol) throws T3dException
     {
-        try {
-            if (mIsSetFl[pRow][pCol]) {
-                return mVal[pRow][pCol];
-            } else {
-                throw new T3dException("Tried to access unset grid element.");
-            }
+        if (pRow < 0 || pRow >= mRows || pCol < 0 || pCol >= mCols) {
+            throw new T3dException(
+                "Illegal grid element access. Index out of bounds (" + pRow + ", " + pCol + ").");
         }
-        catch (Exception e) {
+        double z = mStorage.get(pRow * mCols + pCol);
+        if (Double.isNaN(z)) {
             throw new T3dException(
-            	"Illegal grid element access. " + e.getMessage());
+                "Illegal grid element access. Tried to access unset grid element.");
         }
+        return z;
     }
 
     /** 
@@ -336,18 +407,28 @@ public class GmSimpleElevationGrid extends VgElevationGrid
     	float is = idx[0], js = idx[1];
     	int row = (int)idx[0], col = (int)idx[1];
     	
+    	if (row + 1 >= mRows || col + 1 >= mCols) {
+    		return null;
+    	}
+    	
+    	int k = row * mCols + col;
+    	double 
+    		z00 = mStorage.get(k), 
+    		z10 = mStorage.get(k + mCols),
+    		z01 = mStorage.get(k + 1),
+    		z11 = mStorage.get(k + mCols + 1);
     	if (
-    		mIsSetFl[row][col] && 
-    		mIsSetFl[row + 1][col] &&
-    		mIsSetFl[row][col + 1] &&
-    		mIsSetFl[row + 1][col + 1])
+    		!Double.isNaN(z00) && 
+    		!Double.isNaN(z10) &&
+    		!Double.isNaN(z01) &&
+    		!Double.isNaN(z11))
     	{
         	double lambda = js - ((float)col), my = is - ((float)row);
         	return 
-            	mVal[row][col] * (1.f - my) * (1.f - lambda) +
-            	mVal[row + 1][col] * my * (1.f - lambda) +
-            	mVal[row][col + 1] * (1.f - my) * lambda + 
-            	mVal[row + 1][col + 1] * my * lambda;    			
+            	z00 * (1.f - my) * (1.f - lambda) +
+            	z10 * my * (1.f - lambda) +
+            	z01 * (1.f - my) * lambda + 
+            	z11 * my * lambda;    			
     	}
     	
     	// else:
@@ -440,13 +521,12 @@ public class GmSimpleElevationGrid extends VgElevationGrid
             }
             mZMax = mZMin;
             double z;
-            for (int i = 0; i < this.numberOfRows(); i++) {
-                for (int j = 0; j < this.numberOfColumns(); j++) {
-                   if (this.isSet(i, j)) {
-                       z = this.getValue(i, j);
-                       if (z < mZMin) mZMin = z; else {
-                           if (z > mZMax) mZMax = z; }
-                   }
+            int n = mStorage.numberOfElements();
+            for (int k = 0; k < n; k++) {
+                z = mStorage.get(k);
+                if (!Double.isNaN(z)) {
+                    if (z < mZMin) mZMin = z; else {
+                        if (z > mZMax) mZMax = z; }
                 }
             }
             mCalculated = true;
@@ -458,6 +538,7 @@ public class GmSimpleElevationGrid extends VgElevationGrid
         final double eps = 0.000001; // Epsilon for =-operation
 
         if (mCalculated) {
+            if (Double.isNaN(pZNew)) { mCalculated = false; return; }
             if (pZNew <= mZMin) { mZMin = pZNew; return; }
             // assert: pZMin < pZNew
             if (pZNew >= mZMax) { mZMax = pZNew; return; }
@@ -471,11 +552,10 @@ public class GmSimpleElevationGrid extends VgElevationGrid
     // Get z-value of some set grid element:
     private double getFirstSetZValue() throws T3dException 
     {
-        for (int i = 0; i < this.numberOfRows(); i++) {
-            for (int j = 0; j < this.numberOfColumns(); j++) {
-                if (this.isSet(i, j))
-                    return this.getValue(i, j);
-            }
+        int n = mStorage.numberOfElements();
+        for (int k = 0; k < n; k++) {
+            if (mStorage.isSet(k))
+                return mStorage.get(k);
         }
         // else:
         throw new T3dException("Tried to access empty elevation grid.");
@@ -0,0 +1,539 @@
+/**
+ * Copyright (C) 2007-2016 52North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+import org.n52.v3d.triturus.core.T3dException;
+
+/**
+ * Greedy insertion triangulator for elevation grids (in the style of 
+ * Garland and Heckbert). Starting with two triangles spanning the grid's 
+ * corners, the grid point with the largest vertical error with respect to 
+ * the current triangulation will be inserted repeatedly, while the 
+ * Delaunay criterion is maintained by edge flips. For each triangle, the 
+ * candidate point of maximal error is kept in an indexed priority queue, so 
+ * that after an insertion only the changed triangles have to be scanned.
+ * <br/>
+ * All computations are performed in integer lattice coordinates 
+ * <i>(column, row)</i>, so that the geometric predicates are exact for 
+ * grids with less than 29000 rows and columns. Unset grid elements will not 
+ * be inserted and will be ignored for the error computation.
+ * 
+ * @author Benno Schmidt
+ * @see FltElevationGrid2TIN
+ */
+class GreedyGridTriangulator 
+{
+    private final static double cEps = 1e-9; // tolerance for lattice points on triangle edges
+    private final static int cExactLimit = 29000; // incircle test exact for smaller dimensions
+
+    private final GmElevationGridStorage z;
+    private final int nx, ny;
+    private final boolean exact;
+
+    // Vertices (lattice indices row * nx + col, in insertion order):
+    private int[] vert = new int[64];
+    private double[] vz = new double[64];
+    private int nVert = 0;
+    private boolean[] used;
+
+    // Triangles (counter-clockwise in lattice coordinates); edge k runs from 
+    // vertex k to vertex k + 1, nb holds the adjacent triangle (or -1):
+    private int[] tv = new int[192];
+    private int[] nb = new int[192];
+    private int nTri = 0;
+
+    // Candidate points and indexed max-heap of triangles:
+    private int[] cand = new int[64];
+    private double[] err = new double[64];
+    private int[] heap = new int[64];
+    private int[] heapPos = new int[64];
+    private int heapSize = 0;
+
+    // Triangles to be (re-)scanned after an insertion:
+    private int[] touched = new int[16];
+    private int nTouched = 0;
+    private int[] stamp = new int[64];
+    private int currStamp = 0;
+    private int[] stack = new int[16];
+
+    /**
+     * Constructor. The grid's elevation values will be accessed by the index 
+     * <i>row * nx + col</i>.
+     * 
+     * @param z Elevation values
+     * @param nx Number of columns
+     * @param ny Number of rows
+     */
+    GreedyGridTriangulator(GmElevationGridStorage z, int nx, int ny)
+    {
+        if (nx < 2 || ny < 2)
+            throw new T3dException("Grid must have at least 2 rows and 2 columns.");
+        this.z = z;
+        this.nx = nx;
+        this.ny = ny;
+        this.exact = nx < cExactLimit && ny < cExactLimit;
+        this.used = new boolean[nx * ny];
+
+        int 
+            c0 = this.addVertex(0, 0), 
+            c1 = this.addVertex(0, nx - 1), 
+            c2 = this.addVertex(ny - 1, nx - 1), 
+            c3 = this.addVertex(ny - 1, 0);
+        int t0 = this.newTriangle(c0, c1, c2), t1 = this.newTriangle(c0, c2, c3);
+        this.setNeighbors(t0, -1, -1, t1);
+        this.setNeighbors(t1, t0, -1, -1);
+        this.scan(t0);
+        this.scan(t1);
+    }
+
+    /**
+     * inserts points until the maximal vertical error does not exceed the 
+     * given value or a further insertion would exceed the given number of 
+     * triangles. Since every insertion adds at most two triangles, the 
+     * triangle count never exceeds <tt>maxTriangles</tt>.
+     * 
+     * @param maxError Maximal vertical error
+     * @param maxTriangles Maximal number of triangles (0 for no limit)
+     */
+    void refine(double maxError, int maxTriangles)
+    {
+        while (heapSize > 0) {
+            int t = heap[0];
+            if (err[t] <= maxError)
+                break;
+            if (maxTriangles > 0 && nTri + 2 > maxTriangles)
+                break;
+            this.insert(t, cand[t]);
+        }
+    }
+
+    /**
+     * returns the current maximal vertical error.
+     */
+    double maximalError() {
+        return heapSize > 0 ? err[heap[0]] : 0.;
+    }
+
+    int numberOfVertices() {
+        return nVert;
+    }
+
+    int numberOfTriangles() {
+        return nTri;
+    }
+
+    /**
+     * returns the lattice index <i>row * nx + col</i> of a vertex.
+     */
+    int vertexIndex(int i) {
+        return vert[i];
+    }
+
+    double vertexElevation(int i) {
+        return vz[i];
+    }
+
+    /**
+     * returns the vertex indices of a triangle (counter-clockwise in 
+     * lattice coordinates).
+     */
+    int triangleVertex(int t, int k) {
+        return tv[3 * t + k];
+    }
+
+    private int addVertex(int row, int col)
+    {
+        int idx = row * nx + col;
+        double zv = z.get(idx);
+        if (Double.isNaN(zv))
+            zv = this.nearestValue(row, col);
+        if (nVert == vert.length) {
+            vert = grow(vert);
+            vz = grow(vz);
+        }
+        vert[nVert] = idx;
+        vz[nVert] = zv;
+        used[idx] = true;
+        return nVert++;
+    }
+
+    // Elevation of the nearest set grid element (needed for unset corners):
+    private double nearestValue(int row, int col)
+    {
+        int rMax = Math.max(nx, ny);
+        for (int r = 1; r < rMax; r++) {
+            double sum = 0.;
+            int n = 0;
+            for (int i = row - r; i <= row + r; i++) {
+                if (i < 0 || i >= ny) 
+                    continue;
+                for (int j = col - r; j <= col + r; j++) {
+                    if (j < 0 || j >= nx || (Math.abs(i - row) < r && Math.abs(j - col) < r))
+                        continue;
+                    double zv = z.get(i * nx + j);
+                    if (!Double.isNaN(zv)) {
+                        sum += zv;
+                        n++;
+                    }
+                }
+            }
+            if (n > 0)
+                return sum / n;
+        }
+        throw new T3dException("Grid does not contain any set elements.");
+    }
+
+    private int newTriangle(int a, int b, int c)
+    {
+        if (nTri == cand.length) {
+            cand = grow(cand);
+            err = grow(err);
+            heap = grow(heap);
+            heapPos = grow(heapPos);
+            stamp = grow(stamp);
+            tv = grow(tv);
+            nb = grow(nb);
+        }
+        int t = nTri++;
+        this.setVertices(t, a, b, c);
+        heapPos[t] = -1;
+        stamp[t] = 0;
+        return t;
+    }
+
+    private void setVertices(int t, int a, int b, int c) {
+        tv[3 * t] = a;
+        tv[3 * t + 1] = b;
+        tv[3 * t + 2] = c;
+    }
+
+    private void setNeighbors(int t, int n0, int n1, int n2) {
+        nb[3 * t] = n0;
+        nb[3 * t + 1] = n1;
+        nb[3 * t + 2] = n2;
+    }
+
+    private void replaceNeighbor(int t, int oldNb, int newNb) 
+    {
+        if (t < 0)
+            return;
+        for (int k = 0; k < 3; k++) {
+            if (nb[3 * t + k] == oldNb) {
+                nb[3 * t + k] = newNb;
+                return;
+            }
+        }
+        throw new T3dException("Inconsistent triangulation.");
+    }
+
+    private int col(int v) {
+        return vert[v] % nx;
+    }
+
+    private int row(int v) {
+        return vert[v] / nx;
+    }
+
+    // Inserts the lattice point idx, which is located inside or on the border 
+    // of triangle t:
+    private void insert(int t, int idx)
+    {
+        currStamp++;
+        nTouched = 0;
+        int p = this.addVertex(idx / nx, idx % nx);
+        int px = idx % nx, py = idx / nx;
+
+        // Check, if the point is located on an edge:
+        int e = -1;
+        for (int k = 0; k < 3 && e < 0; k++) {
+            int a = tv[3 * t + k], b = tv[3 * t + (k + 1) % 3];
+            if (orient(col(a), row(a), col(b), row(b), px, py) == 0)
+                e = k;
+        }
+
+        int sp = 0;
+        if (e < 0) {
+            // Split triangle into three:
+            int a = tv[3 * t], b = tv[3 * t + 1], c = tv[3 * t + 2];
+            int n0 = nb[3 * t], n1 = nb[3 * t + 1], n2 = nb[3 * t + 2];
+            int t1 = this.newTriangle(b, c, p), t2 = this.newTriangle(c, a, p);
+            this.setVertices(t, a, b, p);
+            this.setNeighbors(t, n0, t1, t2);
+            this.setNeighbors(t1, n1, t2, t);
+            this.setNeighbors(t2, n2, t, t1);
+            this.replaceNeighbor(n1, t, t1);
+            this.replaceNeighbor(n2, t, t2);
+            stack = ensure(stack, 3);
+            stack[sp++] = t;
+            stack[sp++] = t1;
+            stack[sp++] = t2;
+        }
+        else {
+            // Split edge (a, b), i.e. triangle t = (a, b, c) and its 
+            // neighbor n = (b, a, d), if present:
+            int a = tv[3 * t + e], b = tv[3 * t + (e + 1) % 3], c = tv[3 * t + (e + 2) % 3];
+            int n = nb[3 * t + e];
+            int nbc = nb[3 * t + (e + 1) % 3], nca = nb[3 * t + (e + 2) % 3];
+            int tB = this.newTriangle(b, c, p);
+            this.setVertices(t, c, a, p);
+            stack = ensure(stack, 4);
+            stack[sp++] = t;
+            stack[sp++] = tB;
+            this.replaceNeighbor(nbc, t, tB);
+            if (n < 0) {
+                this.setNeighbors(t, nca, -1, tB);
+                this.setNeighbors(tB, nbc, t, -1);
+            }
+            else {
+                int f = 0;
+                while (nb[3 * n + f] != t) 
+                    f++;
+                int d = tv[3 * n + (f + 2) % 3];
+                int nad = nb[3 * n + (f + 1) % 3], ndb = nb[3 * n + (f + 2) % 3];
+                int tD = this.newTriangle(d, b, p);
+                this.setVertices(n, a, d, p);
+                this.setNeighbors(t, nca, n, tB);
+                this.setNeighbors(tB, nbc, t, tD);
+                this.setNeighbors(n, nad, tD, t);
+                this.setNeighbors(tD, ndb, tB, n);
+                this.replaceNeighbor(ndb, n, tD);
+                stack[sp++] = n;
+                stack[sp++] = tD;
+            }
+        }
+
+        // Restore Delaunay property; all triangles on the stack contain p as 
+        // third vertex, so that edge 0 has to be checked:
+        while (sp > 0) {
+            int s = stack[--sp];
+            this.touch(s);
+            int o = nb[3 * s];
+            if (o < 0)
+                continue;
+            int f = 0;
+            while (nb[3 * o + f] != s) 
+                f++;
+            int x = tv[3 * s], y = tv[3 * s + 1], q = tv[3 * o + (f + 2) % 3];
+            if (!this.inCircle(x, y, p, q)) 
+                continue;
+
+            // Flip edge (x, y) to (p, q):
+            int oxq = nb[3 * o + (f + 1) % 3], oqy = nb[3 * o + (f + 2) % 3];
+            int syp = nb[3 * s + 1], spx = nb[3 * s + 2];
+            this.setVertices(s, x, q, p);
+            this.setNeighbors(s, oxq, o, spx);
+            this.setVertices(o, q, y, p);
+            this.setNeighbors(o, oqy, syp, s);
+            this.replaceNeighbor(oxq, o, s);
+            this.replaceNeighbor(syp, s, o);
+            this.touch(o);
+            stack = ensure(stack, sp + 2);
+            stack[sp++] = s;
+            stack[sp++] = o;
+        }
+
+        for (int i = 0; i < nTouched; i++)
+            this.scan(touched[i]);
+    }
+
+    private void touch(int t) 
+    {
+        if (stamp[t] == currStamp)
+            return;
+        stamp[t] = currStamp;
+        touched = ensure(touched, nTouched + 1);
+        touched[nTouched++] = t;
+    }
+
+    // Determines the candidate point of triangle t, i.e. the unused grid 
+    // point of maximal vertical error:
+    private void scan(int t)
+    {
+        int a = tv[3 * t], b = tv[3 * t + 1], c = tv[3 * t + 2];
+        double 
+            xa = col(a), ya = row(a), 
+            xb = col(b), yb = row(b), 
+            xc = col(c), yc = row(c);
+        double 
+            x0 = xa - xc, y0 = ya - yc, z0 = vz[a] - vz[c],
+            x1 = xb - xc, y1 = yb - yc, z1 = vz[b] - vz[c];
+        double det = x0 * y1 - x1 * y0;
+        double gx = (y1 * z0 - y0 * z1) / det, gy = (x0 * z1 - x1 * z0) / det;
+
+        double[] px = {xa, xb, xc}, py = {ya, yb, yc};
+        int iFrom = (int) Math.min(ya, Math.min(yb, yc)), iTo = (int) Math.max(ya, Math.max(yb, yc));
+        double eMax = -1.;
+        int best = -1;
+        for (int i = iFrom; i <= iTo; i++) {
+            double xl = Double.POSITIVE_INFINITY, xr = Double.NEGATIVE_INFINITY;
+            for (int k = 0; k < 3; k++) {
+                int l = k == 2 ? 0 : k + 1;
+                if ((i < py[k] && i < py[l]) || (i > py[k] && i > py[l]))
+                    continue;
+                if (py[k] == py[l]) {
+                    xl = Math.min(xl, Math.min(px[k], px[l]));
+                    xr = Math.max(xr, Math.max(px[k], px[l]));
+                    continue;
+                }
+                double xs = px[k] + (i - py[k]) * (px[l] - px[k]) / (py[l] - py[k]);
+                if (xs < xl) xl = xs;
+                if (xs > xr) xr = xs;
+            }
+            int jFrom = (int) Math.ceil(xl - cEps), jTo = (int) Math.floor(xr + cEps);
+            double zRow = vz[c] + gy * (i - yc) - gx * xc;
+            for (int j = jFrom, idx = i * nx + jFrom; j <= jTo; j++, idx++) {
+                if (used[idx])
+                    continue;
+                double zv = z.get(idx);
+                if (Double.isNaN(zv))
+                    continue;
+                double e = Math.abs(zv - (zRow + gx * j));
+                if (e > eMax) {
+                    eMax = e;
+                    best = idx;
+                }
+            }
+        }
+
+        cand[t] = best;
+        err[t] = eMax;
+        if (best < 0) {
+            this.heapRemove(t);
+        }
+        else if (heapPos[t] < 0) {
+            heapPos[t] = heapSize;
+            heap[heapSize++] = t;
+            this.siftUp(heapPos[t]);
+        }
+        else {
+            this.siftUp(heapPos[t]);
+            this.siftDown(heapPos[t]);
+        }
+    }
+
+    // Orientation test (> 0, if (xc, yc) is left of (xa, ya) -> (xb, yb)):
+    private static long orient(long xa, long ya, long xb, long yb, long xc, long yc) {
+        return (xb - xa) * (yc - ya) - (yb - ya) * (xc - xa);
+    }
+
+    // Incircle test for the counter-clockwise triangle (a, b, c):
+    private boolean inCircle(int a, int b, int c, int d)
+    {
+        long 
+            adx = col(a) - col(d), ady = row(a) - row(d),
+            bdx = col(b) - col(d), bdy = row(b) - row(d),
+            cdx = col(c) - col(d), cdy = row(c) - row(d);
+        if (exact) {
+            long 
+                al = adx * adx + ady * ady,
+                bl = bdx * bdx + bdy * bdy,
+                cl = cdx * cdx + cdy * cdy;
+            return adx * (bdy * cl - cdy * bl) 
+                - ady * (bdx * cl - cdx * bl) 
+                + al * (bdx * cdy - cdx * bdy) > 0;
+        }
+        double 
+            al = (double) adx * adx + (double) ady * ady,
+            bl = (double) bdx * bdx + (double) bdy * bdy,
+            cl = (double) cdx * cdx + (double) cdy * cdy;
+        return adx * (bdy * cl - cdy * bl) 
+            - ady * (bdx * cl - cdx * bl) 
+            + al * ((double) bdx * cdy - (double) cdx * bdy) > 0.;
+    }
+
+    private void heapRemove(int t)
+    {
+        int i = heapPos[t];
+        if (i < 0)
+            return;
+        heapPos[t] = -1;
+        heapSize--;
+        if (i == heapSize)
+            return;
+        int moved = heap[heapSize];
+        heap[i] = moved;
+        heapPos[moved] = i;
+        this.siftUp(i);
+        this.siftDown(heapPos[moved]);
+    }
+
+    private void siftUp(int i)
+    {
+        int t = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (err[heap[parent]] >= err[t])
+                break;
+            heap[i] = heap[parent];
+            heapPos[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = t;
+        heapPos[t] = i;
+    }
+
+    private void siftDown(int i)
+    {
+        int t = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize)
+                break;
+            if (child + 1 < heapSize && err[heap[child + 1]] > err[heap[child]])
+                child++;
+            if (err[heap[child]] <= err[t])
+                break;
+            heap[i] = heap[child];
+            heapPos[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = t;
+        heapPos[t] = i;
+    }
+
+    private static int[] ensure(int[] arr, int n) {
+        return n <= arr.length ? arr : grow(arr);
+    }
+
+    private static int[] grow(int[] arr) {
+        int[] res = new int[2 * arr.length];
+        System.arraycopy(arr, 0, res, 0, arr.length);
+        return res;
+    }
+
+    private static double[] grow(double[] arr) {
+        double[] res = new double[2 * arr.length];
+        System.arraycopy(arr, 0, res, 0, arr.length);
+        return res;
+    }
+}
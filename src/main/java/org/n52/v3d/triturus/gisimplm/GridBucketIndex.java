@@ -0,0 +1,261 @@
+/**
+ * Copyright (C) 2007-2016 52North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+import java.util.List;
+
+import org.n52.v3d.triturus.vgis.VgPoint;
+
+/**
+ * Bucket index for scattered points with respect to a target grid. Each 
+ * point is assigned to its nearest grid vertex; square blocks of 
+ * <i>s &times; s</i> vertices form a bucket. The point coordinates are kept 
+ * in grid units (column, row) in primitive arrays sorted by bucket; inside a 
+ * bucket, the input order is preserved. Points that are too far away from 
+ * the grid to influence any grid vertex will be ignored.
+ * <br/>
+ * The index allows to evaluate each target grid vertex against the points 
+ * in its neighborhood, including nearest neighbor and k-nearest neighbor 
+ * queries performed by ring-wise bucket search.
+ * 
+ * @author Benno Schmidt
+ * @see FltPointSet2ElevationGrid
+ */
+class GridBucketIndex 
+{
+    private int mNX, mNY; // grid size
+    private double mDX, mDY; // grid cell size (geo-coordinates)
+    private int mS; // bucket edge length (number of vertices)
+    private int mBX, mBY; // number of buckets in x- and y-direction
+    private int[] mFirst; // points of bucket b: mFirst[b] ... mFirst[b + 1] - 1
+
+    // Point data sorted by bucket:
+    double[] mGX, mGY, mZ; // grid coordinates and z-values
+    int[] mNo; // point number inside the input list
+
+    /**
+     * Constructor.
+     * 
+     * @param pPoints Scattered points
+     * @param pNX Number of grid columns
+     * @param pNY Number of grid rows
+     * @param pXMin Grid origin x
+     * @param pYMin Grid origin y
+     * @param pDX Grid cell size in x-direction
+     * @param pDY Grid cell size in y-direction
+     * @param pFX Scale factor geo-coordinates to column coordinates
+     * @param pFY Scale factor geo-coordinates to row coordinates
+     * @param pHaloX Maximal column distance of relevant points from the grid
+     * @param pHaloY Maximal row distance of relevant points from the grid
+     */
+    GridBucketIndex(
+        List<VgPoint> pPoints, 
+        int pNX, int pNY, 
+        double pXMin, double pYMin, 
+        double pDX, double pDY,
+        double pFX, double pFY, 
+        int pHaloX, int pHaloY) 
+    {
+        mNX = pNX;
+        mNY = pNY;
+        mDX = pDX;
+        mDY = pDY;
+
+        int n = pPoints.size();
+        double lCellsPerPoint = (double) mNX * (double) mNY / (double) Math.max(n, 1);
+        mS = Math.max(1, (int) Math.ceil(Math.sqrt(lCellsPerPoint)));
+        mBX = (mNX + mS - 1) / mS;
+        mBY = (mNY + mS - 1) / mS;
+        int nb = mBX * mBY;
+
+        // Pass 1: bucket assignment and counting sort:
+        int[] lBucket = new int[n];
+        mFirst = new int[nb + 1];
+        double gx, gy;
+        int ct = 0;
+        for (int k = 0; k < n; k++) {
+            VgPoint p = pPoints.get(k);
+            gx = pFX * (p.getX() - pXMin);
+            gy = pFY * (p.getY() - pYMin);
+            if (gx < -pHaloX || gx > mNX - 1 + pHaloX || gy < -pHaloY || gy > mNY - 1 + pHaloY
+                || Double.isNaN(gx) || Double.isNaN(gy)) 
+            {
+                lBucket[k] = -1;
+                continue;
+            }
+            lBucket[k] = this.bucket(gx, gy);
+            mFirst[lBucket[k] + 1]++;
+            ct++;
+        }
+        for (int b = 0; b < nb; b++) 
+            mFirst[b + 1] += mFirst[b];
+
+        // Pass 2: fill point data:
+        mGX = new double[ct];
+        mGY = new double[ct];
+        mZ = new double[ct];
+        mNo = new int[ct];
+        int[] lFill = new int[nb];
+        for (int k = 0; k < n; k++) {
+            int b = lBucket[k];
+            if (b < 0) continue;
+            VgPoint p = pPoints.get(k);
+            int pos = mFirst[b] + lFill[b]++;
+            mGX[pos] = pFX * (p.getX() - pXMin);
+            mGY[pos] = pFY * (p.getY() - pYMin);
+            mZ[pos] = p.getZ();
+            mNo[pos] = k;
+        }
+    }
+
+    private int bucket(double gx, double gy) {
+        return this.bucketRow(gy) * mBX + this.bucketCol(gx);
+    }
+
+    /**
+     * returns the bucket column for the given column coordinate.
+     */
+    int bucketCol(double gx) {
+        int c = (int) Math.floor(gx + 0.5);
+        if (c < 0) c = 0;
+        if (c > mNX - 1) c = mNX - 1;
+        return c / mS;
+    }
+
+    /**
+     * returns the bucket row for the given row coordinate.
+     */
+    int bucketRow(double gy) {
+        int r = (int) Math.floor(gy + 0.5);
+        if (r < 0) r = 0;
+        if (r > mNY - 1) r = mNY - 1;
+        return r / mS;
+    }
+
+    /**
+     * returns the number of bucket columns.
+     */
+    int numberOfBucketColumns() {
+        return mBX;
+    }
+
+    /**
+     * returns the position of the first point of the given bucket.
+     */
+    int firstPoint(int pBucketRow, int pBucketCol) {
+        return mFirst[pBucketRow * mBX + pBucketCol];
+    }
+
+    /**
+     * returns the position after the last point of the given bucket.
+     */
+    int endPoint(int pBucketRow, int pBucketCol) {
+        return mFirst[pBucketRow * mBX + pBucketCol + 1];
+    }
+
+    /**
+     * returns the number of indexed points.
+     */
+    int numberOfPoints() {
+        return mZ.length;
+    }
+
+    /**
+     * computes the distance (in geo-coordinates) of the indexed point at the 
+     * given position from the grid vertex (pCol, pRow).
+     */
+    double distance(int pPos, int pCol, int pRow) {
+        double k1 = Math.abs(mGX[pPos] - (double) pCol) * mDX;
+        double k2 = Math.abs(mGY[pPos] - (double) pRow) * mDY;
+        return Math.sqrt(k1 * k1 + k2 * k2);
+    }
+
+    /**
+     * determines the k nearest points for the grid vertex (pCol, pRow) inside 
+     * the given search radius. The buckets will be searched ring by ring 
+     * until no closer points can be found. The result will be sorted by 
+     * ascending distance; equidistant points are sorted by their point 
+     * number.
+     * 
+     * @param pCol Column index
+     * @param pRow Row index
+     * @param pRadius Search radius (geo-coordinates)
+     * @param pPos Result array receiving the positions of the k nearest points
+     * @param pDist Result array receiving the distances
+     * @return Number of points found (&lt;= <tt>pPos.length</tt>)
+     */
+    int nearest(int pCol, int pRow, double pRadius, int[] pPos, double[] pDist)
+    {
+        int k = pPos.length, ct = 0;
+        int cbx = pCol / mS, cby = pRow / mS;
+        int lMaxRing = Math.max(Math.max(cbx, mBX - 1 - cbx), Math.max(cby, mBY - 1 - cby));
+        double lMinDelta = Math.min(mDX, mDY);
+
+        for (int d = 0; d <= lMaxRing; d++) 
+        {
+            for (int by = cby - d; by <= cby + d; by++) {
+                if (by < 0 || by >= mBY) continue;
+                boolean lFullRow = (by == cby - d || by == cby + d);
+                int lStep = lFullRow ? 1 : Math.max(2 * d, 1);
+                for (int bx = cbx - d; bx <= cbx + d; bx += lStep) {
+                    if (bx < 0 || bx >= mBX) continue;
+                    int b = by * mBX + bx;
+                    for (int pos = mFirst[b]; pos < mFirst[b + 1]; pos++) {
+                        double r = this.distance(pos, pCol, pRow);
+                        if (r > pRadius) continue;
+                        if (ct == k && !this.closer(r, pos, pDist[k - 1], pPos[k - 1])) 
+                            continue;
+                        // Insertion into sorted result:
+                        int m = (ct < k) ? ct++ : k - 1;
+                        while (m > 0 && this.closer(r, pos, pDist[m - 1], pPos[m - 1])) {
+                            pDist[m] = pDist[m - 1];
+                            pPos[m] = pPos[m - 1];
+                            m--;
+                        }
+                        pDist[m] = r;
+                        pPos[m] = pos;
+                    }
+                }
+            }
+            // Lower bound for the distance of points in the rings d + 1, ...:
+            double lBound = ((double) d * mS + 0.5) * lMinDelta;
+            if (lBound > pRadius || (ct == k && pDist[k - 1] <= lBound))
+                break;
+        }
+        return ct;
+    }
+
+    private boolean closer(double r1, int pos1, double r2, int pos2) {
+        return r1 < r2 || (r1 == r2 && mNo[pos1] < mNo[pos2]);
+    }
+}
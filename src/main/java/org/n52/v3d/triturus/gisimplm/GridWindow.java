@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2007-2016 52North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.vgis.VgEnvelope;
+import org.n52.v3d.triturus.vgis.VgPoint;
+
+/**
+ * Index ranges of a window of an elevation grid, optionally decimated. The 
+ * selected elements of the source grid are <i>(row0 + i * step, col0 + j * 
+ * step)</i> with <i>row0 &lt;= row &lt; row1</i> and <i>col0 &lt;= col &lt; 
+ * col1</i>. The window consists of the grid vertices that lie inside a 
+ * given envelope.
+ * 
+ * @author Benno Schmidt
+ * @see IoElevationGridReader#read(String, VgEnvelope, int)
+ * @see GmElevationGridPyramid
+ */
+class GridWindow 
+{
+    private final static double cEps = 1e-9; // tolerance for vertices on the window border
+
+    int nCols, nRows; // source grid dimensions
+    int row0, row1, col0, col1, step;
+
+    /**
+     * Constructor.
+     * 
+     * @param nCols Number of source grid columns
+     * @param nRows Number of source grid rows
+     * @param x0 Origin x-coordinate
+     * @param y0 Origin y-coordinate
+     * @param dx Cell-size in x-direction
+     * @param dy Cell-size in y-direction
+     * @param env Window, or <i>null</i> for the whole grid
+     * @param step Decimation factor &gt;= 1
+     * @throws T3dException if the window does not intersect the grid
+     */
+    GridWindow(int nCols, int nRows, double x0, double y0, double dx, double dy, 
+        VgEnvelope env, int step) throws T3dException
+    {
+        this.nCols = nCols;
+        this.nRows = nRows;
+        this.step = step;
+        row0 = 0; row1 = nRows;
+        col0 = 0; col1 = nCols;
+        if (env != null) {
+            double a = (env.getXMin() - x0) / dx, b = (env.getXMax() - x0) / dx;
+            col0 = Math.max(col0, (int) Math.ceil(Math.min(a, b) - cEps));
+            col1 = Math.min(col1, (int) Math.floor(Math.max(a, b) + cEps) + 1);
+            a = (env.getYMin() - y0) / dy; 
+            b = (env.getYMax() - y0) / dy;
+            row0 = Math.max(row0, (int) Math.ceil(Math.min(a, b) - cEps));
+            row1 = Math.min(row1, (int) Math.floor(Math.max(a, b) + cEps) + 1);
+            if (col0 >= col1 || row0 >= row1)
+                throw new T3dException("The given window does not intersect the grid.");
+        }
+    }
+
+    /**
+     * Constructor for a window of the given grid geometry.
+     */
+    GridWindow(GmSimple2dGridGeometry geom, VgEnvelope env, int step) throws T3dException
+    {
+        this(geom.numberOfColumns(), geom.numberOfRows(), 
+            geom.getOrigin().getX(), geom.getOrigin().getY(), 
+            geom.getDeltaX(), geom.getDeltaY(), env, step);
+    }
+
+    int numberOfRows() {
+        return (row1 - row0 + step - 1) / step;
+    }
+
+    int numberOfColumns() {
+        return (col1 - col0 + step - 1) / step;
+    }
+
+    int lastRow() {
+        return row0 + (this.numberOfRows() - 1) * step;
+    }
+
+    int lastColumn() {
+        return col0 + (this.numberOfColumns() - 1) * step;
+    }
+
+    boolean isComplete() {
+        return step == 1 && row0 == 0 && col0 == 0 && row1 == nRows && col1 == nCols;
+    }
+
+    boolean isRowSelected(int row) {
+        return row >= row0 && row < row1 && (row - row0) % step == 0;
+    }
+
+    boolean isColumnSelected(int col) {
+        return col >= col0 && col < col1 && (col - col0) % step == 0;
+    }
+
+    /**
+     * returns the window's storage index of the selected source element 
+     * <i>(row, col)</i>.
+     */
+    int index(int row, int col) {
+        return ((row - row0) / step) * this.numberOfColumns() + (col - col0) / step;
+    }
+
+    /**
+     * returns the geometry of the window for the given source geometry 
+     * parameters.
+     */
+    GmSimple2dGridGeometry geometry(VgPoint origin, double dx, double dy) {
+        return new GmSimple2dGridGeometry(
+            this.numberOfColumns(), this.numberOfRows(), 
+            new GmPoint(origin.getX() + col0 * dx, origin.getY() + row0 * dy, origin.getZ()),
+            dx * step, dy * step);
+    }
+
+    /**
+     * extracts a window from a grid. The result grid will use the source 
+     * grid's storage precision.
+     * 
+     * @param grid Source grid
+     * @param env Window, or <i>null</i> for the whole grid
+     * @param step Decimation factor &gt;= 1
+     * @return New elevation grid
+     * @throws T3dException if the window does not intersect the grid
+     */
+    static GmSimpleElevationGrid extract(GmSimpleElevationGrid grid, VgEnvelope env, int step) 
+        throws T3dException
+    {
+        GmSimple2dGridGeometry geom = (GmSimple2dGridGeometry) grid.getGeometry();
+        GridWindow win = new GridWindow(geom, env, step);
+        GmElevationGridStorage src = grid.getStorage();
+        GmSimpleElevationGrid res = new GmSimpleElevationGrid(
+            win.geometry(geom.getOrigin(), geom.getDeltaX(), geom.getDeltaY()),
+            src.isSinglePrecision() ? 
+                GmSimpleElevationGrid.cSinglePrecision : GmSimpleElevationGrid.cDoublePrecision);
+        GmElevationGridStorage dst = res.getStorage();
+        for (int i = win.row0; i < win.row1; i += win.step) {
+            for (int j = win.col0; j < win.col1; j += win.step) 
+                dst.set(win.index(i, j), src.get(i * geom.numberOfColumns() + j));
+        }
+        if (grid.isLatticeInterpretation())
+            res.setLatticeInterpretation();
+        res.setZBoundsInvalid();
+        return res;
+    }
+}
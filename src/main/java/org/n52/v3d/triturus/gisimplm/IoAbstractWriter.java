@@ -35,6 +35,7 @@ package org.n52.v3d.triturus.gisimplm;
 import org.n52.v3d.triturus.core.IoObject;
 import org.n52.v3d.triturus.core.T3dException;
 
+import java.io.OutputStream;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 
@@ -126,6 +127,21 @@ abstract public class IoAbstractWriter extends IoObject
         return new DecimalFormat(format, this.decimalFormatSymbols());
     }
 
+    /**
+     * provides a buffered emitter for the given output stream that writes 
+     * numbers according to the precisions that have been set for x-, y- and 
+     * z-coordinates. For large data sets, this is much faster than 
+     * formatting each value by <tt>DecimalFormat</tt> and concatenating 
+     * strings. Note that the emitter has to be flushed before the stream is 
+     * closed.
+     * 
+     * @param os Target stream
+     * @return Number emitter
+     */
+    protected NumberEmitter createNumberEmitter(OutputStream os) {
+        return new NumberEmitter(os, mPrecisionXY, mPrecisionZ);
+    }
+
     private DecimalFormatSymbols decimalFormatSymbols()
     {
         DecimalFormatSymbols ret = new DecimalFormatSymbols();
@@ -33,8 +33,11 @@
 package org.n52.v3d.triturus.gisimplm;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 
 import org.n52.v3d.triturus.core.IoFormatType;
 import org.n52.v3d.triturus.core.IoObject;
@@ -48,7 +51,12 @@ import org.w3c.dom.NodeList;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Hashtable;
-import java.util.StringTokenizer;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.net.URL;
 import java.net.MalformedURLException;
 
@@ -67,6 +75,9 @@ public class IoElevationGridReader extends IoObject
 
     private String format;
     private GmSimpleElevationGrid elevGrid = null;
+    private int numberOfThreads = 1;
+
+    private final static int cRawChunkSize = 1 << 20; // bytes per read operation for binary grids
 
     /**
      * Constructor. As parameter, a format type identifier has to be set.
@@ -75,8 +86,9 @@ public class IoElevationGridReader extends IoObject
      * <ul>
      * <li><i>ArcIGrd:</i> ArcInfo ASCII grids</li>
      * <li><i>AcGeo:</i> ACADGEO format (lattice without color-information</li>
-     * <li><i>BSQ:</i> Byte-sequential ESRI-format</li>
+     * <li><i>BSQ:</i> Byte-sequential ESRI-format (see also {@link #readMapped(String)})</li>
      * <li><i>X3D:</i> X3D-encoded elevation grids</li>
+     * <li><i>T3dGrid:</i> Native binary format (see also {@link #read(String, VgEnvelope)})</li>
      * </ul>
      * 
      * @param format Format-string, e.g. <tt></tt>&quot;ArcIGrd&quot;</tt>
@@ -91,6 +103,19 @@ public class IoElevationGridReader extends IoObject
         return logString;
     }
 
+    /**
+     * sets the number of threads to be used to parse ASCII grid files 
+     * (<i>ArcIGrd</i> and <i>AcGeo</i>). For values &gt; 1, local files 
+     * will be split at line boundaries into parts that will be parsed in 
+     * parallel. For the native binary format (<i>T3dGrid</i>), the tiles 
+     * will be decompressed in parallel. The default value is 1.
+     * 
+     * @param numberOfThreads Number of threads
+     */
+    public void setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = Math.max(1, numberOfThreads);
+    }
+
     /**
      * sets the format type.
      *
@@ -129,6 +154,51 @@ public class IoElevationGridReader extends IoObject
      * @throws org.n52.v3d.triturus.core.T3dException
      */
     public GmSimpleElevationGrid read(String location) throws T3dException {
+        return this.read(location, null, 1);
+    }
+
+    /**
+     * reads the part of an elevation-grid that lies inside a given window 
+     * from a file or URL location (see {@link #read(String, VgEnvelope, int)}).
+     *
+     * @param location File path or valid URL
+     * @param window Bounding-box of the target region
+     * @return Elevation-grid
+     * @throws T3dException if the window does not intersect the grid
+     */
+    public GmSimpleElevationGrid read(String location, VgEnvelope window) throws T3dException {
+        return this.read(location, window, 1);
+    }
+
+    /**
+     * reads a window of an elevation-grid and/or a decimated version of the 
+     * grid from a file or URL location. The result grid will consist of the 
+     * grid vertices that lie inside the window (for cell-based grids, the 
+     * cell centers are relevant), whereby only every <tt>decimation</tt>-th 
+     * row and column starting at the window's lower left vertex will be 
+     * taken. Thus, the result's cell-sizes will be <tt>decimation</tt> times 
+     * the source cell-sizes.
+     * <p>
+     * Unneeded parts of the input will not be parsed: For <i>ArcIGrd</i> 
+     * and <i>AcGeo</i> files, values outside the window will be skipped, 
+     * and parsing stops after the last needed row (or column); for 
+     * <i>BSQ</i> files, only the needed rows will be read; for the native 
+     * binary format, only the tiles intersecting the window will be 
+     * decompressed. <i>X3D</i> files will be read completely.
+     *
+     * @param location File path or valid URL
+     * @param window Bounding-box of the target region, or <i>null</i> for the whole grid
+     * @param decimation Decimation factor &gt;= 1 (1 for full resolution)
+     * @return Elevation-grid
+     * @throws T3dException if the window does not intersect the grid
+     * @throws T3dNotYetImplException for unsupported formats
+     */
+    public GmSimpleElevationGrid read(String location, VgEnvelope window, int decimation) 
+        throws T3dException 
+    {
+        if (decimation < 1)
+            throw new T3dException("Illegal decimation factor: " + decimation);
+
         InputStream is;
         try {
             if (location.startsWith("http")) {
@@ -150,21 +220,28 @@ public class IoElevationGridReader extends IoObject
         if (format.equalsIgnoreCase(IoFormatType.ACGEO)) i = 2;
         if (format.equalsIgnoreCase("BSQ")) i = 3;
         if (format.equalsIgnoreCase(IoFormatType.X3D)) i = 4;
+        if (format.equalsIgnoreCase(IoFormatType.BINARY_GRID)) i = 5;
         // --> add more types here...
 
         try {
             switch (i) {
                 case 1:
-                    this.readArcInfoAsciiGrid(this.createBufferedReader(is));
+                    this.readArcInfoAsciiGrid(is, window, decimation);
                     break;
                 case 2:
-                    this.readAcadGeoGrid(this.createBufferedReader(is));
+                    this.readAcadGeoGrid(is, window, decimation);
                     break;
                 case 3:
-                    this.readEsriBandSequential(location);
+                    this.readEsriBandSequential(location, window, decimation);
                     break;
                 case 4:
                     this.readX3D(location);
+                    if (elevGrid != null && (window != null || decimation > 1))
+                        elevGrid = GridWindow.extract(elevGrid, window, decimation);
+                    break;
+                case 5:
+                    this.close(is);
+                    this.readBinaryGrid(location, window, decimation);
                     break;
                 // --> add more types here...
 
@@ -179,6 +256,30 @@ public class IoElevationGridReader extends IoObject
         return elevGrid;
     }
 
+    /**
+     * reads an elevation grid pyramid. The full-resolution grid will be read 
+     * from the given location using the set format type; the overview 
+     * levels will be read from the sidecar files 
+     * <tt>location + &quot;.ovr&quot; + k</tt>, <i>k</i> = 1, 2, ..., as far 
+     * as present.
+     *
+     * @param location File path of the full-resolution grid
+     * @return Elevation grid pyramid
+     * @throws T3dException
+     * @see IoElevationGridWriter#writeOverviews(GmElevationGridPyramid, String)
+     */
+    public GmElevationGridPyramid readPyramid(String location) throws T3dException
+    {
+        List<GmSimpleElevationGrid> levels = new ArrayList<GmSimpleElevationGrid>();
+        levels.add(this.read(location));
+        for (int k = 1; new File(location + ".ovr" + k).exists(); k++) {
+            this.readBinaryGrid(location + ".ovr" + k, null, 1);
+            levels.add(elevGrid);
+        }
+        elevGrid = levels.get(0);
+        return new GmElevationGridPyramid(levels);
+    }
+
     private InputStream createInputStream(URL url) throws IOException {
         return url.openConnection().getInputStream();
     }
@@ -194,449 +295,812 @@ public class IoElevationGridReader extends IoObject
         return input;
     }
 
-    private BufferedReader createBufferedReader(InputStream inputStream) {
-        return new BufferedReader(new InputStreamReader(inputStream));
-    }
-
     /**
      * reads a 2-D float array from an input stream and generates a grid from 
-     * it.
+     * it. The values have to be given as big-endian floats row by row, 
+     * starting with the upper row.
      *
      * @param inputStream Stream to read data from
      * @param env Bounding-box of target-grid
      * @param width Number of grid-cells in x-direction (columns)
      * @param height Number of grid-cells in y-direction (rows)
      * @throws IOException
+     * @see IoElevationGridWriter#writeRawFloats(GmSimpleElevationGrid, OutputStream)
      */
     public GmSimpleElevationGrid readRawFloats(
     	InputStream inputStream, VgEnvelope env, int width, int height) 
     	throws IOException 
     {
-        int bufferSize = (width + 1) * (height + 1) * 4;
-        ByteBuffer bb = ByteBuffer.allocate(bufferSize);
-        int k = 0;
-        byte[] bytes = new byte[50000]; // buffer
-        while ((k = inputStream.read(bytes)) != -1) {
-            bb.put(bytes, 0, k);
-            //System.out.println("read bytes:"+k+"/pos="+bb.position()+"/size="+bufferSize);
-        }
+        return this.readRawFloats(inputStream, env, width, height, ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * reads a 2-D float array from an input stream and generates a grid from 
+     * it. The values have to be given row by row, starting with the upper 
+     * row. The grid will use single-precision storage; the values will be 
+     * transferred row-wise into the storage's backing array.
+     *
+     * @param inputStream Stream to read data from
+     * @param env Bounding-box of target-grid
+     * @param width Number of grid-cells in x-direction (columns)
+     * @param height Number of grid-cells in y-direction (rows)
+     * @param byteOrder Byte order of the float values
+     * @throws IOException, e.g. <tt>EOFException</tt> if the stream holds 
+     * less than <tt>width * height</tt> values
+     */
+    public GmSimpleElevationGrid readRawFloats(
+    	InputStream inputStream, VgEnvelope env, int width, int height, ByteOrder byteOrder) 
+    	throws IOException 
+    {
+        GmFloatGridStorage storage = this.createFloatStorage(width, height);
+        this.readFloatRows(
+            this.createChannel(inputStream), storage.getArray(), width, height, byteOrder, true);
 
         // Elevation-grid construction:
         elevGrid = new GmSimpleElevationGrid(
-                width, height,
-                new GmPoint(env.getXMin(), env.getYMin(), 0), // Origin
-                env.getExtentX() / width, // Cell-size x-direction
-                env.getExtentY() / height); // Cell-size y-direction
-        //System.out.println("Input: width: "+width+ " height: "+height+" env: "+env+"\nElevationGrid: "+elevationGrid);
-
-        bb.rewind();
-        FloatBuffer fb = bb.asFloatBuffer();
-        for (int i = height - 1; i >= 0; i--) {
-            for (int j = 0; j < width; j++) {
-                elevGrid.setValue(i, j, fb.get());
+                new GmSimple2dGridGeometry(
+                    width, height,
+                    new GmPoint(env.getXMin(), env.getYMin(), 0), // Origin
+                    env.getExtentX() / width, // Cell-size x-direction
+                    env.getExtentY() / height), // Cell-size y-direction
+                storage);
+        elevGrid.setZBoundsInvalid();
+        return elevGrid;
+    }
+
+    // Reads nRows rows of nCols float values from the given channel and 
+    // copies them into the row-major storage array. If topDown is set, the 
+    // first row in the channel will be the upper grid row.
+    private void readFloatRows(
+        ReadableByteChannel ch, float[] values, int nCols, int nRows, ByteOrder byteOrder, boolean topDown) 
+        throws IOException
+    {
+        if (nCols <= 0 || nRows <= 0) 
+            return;
+        int rowsPerChunk = Math.max(1, Math.min(nRows, cRawChunkSize / (4 * nCols)));
+        ByteBuffer bb = ByteBuffer.allocateDirect(rowsPerChunk * nCols * 4);
+        bb.order(byteOrder);
+
+        int r = 0;
+        while (r < nRows) {
+            int k = Math.min(rowsPerChunk, nRows - r);
+            bb.clear();
+            bb.limit(k * nCols * 4);
+            while (bb.hasRemaining()) {
+                if (ch.read(bb) < 0)
+                    throw new EOFException("Unexpected end of input after " + 
+                        ((long) r * nCols + bb.position() / 4) + " values.");
+            }
+            bb.flip();
+            FloatBuffer fb = bb.asFloatBuffer();
+            for (int i = 0; i < k; i++, r++) {
+                int row = topDown ? nRows - 1 - r : r;
+                fb.get(values, row * nCols, nCols);
             }
-            //System.out.println("Height: "+i+" heights="+fb.position());
         }
-        return elevGrid;
     }
 
-    private void readArcInfoAsciiGrid(BufferedReader datRead) 
-    	throws T3dException 
+    // Reads the rows of a raw float file that are selected by the given 
+    // window. The file positions of the needed row sections will be accessed 
+    // directly, skipping all other rows.
+    private void readFloatWindow(
+        FileChannel fc, float[] values, GridWindow win, ByteOrder byteOrder, boolean topDown) 
+        throws IOException
+    {
+        int nCols = win.numberOfColumns();
+        int span = win.lastColumn() - win.col0 + 1; // values per row section
+        ByteBuffer bb = ByteBuffer.allocateDirect(span * 4);
+        bb.order(byteOrder);
+        float[] section = win.step > 1 ? new float[span] : null;
+
+        for (int i = 0; i < win.numberOfRows(); i++) {
+            int row = win.row0 + i * win.step;
+            int fileRow = topDown ? win.nRows - 1 - row : row;
+            long pos = ((long) fileRow * win.nCols + win.col0) * 4L;
+            bb.clear();
+            while (bb.hasRemaining()) {
+                int k = fc.read(bb, pos);
+                if (k < 0)
+                    throw new EOFException("Unexpected end of input in row " + fileRow + ".");
+                pos += k;
+            }
+            bb.flip();
+            FloatBuffer fb = bb.asFloatBuffer();
+            if (section == null) 
+                fb.get(values, i * nCols, nCols);
+            else {
+                fb.get(section, 0, span);
+                for (int j = 0; j < nCols; j++)
+                    values[i * nCols + j] = section[j * win.step];
+            }
+        }
+    }
+
+    private void readArcInfoAsciiGrid(InputStream is, VgEnvelope window, int decimation) 
+        throws T3dException 
     {
         try {
+            AsciiGridScanner sc = new AsciiGridScanner(this.createChannel(is));
+
             // Read header:
-            int nCols = this.parseInt("ncols", datRead.readLine());
-            int nRows = this.parseInt("nrows", datRead.readLine());
-            float xllcorner = this.parseFloat("xllcorner", datRead.readLine());
-            float yllcorner = this.parseFloat("yllcorner", datRead.readLine());
-            float cellSize = this.parseFloat("cellsize", datRead.readLine());
-            float NODATA_value = this.parseFloat("NODATA_value", datRead.readLine());
+            int nCols = -1, nRows = -1;
+            float xll = Float.NaN, yll = Float.NaN, cellSize = Float.NaN;
+            float NODATA_value = Float.NaN;
+            boolean xCenter = false, yCenter = false, hasNoData = false;
+            while (sc.nextIsAlpha()) {
+                String key = sc.nextToken().toLowerCase();
+                String val = sc.nextToken();
+                if (val == null) 
+                    throw new T3dException("Header-value \"" + key + "\" is missing in input file.");
+                if (key.equals("ncols")) nCols = Integer.parseInt(val);
+                else if (key.equals("nrows")) nRows = Integer.parseInt(val);
+                else if (key.equals("xllcorner")) xll = Float.parseFloat(val);
+                else if (key.equals("yllcorner")) yll = Float.parseFloat(val);
+                else if (key.equals("xllcenter")) { xll = Float.parseFloat(val); xCenter = true; }
+                else if (key.equals("yllcenter")) { yll = Float.parseFloat(val); yCenter = true; }
+                else if (key.equals("cellsize")) cellSize = Float.parseFloat(val);
+                else if (key.equals("nodata_value")) { NODATA_value = Float.parseFloat(val); hasNoData = true; }
+            }
+            if (nCols < 0) this.missingHeaderValue("ncols");
+            if (nRows < 0) this.missingHeaderValue("nrows");
+            if (Float.isNaN(xll)) this.missingHeaderValue("xllcorner");
+            if (Float.isNaN(yll)) this.missingHeaderValue("yllcorner");
+            if (Float.isNaN(cellSize)) this.missingHeaderValue("cellsize");
 
             // Determine bounding-box:
-            double xFrom = xllcorner + cellSize / 2.; 
-            double yFrom = yllcorner + cellSize / 2.; 
+            double xFrom = xCenter ? xll : xll + cellSize / 2.; 
+            double yFrom = yCenter ? yll : yll + cellSize / 2.; 
             // Since it is a lattice (not a grid), half cell-sizes have to be added. 
 
             // Elevation-grid construction:
+            GridWindow win = new GridWindow(
+                nCols, nRows, xFrom, yFrom, cellSize, cellSize, window, decimation);
+            GmDoubleGridStorage storage = 
+                this.createStorage(win.numberOfColumns(), win.numberOfRows());
             elevGrid = new GmSimpleElevationGrid(
-                    nCols, nRows,
-                    new GmPoint(xFrom, yFrom, 0.), // Origin
-                    cellSize, // Cell-size x-direction
-                    cellSize); // Cell-size y-direction
+                    win.geometry(
+                        new GmPoint(xFrom, yFrom, 0.), // Origin
+                        cellSize, // Cell-size x-direction
+                        cellSize), // Cell-size y-direction
+                    storage);
             elevGrid.setLatticeInterpretation(); // todo: okay? Consequences?
 
             // Read elevation values and populate target-grid:
-            float z = 0.f;
-            String line = null;
-
-            for (int i = nRows - 1; i >= 0; i--) {
-                line = datRead.readLine();
-
-                if (line != null) {
-                    StringTokenizer st = new StringTokenizer(line);
-                    for (int j = 0; j < nCols; j++) {
-                        try {
-                            z = Float.parseFloat(st.nextToken());
-                        }
-                        catch (NumberFormatException nfe) {
-                            z = 0.f;
-                        }
-                        if (z != NODATA_value) {
-                            elevGrid.setValue(i, j, z);
-                        }
-                    }
-                }
-            }
+            AsciiLayout layout = new AsciiLayout(nCols, nRows, false, hasNoData, NODATA_value, win);
+            FileChannel fc = this.parallelChannel(is);
+            if (fc != null)
+                this.readValuesParallel(fc, sc.position(), storage.getArray(), layout);
+            else
+                this.readValues(sc, storage.getArray(), 0L, layout.end(), layout);
+            elevGrid.setZBoundsInvalid();
         }
         catch (IOException e) {
             throw new T3dException(e.getMessage());
         }
-        catch (T3dException e) {
-            throw e;
+        catch (NumberFormatException e) {
+            throw new T3dException("Parser error in header: " + e.getMessage());
         }
-    } // readArcInfoAsciiGrid()
-
-    // Helpers for readArcInfoAsciiGrid():
-    
-    private int parseInt(String check, String line) throws T3dException {
-        StringTokenizer st = new StringTokenizer(line);
-        String[] tokens = {"", ""};
-        int i = 0;
-        while (st.hasMoreTokens()) {
-            tokens[i] = st.nextToken();
-            if (tokens[i].length() > 0) {
-                i++;
-            }
-            if (i > 1) {
-                break;
-            }
+        finally {
+            this.close(is);
         }
-        if (i == 2 && tokens[0].toLowerCase().equals(check.toLowerCase())) {
-            return Integer.parseInt(tokens[1]);
-        }
-        else {
-            throw new T3dException("Header-value \"" + check + "\" is missing in input file.");
-        }
-    }
-
-    private float parseFloat(String check, String line) throws T3dException {
-        StringTokenizer st = new StringTokenizer(line);
-        String[] tokens = {"", ""};
-        int i = 0;
-        while (st.hasMoreTokens()) {
-            tokens[i] = st.nextToken();
-            if (tokens[i].length() > 0) {
-                i++;
-            }
-            if (i > 1) {
-                break;
-            }
-        }
-        if (i == 2 && tokens[0].toLowerCase().equals(check.toLowerCase())) {
-            return Float.parseFloat(tokens[1]);
-        }
-        else {
-            throw new T3dException("Header-value \"" + check + "\" is missing in input file.");
-        }
-    }
+    } // readArcInfoAsciiGrid()
 
-    private void readAcadGeoGrid(BufferedReader datRead) throws T3dException {
-        String line = "";
-        int lineNumber = 0;
+    private void readAcadGeoGrid(InputStream is, VgEnvelope window, int decimation) 
+        throws T3dException 
+    {
+        int lineNumber = 1;
 
         try {
-            String tok1, tok2, tok3, tok4;
+            AsciiGridScanner sc = new AsciiGridScanner(this.createChannel(is));
 
-            line = datRead.readLine(); // line 1
+            this.expectKeyword(sc, "GRID:", lineNumber);
+            sc.skipLine(); 
             lineNumber++;
-            tok1 = this.getStrTok(line, 1, " ");
-            if (!tok1.equalsIgnoreCase("GRID:")) {
-                throw new T3dException("Expected key-word GRID: in line " + lineNumber);
-            }
-
-            line = datRead.readLine(); // line 2
+            sc.skipLine(); // "C=[ON|OFF]"; will be ignored
             lineNumber++;
-            ; // "C=[ON|OFF]"; will be ignored
 
-            line = datRead.readLine(); // line 3
+            this.expectKeyword(sc, "FROM", lineNumber);
+            double xFrom = Double.parseDouble(this.nextToken(sc, lineNumber));
+            double yFrom = Double.parseDouble(this.nextToken(sc, lineNumber));
             lineNumber++;
-            tok1 = this.getStrTok(line, 1, " ");
-            if (!tok1.equalsIgnoreCase("FROM")) {
-                throw new T3dException("Expected key-word FROM in line " + lineNumber);
-            }
-            tok2 = this.getStrTok(line, 2, " ");
-            tok3 = this.getStrTok(line, 3, " ");
-            double xFrom = this.toDouble(tok2);
-            double yFrom = this.toDouble(tok3);
 
-            line = datRead.readLine(); // line 4
+            this.expectKeyword(sc, "TO", lineNumber);
+            double xTo = Double.parseDouble(this.nextToken(sc, lineNumber));
+            double yTo = Double.parseDouble(this.nextToken(sc, lineNumber));
             lineNumber++;
-            tok1 = this.getStrTok(line, 1, " ");
-            if (!tok1.equalsIgnoreCase("TO")) {
-                throw new T3dException("Expected key-word TO in line " + lineNumber);
-            }
-            tok2 = this.getStrTok(line, 2, " ");
-            tok3 = this.getStrTok(line, 3, " ");
-            double xTo = this.toDouble(tok2);
-            double yTo = this.toDouble(tok3);
 
-            line = datRead.readLine(); // line 5
-            lineNumber++;
-            tok1 = this.getStrTok(line, 1, " ");
-            if (!tok1.equalsIgnoreCase("SIZE")) {
-                throw new T3dException("Expected key-word SIZE in line " + lineNumber);
-            }
-            tok2 = this.getStrTok(line, 2, " ");
-            tok3 = this.getStrTok(line, 3, " ");
-            if (!tok3.equalsIgnoreCase("x")) {
+            this.expectKeyword(sc, "SIZE", lineNumber);
+            int nCols = Integer.parseInt(this.nextToken(sc, lineNumber));
+            String tok = sc.nextToken();
+            if (tok == null || !tok.equalsIgnoreCase("x")) {
                 throw new T3dException("Expected token 'x' in line " + lineNumber);
             }
-            tok4 = this.getStrTok(line, 4, " ");
-            int nCols = this.toInt(tok2);
-            int nRows = this.toInt(tok4);
+            int nRows = Integer.parseInt(this.nextToken(sc, lineNumber));
 
             // Elevation-grid construction:
+            double dx = (xTo - xFrom) / ((double) nCols - 1.); // Gitterweite x-Richtung
+            double dy = (yTo - yFrom) / ((double) nRows - 1.); // Gitterweite y-Richtung
+            GridWindow win = new GridWindow(nCols, nRows, xFrom, yFrom, dx, dy, window, decimation);
+            GmDoubleGridStorage storage = 
+                this.createStorage(win.numberOfColumns(), win.numberOfRows());
             elevGrid = new GmSimpleElevationGrid(
-                    nCols, nRows,
-                    new GmPoint(xFrom, yFrom, 0.), // Ursprungspunkt
-                    (xTo - xFrom) / ((double) nCols - 1.), // Gitterweite x-Richtung
-                    (yTo - yFrom) / ((double) nRows - 1.)); // Gitterweite y-Richtung
+                    win.geometry(new GmPoint(xFrom, yFrom, 0.), dx, dy), // Ursprungspunkt 
+                    storage);
             elevGrid.setLatticeInterpretation();
 
             // Populate grid with elevation values:
-            double z;
-            elevGrid.setZBoundsInvalid(); // Performance!
-
-            for (int j = 0; j < nCols; j++) {
-                for (int i = 0; i < nRows; i++) {
-                    line = datRead.readLine();
-                    lineNumber++;
-                    tok1 = this.getStrTok(line, 1, " ");
-                    z = this.toDouble(tok1);
-                    elevGrid.setValue(i, j, z);
-                }
-            }
-
-            line = datRead.readLine(); // last row
-            lineNumber++;
-            tok1 = this.getStrTok(line, 1, " ");
-            if (!tok1.equalsIgnoreCase("END")) {
-                throw new T3dException("Expected key-word END in line " + lineNumber);
+            AsciiLayout layout = new AsciiLayout(nCols, nRows, true, false, 0.f, win);
+            FileChannel fc = this.parallelChannel(is);
+            if (fc != null) 
+                sc = this.readValuesParallel(fc, sc.position(), storage.getArray(), layout);
+            else if (this.readValues(sc, storage.getArray(), 0L, layout.end(), layout) < layout.end())
+                throw new T3dException("Unexpected end of file.");
+            if (layout.end() == layout.size()) {
+                lineNumber += layout.size() + 1; // last row
+                this.expectKeyword(sc, "END", lineNumber);
             }
-
-            datRead.close();
+            elevGrid.setZBoundsInvalid();
         }
         catch (IOException e) {
             throw new T3dException(e.getMessage());
         }
-        catch (T3dException e) {
-            throw new T3dException(e.getMessage());
-        }
-        catch (Exception e) {
+        catch (NumberFormatException e) {
             throw new T3dException("Parser error in line " + lineNumber);
         }
+        finally {
+            this.close(is);
+        }
     } // readAcadGeoGrid()
 
-    // Helpers for readAcadGeoGrid():
-    
-    // Extraction of i-th token (i >= 1!, i max. = 4) from a string ('pSep' as separator):
-    private String getStrTok(String str, int i, String sep) throws T3dException {
-        ArrayList<String> strArr = new ArrayList<String>();
-        strArr.add(str);
-        int i0 = 0, i1 = 0, k = 0;
-        while (k < 4 && i1 >= 0) {
-            i1 = str.indexOf(sep, i0);
-            if (i1 >= 0) {
-                if (k == 0) {
-                    strArr.set(0, str.substring(i0, i1));
-                }
-                else {
-                    strArr.add(str.substring(i0, i1));
-                }
-                i0 = i1 + 1;
-                k++;
-            }
+    // Helpers for readArcInfoAsciiGrid() and readAcadGeoGrid():
+
+    private GmDoubleGridStorage createStorage(int nCols, int nRows) throws T3dException {
+        this.checkSize(nCols, nRows);
+        return new GmDoubleGridStorage(nCols * nRows);
+    }
+
+    // Note that the array elements will not be initialized: 
+    private GmFloatGridStorage createFloatStorage(int nCols, int nRows) throws T3dException {
+        this.checkSize(nCols, nRows);
+        return new GmFloatGridStorage(new float[nCols * nRows]);
+    }
+
+    private void checkSize(int nCols, int nRows) throws T3dException {
+        if (nCols < 0 || nRows < 0 || (long) nCols * (long) nRows > Integer.MAX_VALUE)
+            throw new T3dException("Illegal grid size (" + nCols + " x " + nRows + ").");
+    }
+
+    private void missingHeaderValue(String check) throws T3dException {
+        throw new T3dException("Header-value \"" + check + "\" is missing in input file.");
+    }
+
+    private void expectKeyword(AsciiGridScanner sc, String keyword, long lineNumber) 
+        throws IOException, T3dException
+    {
+        String tok = sc.nextToken();
+        if (tok == null || !tok.equalsIgnoreCase(keyword)) {
+            throw new T3dException("Expected key-word " + keyword + " in line " + lineNumber);
         }
-        if (k <= 3) {
-            strArr.add(str.substring(i0));
+    }
+
+    private String nextToken(AsciiGridScanner sc, long lineNumber) 
+        throws IOException, T3dException
+    {
+        String tok = sc.nextToken();
+        if (tok == null)
+            throw new T3dException("Unexpected end of file in line " + lineNumber);
+        return tok;
+    }
+
+    private void close(InputStream is) {
+        try {
+            is.close();
         }
-        if (i < 1 || i > 4) {
-            throw new T3dException("Logical parser error.");
+        catch (IOException e) {
+            ; // ignore
         }
-        return (String) strArr.get(i - 1);
     }
 
-    private double toDouble(String str) {
-        return Double.parseDouble(str);
+    private ReadableByteChannel createChannel(InputStream is) {
+        if (is instanceof FileInputStream)
+            return ((FileInputStream) is).getChannel();
+        return Channels.newChannel(is);
     }
 
-    private int toInt(String str) {
-        return Integer.parseInt(str);
+    // Returns the file channel for parallel parsing, or null if sequential 
+    // parsing shall be performed:
+    private FileChannel parallelChannel(InputStream is) {
+        if (numberOfThreads > 1 && is instanceof FileInputStream)
+            return ((FileInputStream) is).getChannel();
+        return null;
     }
 
-    private void readEsriBandSequential(String filename) throws T3dException 
+    // Arrangement of the values inside ASCII grid files:
+    private static class AsciiLayout 
     {
-        try {
-            String bsqName = filename, hdrName = null, bqwName = null;
-            boolean isFloat;
-            
-            if (bsqName.toLowerCase().endsWith("bsq")) {
-                hdrName = bsqName.substring(0, bsqName.length() - 3) + "hdr";
-                bqwName = bsqName.substring(0, bsqName.length() - 3) + "bqw";
+        int nCols, nRows;
+        boolean acGeo; // column by column starting with the lower row, else row by row starting with the upper row 
+        boolean hasNoData;
+        float noData;
+        GridWindow window; // null, if the whole grid will be read
+
+        AsciiLayout(int nCols, int nRows, boolean acGeo, boolean hasNoData, float noData, GridWindow window) {
+            this.nCols = nCols;
+            this.nRows = nRows;
+            this.acGeo = acGeo;
+            this.hasNoData = hasNoData;
+            this.noData = noData;
+            this.window = window.isComplete() ? null : window;
+        }
+
+        long size() {
+            return (long) nCols * nRows;
+        }
+
+        // Number of values to be processed, i.e. the file position after the 
+        // last value inside the window:
+        long end() {
+            if (window == null)
+                return this.size();
+            if (acGeo)
+                return (long) (window.lastColumn() + 1) * nRows;
+            return (long) (nRows - window.row0) * nCols;
+        }
+
+        // Storage index of the t-th value inside the file:
+        int index(long t) {
+            if (acGeo)
+                return (int) (t % nRows) * nCols + (int) (t / nRows);
+            return (nRows - 1 - (int) (t / nCols)) * nCols + (int) (t % nCols);
+        }
+    }
+
+    // Parses the values t0 ... t1 - 1 (referring to the file order) and 
+    // writes them to the storage array. Returns the number of values read. 
+    private long readValues(
+        AsciiGridScanner sc, double[] values, long t0, long t1, AsciiLayout layout) 
+        throws IOException, T3dException
+    {
+        if (layout.window != null)
+            return this.readValuesWindowed(sc, values, t0, t1, layout);
+
+        // Storage index k of the current value, stepping inside the current 
+        // file row (or column for AcGeo) and to the next file row:
+        int k = layout.index(t0);
+        int step = layout.acGeo ? layout.nCols : 1;
+        int len = layout.acGeo ? layout.nRows : layout.nCols; 
+        int next = layout.acGeo ? 1 - (len - 1) * step : -layout.nCols - (len - 1); 
+        int pos = (int) (t0 % len); // position inside the file row
+        float z;
+
+        for (long t = t0; t < t1; t++) {
+            if (!sc.hasNext()) 
+                return t - t0; // remaining values will be unset
+            if (layout.acGeo) {
+                try {
+                    values[k] = sc.nextDouble();
+                }
+                catch (NumberFormatException e) {
+                    throw new T3dException("Parser error at value " + (t + 1) + ".");
+                }
             }
             else {
-                throw new T3dException("File-name not correct: " + filename);
-            }
-
-            // Read header:
-            FileReader hdrFileRead = new FileReader(hdrName);
-            BufferedReader hdrDatRead = new BufferedReader(hdrFileRead);
-            StreamTokenizer hdrTokRead = new StreamTokenizer(hdrDatRead);
-            hdrTokRead.lowerCaseMode(true); // fetch all tokens (in lower case)
-            hdrTokRead.commentChar(35); // Hashes mark comment lines...
-            hdrTokRead.eolIsSignificant(false); // line feeds are irrelevant
-            hdrTokRead.wordChars(65, 90); // upper-case characters
-            hdrTokRead.wordChars(97, 122); // lower-case characters
-            int tokType = 0;
-            hdrTokRead.parseNumbers(); // The numbers are read 'directly'
-            String valueName = "";
-            Hashtable<String, Serializable> 
-            	header = new Hashtable<String, Serializable>();
-            // traverse everything and put it to the hash-table pairwise
-            do {
-                tokType = hdrTokRead.nextToken();
-                if (tokType == StreamTokenizer.TT_WORD) {
-                    valueName = hdrTokRead.sval;
+                try {
+                    z = sc.nextFloat();
                 }
-                tokType = hdrTokRead.nextToken();
-                if (tokType == StreamTokenizer.TT_WORD) {
-                    header.put(valueName, hdrTokRead.sval);
+                catch (NumberFormatException nfe) {
+                    z = 0.f;
                 }
-                else if (tokType == StreamTokenizer.TT_NUMBER) {
-                    Integer value = new Integer((int) hdrTokRead.nval);
-                    header.put(valueName, value);
+                if (!layout.hasNoData || z != layout.noData) {
+                    values[k] = z;
                 }
-            } while (tokType != StreamTokenizer.TT_EOF);
-
-            // Check some values:
-            if (header.get("pixeltype").equals("float")) {
-                isFloat = true;
             }
-            else if (header.get("pixeltype").equals("int") || header.get("pixeltype").equals("integer")) {
-                isFloat = false;
+            if (++pos < len)
+                k += step;
+            else {
+                k += next;
+                pos = 0;
+            }
+        }
+        return t1 - t0;
+    }
+
+    // Variant of readValues() for windowed or decimated reads. The storage 
+    // array refers to the window; values outside the window will be skipped 
+    // without parsing them.
+    private long readValuesWindowed(
+        AsciiGridScanner sc, double[] values, long t0, long t1, AsciiLayout layout) 
+        throws IOException, T3dException
+    {
+        GridWindow win = layout.window;
+        int len = layout.acGeo ? layout.nRows : layout.nCols; 
+        int line = (int) (t0 / len); // file row (or column for AcGeo)
+        int pos = (int) (t0 % len); // position inside the file row
+        boolean lineSelected = layout.acGeo ? 
+            win.isColumnSelected(line) : win.isRowSelected(layout.nRows - 1 - line);
+        float z;
+
+        for (long t = t0; t < t1; t++) {
+            if (!sc.hasNext()) 
+                return t - t0; // remaining values will be unset
+            if (!lineSelected || !(layout.acGeo ? win.isRowSelected(pos) : win.isColumnSelected(pos)))
+                sc.skipToken();
+            else if (layout.acGeo) {
+                try {
+                    values[win.index(pos, line)] = sc.nextDouble();
+                }
+                catch (NumberFormatException e) {
+                    throw new T3dException("Parser error at value " + (t + 1) + ".");
+                }
             }
             else {
-                throw new T3dException("Pixeltype not supported: " + header.get("pixeltype"));
+                try {
+                    z = sc.nextFloat();
+                }
+                catch (NumberFormatException nfe) {
+                    z = 0.f;
+                }
+                if (!layout.hasNoData || z != layout.noData) {
+                    values[win.index(layout.nRows - 1 - line, pos)] = z;
+                }
             }
-            if (((Integer) header.get("nbands")).intValue() != 1) {
-                throw new T3dException("Number of bands not supported: " + header.get("nbands"));
+            if (++pos == len) {
+                pos = 0;
+                line++;
+                lineSelected = layout.acGeo ? 
+                    win.isColumnSelected(line) : win.isRowSelected(layout.nRows - 1 - line);
             }
+        }
+        return t1 - t0;
+    }
 
-            // Read lower-left:
-            double LLx = 0;
-            double LLy = 0;
-            double Dx = 10;
-            double Dy = 10;
-            int colOrder = 1; // Values will be read to the left
-            int rowOrder = 1; // and to top
-            FileReader bqwFileRead = new FileReader(bqwName);
-            BufferedReader bqwDatRead = new BufferedReader(bqwFileRead);
-            StreamTokenizer bqwTokRead = new StreamTokenizer(bqwDatRead);
-            bqwTokRead.lowerCaseMode(true); // fetch all tokens (in lower case)
-            bqwTokRead.commentChar(35); // Hashes mark comment-lines...
-            bqwTokRead.eolIsSignificant(false); // line feeds are irrelevant
-            bqwTokRead.wordChars(65, 90); // upper-case characters
-            bqwTokRead.wordChars(97, 122); // lower-case characters
-            tokType = 0;
-            bqwTokRead.parseNumbers(); // The numbers are read 'directly'
-            tokType = bqwTokRead.nextToken();
-            if (tokType == StreamTokenizer.TT_NUMBER) {
-                Dx = bqwTokRead.nval;
+    // Parses the values starting at the file position bodyStart in parallel. 
+    // First, the file will be split into parts at line boundaries; then, the 
+    // values inside the parts will be counted, and finally, the parts will be 
+    // parsed. For windowed reads, the file will be split into smaller parts 
+    // which will be counted in rounds, so that counting stops after the part 
+    // containing the last value inside the window. For complete AcGeo grids, 
+    // counting stops after the part containing the trailing END record, and 
+    // a scanner positioned after the last value will be returned, so that 
+    // END can be checked as in the sequential case; otherwise, null is 
+    // returned. 
+    private AsciiGridScanner readValuesParallel(
+        final FileChannel fc, long bodyStart, final double[] values, final AsciiLayout layout)
+        throws IOException, T3dException
+    {
+        final long n = layout.end();
+        boolean hasEnd = layout.acGeo && n == layout.size();
+        long nNeeded = hasEnd ? n + 1 : n; // tokens to be counted at least
+        long size = fc.size();
+        int nParts = n < layout.size() ? 4 * numberOfThreads : numberOfThreads;
+        final long[] bounds = new long[nParts + 1];
+        bounds[0] = bodyStart;
+        bounds[nParts] = size;
+        for (int p = 1; p < nParts; p++) {
+            bounds[p] = Math.max(bounds[p - 1], 
+                this.nextLineStart(fc, bodyStart + (size - bodyStart) * p / nParts, size));
+        }
+
+        final long[] first = new long[nParts + 1];
+        int nCounted = 0;
+        List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+        while (nCounted < nParts && first[nCounted] < nNeeded) {
+            int to = Math.min(nCounted + numberOfThreads, nParts);
+            tasks.clear();
+            for (int p = nCounted; p < to; p++) {
+                final int part = p;
+                tasks.add(new Callable<Long>() {
+                    public Long call() throws IOException {
+                        return new AsciiGridScanner(fc, bounds[part], bounds[part + 1]).countTokens();
+                    }
+                });
             }
-            tokType = bqwTokRead.nextToken();
-            tokType = bqwTokRead.nextToken();
-            tokType = bqwTokRead.nextToken();
-            if (tokType == StreamTokenizer.TT_NUMBER) {
-                Dy = bqwTokRead.nval;
+            List<Long> counts = this.execute(tasks);
+            for (int p = nCounted; p < to; p++) 
+                first[p + 1] = first[p] + counts.get(p - nCounted);
+            nCounted = to;
+        }
+        if (layout.acGeo && first[nCounted] < n)
+            throw new T3dException("Unexpected end of file.");
+
+        tasks.clear();
+        for (int p = 0; p < nCounted && first[p] < n; p++) {
+            final int part = p;
+            tasks.add(new Callable<Long>() {
+                public Long call() throws IOException, T3dException {
+                    return readValues(
+                        new AsciiGridScanner(fc, bounds[part], bounds[part + 1]), 
+                        values, first[part], Math.min(first[part + 1], n), layout);
+                }
+            });
+        }
+        this.execute(tasks);
+
+        if (!hasEnd)
+            return null;
+        int p = nCounted - 1;
+        while (p > 0 && first[p] > n)
+            p--;
+        AsciiGridScanner sc = new AsciiGridScanner(fc, bounds[p], size);
+        for (long t = first[p]; t < n; t++)
+            sc.skipToken();
+        return sc;
+    }
+
+    // Returns the position after the next line feed:
+    private long nextLineStart(FileChannel fc, long pos, long size) throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate(4096);
+        while (pos < size) {
+            buf.clear();
+            int k = fc.read(buf, pos);
+            if (k <= 0) 
+                break;
+            for (int i = 0; i < k; i++) {
+                if (buf.get(i) == '\n') 
+                    return pos + i + 1;
             }
-            tokType = bqwTokRead.nextToken();
-            if (tokType == StreamTokenizer.TT_NUMBER) {
-                LLx = bqwTokRead.nval;
+            pos += k;
+        }
+        return size;
+    }
+
+    private <T> List<T> execute(List<Callable<T>> tasks) throws T3dException
+    {
+        ExecutorService exec = Executors.newFixedThreadPool(numberOfThreads);
+        try {
+            List<T> res = new ArrayList<T>();
+            for (Future<T> f : exec.invokeAll(tasks)) 
+                res.add(f.get());
+            return res;
+        }
+        catch (InterruptedException e) {
+            throw new T3dException("Read interrupted.");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof T3dException)
+                throw (T3dException) e.getCause();
+            throw new T3dException("Read error: " + e.getCause());
+        }
+        finally {
+            exec.shutdown();
+        }
+    }
+
+    private void readBinaryGrid(String filename, VgEnvelope window, int decimation) 
+        throws T3dException 
+    {
+        try {
+            FileInputStream fis = new FileInputStream(filename);
+            try {
+                final FileChannel fc = fis.getChannel();
+                final TiledGridFile tgf = TiledGridFile.readHeader(fc);
+
+                // Determine the window's index ranges:
+                final GridWindow win = new GridWindow(
+                    tgf.nCols, tgf.nRows, tgf.x0, tgf.y0, tgf.dx, tgf.dy, window, decimation);
+                final GmElevationGridStorage storage = 
+                    tgf.precision == GmSimpleElevationGrid.cSinglePrecision ?
+                        this.createFloatStorage(win.numberOfColumns(), win.numberOfRows()) :
+                        this.createStorage(win.numberOfColumns(), win.numberOfRows());
+
+                // Read the relevant tiles:
+                List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+                for (int ty = win.row0 / tgf.tileSize; ty <= win.lastRow() / tgf.tileSize; ty++) {
+                    for (int tx = win.col0 / tgf.tileSize; tx <= win.lastColumn() / tgf.tileSize; tx++) {
+                        if (!tgf.intersects(tx, ty, win.row0, win.row1, win.col0, win.col1, win.step))
+                            continue;
+                        final int tileX = tx, tileY = ty;
+                        tasks.add(new Callable<Object>() {
+                            public Object call() throws IOException, T3dException {
+                                byte[] plain = tgf.decodeTile(fc, tileX, tileY);
+                                tgf.copyTile(plain, tileX, tileY, 
+                                    win.row0, win.row1, win.col0, win.col1, win.step, storage);
+                                return null;
+                            }
+                        });
+                    }
+                }
+                if (numberOfThreads > 1 && tasks.size() > 1) 
+                    this.execute(tasks);
+                else {
+                    for (Callable<Object> task : tasks)
+                        task.call();
+                }
+
+                // Elevation-grid construction:
+                elevGrid = new GmSimpleElevationGrid(
+                    win.geometry(new GmPoint(tgf.x0, tgf.y0, tgf.z0), tgf.dx, tgf.dy),
+                    storage);
+                if (tgf.lattice)
+                    elevGrid.setLatticeInterpretation();
+                elevGrid.setZBoundsInvalid();
             }
-            tokType = bqwTokRead.nextToken();
-            if (tokType == StreamTokenizer.TT_NUMBER) {
-                LLy = bqwTokRead.nval;
+            finally {
+                fis.close();
             }
+        }
+        catch (FileNotFoundException e) {
+            throw new T3dException("Could not access file \"" + filename + "\".");
+        }
+        catch (T3dException e) {
+            throw e;
+        }
+        catch (IOException e) {
+            throw new T3dException(e.getMessage());
+        }
+        catch (Exception e) {
+            throw new T3dException("Read error in \"" + filename + "\".");
+        }
+    } // readBinaryGrid()
+
+    // Header information of ESRI band-sequential files:
+    private static class BsqHeader 
+    {
+        String bsqName;
+        boolean isFloat;
+        ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
+        Float noData = null;
+        int nRows, nCols;
+        double LLx = 0, LLy = 0, Dx = 10, Dy = 10;
+        int colOrder = 1; // Values will be read to the left
+        int rowOrder = 1; // and to top
+    }
 
-            // Origin correction to LL (if necessary)
-            if (Dx < 0) {
-                LLx = LLx + Dx * ((Integer) header.get("ncols")).intValue();
-                Dx = 0 - Dx;
-                colOrder = -1;
+    private BsqHeader readBsqHeader(String filename) throws IOException, T3dException
+    {
+        BsqHeader res = new BsqHeader();
+        String bsqName = filename, hdrName = null, bqwName = null;
+        
+        if (bsqName.toLowerCase().endsWith("bsq")) {
+            hdrName = bsqName.substring(0, bsqName.length() - 3) + "hdr";
+            bqwName = bsqName.substring(0, bsqName.length() - 3) + "bqw";
+        }
+        else {
+            throw new T3dException("File-name not correct: " + filename);
+        }
+        res.bsqName = bsqName;
+
+        // Read header:
+        FileReader hdrFileRead = new FileReader(hdrName);
+        BufferedReader hdrDatRead = new BufferedReader(hdrFileRead);
+        StreamTokenizer hdrTokRead = new StreamTokenizer(hdrDatRead);
+        hdrTokRead.lowerCaseMode(true); // fetch all tokens (in lower case)
+        hdrTokRead.commentChar(35); // Hashes mark comment lines...
+        hdrTokRead.eolIsSignificant(false); // line feeds are irrelevant
+        hdrTokRead.wordChars(65, 90); // upper-case characters
+        hdrTokRead.wordChars(97, 122); // lower-case characters
+        int tokType = 0;
+        hdrTokRead.parseNumbers(); // The numbers are read 'directly'
+        String valueName = "";
+        Hashtable<String, Serializable> 
+        	header = new Hashtable<String, Serializable>();
+        // traverse everything and put it to the hash-table pairwise
+        do {
+            tokType = hdrTokRead.nextToken();
+            if (tokType == StreamTokenizer.TT_WORD) {
+                valueName = hdrTokRead.sval;
             }
-            if (Dy < 0) {
-                LLy = LLy + Dy * ((Integer) header.get("nrows")).intValue();
-                Dy = 0 - Dy;
-                rowOrder = -1;
+            tokType = hdrTokRead.nextToken();
+            if (tokType == StreamTokenizer.TT_WORD) {
+                header.put(valueName, hdrTokRead.sval);
             }
+            else if (tokType == StreamTokenizer.TT_NUMBER) {
+                Integer value = new Integer((int) hdrTokRead.nval);
+                header.put(valueName, value);
+            }
+        } while (tokType != StreamTokenizer.TT_EOF);
+        hdrDatRead.close();
+
+        // Check some values:
+        if (header.get("pixeltype").equals("float")) {
+            res.isFloat = true;
+        }
+        else if (header.get("pixeltype").equals("int") || header.get("pixeltype").equals("integer")) {
+            res.isFloat = false;
+        }
+        else {
+            throw new T3dException("Pixeltype not supported: " + header.get("pixeltype"));
+        }
+        if (((Integer) header.get("nbands")).intValue() != 1) {
+            throw new T3dException("Number of bands not supported: " + header.get("nbands"));
+        }
+        if ("i".equals(header.get("byteorder"))) {
+            res.byteOrder = ByteOrder.LITTLE_ENDIAN; // Intel byte order
+        }
+        if (header.get("nodata") instanceof Integer) {
+            res.noData = Float.valueOf(((Integer) header.get("nodata")).floatValue());
+        }
+        res.nRows = ((Integer) header.get("nrows")).intValue();
+        res.nCols = ((Integer) header.get("ncols")).intValue();
+
+        // Read lower-left:
+        FileReader bqwFileRead = new FileReader(bqwName);
+        BufferedReader bqwDatRead = new BufferedReader(bqwFileRead);
+        StreamTokenizer bqwTokRead = new StreamTokenizer(bqwDatRead);
+        bqwTokRead.lowerCaseMode(true); // fetch all tokens (in lower case)
+        bqwTokRead.commentChar(35); // Hashes mark comment-lines...
+        bqwTokRead.eolIsSignificant(false); // line feeds are irrelevant
+        bqwTokRead.wordChars(65, 90); // upper-case characters
+        bqwTokRead.wordChars(97, 122); // lower-case characters
+        tokType = 0;
+        bqwTokRead.parseNumbers(); // The numbers are read 'directly'
+        tokType = bqwTokRead.nextToken();
+        if (tokType == StreamTokenizer.TT_NUMBER) {
+            res.Dx = bqwTokRead.nval;
+        }
+        tokType = bqwTokRead.nextToken();
+        tokType = bqwTokRead.nextToken();
+        tokType = bqwTokRead.nextToken();
+        if (tokType == StreamTokenizer.TT_NUMBER) {
+            res.Dy = bqwTokRead.nval;
+        }
+        tokType = bqwTokRead.nextToken();
+        if (tokType == StreamTokenizer.TT_NUMBER) {
+            res.LLx = bqwTokRead.nval;
+        }
+        tokType = bqwTokRead.nextToken();
+        if (tokType == StreamTokenizer.TT_NUMBER) {
+            res.LLy = bqwTokRead.nval;
+        }
+        bqwDatRead.close();
+
+        // Origin correction to LL (if necessary)
+        if (res.Dx < 0) {
+            res.LLx = res.LLx + res.Dx * res.nCols;
+            res.Dx = 0 - res.Dx;
+            res.colOrder = -1;
+        }
+        if (res.Dy < 0) {
+            res.LLy = res.LLy + res.Dy * res.nRows;
+            res.Dy = 0 - res.Dy;
+            res.rowOrder = -1;
+        }
+        return res;
+    }
+
+    private void readEsriBandSequential(String filename, VgEnvelope window, int decimation) 
+        throws T3dException 
+    {
+        try {
+            BsqHeader hdr = this.readBsqHeader(filename);
 
             // Elevation-grid construction:
+            GridWindow win = new GridWindow(
+                hdr.nCols, hdr.nRows, hdr.LLx, hdr.LLy, hdr.Dx, hdr.Dy, window, decimation);
+            GmFloatGridStorage storage = 
+                this.createFloatStorage(win.numberOfColumns(), win.numberOfRows());
             elevGrid = new GmSimpleElevationGrid(
-                    ((Integer) header.get("nrows")).intValue(), ((Integer) header.get("ncols")).intValue(),
-                    new GmPoint(LLx, LLy, 0.), // Origin
-                    Dx, // Cell-size x-direction
-                    Dy); // Cell-size y-direction
+                    win.geometry(
+                        new GmPoint(hdr.LLx, hdr.LLy, 0.), // Origin
+                        hdr.Dx, // Cell-size x-direction
+                        hdr.Dy), // Cell-size y-direction
+                    storage);
             elevGrid.setLatticeInterpretation();
-            elevGrid.setZBoundsInvalid(); // Performance!
 
-            FileInputStream bsqFS = new FileInputStream(bsqName);
+            FileInputStream bsqFS = new FileInputStream(hdr.bsqName);
 
-            // Populate grid with elevation-values:
-            int startrow, startcol;
-            if (rowOrder == -1) {
-                startrow = elevGrid.numberOfRows() - 1;
+            // Populate grid with elevation-values (note that the column 
+            // order is not considered here):
+            float[] values = storage.getArray();
+            if (win.isComplete()) {
+                this.readFloatRows(
+                    bsqFS.getChannel(), values, hdr.nCols, hdr.nRows, hdr.byteOrder, hdr.rowOrder == -1);
             }
             else {
-                startrow = 0;
+                this.readFloatWindow(
+                    bsqFS.getChannel(), values, win, hdr.byteOrder, hdr.rowOrder == -1);
             }
-            if (colOrder == -1) {
-                startcol = elevGrid.numberOfColumns() - 1;
-            }
-            else {
-                startcol = 0;
-            }
-
-            System.out.println("i(rows): " + startrow + " j(cols): " + startcol + " rowOrder: " + rowOrder + " colOrder: " + colOrder);
-            ByteBuffer lBBuf = ByteBuffer.allocateDirect(elevGrid.numberOfColumns() * 4);
-            FloatBuffer lBuf = lBBuf.asFloatBuffer();
-            FileChannel fc = bsqFS.getChannel();
-
-            for (int i = startrow; i >= 0 && i < elevGrid.numberOfRows(); i = i + rowOrder) { // Reihenfolge?
-                fc.read(lBBuf);
-                for (int j = startcol; j >= 0 && j < elevGrid.numberOfColumns(); j = j + colOrder) {
-//					int zRaw = 0;
-//					zRaw = bsqFS.read();
-//					zRaw = zRaw<<8;
-//					zRaw = zRaw|bsqFS.read();
-//					zRaw = zRaw<<8;
-//					zRaw = zRaw|bsqFS.read();
-//					zRaw = zRaw<<8;
-//					zRaw = zRaw|bsqFS.read();
-                    if (isFloat) {
-//						float z = Float.intBitsToFloat(zRaw);
-                        float z = lBuf.get(j);
-                        if (z > -8000) {
-                            elevGrid.setValue(i, j, z);
-                            // Here, one could check for NaN, but...
-                        }
-                    }
-                    else {
-                        elevGrid.setValue(i, j, lBuf.get(j));
-                    }
+            if (hdr.isFloat) {
+                boolean hasNoData = hdr.noData != null;
+                float noData = hasNoData ? hdr.noData.floatValue() : 0.f;
+                for (int i = 0; i < values.length; i++) {
+                    float z = values[i];
+                    if (!(z > -8000) || (hasNoData && z == noData))
+                        values[i] = Float.NaN;
                 }
-                System.out.println("Reihe: " + i);
-                lBBuf.clear();
             }
+            elevGrid.setZBoundsInvalid();
 
             bsqFS.close();
         }
@@ -654,6 +1118,72 @@ public class IoElevationGridReader extends IoObject
         }
     } // readEsriBandSequential()
 
+    /**
+     * opens an ESRI band-sequential file (BSQ) as memory-mapped elevation 
+     * grid. In contrast to <tt>this.read()</tt>, the file contents will not 
+     * be copied to the heap; the grid's values will be paged in on demand. 
+     * The accompanying header (<tt>.hdr</tt>) and world files 
+     * (<tt>.bqw</tt>) must be present. Note that only float pixel types are 
+     * supported. Values equal to the header's <tt>NODATA</tt> value will be 
+     * treated as unset.
+     *
+     * @param location BSQ file path
+     * @return Memory-mapped elevation grid (read-only)
+     * @throws T3dException if the file can not be accessed
+     * @throws T3dNotYetImplException for unsupported pixel types or column orders
+     */
+    public GmMappedElevationGrid readMapped(String location) throws T3dException
+    {
+        BsqHeader hdr;
+        try {
+            hdr = this.readBsqHeader(location);
+        }
+        catch (IOException e) {
+            throw new T3dException("Could not read header for \"" + location + "\".");
+        }
+        if (!hdr.isFloat || hdr.colOrder != 1) 
+            throw new T3dNotYetImplException("BSQ layout not supported for memory-mapped access.");
+
+        GmMappedElevationGrid grid = new GmMappedElevationGrid(
+            new GmSimple2dGridGeometry(
+                hdr.nCols, hdr.nRows, 
+                new GmPoint(hdr.LLx, hdr.LLy, 0.), 
+                hdr.Dx, hdr.Dy),
+            hdr.bsqName, 0L, hdr.byteOrder, hdr.rowOrder == -1, false);
+        grid.setLatticeInterpretation();
+        if (hdr.noData != null)
+            grid.setNoDataValue(hdr.noData.floatValue());
+        return grid;
+    }
+
+    /**
+     * opens a raw float file as memory-mapped elevation grid. The file layout 
+     * must correspond to the layout processed by 
+     * {@link #readRawFloats(InputStream, VgEnvelope, int, int)}, i.e. 
+     * big-endian float values given row by row starting with the upper row. 
+     * The file contents will not be copied to the heap.
+     *
+     * @param filename File path
+     * @param env Bounding-box of target-grid
+     * @param width Number of grid-cells in x-direction (columns)
+     * @param height Number of grid-cells in y-direction (rows)
+     * @param writable <i>true</i> to allow modifications of the file
+     * @return Memory-mapped elevation grid
+     * @throws T3dException if the file can not be accessed
+     */
+    public GmMappedElevationGrid mapRawFloats(
+    	String filename, VgEnvelope env, int width, int height, boolean writable) 
+    	throws T3dException
+    {
+        return new GmMappedElevationGrid(
+            new GmSimple2dGridGeometry(
+                width, height,
+                new GmPoint(env.getXMin(), env.getYMin(), 0), // Origin
+                env.getExtentX() / width, // Cell-size x-direction
+                env.getExtentY() / height), // Cell-size y-direction
+            filename, 0L, ByteOrder.BIG_ENDIAN, true, writable);
+    }
+
     private void readX3D(String filename) throws T3dException {
         try {
             DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
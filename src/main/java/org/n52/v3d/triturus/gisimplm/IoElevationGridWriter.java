@@ -34,8 +34,17 @@ package org.n52.v3d.triturus.gisimplm;
 
 import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 
 import org.n52.v3d.triturus.core.IoFormatType;
 import org.n52.v3d.triturus.core.T3dNotYetImplException;
@@ -60,6 +69,11 @@ public class IoElevationGridWriter extends IoAbstractWriter
     private BufferedWriter doc;
 
     private int noDataValue = -9999;
+    private ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
+    private int tileSize = 256;
+    private short compression = cPredictorDeflate;
+
+    private final static int cRawChunkSize = 1 << 20; // bytes per write operation for binary grids
     private MpHypsometricColor hypsometricColMap = null;
     private double exaggeration = 1.;
     
@@ -70,6 +84,9 @@ public class IoElevationGridWriter extends IoAbstractWriter
      * <li><i>ArcIGrd:</i> ArcInfo ASCII grids (cell-based)</li>
      * <li><i>AcGeo:</i> ACADGEO format, lattice without color information</li>
      * <li><i>AcGeoTIN:</i> ACADGEO-TIN format</li>
+     * <li><i>GLB:</i> Binary glTF 2.0 file (indexed triangle mesh)</li>
+     * <li><i>BSQ:</i> Band-sequential ESRI-format (float values)</li>
+     * <li><i>T3dGrid:</i> Native binary format (tiled, compressed)</li>
      * <li><i>OBJ:</i> Wavefront OBJ file</li>
      * <li><i>VRML1:</i> VRML 1.0 scene (non-optimized triangle mesh)</li>
      * <li><i>VRML2:</i> VRML 2.0 scene (type ElevationGrid)</li>
@@ -88,7 +105,16 @@ public class IoElevationGridWriter extends IoAbstractWriter
      * is used.<br/>
      * 3. X3D-export is not georeferenced yet and implemented prototypical
      * only.<br/>
-     * 4. To save the {@link GmSimpleElevationGrid}-object as GIF-image, the
+     * 4. BSQ files will be written together with the accompanying header 
+     * (<tt>.hdr</tt>) and world files (<tt>.bqw</tt>). The file name has 
+     * to end with <tt>.bsq</tt>. Unset vertices will be written as 
+     * NODATA-value, the byte order can be set using 
+     * <tt>this.setByteOrder()</tt>.<br/>
+     * 5. For the native binary format, tile size and compression method can 
+     * be controlled by <tt>this.setTileSize()</tt> and 
+     * <tt>this.setCompression()</tt>. The values will be written using the 
+     * grid's storage precision.<br/>
+     * 6. To save the {@link GmSimpleElevationGrid}-object as GIF-image, the
      * class {@link org.n52.v3d.triturus.vispovray.IoElevationGridGIFWriter} 
      * might be suitable.
      *
@@ -114,6 +140,8 @@ public class IoElevationGridWriter extends IoAbstractWriter
      * @see IoFormatType#VTK_DATASET
      * @see IoFormatType#X3D
      * @see IoFormatType#X3DOM
+     * @see IoFormatType#BINARY_GRID
+     * @see IoFormatType#GLB
      */
     public void setFormatType(String format) {
         this.format = format;
@@ -141,6 +169,9 @@ public class IoElevationGridWriter extends IoAbstractWriter
         if (format.equalsIgnoreCase(IoFormatType.X3DOM)) i = 8;
         if (format.equalsIgnoreCase(IoFormatType.OBJ)) i = 9;
         if (format.equalsIgnoreCase(IoFormatType.VTK_DATASET)) i = 10;
+        if (format.equalsIgnoreCase("BSQ")) i = 11;
+        if (format.equalsIgnoreCase(IoFormatType.BINARY_GRID)) i = 12;
+        if (format.equalsIgnoreCase(IoFormatType.GLB)) i = 13;
         // --> add more types here...
 
         switch (i) {
@@ -174,6 +205,15 @@ public class IoElevationGridWriter extends IoAbstractWriter
             case 10:
                 this.writeVtkDataset(grid, filename);
                 break;
+            case 11:
+                this.writeEsriBandSequential(grid, filename);
+                break;
+            case 12:
+                this.writeBinaryGrid(grid, filename);
+                break;
+            case 13:
+                this.writeGlb(grid, filename);
+                break;
             // --> add more types here...
 
             default:
@@ -181,6 +221,15 @@ public class IoElevationGridWriter extends IoAbstractWriter
         }
     }
 
+    private void writeGlb(GmSimpleElevationGrid grid, String filename) 
+        throws T3dException
+    {
+        IoGlbWriter glbWriter = new IoGlbWriter();
+        glbWriter.setHypsometricColorMapper(hypsometricColMap);
+        glbWriter.setExaggeration(exaggeration);
+        glbWriter.writeToFile(grid, filename);
+    }
+
     private void writeArcInfoAsciiGrid(GmSimpleElevationGrid grid, String filename) 
    		throws T3dException 
     {
@@ -199,44 +248,43 @@ public class IoElevationGridWriter extends IoAbstractWriter
             noDataValueStr = "" + noDataValue;
         }
 
-        DecimalFormat dfZ = this.getDecimalFormatZ();
-
         try {
-            doc = new BufferedWriter(new FileWriter(filename));
-
-            w("ncols         " + geom.numberOfColumns()); // line 1
-            wl();
-            w("nrows         " + geom.numberOfRows()); // line 2
-            wl();
-            w("xllcorner     "); // line 3
-            w("" + 
-            	(geom.envelope().getXMin() - geom.getDeltaX() / 2.)); 
-            	// since this is a grid, not a lattice!
-            wl();
-            w("yllcorner     "); // line 4
-            w("" + 
-            	(geom.envelope().getYMin() - geom.getDeltaY() / 2.)); 
-            	// since this is a grid, not a lattice!
-            wl();
-            w("cellsize      " + geom.getDeltaX()); // line 5
-            wl();
-            w("NODATA_value  " + noDataValue); // line 6
-            wl();
-
-            // Write elevation-values for grid vertices:
-            for (int i = geom.numberOfRows() - 1; i >= 0; i--) {
-                for (int j = 0; j < geom.numberOfColumns(); j++) {
-                    if (grid.isSet(i, j)) {
-                        w(dfZ.format(grid.getValue(i, j)));
-                    }
-                    else {
-                        w(noDataValueStr);
+            FileOutputStream os = new FileOutputStream(filename);
+            try {
+                NumberEmitter out = this.createNumberEmitter(os);
+
+                out.append("ncols         ").append(geom.numberOfColumns()).newLine(); // line 1
+                out.append("nrows         ").append(geom.numberOfRows()).newLine(); // line 2
+                out.append("xllcorner     "); // line 3
+                out.append(Double.toString( 
+                    geom.envelope().getXMin() - geom.getDeltaX() / 2.)).newLine(); 
+                    // since this is a grid, not a lattice!
+                out.append("yllcorner     "); // line 4
+                out.append(Double.toString( 
+                    geom.envelope().getYMin() - geom.getDeltaY() / 2.)).newLine(); 
+                    // since this is a grid, not a lattice!
+                out.append("cellsize      ").append(Double.toString(geom.getDeltaX())).newLine(); // line 5
+                out.append("NODATA_value  ").append(noDataValue).newLine(); // line 6
+
+                // Write elevation-values for grid vertices:
+                GmElevationGridStorage storage = grid.getStorage();
+                int nCols = geom.numberOfColumns();
+                for (int i = geom.numberOfRows() - 1; i >= 0; i--) {
+                    for (int j = 0, idx = i * nCols; j < nCols; j++, idx++) {
+                        double z = storage.get(idx);
+                        if (!Double.isNaN(z)) 
+                            out.z(z);
+                        else 
+                            out.append(noDataValueStr);
+                        out.append(' ');
                     }
-                    w(" ");
+                    out.newLine();
                 }
-                wl();
+                out.flush();
+            }
+            finally {
+                os.close();
             }
-            doc.close();
         }
         catch (FileNotFoundException e) {
             throw new T3dException("Could not access file \"" + filename + "\".");
@@ -250,8 +298,8 @@ public class IoElevationGridWriter extends IoAbstractWriter
     } // writeArcInfoAsciiGrid()
 
     /**
-     * sets the NODATA-value for ArcInfo ASCII grids. Calling this method, the
-     * default-value (-9999) will be overwritten.
+     * sets the NODATA-value for ArcInfo ASCII grids and BSQ files. Calling 
+     * this method, the default-value (-9999) will be overwritten.
      *
      * @param noDataValue NODATA-value
      */
@@ -259,46 +307,325 @@ public class IoElevationGridWriter extends IoAbstractWriter
         this.noDataValue = noDataValue;
     }
 
-    private void writeAcadGeoGrid(GmSimpleElevationGrid grid, String filename) 
-    	throws T3dException 
+    /**
+     * sets the byte order for BSQ files. By default, big-endian 
+     * (&quot;Motorola&quot;) byte order will be used.
+     *
+     * @param byteOrder Byte order
+     */
+    public void setByteOrder(ByteOrder byteOrder) {
+        this.byteOrder = byteOrder;
+    }
+
+    /**
+     * writes the grid's elevation values as 2-D float array to an output 
+     * stream. The values will be written as big-endian floats row by row, 
+     * starting with the upper row; unset vertices will be written as 
+     * <tt>Float.NaN</tt>. This is the layout that is processed by 
+     * {@link IoElevationGridReader#readRawFloats(java.io.InputStream, org.n52.v3d.triturus.vgis.VgEnvelope, int, int)}.
+     * Note that the stream will not be closed.
+     *
+     * @param grid Elevation-grid to be written
+     * @param outputStream Target stream
+     * @throws IOException
+     */
+    public void writeRawFloats(GmSimpleElevationGrid grid, OutputStream outputStream) 
+        throws IOException
     {
+        this.writeRawFloats(grid, outputStream, ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * writes the grid's elevation values as 2-D float array to an output 
+     * stream using the given byte order (see 
+     * {@link #writeRawFloats(GmSimpleElevationGrid, OutputStream)}).
+     *
+     * @param grid Elevation-grid to be written
+     * @param outputStream Target stream
+     * @param byteOrder Byte order of the float values
+     * @throws IOException
+     */
+    public void writeRawFloats(GmSimpleElevationGrid grid, OutputStream outputStream, ByteOrder byteOrder) 
+        throws IOException
+    {
+        if (grid == null)
+            throw new T3dException("Grid information not available.");
+
+        WritableByteChannel ch;
+        if (outputStream instanceof FileOutputStream)
+            ch = ((FileOutputStream) outputStream).getChannel();
+        else
+            ch = Channels.newChannel(outputStream);
+        this.writeFloatRows(grid, ch, byteOrder, Float.NaN);
+        outputStream.flush();
+    }
+
+    private void writeEsriBandSequential(GmSimpleElevationGrid grid, String filename) 
+        throws T3dException 
+    {
+        if (grid == null)
+            throw new T3dException("Grid information not available.");
+        if (!filename.toLowerCase().endsWith(".bsq"))
+            throw new T3dException("File-name not correct: " + filename);
+
+        GmSimple2dGridGeometry geom = (GmSimple2dGridGeometry) grid.getGeometry();
+        int nRows = geom.numberOfRows(), nCols = geom.numberOfColumns(); 
+        String baseName = filename.substring(0, filename.length() - 3);
+
+        // Plain notation, since exponents would not be understood by 
+        // IoElevationGridReader:
+        DecimalFormat dfXY = this.getDecimalFormatXY();
+        dfXY.applyPattern("0.0#########");
+
         try {
-            doc = new BufferedWriter(new FileWriter(filename));
-
-            GmSimple2dGridGeometry geom = (GmSimple2dGridGeometry) grid.getGeometry();
-
-            w("GRID:"); // line 1
-            wl();
-            w("C=OFF"); // line 2
-            wl();
-            w("FROM " + geom.envelope().getXMin()); // line 3
-            w(" " + geom.envelope().getYMin());
-            wl();
-            w("TO " + geom.envelope().getXMax()); // line 4
-            w(" " + geom.envelope().getYMax());
-            wl();
-            w("SIZE " + geom.numberOfColumns() + " x " + geom.numberOfRows()); // line 5
-            wl();
-
-            DecimalFormat dfZ = this.getDecimalFormatZ();
-
-            // Write elevation-values for grid vertices:
-            for (int j = 0; j < geom.numberOfColumns(); j++) {
-                for (int i = 0; i < geom.numberOfRows(); i++) {
-                    if (grid.isSet(i, j)) {
-                        w(dfZ.format(grid.getValue(i, j)));
-                    }
-                    else {
-                        w("?");
+            // Header file:
+            doc = new BufferedWriter(new FileWriter(baseName + "hdr"));
+            wl("BYTEORDER      " + (ByteOrder.LITTLE_ENDIAN.equals(byteOrder) ? "I" : "M"));
+            wl("LAYOUT         BSQ");
+            wl("NROWS          " + nRows);
+            wl("NCOLS          " + nCols);
+            wl("NBANDS         1");
+            wl("NBITS          32");
+            wl("BANDROWBYTES   " + (4 * nCols));
+            wl("TOTALROWBYTES  " + (4 * nCols));
+            wl("PIXELTYPE      FLOAT");
+            wl("NODATA         " + noDataValue);
+            doc.close();
+
+            // World file (the rows will be written starting with the upper 
+            // row, thus a negative y-cell-size has to be given):
+            VgPoint origin = geom.getOrigin();
+            doc = new BufferedWriter(new FileWriter(baseName + "bqw"));
+            wl(dfXY.format(geom.getDeltaX()));
+            wl("0.0");
+            wl("0.0");
+            wl(dfXY.format(-geom.getDeltaY()));
+            wl(dfXY.format(origin.getX()));
+            wl(dfXY.format(origin.getY() + nRows * geom.getDeltaY()));
+            doc.close();
+
+            // Elevation values:
+            FileOutputStream os = new FileOutputStream(filename);
+            try {
+                this.writeFloatRows(grid, os.getChannel(), byteOrder, (float) noDataValue);
+            }
+            finally {
+                os.close();
+            }
+        }
+        catch (FileNotFoundException e) {
+            throw new T3dException("Could not access file \"" + filename + "\".");
+        }
+        catch (IOException e) {
+            throw new T3dException(e.getMessage());
+        }
+    } // writeEsriBandSequential()
+
+    /**
+     * Compression identifier for the native binary format: tiles will be 
+     * stored without compression.
+     */
+    public final static short cUncompressed = 1;
+
+    /**
+     * Compression identifier for the native binary format: tiles will be 
+     * deflate-compressed.
+     */
+    public final static short cDeflate = 2;
+
+    /**
+     * Compression identifier for the native binary format: a difference 
+     * predictor will be applied to the tile values before deflate 
+     * compression. Usually, this gives the best compression rates for 
+     * elevation data. This is the default setting.
+     */
+    public final static short cPredictorDeflate = 3;
+
+    /**
+     * sets the tile size for the native binary format. The tiles will 
+     * consist of <tt>tileSize x tileSize</tt> grid elements. The default 
+     * value is 256.
+     *
+     * @param tileSize Tile size &gt; 0
+     */
+    public void setTileSize(int tileSize) {
+        if (tileSize <= 0)
+            throw new T3dException("Invalid tile size (" + tileSize + ").");
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * sets the compression method for the native binary format.
+     *
+     * @param compression <tt>cUncompressed</tt>, <tt>cDeflate</tt> or <tt>cPredictorDeflate</tt>
+     * @see IoElevationGridWriter#cUncompressed
+     * @see IoElevationGridWriter#cDeflate
+     * @see IoElevationGridWriter#cPredictorDeflate
+     */
+    public void setCompression(short compression) {
+        if (compression < cUncompressed || compression > cPredictorDeflate)
+            throw new T3dException("Illegal compression identifier: " + compression);
+        this.compression = compression;
+    }
+
+    /**
+     * writes the overview levels of an elevation grid pyramid to sidecar 
+     * files. The level <i>k</i> &gt; 0 will be written to the file 
+     * <tt>filename + &quot;.ovr&quot; + k</tt> using the native binary format 
+     * (see {@link IoFormatType#BINARY_GRID}); tile size and compression 
+     * settings will be considered. Note that the full-resolution grid 
+     * (level 0) will not be written, so that the base file 
+     * <tt>filename</tt> can be given in any format.
+     *
+     * @param pyramid Elevation grid pyramid
+     * @param filename Name of the base file (with path optionally)
+     * @throws T3dException for framework-specific errors
+     * @see IoElevationGridReader#readPyramid(String)
+     */
+    public void writeOverviews(GmElevationGridPyramid pyramid, String filename) 
+        throws T3dException
+    {
+        for (int k = 1; k < pyramid.numberOfLevels(); k++)
+            this.writeBinaryGrid(pyramid.getLevel(k), filename + ".ovr" + k);
+    }
+
+    private void writeBinaryGrid(GmSimpleElevationGrid grid, String filename) 
+        throws T3dException 
+    {
+        if (grid == null)
+            throw new T3dException("Grid information not available.");
+
+        GmSimple2dGridGeometry geom = (GmSimple2dGridGeometry) grid.getGeometry();
+        TiledGridFile tgf = new TiledGridFile();
+        tgf.nCols = geom.numberOfColumns();
+        tgf.nRows = geom.numberOfRows();
+        tgf.x0 = geom.getOrigin().getX();
+        tgf.y0 = geom.getOrigin().getY();
+        tgf.z0 = geom.getOrigin().getZ();
+        tgf.dx = geom.getDeltaX();
+        tgf.dy = geom.getDeltaY();
+        tgf.lattice = grid.isLatticeInterpretation();
+        tgf.precision = grid.getStorage().isSinglePrecision() ? 
+            GmSimpleElevationGrid.cSinglePrecision : GmSimpleElevationGrid.cDoublePrecision;
+        tgf.compression = compression;
+        tgf.tileSize = tileSize;
+
+        try {
+            RandomAccessFile raf = new RandomAccessFile(filename, "rw");
+            try {
+                raf.setLength(0L);
+                FileChannel fc = raf.getChannel();
+                int nTiles = tgf.numberOfTiles();
+                tgf.offsets = new long[nTiles + 1];
+                long pos = tgf.dataOffset();
+                for (int t = 0; t < nTiles; t++) {
+                    byte[] data = tgf.encodeTile(
+                        grid.getStorage(), t % tgf.tilesX(), t / tgf.tilesX());
+                    tgf.offsets[t] = pos;
+                    TiledGridFile.writeFully(fc, ByteBuffer.wrap(data), pos);
+                    pos += data.length;
+                }
+                tgf.offsets[nTiles] = pos;
+                tgf.writeHeader(fc);
+            }
+            finally {
+                raf.close();
+            }
+        }
+        catch (FileNotFoundException e) {
+            throw new T3dException("Could not access file \"" + filename + "\".");
+        }
+        catch (IOException e) {
+            throw new T3dException(e.getMessage());
+        }
+    } // writeBinaryGrid()
+
+    // Writes the grid rows starting with the upper row to the given channel. 
+    // Unset values will be replaced by noData, unless noData is NaN.
+    private void writeFloatRows(
+        GmSimpleElevationGrid grid, WritableByteChannel ch, ByteOrder byteOrder, float noData) 
+        throws IOException
+    {
+        int nRows = grid.numberOfRows(), nCols = grid.numberOfColumns();
+        if (nRows <= 0 || nCols <= 0)
+            return;
+        GmElevationGridStorage storage = grid.getStorage();
+        float[] fVal = null;
+        if (storage instanceof GmFloatGridStorage)
+            fVal = ((GmFloatGridStorage) storage).getArray();
+        boolean replaceNaN = !Float.isNaN(noData);
+
+        int rowsPerChunk = Math.max(1, Math.min(nRows, cRawChunkSize / (4 * nCols)));
+        ByteBuffer bb = ByteBuffer.allocateDirect(rowsPerChunk * nCols * 4);
+        bb.order(byteOrder);
+        float[] row = new float[nCols];
+
+        int r = 0;
+        while (r < nRows) {
+            int k = Math.min(rowsPerChunk, nRows - r);
+            bb.clear();
+            FloatBuffer fb = bb.asFloatBuffer();
+            for (int i = 0; i < k; i++, r++) {
+                int offset = (nRows - 1 - r) * nCols;
+                if (fVal != null) {
+                    System.arraycopy(fVal, offset, row, 0, nCols);
+                }
+                else {
+                    for (int j = 0; j < nCols; j++)
+                        row[j] = (float) storage.get(offset + j);
+                }
+                if (replaceNaN) {
+                    for (int j = 0; j < nCols; j++) {
+                        if (Float.isNaN(row[j]))
+                            row[j] = noData;
                     }
-                    wl();
                 }
+                fb.put(row, 0, nCols);
             }
+            bb.limit(k * nCols * 4);
+            while (bb.hasRemaining())
+                ch.write(bb);
+        }
+    }
 
-            w("END");
-            wl();
+    private void writeAcadGeoGrid(GmSimpleElevationGrid grid, String filename) 
+    	throws T3dException 
+    {
+        try {
+            FileOutputStream os = new FileOutputStream(filename);
+            try {
+                NumberEmitter out = this.createNumberEmitter(os);
+
+                GmSimple2dGridGeometry geom = (GmSimple2dGridGeometry) grid.getGeometry();
+
+                out.append("GRID:").newLine(); // line 1
+                out.append("C=OFF").newLine(); // line 2
+                out.append("FROM ").append(Double.toString(geom.envelope().getXMin())); // line 3
+                out.append(' ').append(Double.toString(geom.envelope().getYMin())).newLine();
+                out.append("TO ").append(Double.toString(geom.envelope().getXMax())); // line 4
+                out.append(' ').append(Double.toString(geom.envelope().getYMax())).newLine();
+                out.append("SIZE ").append(geom.numberOfColumns())
+                    .append(" x ").append(geom.numberOfRows()).newLine(); // line 5
+
+                // Write elevation-values for grid vertices:
+                for (int j = 0; j < geom.numberOfColumns(); j++) {
+                    for (int i = 0; i < geom.numberOfRows(); i++) {
+                        if (grid.isSet(i, j)) {
+                            out.z(grid.getValue(i, j));
+                        }
+                        else {
+                            out.append('?');
+                        }
+                        out.newLine();
+                    }
+                }
 
-            doc.close();
+                out.append("END").newLine();
+                out.flush();
+            }
+            finally {
+                os.close();
+            }
         }
         catch (FileNotFoundException e) {
             throw new T3dException("Could not access file \"" + filename + "\".");
@@ -319,61 +646,54 @@ public class IoElevationGridWriter extends IoAbstractWriter
         }
 
         try {
-            doc = new BufferedWriter(new FileWriter(filename));
-
-            GmSimple2dGridGeometry geom = (GmSimple2dGridGeometry) grid.getGeometry();
-
-            w("TINBEGIN"); // line 1
-            wl();
-            w("FORMAT R=OFF C=OFF"); // line 2
-            wl();
-            w("TIN:"); // line 3
-            wl();
-            long numberOfVertices = geom.numberOfColumns() * geom.numberOfRows();
-            w("POINTS " + numberOfVertices); // line 4
-            wl();
-
-            DecimalFormat dfXY = this.getDecimalFormatXY();
-            DecimalFormat dfZ = this.getDecimalFormatZ();
-
-            // Write elevation-values for grid vertices:
-            for (int j = 0; j < geom.numberOfColumns(); j++) {
-                for (int i = 0; i < geom.numberOfRows(); i++) 
-                {
-                    GmPoint pt = new GmPoint(geom.getVertexPoint(i, j));
-                    
-                    w(dfXY.format(pt.getX()) + " " + dfXY.format(pt.getY()));
-                    w(" " + dfZ.format(grid.getValue(i, j)));
-                    wl();
-                }
-            }
+            FileOutputStream os = new FileOutputStream(filename);
+            try {
+                NumberEmitter out = this.createNumberEmitter(os);
 
-            long numberOfTriangles = 
-            	2 * (geom.numberOfColumns() - 1) * (geom.numberOfRows() - 1);
-            w("TRIANGLES " + numberOfTriangles);
-            wl();
-
-            // Write triangulation:
-            int crn1, crn2, crn3, crn4;
-            for (int j = 0; j <= geom.numberOfColumns() - 2; j++) {
-                for (int i = 0; i <= geom.numberOfRows() - 2; i++) 
-                {
-                    crn1 = j * geom.numberOfRows() + i;
-                    crn2 = (j + 1) * geom.numberOfRows() + i;
-                    crn3 = (j + 1) * geom.numberOfRows() + (i + 1);
-                    crn4 = j * geom.numberOfRows() + (i + 1);
-
-                    w("" + crn1 + " " + crn2 + " " + crn4);
-                    wl();
-                    w("" + crn4 + " " + crn2 + " " + crn3);
-                    wl();
+                GmSimple2dGridGeometry geom = (GmSimple2dGridGeometry) grid.getGeometry();
+
+                out.append("TINBEGIN").newLine(); // line 1
+                out.append("FORMAT R=OFF C=OFF").newLine(); // line 2
+                out.append("TIN:").newLine(); // line 3
+                long numberOfVertices = geom.numberOfColumns() * geom.numberOfRows();
+                out.append("POINTS ").append(numberOfVertices).newLine(); // line 4
+
+                // Write elevation-values for grid vertices:
+                for (int j = 0; j < geom.numberOfColumns(); j++) {
+                    for (int i = 0; i < geom.numberOfRows(); i++) 
+                    {
+                        VgPoint pt = geom.getVertexPoint(i, j);
+                        out.xy(pt.getX()).append(' ');
+                        out.xy(pt.getY()).append(' ');
+                        out.z(grid.getValue(i, j)).newLine();
+                    }
                 }
-            }
 
-            w("END");
-            wl();
+                long numberOfTriangles = 
+                    2 * (geom.numberOfColumns() - 1) * (geom.numberOfRows() - 1);
+                out.append("TRIANGLES ").append(numberOfTriangles).newLine();
 
-            doc.close();
+                // Write triangulation:
+                int crn1, crn2, crn3, crn4;
+                for (int j = 0; j <= geom.numberOfColumns() - 2; j++) {
+                    for (int i = 0; i <= geom.numberOfRows() - 2; i++) 
+                    {
+                        crn1 = j * geom.numberOfRows() + i;
+                        crn2 = (j + 1) * geom.numberOfRows() + i;
+                        crn3 = (j + 1) * geom.numberOfRows() + (i + 1);
+                        crn4 = j * geom.numberOfRows() + (i + 1);
+
+                        out.append(crn1).append(' ').append(crn2).append(' ').append(crn4).newLine();
+                        out.append(crn4).append(' ').append(crn2).append(' ').append(crn3).newLine();
+                    }
+                }
+
+                out.append("END").newLine();
+                out.flush();
+            }
+            finally {
+                os.close();
+            }
         }
         catch (FileNotFoundException e) {
             throw new T3dException("Could not access file \"" + filename + "\".");
@@ -390,85 +710,89 @@ public class IoElevationGridWriter extends IoAbstractWriter
     	throws T3dException 
     {
         try {
-            doc = new BufferedWriter(new FileWriter(filename));
-
-            GmSimple2dGridGeometry geom = (GmSimple2dGridGeometry) grid.getGeometry();
-
-            wl("#VRML V1.0 ascii");
-            wl();
-            wl("Separator {");
-            wl();
-            wl("  DEF SceneInfo Info {");
-            wl("    string \"Generated by 52N Triturus\"");
-            w("  }");
-            wl();
-            wl("  ShapeHints {");
-            wl("    vertexOrdering CLOCKWISE");
-            wl("    shapeType SOLID");
-            wl("    faceType CONVEX");
-            wl("    creaseAngle 0.0");
-            wl("  }");
-            wl();
-            wl("  DEF Green_DEM Separator {");
-            wl("    Material {");
-            wl("      diffuseColor 0.0 1.0 0.0");
-            wl("      ambientColor 0.0 0.1 0.0");
-            wl("      specularColor 0.8 0.8 0.8");
-            wl("      shininess 0.1");
-            wl("    }");
-            wl("    Coordinate3 {");
-            wl("      point [");
-
-            // VRML part 1 (vertices):
-            DecimalFormat dfXY = this.getDecimalFormatZ();
-            DecimalFormat dfZ = this.getDecimalFormatZ();
-
-            for (int j = 0; j < geom.numberOfColumns(); j++) {
-                for (int i = 0; i < geom.numberOfRows(); i++) 
-                {
-                    GmPoint pt = new GmPoint(geom.getVertexPoint(i, j));
-                    wl("        " 
-                    		+ dfXY.format(pt.getX()) + " " 
-                    		+ dfXY.format(pt.getY()) + " " 
-                    		+ dfZ.format(grid.getValue(i, j)));
+            FileOutputStream os = new FileOutputStream(filename);
+            try {
+                NumberEmitter out = this.createNumberEmitter(os);
+
+                GmSimple2dGridGeometry geom = (GmSimple2dGridGeometry) grid.getGeometry();
+
+                out.append("#VRML V1.0 ascii").newLine();
+                out.newLine();
+                out.append("Separator {").newLine();
+                out.newLine();
+                out.append("  DEF SceneInfo Info {").newLine();
+                out.append("    string \"Generated by 52N Triturus\"").newLine();
+                out.append("  }").newLine();
+                out.append("  ShapeHints {").newLine();
+                out.append("    vertexOrdering CLOCKWISE").newLine();
+                out.append("    shapeType SOLID").newLine();
+                out.append("    faceType CONVEX").newLine();
+                out.append("    creaseAngle 0.0").newLine();
+                out.append("  }").newLine();
+                out.newLine();
+                out.append("  DEF Green_DEM Separator {").newLine();
+                out.append("    Material {").newLine();
+                out.append("      diffuseColor 0.0 1.0 0.0").newLine();
+                out.append("      ambientColor 0.0 0.1 0.0").newLine();
+                out.append("      specularColor 0.8 0.8 0.8").newLine();
+                out.append("      shininess 0.1").newLine();
+                out.append("    }").newLine();
+                out.append("    Coordinate3 {").newLine();
+                out.append("      point [").newLine();
+
+                // VRML part 1 (vertices):
+                // Note: The z-precision is used for x and y, too.
+                for (int j = 0; j < geom.numberOfColumns(); j++) {
+                    for (int i = 0; i < geom.numberOfRows(); i++) 
+                    {
+                        VgPoint pt = geom.getVertexPoint(i, j);
+                        out.append("        ");
+                        out.z(pt.getX()).append(' ');
+                        out.z(pt.getY()).append(' ');
+                        out.z(grid.getValue(i, j)).newLine();
+                    }
                 }
-            }
 
-            wl("      ]");
-            wl("    }");
-            wl();
+                out.append("      ]").newLine();
+                out.append("    }").newLine();
+                out.newLine();
 
-            // VRML part 2 (mesh topology):
-            wl("    IndexedFaceSet {");
-            wl("      coordIndex [");
+                // VRML part 2 (mesh topology):
+                out.append("    IndexedFaceSet {").newLine();
+                out.append("      coordIndex [").newLine();
             
-            int crn1, crn2, crn3, crn4;
-            for (int j = 0; j <= geom.numberOfColumns() - 2; j++) {
-                for (int i = 0; i < geom.numberOfRows() - 2; i++) 
-                {
-                    crn1 = j * geom.numberOfRows() + i;
-                    crn2 = (j + 1) * geom.numberOfRows() + i;
-                    crn3 = (j + 1) * geom.numberOfRows() + (i + 1);
-                    crn4 = j * geom.numberOfRows() + (i + 1);
-
-                    if (
-                    		grid.isSet(i, j) && 
-                    		grid.isSet(i, j + 1) && 
-                    		grid.isSet(i + 1, j + 1) && 
-                    		grid.isSet(i + 1, j)) 
+                int crn1, crn2, crn3, crn4;
+                for (int j = 0; j <= geom.numberOfColumns() - 2; j++) {
+                    for (int i = 0; i < geom.numberOfRows() - 2; i++) 
                     {
-                        wl("        " + crn1 + ", " + crn2 + ", " + crn4 + ", -1,");
-                        wl("        " + crn4 + ", " + crn2 + ", " + crn3 + ", -1,");
+                        crn1 = j * geom.numberOfRows() + i;
+                        crn2 = (j + 1) * geom.numberOfRows() + i;
+                        crn3 = (j + 1) * geom.numberOfRows() + (i + 1);
+                        crn4 = j * geom.numberOfRows() + (i + 1);
+
+                        if (
+                        		grid.isSet(i, j) && 
+                        		grid.isSet(i, j + 1) && 
+                        		grid.isSet(i + 1, j + 1) && 
+                        		grid.isSet(i + 1, j)) 
+                        {
+                            out.append("        ").append(crn1).append(", ").append(crn2)
+                                .append(", ").append(crn4).append(", -1,").newLine();
+                            out.append("        ").append(crn4).append(", ").append(crn2)
+                                .append(", ").append(crn3).append(", -1,").newLine();
+                        }
                     }
                 }
-            }
-
-            wl("      ]");
-            wl("    }");
-            wl("  }");
-            wl("}");
 
-            doc.close();
+                out.append("      ]").newLine();
+                out.append("    }").newLine();
+                out.append("  }").newLine();
+                out.append("}").newLine();
+                out.flush();
+            }
+            finally {
+                os.close();
+            }
         }
         catch (FileNotFoundException e) {
             throw new T3dException("Could not access file \"" + filename + "\".");
@@ -484,7 +808,8 @@ public class IoElevationGridWriter extends IoAbstractWriter
     /**
      * enables the export of hypsometric colored models. As parameter, a hypsometric 
      * a color-mapper has to be given or <i>null</i>, if no coloring shall be carried 
-     * out. Note that this mode is supported for the {@link VRML2} format only.
+     * out. Note that this mode is supported for the {@link VRML2} and GLB 
+     * formats only.
      *
      * @param colMap Hypsometric color-assignment or <i>null</i> for no coloring 
      */
@@ -494,7 +819,7 @@ public class IoElevationGridWriter extends IoAbstractWriter
 
     /**
      * sets a vertical &quot"exaggeration&quot; factor. Note that this mode is 
-     * supported for the {@link VRML2} export only.
+     * supported for the {@link VRML2} and GLB exports only.
      *
      * @param exaggeration Exaggeration factor
      */
@@ -506,127 +831,127 @@ public class IoElevationGridWriter extends IoAbstractWriter
     	throws T3dException 
     {
         try {
-            doc = new BufferedWriter(new FileWriter(filename));
-
-            GmSimple2dGridGeometry geom = (GmSimple2dGridGeometry) grid.getGeometry();
-
-            // Upper left DEM corner:
-            double ox = geom.envelope().getXMin();
-            double oy = geom.envelope().getYMin();
-
-            // The DEM's center point:
-            double cx = geom.envelope().getCenterPoint().getX();
-            double cy = geom.envelope().getCenterPoint().getY();
-
-            // Fovy:
-            double fovy = 0.785398; // i.e., 45 degrees
-            double zCamera = grid.maximalElevation() + 
-            		0.5 * geom.envelope().diagonalLength() / Math.tan(0.5 * fovy);
-
-            wl("#VRML V2.0 utf8");
-            wl();
-            wl("WorldInfo {");
-            wl("    title \"Triturus document\"");
-            wl("    info \"Generated by 52N Triturus\"");
-            wl("}");
-            wl();
-            wl("Background {");
-            wl("    skyColor 0.0 0.8 0.8");
-            wl("}");
-            wl();
-            wl("NavigationInfo {");
-            wl("    type \"EXAMINE\"");
-            wl("}");
-            wl();
-            wl("Viewpoint {");
-            wl("    fieldOfView " + fovy);
-            wl("    orientation 1.0 0.0 0.0 4.712");
-            wl("    position " + cx + " " + zCamera + " " + cy);
-            wl("    description \"default\"");
-            wl("}");
-            wl();
-            wl("Group { children [");
-            wl("DEF Relief Transform {");
-            w("    scale 1 " + exaggeration + " 1"); // Exaggeration
-            wl("    children [");
-            wl("        Transform {");
-            wl("            translation " + ox + " 0.0 " + oy);
-            wl("            children [");
-            wl("                Shape {");
-            wl("                    appearance Appearance {");
-            wl("                        material Material {");
-            // w("                            diffuseColor 0.2 0.5 0.2"); lDat.newLine();
-            wl("                        }");
-            wl("                    }");
-            wl("                    geometry ElevationGrid {");
-            wl("                        xDimension " + geom.numberOfColumns());
-            wl("                        zDimension " + geom.numberOfRows());
-            wl("                        xSpacing " + geom.getDeltaX());
-            wl("                        zSpacing " + +geom.getDeltaY());
-            wl("                        height [");
+            FileOutputStream os = new FileOutputStream(filename);
+            try {
+                NumberEmitter out = this.createNumberEmitter(os);
+
+                GmSimple2dGridGeometry geom = (GmSimple2dGridGeometry) grid.getGeometry();
+
+                // Upper left DEM corner:
+                double ox = geom.envelope().getXMin();
+                double oy = geom.envelope().getYMin();
+
+                // The DEM's center point:
+                double cx = geom.envelope().getCenterPoint().getX();
+                double cy = geom.envelope().getCenterPoint().getY();
+
+                // Fovy:
+                double fovy = 0.785398; // i.e., 45 degrees
+                double zCamera = grid.maximalElevation() + 
+                		0.5 * geom.envelope().diagonalLength() / Math.tan(0.5 * fovy);
+
+                out.append("#VRML V2.0 utf8").newLine();
+                out.newLine();
+                out.append("WorldInfo {").newLine();
+                out.append("    title \"Triturus document\"").newLine();
+                out.append("    info \"Generated by 52N Triturus\"").newLine();
+                out.append("}").newLine();
+                out.newLine();
+                out.append("Background {").newLine();
+                out.append("    skyColor 0.0 0.8 0.8").newLine();
+                out.append("}").newLine();
+                out.newLine();
+                out.append("NavigationInfo {").newLine();
+                out.append("    type \"EXAMINE\"").newLine();
+                out.append("}").newLine();
+                out.newLine();
+                out.append("Viewpoint {").newLine();
+                out.append("    fieldOfView ").append(Double.toString(fovy)).newLine();
+                out.append("    orientation 1.0 0.0 0.0 4.712").newLine();
+                out.append("    position ").append(Double.toString(cx))
+                    .append(' ').append(Double.toString(zCamera))
+                    .append(' ').append(Double.toString(cy)).newLine();
+                out.append("    description \"default\"").newLine();
+                out.append("}").newLine();
+                out.newLine();
+                out.append("Group { children [").newLine();
+                out.append("DEF Relief Transform {").newLine();
+                out.append("    scale 1 ").append(Double.toString(exaggeration)).append(" 1"); // Exaggeration
+                out.append("    children [").newLine();
+                out.append("        Transform {").newLine();
+                out.append("            translation ").append(Double.toString(ox))
+                    .append(" 0.0 ").append(Double.toString(oy)).newLine();
+                out.append("            children [").newLine();
+                out.append("                Shape {").newLine();
+                out.append("                    appearance Appearance {").newLine();
+                out.append("                        material Material {").newLine();
+                // w("                            diffuseColor 0.2 0.5 0.2"); lDat.newLine();
+                out.append("                        }").newLine();
+                out.append("                    }").newLine();
+                out.append("                    geometry ElevationGrid {").newLine();
+                out.append("                        xDimension ").append(geom.numberOfColumns()).newLine();
+                out.append("                        zDimension ").append(geom.numberOfRows()).newLine();
+                out.append("                        xSpacing ").append(Double.toString(geom.getDeltaX())).newLine();
+                out.append("                        zSpacing ").append(Double.toString(geom.getDeltaY())).newLine();
+                out.append("                        height [").newLine();
             
-            DecimalFormat dfZ = this.getDecimalFormatZ();
-
-            for (int i = geom.numberOfRows() - 1; i >= 0; i--) {
-                for (int j = 0; j < geom.numberOfColumns(); j++) {
-                    w(dfZ.format(grid.getValue(i, j)) + ",");
+                for (int i = geom.numberOfRows() - 1; i >= 0; i--) {
+                    for (int j = 0; j < geom.numberOfColumns(); j++) {
+                        out.z(grid.getValue(i, j)).append(',');
+                    }
+                    out.newLine();
                 }
-                wl();
-            }
 
-            w("                        ]");
-            wl(); // End height
+                out.append("                        ]").newLine(); // End height
 
-            if (hypsometricColMap != null) {
-                wl("                        colorPerVertex TRUE");
-                wl("                        color Color {");
-                wl("                            color [");
+                if (hypsometricColMap != null) {
+                    out.append("                        colorPerVertex TRUE").newLine();
+                    out.append("                        color Color {").newLine();
+                    out.append("                            color [").newLine();
                 
-                for (int i = geom.numberOfRows() - 1; i >= 0; i--) {
-                    for (int j = 0; j < geom.numberOfColumns(); j++) {
-                        T3dColor col = hypsometricColMap.transform(grid.getValue(i, j));                    
-                        wl(col.getRed() + " " + col.getGreen() + " " + col.getBlue() + ",");
+                    for (int i = geom.numberOfRows() - 1; i >= 0; i--) {
+                        for (int j = 0; j < geom.numberOfColumns(); j++) {
+                            T3dColor col = hypsometricColMap.transform(grid.getValue(i, j));                    
+                            out.append(Float.toString(col.getRed())).append(' ')
+                                .append(Float.toString(col.getGreen())).append(' ')
+                                .append(Float.toString(col.getBlue())).append(',').newLine();
+                        }
                     }
-                }
                 
-                wl("                            ]");
-                w("                        }");
-                wl(); // End color
-            }
+                    out.append("                            ]").newLine();
+                    out.append("                        }").newLine(); // End color
+                }
 
-            w("                    }");
-            wl(); // End geometry
-            w("                }");
-            wl(); // End Shape
-            w("            ]");
-            wl(); // End children
-            w("        }");
-            wl(); // End Transform Translation
-            w("    ]");
-            wl(); // End children
-            w("}");
-            wl(); // End Transform exaggeration
-            wl(", DEF Sensor TouchSensor {} ] }");
-
-            /*
-            wl("DEF Clock TimeSensor {");
-            wl("  cycleInterval 20.0");
-            wl("  enabled FALSE");
-            wl("  loop TRUE");
-            wl("}");
-            wl("DEF Interpolator PositionInterpolator {");
-            wl("  key [0.0, 0.5, 1.0]");
-            wl("  keyValue [ 1 0 1, 1 10 1, 1 1 1 ]");
-            wl("}");
-            wl("ROUTE Sensor.touchTime TO Clock.startTime");
-            wl("ROUTE Sensor.isActive TO Clock.set_enabled");
-            wl("ROUTE Clock.fraction_changed TO Interpolator.set_fraction");
-            wl("ROUTE Interpolator.value_changed TO Relief.set_scale");
-            */
+                out.append("                    }").newLine(); // End geometry
+                out.append("                }").newLine(); // End Shape
+                out.append("            ]").newLine(); // End children
+                out.append("        }").newLine(); // End Transform Translation
+                out.append("    ]").newLine(); // End children
+                out.append("}").newLine(); // End Transform exaggeration
+                out.append(", DEF Sensor TouchSensor {} ] }").newLine();
+
+                /*
+                wl("DEF Clock TimeSensor {");
+                wl("  cycleInterval 20.0");
+                wl("  enabled FALSE");
+                wl("  loop TRUE");
+                wl("}");
+                wl("DEF Interpolator PositionInterpolator {");
+                wl("  key [0.0, 0.5, 1.0]");
+                wl("  keyValue [ 1 0 1, 1 10 1, 1 1 1 ]");
+                wl("}");
+                wl("ROUTE Sensor.touchTime TO Clock.startTime");
+                wl("ROUTE Sensor.isActive TO Clock.set_enabled");
+                wl("ROUTE Clock.fraction_changed TO Interpolator.set_fraction");
+                wl("ROUTE Interpolator.value_changed TO Relief.set_scale");
+                */
             
-            wl();
-
-            doc.close(); // Don't forget this!
+                out.newLine();
+                out.flush(); // Don't forget this!
+            }
+            finally {
+                os.close();
+            }
         }
         catch (FileNotFoundException e) {
             throw new T3dException("Could not access file \"" + filename + "\".");
@@ -645,80 +970,85 @@ public class IoElevationGridWriter extends IoAbstractWriter
         final double lExaggeration = 7.;
 
         try {
-            doc = new BufferedWriter(new FileWriter(filename));
-
-            GmSimple2dGridGeometry geom = (GmSimple2dGridGeometry) grid.getGeometry();
-            if (isX3dom) {
-                wl("<html xmlns='http://www.w3.org/1999/xhtml'>");
-                wl("<head>");
-                // @Adhitya: This should be later changed to links pointing to the actual repository
-                wl("<link rel=\"stylesheet\" type=\"text/css\" href=\"https://rawgit.com/kamakshidasan/triturus/master/src/main/resources/css/x3dom.css\" />");
-                wl("<script type=\"text/javascript\" src=\"https://rawgit.com/kamakshidasan/triturus/master/src/main/resources/js/x3dom-full.js\"></script>");
-                //wl("<script type=\"text/javascript\" src=\"../src/main/resources/js/select.js\"></script>");
-                wl("</head>");
-                wl("<body>");
-            }
-            wl("<X3D profile='Immersive' height='400px' width='400px' showLog='false'>");
-            wl("  <Scene id=\"root\">");
+            FileOutputStream os = new FileOutputStream(filename);
+            try {
+                NumberEmitter out = this.createNumberEmitter(os);
+
+                GmSimple2dGridGeometry geom = (GmSimple2dGridGeometry) grid.getGeometry();
+                if (isX3dom) {
+                    out.append("<html xmlns='http://www.w3.org/1999/xhtml'>").newLine();
+                    out.append("<head>").newLine();
+                    // @Adhitya: This should be later changed to links pointing to the actual repository
+                    out.append("<link rel=\"stylesheet\" type=\"text/css\" href=\"https://rawgit.com/kamakshidasan/triturus/master/src/main/resources/css/x3dom.css\" />").newLine();
+                    out.append("<script type=\"text/javascript\" src=\"https://rawgit.com/kamakshidasan/triturus/master/src/main/resources/js/x3dom-full.js\"></script>").newLine();
+                    //wl("<script type=\"text/javascript\" src=\"../src/main/resources/js/select.js\"></script>");
+                    out.append("</head>").newLine();
+                    out.append("<body>").newLine();
+                }
+                out.append("<X3D profile='Immersive' height='400px' width='400px' showLog='false'>").newLine();
+                out.append("  <Scene id=\"root\">").newLine();
 
-            // DEM center point:
-            double px = geom.numberOfColumns() / 2. * geom.getDeltaX();
-            double py = geom.numberOfRows() / 2. * geom.getDeltaY();
-            double pz = (grid.maximalElevation() + grid.minimalElevation()) / 2.;
+                // DEM center point:
+                double px = geom.numberOfColumns() / 2. * geom.getDeltaX();
+                double py = geom.numberOfRows() / 2. * geom.getDeltaY();
+                double pz = (grid.maximalElevation() + grid.minimalElevation()) / 2.;
             
-            System.out.println("Origin: "+geom.getOrigin());
-
-            // Camera position and rotation point:
-            wl("    <navigationInfo type='\"EXAMINE\" \"WALK\" \"FLY\" \"ANY\"'></navigationInfo>");
-            w("    <Viewpoint description=\"Top view\" orientation=\"1 0 0 -1.57\" position=\"");
-            w("" + px + " " + (lExaggeration * 10. * pz) + " " + py);
-            w("\" centerOfRotation=\"" + px + " " + (lExaggeration * pz) + " " + py + "\"></Viewpoint>");
-            wl();
+                System.out.println("Origin: "+geom.getOrigin());
+
+                // Camera position and rotation point:
+                out.append("    <navigationInfo type='\"EXAMINE\" \"WALK\" \"FLY\" \"ANY\"'></navigationInfo>").newLine();
+                out.append("    <Viewpoint description=\"Top view\" orientation=\"1 0 0 -1.57\" position=\"");
+                out.append(Double.toString(px)).append(' ')
+                    .append(Double.toString(lExaggeration * 10. * pz)).append(' ')
+                    .append(Double.toString(py));
+                out.append("\" centerOfRotation=\"").append(Double.toString(px)).append(' ')
+                    .append(Double.toString(lExaggeration * pz)).append(' ')
+                    .append(Double.toString(py)).append("\"></Viewpoint>").newLine();
             
-            w("    <MetadataDouble DEF=\"origin\" name=\"elevation_origin\"" +
-            		" value='"+
-                    (geom.envelope().getXMin() - geom.getDeltaX() / 2.) + ", " + 
-                    (geom.envelope().getYMin() - geom.getDeltaY() / 2.) + 
-                    "'></MetadataDouble>");
-            wl();
+                out.append("    <MetadataDouble DEF=\"origin\" name=\"elevation_origin\" value='")
+                    .append(Double.toString(geom.envelope().getXMin() - geom.getDeltaX() / 2.)).append(", ")
+                    .append(Double.toString(geom.envelope().getYMin() - geom.getDeltaY() / 2.))
+                    .append("'></MetadataDouble>").newLine();
             
-            wl("    <Transform id=\"elevationTransform\" scale=\"1 " + (lExaggeration) + " 1\">");
-            wl("    <Shape>");
-            wl("      <Appearance>");
-            wl("        <Material/>");
-            wl("      </Appearance>");
-            w("      <ElevationGrid id=\"grid\" solid=\"false\"");
-
-            // Grid parameters:
-            w(" xDimension=\"" + geom.numberOfColumns());
-            w("\" xSpacing=\"" + geom.getDeltaX());
-            w("\" zDimension=\"" + geom.numberOfRows());
-            w("\" zSpacing=\"" + geom.getDeltaY());
-            wl("\"");
+                out.append("    <Transform id=\"elevationTransform\" scale=\"1 ")
+                    .append(Double.toString(lExaggeration)).append(" 1\">").newLine();
+                out.append("    <Shape>").newLine();
+                out.append("      <Appearance>").newLine();
+                out.append("        <Material/>").newLine();
+                out.append("      </Appearance>").newLine();
+                out.append("      <ElevationGrid id=\"grid\" solid=\"false\"");
+
+                // Grid parameters:
+                out.append(" xDimension=\"").append(geom.numberOfColumns());
+                out.append("\" xSpacing=\"").append(Double.toString(geom.getDeltaX()));
+                out.append("\" zDimension=\"").append(geom.numberOfRows());
+                out.append("\" zSpacing=\"").append(Double.toString(geom.getDeltaY()));
+                out.append('"').newLine();
             
-            w("      height=\"");
+                out.append("      height=\"");
 
-            DecimalFormat dfZ = this.getDecimalFormatZ();
-
-            // Elevation-values:
-            for (int i = geom.numberOfRows() - 1; i >= 0; i--) {
-                for (int j = 0; j < geom.numberOfColumns(); j++) {
-                    w("" + dfZ.format(grid.getValue(i, j)) + " ");
+                // Elevation-values:
+                for (int i = geom.numberOfRows() - 1; i >= 0; i--) {
+                    for (int j = 0; j < geom.numberOfColumns(); j++) {
+                        out.z(grid.getValue(i, j)).append(' ');
+                    }
                 }
-            }
             
-            wl("\">");
-            wl("      </ElevationGrid>");
-            wl("    </Shape>");
-            wl("    </Transform>");
-            wl("  </Scene>");
-            wl("</X3D>");
-            if (isX3dom) {
-                wl("</body>");
-                wl("</html>");
+                out.append("\">").newLine();
+                out.append("      </ElevationGrid>").newLine();
+                out.append("    </Shape>").newLine();
+                out.append("    </Transform>").newLine();
+                out.append("  </Scene>").newLine();
+                out.append("</X3D>").newLine();
+                if (isX3dom) {
+                    out.append("</body>").newLine();
+                    out.append("</html>").newLine();
+                }
+                out.flush();
+            }
+            finally {
+                os.close();
             }
-            
-            doc.close();
         }
         catch (FileNotFoundException e) {
             throw new T3dException("Could not access file \"" + filename + "\".");
@@ -738,26 +1068,33 @@ public class IoElevationGridWriter extends IoAbstractWriter
             throw new T3dException("Grid information not available.");
 
         try {
-            doc = new BufferedWriter(new FileWriter(filename));
-
-            GmSimple2dGridGeometry geom = ((GmSimple2dGridGeometry) grid.getGeometry());
-
-            DecimalFormat dfXY = this.getDecimalFormatZ();
-            DecimalFormat dfZ = this.getDecimalFormatZ();
-
-            for (int j = 0; j < grid.numberOfColumns(); j++) {
-                for (int i = 0; i < grid.numberOfRows(); i++) 
-                {
-                    if (grid.isSet(i, j)) {
-                        VgPoint pt = geom.getVertexPoint(i, j);                        
-                        wl(
-                        	dfXY.format(pt.getX()) + " " +
-                        	dfXY.format(pt.getY()) + " " +
-                        	dfZ.format(grid.getValue(i, j)));
+            FileOutputStream os = new FileOutputStream(filename);
+            try {
+                GmSimple2dGridGeometry geom = ((GmSimple2dGridGeometry) grid.getGeometry());
+                GmElevationGridStorage storage = grid.getStorage();
+                int nCols = grid.numberOfColumns();
+                double 
+                    x0 = geom.getOrigin().getX(), y0 = geom.getOrigin().getY(),
+                    dx = geom.getDeltaX(), dy = geom.getDeltaY();
+
+                // Note: The z-precision is used for x and y, too.
+                NumberEmitter out = this.createNumberEmitter(os);
+                for (int j = 0; j < nCols; j++) {
+                    for (int i = 0; i < grid.numberOfRows(); i++) 
+                    {
+                        double z = storage.get(i * nCols + j);
+                        if (!Double.isNaN(z)) {
+                            out.z(x0 + ((double) j) * dx).append(' ');
+                            out.z(y0 + ((double) i) * dy).append(' ');
+                            out.z(z).newLine();
+                        }
                     }
                 }
+                out.flush();
+            }
+            finally {
+                os.close();
             }
-            doc.close();
         }
         catch (FileNotFoundException e) {
             throw new T3dException("Could not access file \"" + filename + "\".");
@@ -774,52 +1111,60 @@ public class IoElevationGridWriter extends IoAbstractWriter
     	throws T3dException
     {
         try {
-        	doc = new BufferedWriter(new FileWriter(filename));
+            FileOutputStream os = new FileOutputStream(filename);
+            try {
+                NumberEmitter out = this.createNumberEmitter(os);
         	
-        	GmSimple2dGridGeometry geom = (GmSimple2dGridGeometry) grid.getGeometry();
+                GmSimple2dGridGeometry geom = (GmSimple2dGridGeometry) grid.getGeometry();
             
-            double 
-            	scale = 1.,
-            	offsetX = 0.,
-            	offsetY = 0.;  
+                double 
+                    scale = 1.,
+                    offsetX = 0.,
+                    offsetY = 0.;  
             
-            wl("# test file");
-            wl("o ElevationGrid");
+                out.append("# test file").newLine();
+                out.append("o ElevationGrid").newLine();
             
-            // Write vertex information:
-            // DecimalFormat dfXY = this.getDecimalFormatXY();
-            // DecimalFormat dfZ = this.getDecimalFormatZ();
-            GmPoint pt;
-            for (int j = 0; j < geom.numberOfColumns(); j++) {
-                for (int i = 0; i < geom.numberOfRows(); i++) 
-                {
-                	if (grid.isSet(i, j))
-                		pt = new GmPoint(grid.getPoint(i, j));
-                	else
-                		pt = new GmPoint(0., 0., 0.); // dummy values
+                // Write vertex information. Note that OBJ coordinates are 
+                // written with full precision (Double.toString()), i.e. the 
+                // precision settings are not applied:
+                VgPoint pt;
+                for (int j = 0; j < geom.numberOfColumns(); j++) {
+                    for (int i = 0; i < geom.numberOfRows(); i++) 
+                    {
+                        if (grid.isSet(i, j))
+                            pt = grid.getPoint(i, j);
+                        else
+                            pt = new GmPoint(0., 0., 0.); // dummy values
                 	
-                	wl("v "+ (pt.getX() * scale + offsetX) + " " + (pt.getY() * scale + offsetY) + " " + (pt.getZ() * scale) );
+                        out.append("v ").append(Double.toString(pt.getX() * scale + offsetX));
+                        out.append(' ').append(Double.toString(pt.getY() * scale + offsetY));
+                        out.append(' ').append(Double.toString(pt.getZ() * scale)).newLine();
+                    }
                 }
-            }
             
-            wl("s off"); // disable smoothing 
+                out.append("s off").newLine(); // disable smoothing 
             
-            // Write face information:
-            int crn1, crn2, crn3, crn4;
-            for (int j = 0; j < geom.numberOfColumns() - 1; j++) {
-                for (int i = 0; i < geom.numberOfRows() - 1; i++) 
-                {
-                	if (grid.isSet(i, j) && grid.isSet(i + 1, j) && grid.isSet(i + 1, j + 1) && grid.isSet(i, j + 1)) {
-                		crn1 = i + j * geom.numberOfRows();
-                		crn2 = (i + 1) + j * geom.numberOfRows();
-                		crn3 = (i + 1) + (j + 1) * geom.numberOfRows();
-                		crn4 = i + (j + 1) * geom.numberOfRows();
-                    	wl("f " + (crn1 + 1) + " " + (crn2 + 1) + " " + (crn3 + 1) + " " + (crn4 + 1));
-                	}
+                // Write face information:
+                int crn1, crn2, crn3, crn4;
+                for (int j = 0; j < geom.numberOfColumns() - 1; j++) {
+                    for (int i = 0; i < geom.numberOfRows() - 1; i++) 
+                    {
+                        if (grid.isSet(i, j) && grid.isSet(i + 1, j) && grid.isSet(i + 1, j + 1) && grid.isSet(i, j + 1)) {
+                            crn1 = i + j * geom.numberOfRows();
+                            crn2 = (i + 1) + j * geom.numberOfRows();
+                            crn3 = (i + 1) + (j + 1) * geom.numberOfRows();
+                            crn4 = i + (j + 1) * geom.numberOfRows();
+                            out.append("f ").append(crn1 + 1).append(' ').append(crn2 + 1)
+                                .append(' ').append(crn3 + 1).append(' ').append(crn4 + 1).newLine();
+                        }
+                    }
                 }
+                out.flush();
+            }
+            finally {
+                os.close();
             }
-            
-			doc.close();	
 		} 
         catch (IOException e) {
 			throw new T3dException(e.getMessage());
@@ -830,108 +1175,99 @@ public class IoElevationGridWriter extends IoAbstractWriter
        	throws T3dException
     {
         try {
-        	doc = new BufferedWriter(new FileWriter(filename));
+            FileOutputStream os = new FileOutputStream(filename);
+            try {
+                NumberEmitter out = this.createNumberEmitter(os);
         	
-        	GmSimple2dGridGeometry geom = (GmSimple2dGridGeometry) grid.getGeometry();
+                GmSimple2dGridGeometry geom = (GmSimple2dGridGeometry) grid.getGeometry();
             
-            wl("# vtk DataFile Version 3.0 generated by 52N Triturus");
-            wl("vtk output");
-            wl("ASCII");
-            wl("DATASET POLYDATA");
+                out.append("# vtk DataFile Version 3.0 generated by 52N Triturus").newLine();
+                out.append("vtk output").newLine();
+                out.append("ASCII").newLine();
+                out.append("DATASET POLYDATA").newLine();
             
-            int 
-            	nRows = geom.numberOfRows(),
-            	nCols = geom.numberOfColumns();
+                int 
+                    nRows = geom.numberOfRows(),
+                    nCols = geom.numberOfColumns();
             	
-            DecimalFormat dfXY = this.getDecimalFormatXY();
-            DecimalFormat dfZ = this.getDecimalFormatZ();
-            
-        	wl("POINTS " + (nRows * nCols) + " float");
-        	GmPoint pt;
-            for (int j = 0; j < geom.numberOfColumns(); j++) {
-                for (int i = 0; i < geom.numberOfRows(); i++) 
-                {
-                	if (grid.isSet(i, j))
-                		pt = new GmPoint(grid.getPoint(i, j));
-                	else
-                		pt = new GmPoint(0., 0., 0.); // dummy values
-
-                    w(dfXY.format(pt.getX()));
-                    w(" " + dfXY.format(pt.getY()));
-                    wl(" " + dfZ.format(pt.getZ()));
+                out.append("POINTS ").append(nRows * nCols).append(" float").newLine();
+                VgPoint pt;
+                for (int j = 0; j < geom.numberOfColumns(); j++) {
+                    for (int i = 0; i < geom.numberOfRows(); i++) 
+                    {
+                        if (grid.isSet(i, j))
+                            pt = grid.getPoint(i, j);
+                        else
+                            pt = new GmPoint(0., 0., 0.); // dummy values
+
+                        out.xy(pt.getX()).append(' ');
+                        out.xy(pt.getY()).append(' ');
+                        out.z(pt.getZ()).newLine();
+                    }
                 }
-            }
             
-            // Pass 1: Determine number of cells
-            int nCells = 0;
-            for (int j = 0; j < nCols - 1; j++) {
-                for (int i = 0; i < nRows - 1; i++) 
-                {
-                	if (grid.isSet(i, j) && grid.isSet(i + 1, j) && grid.isSet(i + 1, j + 1) && grid.isSet(i, j + 1)) {
-                		nCells++;
-                	}
+                // Pass 1: Determine number of cells
+                int nCells = 0;
+                for (int j = 0; j < nCols - 1; j++) {
+                    for (int i = 0; i < nRows - 1; i++) 
+                    {
+                        if (grid.isSet(i, j) && grid.isSet(i + 1, j) && grid.isSet(i + 1, j + 1) && grid.isSet(i, j + 1)) {
+                            nCells++;
+                        }
+                    }
                 }
-            }
-            w("POLYGONS " + nCells);
-            wl(" " + (5 * nCells));
-
-            // Pass 2: Write cell data
-            int crn1, crn2, crn3, crn4;
-            for (int j = 0; j < nCols - 1; j++) {
-                for (int i = 0; i < nRows - 1; i++) 
-                {
-                	if (grid.isSet(i, j) && grid.isSet(i + 1, j) && grid.isSet(i + 1, j + 1) && grid.isSet(i, j + 1)) {
-                		crn1 = i + j * nRows;
-                		crn2 = (i + 1) + j * nRows;
-                		crn3 = (i + 1) + (j + 1) * nRows;
-                		crn4 = i + (j + 1) * nRows;
-                        w("4"); // number of polygon vertices
-                        w(" " + crn1);
-                        w(" " + crn2);
-                        w(" " + crn3);
-                        w(" " + crn4);
-                        wl();
-                	}
+                out.append("POLYGONS ").append(nCells).append(' ').append(5 * nCells).newLine();
+
+                // Pass 2: Write cell data
+                int crn1, crn2, crn3, crn4;
+                for (int j = 0; j < nCols - 1; j++) {
+                    for (int i = 0; i < nRows - 1; i++) 
+                    {
+                        if (grid.isSet(i, j) && grid.isSet(i + 1, j) && grid.isSet(i + 1, j + 1) && grid.isSet(i, j + 1)) {
+                            crn1 = i + j * nRows;
+                            crn2 = (i + 1) + j * nRows;
+                            crn3 = (i + 1) + (j + 1) * nRows;
+                            crn4 = i + (j + 1) * nRows;
+                            out.append('4'); // number of polygon vertices
+                            out.append(' ').append(crn1);
+                            out.append(' ').append(crn2);
+                            out.append(' ').append(crn3);
+                            out.append(' ').append(crn4);
+                            out.newLine();
+                        }
+                    }
                 }
-            }
 
-            // Write field data:
-//          if (this.exportZ)
-//          {
-	          	wl("POINT_DATA " + (nRows * nCols));            	
-
-	        	wl("SCALARS Z float 1");
-	        	wl("LOOKUP_TABLE default");
-
-	            for (int j = 0; j < geom.numberOfColumns(); j++) {
-	                for (int i = 0; i < geom.numberOfRows(); i++) 
-	                {
-			        	if (grid.isSet(i, j))
-		            		pt = new GmPoint(grid.getPoint(i, j));
-		            	else
-		            		pt = new GmPoint(0., 0., 0.); // dummy values
-		
-		                wl("" + dfZ.format(pt.getZ()));
-	                }
-	            }
-//         	}
-
-			doc.close();	
+                // Write field data:
+//              if (this.exportZ)
+//              {
+                    out.append("POINT_DATA ").append(nRows * nCols).newLine();            	
+
+                    out.append("SCALARS Z float 1").newLine();
+                    out.append("LOOKUP_TABLE default").newLine();
+
+                    for (int j = 0; j < geom.numberOfColumns(); j++) {
+                        for (int i = 0; i < geom.numberOfRows(); i++) 
+                        {
+                            if (grid.isSet(i, j))
+                                out.z(grid.getValue(i, j));
+                            else
+                                out.z(0.); // dummy value
+                            out.newLine();
+                        }
+                    }
+//              }
+                out.flush();
+            }
+            finally {
+                os.close();
+            }
 		} 
         catch (IOException e) {
 			throw new T3dException(e.getMessage());
 		}
     }
 
-    private void w(String line) {
-        try {
-            doc.write(line);
-        }
-        catch (IOException e) {
-            throw new T3dException(e.getMessage());
-        }
-    }
-
     private void wl(String line) {
         try {
             doc.write(line);
@@ -941,13 +1277,4 @@ public class IoElevationGridWriter extends IoAbstractWriter
             throw new T3dException(e.getMessage());
         }
     }
-
-    private void wl() {
-        try {
-            doc.newLine();
-        }
-        catch (IOException e) {
-            throw new T3dException(e.getMessage());
-        }
-    }
 }
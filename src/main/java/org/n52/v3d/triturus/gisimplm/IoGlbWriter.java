@@ -0,0 +1,691 @@
+/**
+ * Copyright (C) 2007-2016 52North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.n52.v3d.triturus.core.IoFormatType;
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.t3dutil.MpHypsometricColor;
+import org.n52.v3d.triturus.t3dutil.T3dColor;
+import org.n52.v3d.triturus.vgis.VgIndexedTIN;
+import org.n52.v3d.triturus.vgis.VgPoint;
+
+/**
+ * Writer which exports elevation grids and TINs to binary glTF 2.0 files 
+ * (&quot;GLB&quot;). Each grid or TIN will be written as a triangle mesh 
+ * with an interleaved vertex buffer (float32 positions and optionally 
+ * per-vertex colors given by a hypsometric color mapper) and an index 
+ * buffer (uint16 indices for meshes with less than 65536 vertices, uint32 
+ * indices otherwise). Optionally, the positions can be quantized to 16-bit 
+ * integers (extension <tt>KHR_mesh_quantization</tt>).
+ * <br/>
+ * As usual for glTF, the y-axis points upwards, i.e. a geo-position 
+ * <i>(x, y, z)</i> will be mapped to <i>(x, z, -y)</i>. To preserve the 
+ * float32 precision for projected coordinates, the vertices will be given 
+ * relative to the mesh center, which will be held as node translation.
+ * <br/>
+ * The binary data will be written in chunks directly from the grids' 
+ * storage backends or the TINs' vertex lists; no intermediate vertex arrays 
+ * will be built. Multiple meshes can be written to one file by calling 
+ * <tt>this.addNode()</tt> repeatedly before calling 
+ * <tt>this.writeNodes()</tt>.
+ *
+ * @author Benno Schmidt
+ * @see IoFormatType#GLB
+ */
+public class IoGlbWriter extends IoAbstractWriter
+{
+    private String logString = "";
+
+    private MpHypsometricColor hypsometricColMap = null;
+    private T3dColor defaultColor = new T3dColor(0.f, 1.f, 0.f);
+    private double exaggeration = 1.;
+    private boolean quantization = false;
+
+    private List<Mesh> nodes = new ArrayList<Mesh>();
+
+    private final static int cChunkSize = 1 << 20; // bytes per write operation
+    private final static int cMagic = 0x46546C67; // "glTF"
+    private final static int cChunkJson = 0x4E4F534A;
+    private final static int cChunkBin = 0x004E4942;
+
+    /**
+     * Constructor.
+     */
+    public IoGlbWriter() {
+        logString = this.getClass().getName();
+    }
+
+    public String log() {
+        return logString;
+    }
+
+    /**
+     * sets a hypsometric color mapper to assign per-vertex colors. If no 
+     * color mapper is set (default), the meshes will be written with the 
+     * uniform default color.
+     *
+     * @param colMap Hypsometric color mapper or <i>null</i>
+     */
+    public void setHypsometricColorMapper(MpHypsometricColor colMap) {
+        this.hypsometricColMap = colMap;
+    }
+
+    /**
+     * sets the uniform mesh color that will be used if no hypsometric color 
+     * mapper has been set. The default color is green.
+     *
+     * @param color Mesh color
+     */
+    public void setDefaultColor(T3dColor color) {
+        this.defaultColor = color;
+    }
+
+    /**
+     * sets the exaggeration factor for elevation values. The default value 
+     * is 1.
+     *
+     * @param exaggeration Exaggeration factor
+     */
+    public void setExaggeration(double exaggeration) {
+        this.exaggeration = exaggeration;
+    }
+
+    /**
+     * enables the quantization of vertex positions. If enabled, the 
+     * positions will be written as 16-bit unsigned integers relative to the 
+     * mesh's bounding box, and vertex colors as 8-bit values; this reduces 
+     * the vertex buffer size by 50 percent. Note that the viewer has to 
+     * support the glTF extension <tt>KHR_mesh_quantization</tt>. By 
+     * default, quantization is disabled.
+     *
+     * @param quantization <i>true</i> to enable quantization
+     */
+    public void setQuantization(boolean quantization) {
+        this.quantization = quantization;
+    }
+
+    /**
+     * writes an elevation grid to a GLB file. Triangles will be generated for 
+     * all grid cells whose four corners are set.
+     *
+     * @param grid Elevation grid
+     * @param filename File name (with path optionally)
+     * @throws T3dException
+     */
+    public void writeToFile(GmSimpleElevationGrid grid, String filename) throws T3dException
+    {
+        this.clearNodes();
+        this.addNode(grid, null, null);
+        this.writeNodes(filename);
+    }
+
+    /**
+     * writes a TIN to a GLB file.
+     *
+     * @param tin TIN
+     * @param filename File name (with path optionally)
+     * @throws T3dException
+     */
+    public void writeToFile(GmSimpleTINFeature tin, String filename) throws T3dException
+    {
+        this.clearNodes();
+        this.addNode(tin, null, null);
+        this.writeNodes(filename);
+    }
+
+    /**
+     * adds an elevation grid as scene node. The node transformation will be 
+     * applied to the mapped geo-coordinates <i>(x, z, -y)</i>; the 
+     * exaggeration factor will be applied before. If no transformation is 
+     * given, the geo-coordinates will be preserved.
+     *
+     * @param grid Elevation grid
+     * @param translation Translation vector <i>(tx, ty, tz)</i> or <i>null</i>
+     * @param scale Scaling factors <i>(sx, sy, sz)</i> or <i>null</i>
+     */
+    public void addNode(GmSimpleElevationGrid grid, double[] translation, double[] scale) {
+        nodes.add(new GridMesh(grid, this.nodeColor(), translation, scale));
+    }
+
+    /**
+     * adds a TIN as scene node (see 
+     * {@link #addNode(GmSimpleElevationGrid, double[], double[])}).
+     *
+     * @param tin TIN
+     * @param translation Translation vector <i>(tx, ty, tz)</i> or <i>null</i>
+     * @param scale Scaling factors <i>(sx, sy, sz)</i> or <i>null</i>
+     */
+    public void addNode(GmSimpleTINFeature tin, double[] translation, double[] scale) {
+        nodes.add(new TINMesh((VgIndexedTIN) tin.getGeometry(), this.nodeColor(), translation, scale));
+    }
+
+    /**
+     * removes all nodes that have been added.
+     */
+    public void clearNodes() {
+        nodes.clear();
+    }
+
+    /**
+     * writes all nodes that have been added to a GLB file.
+     *
+     * @param filename File name (with path optionally)
+     * @throws T3dException
+     */
+    public void writeNodes(String filename) throws T3dException
+    {
+        try {
+            FileOutputStream os = new FileOutputStream(filename);
+            try {
+                this.writeNodes(os);
+            }
+            finally {
+                os.close();
+            }
+        }
+        catch (FileNotFoundException e) {
+            throw new T3dException("Could not access file \"" + filename + "\".");
+        }
+        catch (IOException e) {
+            throw new T3dException(e.getMessage());
+        }
+    }
+
+    /**
+     * writes all nodes that have been added to an output stream. Note that 
+     * the stream will not be closed.
+     *
+     * @param outputStream Target stream
+     * @throws IOException
+     */
+    public void writeNodes(OutputStream outputStream) throws IOException
+    {
+        WritableByteChannel ch;
+        if (outputStream instanceof FileOutputStream)
+            ch = ((FileOutputStream) outputStream).getChannel();
+        else
+            ch = Channels.newChannel(outputStream);
+
+        // 1st pass: vertex counts and bounding boxes, buffer layout
+        long binLength = 0;
+        List<Mesh> meshes = new ArrayList<Mesh>();
+        for (Mesh m : nodes) {
+            m.prepare();
+            if (m.nTri <= 0)
+                continue;
+            m.quantized = quantization;
+            m.vertexOffset = binLength;
+            binLength += pad4((long) m.nVert * m.stride());
+            m.indexOffset = binLength;
+            binLength += pad4((long) m.nTri * 3 * m.indexSize());
+            meshes.add(m);
+        }
+        if (meshes.size() == 0)
+            throw new T3dException("Nothing to write (no triangles).");
+
+        byte[] json = this.json(meshes, binLength).getBytes("UTF-8");
+        int jsonLength = (int) pad4(json.length);
+        long total = 12 + 8 + jsonLength + 8 + binLength;
+        if (total > 0xFFFFFFFFL)
+            throw new T3dException("GLB file size limit exceeded.");
+
+        ByteBuffer bb = ByteBuffer.allocateDirect(cChunkSize);
+        bb.order(ByteOrder.LITTLE_ENDIAN);
+        bb.putInt(cMagic).putInt(2).putInt((int) total);
+        bb.putInt(jsonLength).putInt(cChunkJson);
+        for (int i = 0; i < jsonLength; i++) {
+            ensure(bb, ch, 1);
+            bb.put(i < json.length ? json[i] : (byte) ' ');
+        }
+        ensure(bb, ch, 8);
+        bb.putInt((int) binLength).putInt(cChunkBin);
+
+        // 2nd pass: binary data
+        for (Mesh m : meshes) {
+            m.writeVertices(bb, ch);
+            padZero(bb, ch, (long) m.nVert * m.stride());
+            m.writeIndices(bb, ch);
+            padZero(bb, ch, (long) m.nTri * 3 * m.indexSize());
+        }
+        flush(bb, ch);
+    }
+
+    private T3dColor nodeColor() {
+        return hypsometricColMap != null ? null : defaultColor;
+    }
+
+    private String json(List<Mesh> meshes, long binLength)
+    {
+        StringBuilder nodesJs = new StringBuilder(), meshesJs = new StringBuilder(), 
+            matJs = new StringBuilder(), accJs = new StringBuilder(), viewJs = new StringBuilder();
+        StringBuilder sceneJs = new StringBuilder();
+        int acc = 0, view = 0;
+        for (int k = 0; k < meshes.size(); k++) {
+            Mesh m = meshes.get(k);
+            String sep = k > 0 ? "," : "";
+            sceneJs.append(sep).append(k);
+
+            // Node transformation (including dequantization):
+            double[] t = new double[3], s = new double[3];
+            for (int c = 0; c < 3; c++) {
+                double nodeScale = m.scale != null ? m.scale[c] : 1.;
+                double nodeTransl = m.translation != null ? m.translation[c] : 0.;
+                if (c == 1) 
+                    nodeScale *= exaggeration;
+                t[c] = nodeTransl + nodeScale * m.center[c];
+                s[c] = nodeScale;
+                if (m.quantized) {
+                    t[c] += nodeScale * m.min[c];
+                    s[c] *= m.step(c);
+                }
+            }
+            nodesJs.append(sep).append("{\"mesh\":").append(k)
+                .append(",\"translation\":").append(array(t))
+                .append(",\"scale\":").append(array(s)).append('}');
+
+            // Material:
+            T3dColor col = m.color != null ? m.color : new T3dColor(1.f, 1.f, 1.f);
+            matJs.append(sep).append("{\"pbrMetallicRoughness\":{\"baseColorFactor\":[")
+                .append(col.getRed()).append(',').append(col.getGreen()).append(',')
+                .append(col.getBlue()).append(",1.0],\"metallicFactor\":0.0,\"roughnessFactor\":1.0},")
+                .append("\"doubleSided\":true}");
+
+            // Buffer views and accessors:
+            int vView = view++, iView = view++;
+            viewJs.append(view > 2 ? "," : "")
+                .append("{\"buffer\":0,\"byteOffset\":").append(m.vertexOffset)
+                .append(",\"byteLength\":").append((long) m.nVert * m.stride())
+                .append(",\"byteStride\":").append(m.stride()).append(",\"target\":34962},")
+                .append("{\"buffer\":0,\"byteOffset\":").append(m.indexOffset)
+                .append(",\"byteLength\":").append((long) m.nTri * 3 * m.indexSize())
+                .append(",\"target\":34963}");
+
+            int aPos = acc++;
+            accJs.append(aPos > 0 ? "," : "")
+                .append("{\"bufferView\":").append(vView).append(",\"byteOffset\":0")
+                .append(",\"componentType\":").append(m.quantized ? 5123 : 5126)
+                .append(",\"count\":").append(m.nVert).append(",\"type\":\"VEC3\"");
+            if (m.quantized) {
+                accJs.append(",\"min\":[0,0,0],\"max\":[")
+                    .append(m.qMax(0)).append(',').append(m.qMax(1)).append(',').append(m.qMax(2)).append("]}");
+            }
+            else {
+                accJs.append(",\"min\":").append(floatArray(m.min))
+                    .append(",\"max\":").append(floatArray(m.max)).append('}');
+            }
+            int aCol = -1;
+            if (m.color == null) {
+                aCol = acc++;
+                accJs.append(",{\"bufferView\":").append(vView)
+                    .append(",\"byteOffset\":").append(m.quantized ? 8 : 12)
+                    .append(",\"componentType\":").append(m.quantized ? 5121 : 5126)
+                    .append(m.quantized ? ",\"normalized\":true" : "")
+                    .append(",\"count\":").append(m.nVert)
+                    .append(",\"type\":\"").append(m.quantized ? "VEC4" : "VEC3").append("\"}");
+            }
+            int aInd = acc++;
+            accJs.append(",{\"bufferView\":").append(iView).append(",\"byteOffset\":0")
+                .append(",\"componentType\":").append(m.indexSize() == 2 ? 5123 : 5125)
+                .append(",\"count\":").append(3L * m.nTri).append(",\"type\":\"SCALAR\"}");
+
+            meshesJs.append(sep).append("{\"primitives\":[{\"attributes\":{\"POSITION\":").append(aPos);
+            if (aCol >= 0)
+                meshesJs.append(",\"COLOR_0\":").append(aCol);
+            meshesJs.append("},\"indices\":").append(aInd)
+                .append(",\"material\":").append(k).append(",\"mode\":4}]}");
+        }
+
+        StringBuilder js = new StringBuilder();
+        js.append("{\"asset\":{\"version\":\"2.0\",\"generator\":\"52N Triturus\"},");
+        if (quantization) {
+            js.append("\"extensionsUsed\":[\"KHR_mesh_quantization\"],");
+            js.append("\"extensionsRequired\":[\"KHR_mesh_quantization\"],");
+        }
+        js.append("\"scene\":0,\"scenes\":[{\"nodes\":[").append(sceneJs).append("]}],");
+        js.append("\"nodes\":[").append(nodesJs).append("],");
+        js.append("\"meshes\":[").append(meshesJs).append("],");
+        js.append("\"materials\":[").append(matJs).append("],");
+        js.append("\"accessors\":[").append(accJs).append("],");
+        js.append("\"bufferViews\":[").append(viewJs).append("],");
+        js.append("\"buffers\":[{\"byteLength\":").append(binLength).append("}]}");
+        return js.toString();
+    }
+
+    private static String array(double[] v) {
+        return "[" + v[0] + "," + v[1] + "," + v[2] + "]";
+    }
+
+    // Accessor bounds have to match the float32 values exactly:
+    private static String floatArray(double[] v) {
+        return "[" + (float) v[0] + "," + (float) v[1] + "," + (float) v[2] + "]";
+    }
+
+    private static long pad4(long n) {
+        return (n + 3) & ~3L;
+    }
+
+    private static void padZero(ByteBuffer bb, WritableByteChannel ch, long n) throws IOException
+    {
+        for (long i = n; i < pad4(n); i++) {
+            ensure(bb, ch, 1);
+            bb.put((byte) 0);
+        }
+    }
+
+    private static void ensure(ByteBuffer bb, WritableByteChannel ch, int n) throws IOException {
+        if (bb.remaining() < n)
+            flush(bb, ch);
+    }
+
+    private static void flush(ByteBuffer bb, WritableByteChannel ch) throws IOException
+    {
+        bb.flip();
+        while (bb.hasRemaining())
+            ch.write(bb);
+        bb.clear();
+    }
+
+    /**
+     * Triangle mesh to be written.
+     */
+    private abstract class Mesh
+    {
+        T3dColor color; // uniform color, null for hypsometric colors
+        double[] translation, scale; // node transformation
+        int nVert, nTri;
+        double[] center = new double[3]; // mapped coordinates
+        double[] min = new double[3], max = new double[3]; // relative to center
+        boolean quantized;
+        long vertexOffset, indexOffset;
+
+        Mesh(T3dColor color, double[] translation, double[] scale) {
+            this.color = color;
+            this.translation = translation;
+            this.scale = scale;
+        }
+
+        // Determines counts, center and bounds:
+        abstract void prepare();
+
+        abstract void writeVertices(ByteBuffer bb, WritableByteChannel ch) throws IOException;
+
+        abstract void writeIndices(ByteBuffer bb, WritableByteChannel ch) throws IOException;
+
+        int stride() {
+            if (quantized)
+                return color == null ? 12 : 8;
+            return color == null ? 24 : 12;
+        }
+
+        int indexSize() {
+            return nVert < 65536 ? 2 : 4;
+        }
+
+        double step(int c) {
+            return max[c] > min[c] ? (max[c] - min[c]) / 65535. : 1.;
+        }
+
+        int qMax(int c) {
+            return max[c] > min[c] ? 65535 : 0;
+        }
+
+        void initBounds() {
+            for (int c = 0; c < 3; c++) {
+                min[c] = Double.POSITIVE_INFINITY;
+                max[c] = Double.NEGATIVE_INFINITY;
+            }
+        }
+
+        // Local coordinates as written to the vertex buffer (relative to 
+        // center); note that min and max refer to the float32 values:
+        void extend(float lx, float ly, float lz) {
+            if (lx < min[0]) min[0] = lx;
+            if (lx > max[0]) max[0] = lx;
+            if (ly < min[1]) min[1] = ly;
+            if (ly > max[1]) max[1] = ly;
+            if (lz < min[2]) min[2] = lz;
+            if (lz > max[2]) max[2] = lz;
+        }
+
+        void putVertex(ByteBuffer bb, WritableByteChannel ch, float lx, float ly, float lz, double z) 
+            throws IOException
+        {
+            ensure(bb, ch, 24);
+            if (quantized) {
+                bb.putShort((short) quantize(lx, 0));
+                bb.putShort((short) quantize(ly, 1));
+                bb.putShort((short) quantize(lz, 2));
+                bb.putShort((short) 0);
+                if (color == null) {
+                    T3dColor col = hypsometricColMap.transform(z);
+                    bb.put(toByte(col.getRed())).put(toByte(col.getGreen())).put(toByte(col.getBlue()));
+                    bb.put((byte) 255);
+                }
+            }
+            else {
+                bb.putFloat(lx).putFloat(ly).putFloat(lz);
+                if (color == null) {
+                    T3dColor col = hypsometricColMap.transform(z);
+                    bb.putFloat(col.getRed()).putFloat(col.getGreen()).putFloat(col.getBlue());
+                }
+            }
+        }
+
+        private int quantize(float v, int c) {
+            if (!(max[c] > min[c]))
+                return 0;
+            return (int) Math.round((v - min[c]) / (max[c] - min[c]) * 65535.);
+        }
+
+        void putIndex(ByteBuffer bb, WritableByteChannel ch, int i) throws IOException
+        {
+            ensure(bb, ch, 4);
+            if (this.indexSize() == 2)
+                bb.putShort((short) i);
+            else
+                bb.putInt(i);
+        }
+    }
+
+    private static byte toByte(float c) {
+        return (byte) Math.max(0, Math.min(255, Math.round(c * 255.f)));
+    }
+
+    /**
+     * Mesh for a grid: vertices are the set grid elements (in row-major 
+     * order), triangles are generated for cells whose four corners are set.
+     */
+    private class GridMesh extends Mesh
+    {
+        private GmSimpleElevationGrid grid;
+        private GmElevationGridStorage storage;
+        private int nx, ny;
+        private double x0, y0, dx, dy;
+
+        GridMesh(GmSimpleElevationGrid grid, T3dColor color, double[] translation, double[] scale) 
+        {
+            super(color, translation, scale);
+            this.grid = grid;
+        }
+
+        void prepare()
+        {
+            GmSimple2dGridGeometry geom = (GmSimple2dGridGeometry) grid.getGeometry();
+            storage = grid.getStorage();
+            nx = geom.numberOfColumns();
+            ny = geom.numberOfRows();
+            x0 = geom.getOrigin().getX();
+            y0 = geom.getOrigin().getY();
+            dx = geom.getDeltaX();
+            dy = geom.getDeltaY();
+            center[0] = x0 + 0.5 * (nx - 1) * dx;
+            center[1] = 0.;
+            center[2] = -(y0 + 0.5 * (ny - 1) * dy);
+
+            nVert = 0;
+            nTri = 0;
+            this.initBounds();
+            for (int i = 0, idx = 0; i < ny; i++) {
+                for (int j = 0; j < nx; j++, idx++) {
+                    double z = storage.get(idx);
+                    if (Double.isNaN(z))
+                        continue;
+                    nVert++;
+                    this.extend(this.lx(j), (float) z, this.lz(i));
+                    if (i > 0 && j > 0 
+                        && !Double.isNaN(storage.get(idx - 1)) 
+                        && !Double.isNaN(storage.get(idx - nx)) 
+                        && !Double.isNaN(storage.get(idx - nx - 1)))
+                        nTri += 2;
+                }
+            }
+        }
+
+        private float lx(int j) {
+            return (float) (x0 + j * dx - center[0]);
+        }
+
+        private float lz(int i) {
+            return (float) (-(y0 + i * dy) - center[2]);
+        }
+
+        void writeVertices(ByteBuffer bb, WritableByteChannel ch) throws IOException
+        {
+            for (int i = 0, idx = 0; i < ny; i++) {
+                float lz = this.lz(i);
+                for (int j = 0; j < nx; j++, idx++) {
+                    double z = storage.get(idx);
+                    if (!Double.isNaN(z))
+                        this.putVertex(bb, ch, this.lx(j), (float) z, lz, z);
+                }
+            }
+        }
+
+        void writeIndices(ByteBuffer bb, WritableByteChannel ch) throws IOException
+        {
+            // Vertex numbers of the previous and the current row:
+            int[] prev = new int[nx], curr = new int[nx];
+            boolean ccw = dx * dy > 0.;
+            int v = 0;
+            for (int i = 0, idx = 0; i < ny; i++) {
+                int[] h = prev; prev = curr; curr = h;
+                for (int j = 0; j < nx; j++, idx++) {
+                    curr[j] = Double.isNaN(storage.get(idx)) ? -1 : v++;
+                    if (i == 0 || j == 0)
+                        continue;
+                    int a = prev[j - 1], b = prev[j], c = curr[j], d = curr[j - 1];
+                    if (a < 0 || b < 0 || c < 0 || d < 0)
+                        continue;
+                    if (ccw) {
+                        this.putIndex(bb, ch, a); this.putIndex(bb, ch, b); this.putIndex(bb, ch, c);
+                        this.putIndex(bb, ch, a); this.putIndex(bb, ch, c); this.putIndex(bb, ch, d);
+                    }
+                    else {
+                        this.putIndex(bb, ch, a); this.putIndex(bb, ch, c); this.putIndex(bb, ch, b);
+                        this.putIndex(bb, ch, a); this.putIndex(bb, ch, d); this.putIndex(bb, ch, c);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Mesh for a TIN.
+     */
+    private class TINMesh extends Mesh
+    {
+        private VgIndexedTIN tin;
+
+        TINMesh(VgIndexedTIN tin, T3dColor color, double[] translation, double[] scale) 
+        {
+            super(color, translation, scale);
+            this.tin = tin;
+        }
+
+        void prepare()
+        {
+            nVert = tin.numberOfPoints();
+            nTri = tin.numberOfTriangles();
+            double xMin = Double.POSITIVE_INFINITY, xMax = Double.NEGATIVE_INFINITY;
+            double yMin = Double.POSITIVE_INFINITY, yMax = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < nVert; i++) {
+                VgPoint p = tin.getPoint(i);
+                xMin = Math.min(xMin, p.getX());
+                xMax = Math.max(xMax, p.getX());
+                yMin = Math.min(yMin, p.getY());
+                yMax = Math.max(yMax, p.getY());
+            }
+            center[0] = nVert > 0 ? 0.5 * (xMin + xMax) : 0.;
+            center[1] = 0.;
+            center[2] = nVert > 0 ? -0.5 * (yMin + yMax) : 0.;
+
+            this.initBounds();
+            for (int i = 0; i < nVert; i++) {
+                VgPoint p = tin.getPoint(i);
+                this.extend(
+                    (float) (p.getX() - center[0]), (float) p.getZ(), (float) (-p.getY() - center[2]));
+            }
+        }
+
+        void writeVertices(ByteBuffer bb, WritableByteChannel ch) throws IOException
+        {
+            for (int i = 0; i < nVert; i++) {
+                VgPoint p = tin.getPoint(i);
+                this.putVertex(bb, ch, 
+                    (float) (p.getX() - center[0]), (float) p.getZ(), (float) (-p.getY() - center[2]), 
+                    p.getZ());
+            }
+        }
+
+        void writeIndices(ByteBuffer bb, WritableByteChannel ch) throws IOException
+        {
+            for (int t = 0; t < nTri; t++) {
+                int[] ind = tin.getTriangleVertexIndices(t);
+                this.putIndex(bb, ch, ind[0]);
+                this.putIndex(bb, ch, ind[1]);
+                this.putIndex(bb, ch, ind[2]);
+            }
+        }
+    }
+}
@@ -57,6 +57,8 @@ public class IoPointListReader extends IoObject
 
     private VgEnvelope mSpatialFilter = null;
 
+    private int mBatchSize = 65536;
+
     
     /**
      * File-format type identifier to be used for plain ASCII files holding 
@@ -128,46 +130,106 @@ public class IoPointListReader extends IoObject
         return mPointList;
     }
 
+    /**
+     * reads in a set of 3-d points from a file and passes them batch-wise to 
+     * the given handler. Here, no {@link VgPoint} objects will be generated, 
+     * thus point files of arbitrary size can be processed in constant memory. 
+     * The spatial filter (if set) will be applied while parsing.
+     * 
+     * @param pFilename File name (with path optionally)
+     * @param pHandler Consumer of the point batches
+     * @return Number of points passed to the handler
+     * @throws org.n52.v3d.triturus.core.T3dException
+     * @throws org.n52.v3d.triturus.core.T3dNotYetImplException
+     * @see IoPointListReader#setBatchSize(int)
+     */
+    public long readFromFile(String pFilename, PointBatchHandler pHandler) 
+    		throws T3dException, T3dNotYetImplException
+    {
+        if (!mFormat.equalsIgnoreCase("Plain")) 
+        	throw new T3dNotYetImplException("Unsupported file format");
+        // --> add more types here...
+
+        return this.readPlainAscii(pFilename, pHandler);
+    }
+
+    /**
+     * sets the number of points that will be passed to a 
+     * {@link PointBatchHandler} at once.
+     * 
+     * @param pBatchSize Number of points (default-value is 65536)
+     */
+    public void setBatchSize(int pBatchSize) {
+        mBatchSize = Math.max(1, pBatchSize);
+    }
+
     private void readPlainAscii(String pFilename) throws T3dException
+    {
+        mPointList = new ArrayList<VgPoint>();
+
+        this.readPlainAscii(pFilename, new PointBatchHandler() {
+            public void processBatch(double[] pXYZ, int pCount) {
+                for (int i = 0; i < pCount; i++) 
+                    mPointList.add(new GmPoint(pXYZ[3 * i], pXYZ[3 * i + 1], pXYZ[3 * i + 2]));
+            }
+        });
+    }
+
+    private long readPlainAscii(String pFilename, PointBatchHandler pHandler) throws T3dException
     {
     	// TODO: Keep configurable: Separator, x-y-z order, skip point-identifiers etc.
         String line = "";
         int lineNumber = 0;
+        long ct = 0;
 
-        mPointList = new ArrayList<VgPoint>();
+        boolean lFilter = (mSpatialFilter != null);
+        double xMin = 0., xMax = 0., yMin = 0., yMax = 0., zMin = 0., zMax = 0.;
+        if (lFilter) {
+            xMin = mSpatialFilter.getXMin(); xMax = mSpatialFilter.getXMax();
+            yMin = mSpatialFilter.getYMin(); yMax = mSpatialFilter.getYMax();
+            zMin = mSpatialFilter.getZMin(); zMax = mSpatialFilter.getZMax();
+        }
+
+        double[] lBatch = new double[3 * mBatchSize];
+        int n = 0;
+        double[] xyz = new double[3];
 
         try {
             FileReader lFileRead = new FileReader(pFilename);
-            BufferedReader lDatRead = new BufferedReader(lFileRead);
+            BufferedReader lDatRead = new BufferedReader(lFileRead, 1 << 16);
 
-            String tok1, tok2, tok3;
-            double x, y, z;
-            VgPoint pt = null;
-
-            line = lDatRead.readLine();
-            while (line != null) {
-                lineNumber++;
-
-                tok1 = this.getStrTok(line, 1, " ");
-                tok2 = this.getStrTok(line, 2, " ");
-                tok3 = this.getStrTok(line, 3, " ");
-
-                x = this.toDouble(tok1);
-                y = this.toDouble(tok2);
-                z = this.toDouble(tok3);
+            try {
+                line = lDatRead.readLine();
+                while (line != null) {
+                    lineNumber++;
 
-                pt = new GmPoint(x, y, z);
+                    this.parseLine(line, xyz);
 
-                if (mSpatialFilter != null) {
-                    if (mSpatialFilter.contains(pt))
-                        mPointList.add(pt);
-                } else
-                    mPointList.add(pt);
+                    if (!lFilter || (
+                        xyz[0] >= xMin && xyz[0] <= xMax && 
+                        xyz[1] >= yMin && xyz[1] <= yMax && 
+                        xyz[2] >= zMin && xyz[2] <= zMax)) 
+                    {
+                        lBatch[3 * n] = xyz[0];
+                        lBatch[3 * n + 1] = xyz[1];
+                        lBatch[3 * n + 2] = xyz[2];
+                        if (++n == mBatchSize) {
+                            pHandler.processBatch(lBatch, n);
+                            ct += n;
+                            n = 0;
+                        }
+                    }
 
-                line = lDatRead.readLine();
-                //if (lineNumber % 1000000 == 0) System.out.println("lineNumber = " + lineNumber);
+                    line = lDatRead.readLine();
+                }
+            }
+            finally {
+                lDatRead.close();
+            }
+            if (n > 0) {
+                pHandler.processBatch(lBatch, n);
+                ct += n;
             }
-            lDatRead.close();
         }
         catch (FileNotFoundException e) {
             throw new T3dException("Could not access file \"" + pFilename + "\".");
@@ -181,7 +243,7 @@ public class IoPointListReader extends IoObject
         catch (Exception e) {
             throw new T3dException("Parser error in \"" + pFilename + "\":" + lineNumber);
         }
-        //System.out.println("lineNumber = " + lineNumber);
+        return ct;
     } // readPlainAscii()
 
     /**
@@ -209,27 +271,25 @@ public class IoPointListReader extends IoObject
 
     // private helpers, used by readPlainAscii():
 
-    // Extraction of the i-th token from a string ('sep' as separator):
-    private String getStrTok(String str, int i, String sep) throws T3dException
+    // Extraction of the first three space-separated tokens of a line as 
+    // floating-point numbers:
+    private void parseLine(String pLine, double[] pXYZ) throws T3dException
     {
-		String[] tok = str.split("[" + sep + "]+");
-		if (tok != null) {
-			boolean empty1 = tok[0].length() == 0 ? true : false; // preceding empty token 
-			if (empty1) {
-				if (i < tok.length)
-					return tok[i]; 
-			} else {
-				if (i - 1 < tok.length)
-					return tok[i - 1];
-			}
-		} 
-		throw new T3dException("Logical parser error.");
+        int len = pLine.length(), pos = 0, start;
+        for (int k = 0; k < 3; k++) {
+            while (pos < len && pLine.charAt(pos) == ' ') pos++;
+            start = pos;
+            while (pos < len && pLine.charAt(pos) != ' ') pos++;
+            if (pos == start)
+                throw new T3dException("Logical parser error.");
+            pXYZ[k] = this.toDouble(pLine.substring(start, pos));
+        }
     } 
 
     // Convert String to floating-point number:
     private double toDouble(String pStr) 
     {
-    	pStr = pStr.replaceAll(",", "."); // TODO: ',' as decimal-point
+    	pStr = pStr.replace(',', '.'); // TODO: ',' as decimal-point
         return Double.parseDouble(pStr);
     } 
 
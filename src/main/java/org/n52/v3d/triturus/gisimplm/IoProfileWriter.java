@@ -33,7 +33,6 @@
 package org.n52.v3d.triturus.gisimplm;
 
 import java.io.*;
-import java.text.DecimalFormat;
 
 import org.n52.v3d.triturus.core.IoFormatType;
 import org.n52.v3d.triturus.core.T3dException;
@@ -63,7 +62,6 @@ public class IoProfileWriter extends IoAbstractWriter
     
     private String logString = "";
     private String format;
-    private BufferedWriter doc;
 
     /**
      * Constructor. As an input parameter, the target format type identifier 
@@ -128,45 +126,48 @@ public class IoProfileWriter extends IoAbstractWriter
     	throws T3dException
     {
         try {
-            doc = new BufferedWriter(new FileWriter(filename));
-
-            wl("PROFILE:");
-
-            // Write the stations:
-            VgLineString pDefLine = (VgLineString) profile.getGeometry();
-            DecimalFormat dfXY = this.getDecimalFormatXY();
-            wl("STATIONS");
-            if (pDefLine.numberOfVertices() > 0) {
-                double t = 0.;
-                wl(dfXY.format(t));
-                VgPoint last = pDefLine.getVertex(0);
-                for (int i = 1; i < pDefLine.numberOfVertices(); i++) {
-                    VgPoint curr = pDefLine.getVertex(i);
-                    t += curr.distanceXY(last);
-                    wl(dfXY.format(t));
-                    last = pDefLine.getVertex(i);
-                }                
-            }
+            FileOutputStream os = new FileOutputStream(filename);
+            try {
+                NumberEmitter out = this.createNumberEmitter(os);
+
+                out.append("PROFILE:").newLine();
+
+                // Write the stations:
+                VgLineString pDefLine = (VgLineString) profile.getGeometry();
+                out.append("STATIONS").newLine();
+                if (pDefLine.numberOfVertices() > 0) {
+                    double t = 0.;
+                    out.xy(t).newLine();
+                    VgPoint last = pDefLine.getVertex(0);
+                    for (int i = 1; i < pDefLine.numberOfVertices(); i++) {
+                        VgPoint curr = pDefLine.getVertex(i);
+                        t += curr.distanceXY(last);
+                        out.xy(t).newLine();
+                        last = pDefLine.getVertex(i);
+                    }                
+                }
 
-            // Write the z-values:
-            DecimalFormat dfZ = this.getDecimalFormatZ();
-            wl("DATA");
-            wl("NAME unnamed");
-            for (int i = 0; i < profile.numberOfTZPairs(); i++) {
-            	Double 
-            		t = profile.getTZPair(i)[0],
-            		z = profile.getTZPair(i)[1];
-            	if (t == null || z == null) {
-                    t = 0.;
-                    z = 0.; // since ACADGEO profile files can not handle no-data values
-            	} 
-                w(dfXY.format(t));
-                w(" ");
-                wl(dfZ.format(z));
-            }
+                // Write the z-values:
+                out.append("DATA").newLine();
+                out.append("NAME unnamed").newLine();
+                for (int i = 0; i < profile.numberOfTZPairs(); i++) {
+                	Double 
+                		t = profile.getTZPair(i)[0],
+                		z = profile.getTZPair(i)[1];
+                	if (t == null || z == null) {
+                        t = 0.;
+                        z = 0.; // since ACADGEO profile files can not handle no-data values
+                	} 
+                    out.xy(t).append(' ');
+                    out.z(z).newLine();
+                }
 
-            wl("END");
-            doc.close();
+                out.append("END").newLine();
+                out.flush();
+            }
+            finally {
+                os.close();
+            }
         }
         catch (FileNotFoundException e) {
             throw new T3dException("Could not access file \"" + filename + "\".");
@@ -195,175 +196,179 @@ public class IoProfileWriter extends IoAbstractWriter
     	throws T3dException
     {
         try {
-            doc = new BufferedWriter(new FileWriter(filename));
-
-            wl("<?xml version=\"1.0\" standalone=\"no\"?>");
-            wl("<!DOCTYPE svg PUBLIC \"-//W3C//DTD SVG 1.1//EN\"" +
-            	" \"http://www.w3.org/Graphics/SVG/1.1/DTD/svg11.dtd\">");
-            wl("<svg " + 
-            	" width=\"" + SVGParams.imageWidth + "px\"" + 
-            	" height=\"" + SVGParams.imageHeight + "px\"" + 
-            	" id=\"Layer_1\"" + 
-            	" version=\"1.1\"" + 
-            	" xmlns:xlink=\"http://www.w3.org/1999/xlink\"" + 
-            	" xml:space=\"preserve\"" +
-            	" xmlns=\"http://www.w3.org/2000/svg\">");
-            wl("  <desc>Triturus profile export</desc>");
-            wl("  <rect" + 
-            	" width=\"" + SVGParams.imageWidth + "\"" + 
-            	" height=\"" + SVGParams.imageHeight + "\"" + 
-            	" style=\"fill:rgb(255,255,255)\"/>");
-
-            DecimalFormat dfXY = this.getDecimalFormatXY();
-            DecimalFormat dfZ = this.getDecimalFormatZ();
-
-            this.setCanvasPrf( // profile canvas
-            	SVGParams.imageBorder + SVGParams.zAnnotWidth, // xmin
-            	SVGParams.imageWidth - SVGParams.imageBorder, // xmax
-            	SVGParams.imageBorder + SVGParams.addInfoHeight1, // ymin
-            	SVGParams.imageHeight - SVGParams.imageBorder 
-            		- SVGParams.addInfoHeight2 - SVGParams.tAnnotHeight); // ymax
-            this.setTZRange(
-                profile.tStart(), profile.tEnd(), profile.zMin(), profile.zMax());
-
-            double[] zLevels = this.calculateZLevels(mZMin, mZMax);
-            if (zLevels != null)
+            FileOutputStream os = new FileOutputStream(filename);
+            try {
+                NumberEmitter out = this.createNumberEmitter(os);
+
+                out.append("<?xml version=\"1.0\" standalone=\"no\"?>").newLine();
+                out.append("<!DOCTYPE svg PUBLIC \"-//W3C//DTD SVG 1.1//EN\"" +
+                	" \"http://www.w3.org/Graphics/SVG/1.1/DTD/svg11.dtd\">").newLine();
+                out.append("<svg " + 
+                	" width=\"" + SVGParams.imageWidth + "px\"" + 
+                	" height=\"" + SVGParams.imageHeight + "px\"" + 
+                	" id=\"Layer_1\"" + 
+                	" version=\"1.1\"" + 
+                	" xmlns:xlink=\"http://www.w3.org/1999/xlink\"" + 
+                	" xml:space=\"preserve\"" +
+                	" xmlns=\"http://www.w3.org/2000/svg\">").newLine();
+                out.append("  <desc>Triturus profile export</desc>").newLine();
+                out.append("  <rect" + 
+                	" width=\"" + SVGParams.imageWidth + "\"" + 
+                	" height=\"" + SVGParams.imageHeight + "\"" + 
+                	" style=\"fill:rgb(255,255,255)\"/>").newLine();
+
+                this.setCanvasPrf( // profile canvas
+                	SVGParams.imageBorder + SVGParams.zAnnotWidth, // xmin
+                	SVGParams.imageWidth - SVGParams.imageBorder, // xmax
+                	SVGParams.imageBorder + SVGParams.addInfoHeight1, // ymin
+                	SVGParams.imageHeight - SVGParams.imageBorder 
+                		- SVGParams.addInfoHeight2 - SVGParams.tAnnotHeight); // ymax
                 this.setTZRange(
-                    profile.tStart(), profile.tEnd(), zLevels[0], zLevels[zLevels.length - 1]);
-
-            // Box top (headline):
-            w("  <rect x=\"" + SVGParams.imageBorder + "\" y=\"" + SVGParams.imageBorder + "\" ");
-            w("width=\"" + (mCanvPrfXMax - SVGParams.imageBorder) + "\" ");
-            w("height=\"" + SVGParams.addInfoHeight1 + "\""); 
-            w(" style=\"fill:rgb(200,200,200)\" rx=\"0\" ry=\"0\"/>");
-            wl();
-            wl("  <g style=\"font-family:sans-serif;font-size:14;fill:rgb(0,0,40)\">"); 
-            w(
-            	"    <text" + 
-            	" x=\"" + (SVGParams.imageBorder + 6) + "\"" + 
-            	" y=\"" + (SVGParams.imageBorder + 6 + 14) + "\">" +
-            	SVGParams.titleText +
-            	"</text>");
-            wl("  </g>");
-
-			// Box for text annotations:
-            w("  <rect x=\"" + SVGParams.imageBorder + "\" y=\"" + mCanvPrfYMin + "\" ");
-            w("width=\"" + SVGParams.zAnnotWidth + "\" ");
-            w("height=\"" + (mCanvPrfYMax - mCanvPrfYMin) + "\" style=\"fill:rgb(227,227,227)\" rx=\"0\" ry=\"0\"/>");
-            wl();
-            w("  <rect x=\"" + mCanvPrfXMin + "\" y=\"" + mCanvPrfYMax + "\" ");
-            w("width=\"" + (mCanvPrfXMax - mCanvPrfXMin) + "\" ");
-            w("height=\"" + SVGParams.tAnnotHeight + "\" style=\"fill:rgb(227,227,227)\" rx=\"0\" ry=\"0\"/>");
-            wl();
-            w("  <rect x=\"" + SVGParams.imageBorder + "\" y=\"" + mCanvPrfYMax + "\" ");
-            w("width=\"" + SVGParams.zAnnotWidth + "\" ");
-            wl("height=\"" + SVGParams.tAnnotHeight + "\" style=\"fill:rgb(227,227,227)\" rx=\"0\" ry=\"0\"/>");
-
-            // Box bottom (copyright):
-            w("  <rect x=\"" + SVGParams.imageBorder + "\" y=\"" + (mCanvPrfYMax + SVGParams.tAnnotHeight) + "\" ");
-            w("width=\"" + (mCanvPrfXMax - SVGParams.imageBorder) + "\" ");
-            w("height=\"" + SVGParams.addInfoHeight2 + "\" style=\"fill:rgb(200,200,200)\" rx=\"0\" ry=\"0\"/>");
-            wl();
-            wl("  <g style=\"font-family:sans-serif;font-size:10;fill:rgb(0,0,40)\">");
-            w(
-            	"    <text" + 
-            	" x=\"" + (SVGParams.imageBorder + 6) + "\"" + 
-            	" y=\"" + (mCanvPrfYMax + SVGParams.tAnnotHeight + 14) + "\">" +
-            	SVGParams.infoText + "</text>");
-            wl("  </g>");
-
-            // Stations (vertical lines):
-            VgLineString pDefLine = (VgLineString) profile.getGeometry();
-            if (pDefLine.numberOfVertices() > 0) {
-                double t = 0.;
-                w("  <line ");
-                w("x1=\"" + this.transformT(t) + "\" y1=\"" + mCanvPrfYMin + "\" ");
-                w("x2=\"" + this.transformT(t) + "\" y2=\"" + mCanvPrfYMax + "\" ");
-                wl("style=\"stroke:rgb(0,255,0);fill:none\"/>");
-                VgPoint last = pDefLine.getVertex(0);
-                for (int i = 1; i < pDefLine.numberOfVertices(); i++) {
-                    VgPoint curr = pDefLine.getVertex(i);
-                    t += curr.distanceXY(last);
-                    w("  <line ");
-                    w("x1=\"" + this.transformT(t) + "\" y1=\"" + mCanvPrfYMin + "\" ");
-                    w("x2=\"" + this.transformT(t) + "\" y2=\"" + mCanvPrfYMax + "\" ");
-                    wl("style=\"stroke:rgb(0,255,0);fill:none\"/>");
-                    last = pDefLine.getVertex(i);
-                }                
-            }
+                    profile.tStart(), profile.tEnd(), profile.zMin(), profile.zMax());
+
+                double[] zLevels = this.calculateZLevels(mZMin, mZMax);
+                if (zLevels != null)
+                    this.setTZRange(
+                        profile.tStart(), profile.tEnd(), zLevels[0], zLevels[zLevels.length - 1]);
+
+                // Box top (headline):
+                out.append("  <rect x=\"" + SVGParams.imageBorder + "\" y=\"" + SVGParams.imageBorder + "\" ");
+                out.append("width=\"" + (mCanvPrfXMax - SVGParams.imageBorder) + "\" ");
+                out.append("height=\"" + SVGParams.addInfoHeight1 + "\""); 
+                out.append(" style=\"fill:rgb(200,200,200)\" rx=\"0\" ry=\"0\"/>");
+                out.newLine();
+                out.append("  <g style=\"font-family:sans-serif;font-size:14;fill:rgb(0,0,40)\">").newLine(); 
+                out.append(
+                	"    <text" + 
+                	" x=\"" + (SVGParams.imageBorder + 6) + "\"" + 
+                	" y=\"" + (SVGParams.imageBorder + 6 + 14) + "\">" +
+                	SVGParams.titleText +
+                	"</text>");
+                out.append("  </g>").newLine();
+
+    			// Box for text annotations:
+                out.append("  <rect x=\"" + SVGParams.imageBorder + "\" y=\"" + mCanvPrfYMin + "\" ");
+                out.append("width=\"" + SVGParams.zAnnotWidth + "\" ");
+                out.append("height=\"" + (mCanvPrfYMax - mCanvPrfYMin) + "\" style=\"fill:rgb(227,227,227)\" rx=\"0\" ry=\"0\"/>");
+                out.newLine();
+                out.append("  <rect x=\"" + mCanvPrfXMin + "\" y=\"" + mCanvPrfYMax + "\" ");
+                out.append("width=\"" + (mCanvPrfXMax - mCanvPrfXMin) + "\" ");
+                out.append("height=\"" + SVGParams.tAnnotHeight + "\" style=\"fill:rgb(227,227,227)\" rx=\"0\" ry=\"0\"/>");
+                out.newLine();
+                out.append("  <rect x=\"" + SVGParams.imageBorder + "\" y=\"" + mCanvPrfYMax + "\" ");
+                out.append("width=\"" + SVGParams.zAnnotWidth + "\" ");
+                out.append("height=\"" + SVGParams.tAnnotHeight + "\" style=\"fill:rgb(227,227,227)\" rx=\"0\" ry=\"0\"/>").newLine();
+
+                // Box bottom (copyright):
+                out.append("  <rect x=\"" + SVGParams.imageBorder + "\" y=\"" + (mCanvPrfYMax + SVGParams.tAnnotHeight) + "\" ");
+                out.append("width=\"" + (mCanvPrfXMax - SVGParams.imageBorder) + "\" ");
+                out.append("height=\"" + SVGParams.addInfoHeight2 + "\" style=\"fill:rgb(200,200,200)\" rx=\"0\" ry=\"0\"/>");
+                out.newLine();
+                out.append("  <g style=\"font-family:sans-serif;font-size:10;fill:rgb(0,0,40)\">").newLine();
+                out.append(
+                	"    <text" + 
+                	" x=\"" + (SVGParams.imageBorder + 6) + "\"" + 
+                	" y=\"" + (mCanvPrfYMax + SVGParams.tAnnotHeight + 14) + "\">" +
+                	SVGParams.infoText + "</text>");
+                out.append("  </g>").newLine();
+
+                // Stations (vertical lines):
+                VgLineString pDefLine = (VgLineString) profile.getGeometry();
+                if (pDefLine.numberOfVertices() > 0) {
+                    double t = 0.;
+                    out.append("  <line ");
+                    out.append("x1=\"" + this.transformT(t) + "\" y1=\"" + mCanvPrfYMin + "\" ");
+                    out.append("x2=\"" + this.transformT(t) + "\" y2=\"" + mCanvPrfYMax + "\" ");
+                    out.append("style=\"stroke:rgb(0,255,0);fill:none\"/>").newLine();
+                    VgPoint last = pDefLine.getVertex(0);
+                    for (int i = 1; i < pDefLine.numberOfVertices(); i++) {
+                        VgPoint curr = pDefLine.getVertex(i);
+                        t += curr.distanceXY(last);
+                        out.append("  <line ");
+                        out.append("x1=\"" + this.transformT(t) + "\" y1=\"" + mCanvPrfYMin + "\" ");
+                        out.append("x2=\"" + this.transformT(t) + "\" y2=\"" + mCanvPrfYMax + "\" ");
+                        out.append("style=\"stroke:rgb(0,255,0);fill:none\"/>").newLine();
+                        last = pDefLine.getVertex(i);
+                    }                
+                }
             
-            // Elevation levels (horizontal lines):
-            if (zLevels != null) {
-                for (int i = 0; i < zLevels.length; i++) {
-                    w("  <line ");
-                    w("x1=\"" + mCanvPrfXMin + "\" y1=\"" + this.transformZ(zLevels[i]) + "\" ");
-                    w("x2=\"" + mCanvPrfXMax + "\" y2=\"" + this.transformZ(zLevels[i]) + "\" ");
-                    wl("style=\"stroke:rgb(0,255,0);fill:none\"/>");
+                // Elevation levels (horizontal lines):
+                if (zLevels != null) {
+                    for (int i = 0; i < zLevels.length; i++) {
+                        out.append("  <line ");
+                        out.append("x1=\"" + mCanvPrfXMin + "\" y1=\"" + this.transformZ(zLevels[i]) + "\" ");
+                        out.append("x2=\"" + mCanvPrfXMax + "\" y2=\"" + this.transformZ(zLevels[i]) + "\" ");
+                        out.append("style=\"stroke:rgb(0,255,0);fill:none\"/>").newLine();
+                    }
                 }
-            }
 
-            // Annotation t-axis:
-            if (pDefLine.numberOfVertices() > 0) {
-                double t = 0.;
-                wl("  <g style=\"font-family:sans-serif;font-size:10;fill:rgb(0,0,40)\">");
-                w(
-                	"    <text writing-mode=\"tb-rl\"" + 
-                	" x=\"" + (this.transformT(0) + 5) + "\"" + 
-                	" y=\"" + (mCanvPrfYMax + 3) + 
-                	"\">0 m</text>");
-                wl("  </g>");
-                VgPoint last = pDefLine.getVertex(0);
-                for (int i = 1; i < pDefLine.numberOfVertices(); i++) {
-                    VgPoint curr = pDefLine.getVertex(i);
-                    t += curr.distanceXY(last);
-                    last = pDefLine.getVertex(i);
-                    wl("  <g style=\"font-family:sans-serif;font-size:10;fill:rgb(0,0,40)\">");
-                    w(
+                // Annotation t-axis:
+                if (pDefLine.numberOfVertices() > 0) {
+                    double t = 0.;
+                    out.append("  <g style=\"font-family:sans-serif;font-size:10;fill:rgb(0,0,40)\">").newLine();
+                    out.append(
                     	"    <text writing-mode=\"tb-rl\"" + 
-                    	" x=\"" + (this.transformT(t) - 5) + "\"" + 
+                    	" x=\"" + (this.transformT(0) + 5) + "\"" + 
                     	" y=\"" + (mCanvPrfYMax + 3) + 
-                    	"\">" + Math.round(t) + "</text>");
-                    wl("  </g>");
+                    	"\">0 m</text>");
+                    out.append("  </g>").newLine();
+                    VgPoint last = pDefLine.getVertex(0);
+                    for (int i = 1; i < pDefLine.numberOfVertices(); i++) {
+                        VgPoint curr = pDefLine.getVertex(i);
+                        t += curr.distanceXY(last);
+                        last = pDefLine.getVertex(i);
+                        out.append("  <g style=\"font-family:sans-serif;font-size:10;fill:rgb(0,0,40)\">").newLine();
+                        out.append(
+                        	"    <text writing-mode=\"tb-rl\"" + 
+                        	" x=\"" + (this.transformT(t) - 5) + "\"" + 
+                        	" y=\"" + (mCanvPrfYMax + 3) + 
+                        	"\">" + Math.round(t) + "</text>");
+                        out.append("  </g>").newLine();
+                    }
                 }
-            }
 
-            // Annotations z-axis:
-             if (zLevels != null) {
-                for (int i = 0; i < zLevels.length; i++) {
-                    String zText = "" + (int) Math.round((float) zLevels[i]);
-                    wl("  <g style=\"font-family:sans-serif;font-size:10;fill:rgb(0,0,40)\">");
-                    w("    <text text-anchor=\"end\" x=\"" + (SVGParams.imageBorder + SVGParams.zAnnotWidth - 4) + "\" y=\"" + (this.transformZ(zLevels[i]) + 8) + "\">");
-                    wl(zText + "</text>");
-                    wl("  </g>");
+                // Annotations z-axis:
+                 if (zLevels != null) {
+                    for (int i = 0; i < zLevels.length; i++) {
+                        String zText = "" + (int) Math.round((float) zLevels[i]);
+                        out.append("  <g style=\"font-family:sans-serif;font-size:10;fill:rgb(0,0,40)\">").newLine();
+                        out.append("    <text text-anchor=\"end\" x=\"" + (SVGParams.imageBorder + SVGParams.zAnnotWidth - 4) + "\" y=\"" + (this.transformZ(zLevels[i]) + 8) + "\">");
+                        out.append(zText + "</text>").newLine();
+                        out.append("  </g>").newLine();
+                    }
                 }
-            }
 
-            // Profile path z(t):
-            wl("  <path d=\"");
-            boolean first = true;
-            for (int i = 0; i < profile.numberOfTZPairs(); i++) {
-            	Double 
-            		t = profile.getTZPair(i)[0],
-            		z = profile.getTZPair(i)[1];
-        		if (t != null && z != null) {
-        			float x = this.transformT(t);
-	                float y = this.transformZ(z);
-	                if (first) {
-	                    w("M"); first = false;
-	                } else
-	                    w(" L"); 
-	                w("" + dfXY.format(x) + " " + dfZ.format(y)); 
-        		} else {
-        			// do not draw holes (unset values) in the path 
-        			first = true;
-        			//wl();
-        		}
-            }
-            wl("\"");
-            wl("   style=\"stroke:rgb(255,0,0);fill:none\"/>");
+                // Profile path z(t):
+                out.append("  <path d=\"").newLine();
+                boolean first = true;
+                for (int i = 0; i < profile.numberOfTZPairs(); i++) {
+                	Double 
+                		t = profile.getTZPair(i)[0],
+                		z = profile.getTZPair(i)[1];
+            		if (t != null && z != null) {
+            			float x = this.transformT(t);
+    	                float y = this.transformZ(z);
+    	                if (first) {
+    	                    out.append("M"); first = false;
+    	                } else
+    	                    out.append(" L"); 
+    	                out.xy(x).append(' ');
+    	                out.z(y);
+            		} else {
+            			// do not draw holes (unset values) in the path 
+            			first = true;
+            			//out.newLine();
+            		}
+                }
+                out.append("\"").newLine();
+                out.append("   style=\"stroke:rgb(255,0,0);fill:none\"/>").newLine();
 
-            wl("</svg>");
-            doc.close();
+                out.append("</svg>").newLine();
+                out.flush();
+            }
+            finally {
+                os.close();
+            }
         }
         catch (FileNotFoundException e) {
             throw new T3dException("Could not access file \"" + filename + "\".");
@@ -462,32 +467,4 @@ public class IoProfileWriter extends IoAbstractWriter
     private int roundUpper(double pZ, int pDiv) {
         return pDiv * Math.round((float) Math.ceil(pZ / pDiv));
     }
-    
-    private void w(String line) {
-        try {
-            doc.write(line);
-        }
-        catch (IOException e) {
-            throw new T3dException(e.getMessage());
-        }
-    }
-
-    private void wl(String line) {
-        try {
-            doc.write(line);
-            doc.newLine();
-        }
-        catch (IOException e) {
-            throw new T3dException(e.getMessage());
-        }
-    }
-
-    private void wl() {
-        try {
-            doc.newLine();
-        }
-        catch (IOException e) {
-            throw new T3dException(e.getMessage());
-        }
-    }
 }
@@ -0,0 +1,621 @@
+/**
+ * Copyright (C) 2007-2016 52North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+import org.n52.v3d.triturus.core.T3dException;
+
+/**
+ * Writer which cuts an elevation grid into a quadtree of tiles at several 
+ * levels of detail, so that viewers can stream the tiles in view only. 
+ * Each tile will be written as a separate file in the binary 
+ * <i>quantized-mesh-1.0</i> layout:
+ * <ul>
+ * <li>a header holding tile center, height range, bounding sphere and 
+ * horizon occlusion point,</li>
+ * <li>the vertices as 15-bit quantized <i>(u, v, height)</i> values, 
+ * zig-zag delta encoded,</li>
+ * <li>the triangle indices, high-water-mark encoded (16-bit indices, or 
+ * 32-bit indices for tiles with more than 65536 vertices),</li>
+ * <li>the indices of the vertices on the tile's west, south, east and north 
+ * edges.</li>
+ * </ul>
+ * The tiles will be written to <tt>&lt;dir&gt;/&lt;level&gt;/&lt;x&gt;/&lt;y&gt;.terrain</tt>. 
+ * At the finest level, a tile covers <tt>this.setTileSize()</tt> x 
+ * <tt>this.setTileSize()</tt> grid cells; at each coarser level, the covered 
+ * area is doubled in both directions while every second row and column is 
+ * skipped. Level 0 consists of one tile only. The tile numbers <i>x</i> and 
+ * <i>y</i> increase with the grid's column and row indices (i.e., for 
+ * positive cell sizes, <i>y</i> increases northwards as for the TMS 
+ * scheme). Tiles without any set grid cell will not be written. 
+ * Additionally, a tile index <tt>layer.json</tt> will be written that 
+ * describes the pyramid and the available tiles.
+ * <br/>
+ * Note that the header coordinates refer to the grid's coordinate reference 
+ * system, not to an earth-centered frame; the horizon occlusion point is 
+ * set to the tile center.
+ * <br/>
+ * Optionally, skirts can be added to the tile meshes to hide cracks 
+ * between neighboring tiles of different levels (see 
+ * <tt>this.setSkirtHeight()</tt>). The tiles will be encoded in parallel 
+ * if more than one thread is set (see <tt>this.setNumberOfThreads()</tt>).
+ *
+ * @author Benno Schmidt
+ * @see IoGlbWriter
+ */
+public class IoQuantizedMeshWriter extends IoAbstractWriter
+{
+    private String logString = "";
+
+    private int tileSize = 64;
+    private double skirtHeight = 0.;
+    private boolean compression = false;
+    private int numberOfThreads = 1;
+
+    private int numberOfTiles = 0;
+
+    private final static int cMaxQ = 32767;
+    private final static int cHeaderSize = 88;
+
+    /**
+     * Constructor.
+     */
+    public IoQuantizedMeshWriter() {
+        logString = this.getClass().getName();
+    }
+
+    public String log() {
+        return logString;
+    }
+
+    /**
+     * sets the number of grid cells per tile edge at the finest level of 
+     * detail. The default value is 64.
+     *
+     * @param tileSize Number of cells (&gt;= 1)
+     */
+    public void setTileSize(int tileSize) 
+    {
+        if (tileSize < 1)
+            throw new T3dException("Illegal tile size.");
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * sets the skirt height. For values &gt; 0, vertical skirts of the 
+     * given height will be appended to the tile meshes' boundaries. By 
+     * default, no skirt geometry will be generated, since many viewers 
+     * generate skirts on the basis of the edge indices.
+     *
+     * @param skirtHeight Skirt height (in elevation units)
+     */
+    public void setSkirtHeight(double skirtHeight) {
+        this.skirtHeight = skirtHeight;
+    }
+
+    /**
+     * enables GZIP-compression of the tile files. By default, the tiles 
+     * will be written uncompressed.
+     *
+     * @param compression <i>true</i> for compressed tiles
+     */
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * sets the number of threads that will be used to encode the tiles. 
+     * The default value is 1.
+     *
+     * @param numberOfThreads Number of threads
+     */
+    public void setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = Math.max(1, numberOfThreads);
+    }
+
+    /**
+     * returns the number of tiles that have been written by the last call 
+     * of <tt>this.writeToDirectory()</tt>.
+     *
+     * @return Number of tile files
+     */
+    public int numberOfTiles() {
+        return numberOfTiles;
+    }
+
+    /**
+     * returns the number of levels of detail for a given grid. The finest 
+     * level will be <tt>this.numberOfLevels(grid) - 1</tt>.
+     *
+     * @param grid Elevation grid
+     * @return Number of levels
+     */
+    public int numberOfLevels(GmSimpleElevationGrid grid)
+    {
+        GmSimple2dGridGeometry geom = (GmSimple2dGridGeometry) grid.getGeometry();
+        int nCells = Math.max(geom.numberOfColumns(), geom.numberOfRows()) - 1;
+        int levels = 1;
+        for (long span = tileSize; span < nCells; span *= 2)
+            levels++;
+        return levels;
+    }
+
+    /**
+     * writes the tile pyramid for a grid to a directory. The directory will 
+     * be created if it does not exist.
+     *
+     * @param grid Elevation grid
+     * @param dirname Target directory
+     * @throws T3dException
+     */
+    public void writeToDirectory(GmSimpleElevationGrid grid, String dirname) throws T3dException
+    {
+        GmSimple2dGridGeometry geom = (GmSimple2dGridGeometry) grid.getGeometry();
+        final int nx = geom.numberOfColumns(), ny = geom.numberOfRows();
+        if (nx < 2 || ny < 2)
+            throw new T3dException("Grid must consist of at least 2 x 2 elements.");
+
+        final File dir = new File(dirname);
+        dir.mkdirs();
+        if (!dir.isDirectory())
+            throw new T3dException("Could not create directory \"" + dirname + "\".");
+
+        final GmSimpleElevationGrid g = grid;
+        final int levels = this.numberOfLevels(grid);
+
+        // Tiles per level (in x- and y-direction):
+        final int[] tx = new int[levels], ty = new int[levels];
+        final boolean[][] written = new boolean[levels][];
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for (int l = 0; l < levels; l++) {
+            final int level = l;
+            long span = (long) tileSize << (levels - 1 - l);
+            tx[l] = (int) ((nx - 2) / span + 1);
+            ty[l] = (int) ((ny - 2) / span + 1);
+            written[l] = new boolean[tx[l] * ty[l]];
+            for (int j = 0; j < ty[l]; j++) {
+                for (int i = 0; i < tx[l]; i++) {
+                    final int x = i, y = j;
+                    tasks.add(new Callable<Object>() {
+                        public Object call() throws IOException {
+                            written[level][y * tx[level] + x] = writeTile(g, dir, levels, level, x, y);
+                            return null;
+                        }
+                    });
+                }
+            }
+        }
+
+        if (numberOfThreads <= 1) {
+            try {
+                for (Callable<Object> t : tasks)
+                    t.call();
+            }
+            catch (T3dException e) {
+                throw e;
+            }
+            catch (Exception e) {
+                throw new T3dException("Tile generation failed: " + e.getMessage());
+            }
+        }
+        else
+            this.execute(tasks);
+
+        numberOfTiles = 0;
+        for (int l = 0; l < levels; l++) {
+            for (int k = 0; k < written[l].length; k++) {
+                if (written[l][k])
+                    numberOfTiles++;
+            }
+        }
+
+        this.writeIndex(geom, new File(dir, "layer.json"), levels, tx, written);
+    }
+
+    private void execute(List<Callable<Object>> tasks) throws T3dException
+    {
+        ExecutorService exec = Executors.newFixedThreadPool(numberOfThreads);
+        try {
+            for (Future<Object> f : exec.invokeAll(tasks)) 
+                f.get();
+        }
+        catch (InterruptedException e) {
+            throw new T3dException("Tile generation interrupted.");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof T3dException)
+                throw (T3dException) e.getCause();
+            throw new T3dException("Tile generation failed: " + e.getCause());
+        }
+        finally {
+            exec.shutdown();
+        }
+    }
+
+    // Sample indices for the tile t covering the given span (in cells):
+    private static int[] samples(int t, long span, int stride, int n)
+    {
+        long from = t * span, to = Math.min(from + span, n - 1);
+        int cnt = (int) ((to - from + stride - 1) / stride) + 1;
+        int[] res = new int[cnt];
+        for (int k = 0; k < cnt - 1; k++)
+            res[k] = (int) (from + (long) k * stride);
+        res[cnt - 1] = (int) to;
+        return res;
+    }
+
+    private boolean writeTile(
+        GmSimpleElevationGrid grid, File dir, int levels, int level, int x, int y)
+        throws IOException
+    {
+        GmSimple2dGridGeometry geom = (GmSimple2dGridGeometry) grid.getGeometry();
+        GmElevationGridStorage storage = grid.getStorage();
+        int nx = geom.numberOfColumns(), ny = geom.numberOfRows();
+        int stride = 1 << (levels - 1 - level);
+        long span = (long) tileSize * stride;
+        int[] cols = samples(x, span, stride, nx), rows = samples(y, span, stride, ny);
+        int nc = cols.length, nr = rows.length;
+
+        // Elevations of the tile's vertices, local index r * nc + c:
+        double[] z = new double[nc * nr];
+        for (int r = 0; r < nr; r++) {
+            for (int c = 0; c < nc; c++)
+                z[r * nc + c] = storage.get(rows[r] * nx + cols[c]);
+        }
+
+        // Triangles (in local indices, counter-clockwise in u-v-space):
+        boolean flipU = geom.getDeltaX() < 0., flipV = geom.getDeltaY() < 0.;
+        boolean ccw = flipU == flipV;
+        IntList tri = new IntList();
+        for (int r = 1; r < nr; r++) {
+            for (int c = 1; c < nc; c++) {
+                int a = (r - 1) * nc + c - 1, b = a + 1, cc = r * nc + c, d = cc - 1;
+                if (Double.isNaN(z[a]) || Double.isNaN(z[b]) || Double.isNaN(z[cc]) || Double.isNaN(z[d]))
+                    continue;
+                if (ccw)
+                    tri.add(a, b, cc).add(a, cc, d);
+                else
+                    tri.add(a, cc, b).add(a, d, cc);
+            }
+        }
+        if (tri.size() == 0)
+            return false;
+        int nMain = tri.size();
+
+        // Skirts along the tile boundary; skirt vertices get the local 
+        // indices nc * nr + k for the k-th boundary position:
+        IntList ring = new IntList();
+        if (skirtHeight > 0.) {
+            for (int c = 0; c < nc - 1; c++) ring.add(c);
+            for (int r = 0; r < nr - 1; r++) ring.add(r * nc + nc - 1);
+            for (int c = nc - 1; c > 0; c--) ring.add((nr - 1) * nc + c);
+            for (int r = nr - 1; r > 0; r--) ring.add(r * nc);
+            if (!ccw)
+                ring.reverse();
+            boolean[] used = new boolean[nc * nr];
+            for (int k = 0; k < nMain; k++)
+                used[tri.get(k)] = true;
+            int m = ring.size();
+            for (int k = 0; k < m; k++) {
+                int p = ring.get(k), q = ring.get((k + 1) % m);
+                if (!used[p] || !used[q])
+                    continue;
+                int ps = nc * nr + k, qs = nc * nr + (k + 1) % m;
+                tri.add(p, ps, q).add(q, ps, qs);
+            }
+        }
+
+        // Vertex numbering in order of first use (required for the 
+        // high-water-mark encoding):
+        int[] num = new int[nc * nr + ring.size()];
+        for (int k = 0; k < num.length; k++) 
+            num[k] = -1;
+        int nVert = 0;
+        for (int k = 0; k < tri.size(); k++) {
+            if (num[tri.get(k)] < 0)
+                num[tri.get(k)] = nVert++;
+        }
+        int[] local = new int[nVert];
+        for (int k = 0; k < num.length; k++) {
+            if (num[k] >= 0)
+                local[num[k]] = k;
+        }
+
+        // Height range and quantized positions:
+        double hMin = Double.POSITIVE_INFINITY, hMax = Double.NEGATIVE_INFINITY;
+        double[] h = new double[nVert];
+        int[] u = new int[nVert], v = new int[nVert];
+        for (int k = 0; k < nVert; k++) {
+            int i = local[k];
+            if (i >= nc * nr) {
+                i = ring.get(i - nc * nr);
+                h[k] = z[i] - skirtHeight;
+            }
+            else
+                h[k] = z[i];
+            hMin = Math.min(hMin, h[k]);
+            hMax = Math.max(hMax, h[k]);
+            u[k] = quantize(cols[i % nc] - cols[0], cols[nc - 1] - cols[0], flipU);
+            v[k] = quantize(rows[i / nc] - rows[0], rows[nr - 1] - rows[0], flipV);
+        }
+
+        // Header values in grid coordinates:
+        double xa = geom.getOrigin().getX() + cols[0] * geom.getDeltaX();
+        double xb = geom.getOrigin().getX() + cols[nc - 1] * geom.getDeltaX();
+        double ya = geom.getOrigin().getY() + rows[0] * geom.getDeltaY();
+        double yb = geom.getOrigin().getY() + rows[nr - 1] * geom.getDeltaY();
+        double cx = 0.5 * (xa + xb), cy = 0.5 * (ya + yb), cz = 0.5 * (hMin + hMax);
+        double radius = 0.5 * Math.sqrt((xb - xa) * (xb - xa) + (yb - ya) * (yb - ya) 
+            + (hMax - hMin) * (hMax - hMin));
+
+        boolean idx32 = nVert > 65536;
+        int nTri = tri.size() / 3;
+        int size = cHeaderSize + 4 + 6 * nVert;
+        if (idx32 && size % 4 != 0)
+            size += 2;
+        size += 4 + nTri * 3 * (idx32 ? 4 : 2) + 16 + 2 * (nc + nr) * (idx32 ? 4 : 2);
+        ByteBuffer bb = ByteBuffer.allocate(size);
+        bb.order(ByteOrder.LITTLE_ENDIAN);
+
+        bb.putDouble(cx).putDouble(cy).putDouble(cz);
+        bb.putFloat((float) hMin).putFloat((float) hMax);
+        bb.putDouble(cx).putDouble(cy).putDouble(cz).putDouble(radius);
+        bb.putDouble(cx).putDouble(cy).putDouble(cz);
+
+        bb.putInt(nVert);
+        putZigZagDeltas(bb, u);
+        putZigZagDeltas(bb, v);
+        for (int k = 0; k < nVert; k++)
+            h[k] = quantize(h[k] - hMin, hMax - hMin);
+        int prev = 0;
+        for (int k = 0; k < nVert; k++) {
+            int q = (int) h[k];
+            bb.putShort((short) zigZag(q - prev));
+            prev = q;
+        }
+        if (idx32 && bb.position() % 4 != 0)
+            bb.putShort((short) 0);
+
+        bb.putInt(nTri);
+        int highest = 0;
+        for (int k = 0; k < tri.size(); k++) {
+            int i = num[tri.get(k)];
+            putIndex(bb, highest - i, idx32);
+            if (i == highest)
+                highest++;
+        }
+
+        // Edge indices (west, south, east, north):
+        int west = flipU ? nc - 1 : 0, east = nc - 1 - west;
+        int south = flipV ? nr - 1 : 0, north = nr - 1 - south;
+        IntList edge = new IntList();
+        for (int r = 0; r < nr; r++) edge.add(num[r * nc + west]);
+        this.putEdge(bb, edge, idx32);
+        edge.clear();
+        for (int c = 0; c < nc; c++) edge.add(num[south * nc + c]);
+        this.putEdge(bb, edge, idx32);
+        edge.clear();
+        for (int r = 0; r < nr; r++) edge.add(num[r * nc + east]);
+        this.putEdge(bb, edge, idx32);
+        edge.clear();
+        for (int c = 0; c < nc; c++) edge.add(num[north * nc + c]);
+        this.putEdge(bb, edge, idx32);
+
+        File tileDir = new File(dir, level + File.separator + x);
+        tileDir.mkdirs();
+        if (!tileDir.isDirectory())
+            throw new T3dException("Could not create directory \"" + tileDir + "\".");
+        OutputStream os = new FileOutputStream(new File(tileDir, y + ".terrain"));
+        try {
+            if (compression)
+                os = new GZIPOutputStream(os);
+            os.write(bb.array(), 0, bb.position());
+        }
+        finally {
+            os.close();
+        }
+        return true;
+    }
+
+    private static int quantize(double val, double range, boolean flip) 
+    {
+        int q = quantize(val, range);
+        return flip ? cMaxQ - q : q;
+    }
+
+    private static int quantize(double val, double range) {
+        return range > 0. ? (int) Math.round(val / range * cMaxQ) : 0;
+    }
+
+    private static int zigZag(int val) {
+        return (val << 1) ^ (val >> 31);
+    }
+
+    private static void putZigZagDeltas(ByteBuffer bb, int[] val)
+    {
+        int prev = 0;
+        for (int k = 0; k < val.length; k++) {
+            bb.putShort((short) zigZag(val[k] - prev));
+            prev = val[k];
+        }
+    }
+
+    private static void putIndex(ByteBuffer bb, int i, boolean idx32) 
+    {
+        if (idx32)
+            bb.putInt(i);
+        else
+            bb.putShort((short) i);
+    }
+
+    private void putEdge(ByteBuffer bb, IntList edge, boolean idx32)
+    {
+        int cnt = 0;
+        for (int k = 0; k < edge.size(); k++) {
+            if (edge.get(k) >= 0) 
+                cnt++;
+        }
+        bb.putInt(cnt);
+        for (int k = 0; k < edge.size(); k++) {
+            if (edge.get(k) >= 0) 
+                putIndex(bb, edge.get(k), idx32);
+        }
+    }
+
+    private void writeIndex(
+        GmSimple2dGridGeometry geom, File file, int levels, int[] tx, boolean[][] written)
+        throws T3dException
+    {
+        try {
+            BufferedWriter doc = new BufferedWriter(new FileWriter(file));
+            doc.write("{");
+            doc.newLine();
+            doc.write("  \"tilejson\": \"2.1.0\",");
+            doc.newLine();
+            doc.write("  \"format\": \"quantized-mesh-1.0\",");
+            doc.newLine();
+            doc.write("  \"version\": \"1.0.0\",");
+            doc.newLine();
+            doc.write("  \"scheme\": \"tms\",");
+            doc.newLine();
+            doc.write("  \"tiles\": [\"{z}/{x}/{y}.terrain\"],");
+            doc.newLine();
+            doc.write("  \"minzoom\": 0,");
+            doc.newLine();
+            doc.write("  \"maxzoom\": " + (levels - 1) + ",");
+            doc.newLine();
+            doc.write("  \"bounds\": [" 
+                + geom.envelope().getXMin() + ", " + geom.envelope().getYMin() + ", " 
+                + geom.envelope().getXMax() + ", " + geom.envelope().getYMax() + "],");
+            doc.newLine();
+            doc.write("  \"origin\": [" + geom.getOrigin().getX() + ", " + geom.getOrigin().getY() + "],");
+            doc.newLine();
+            doc.write("  \"cellSize\": [" + geom.getDeltaX() + ", " + geom.getDeltaY() + "],");
+            doc.newLine();
+            doc.write("  \"gridSize\": [" + geom.numberOfColumns() + ", " + geom.numberOfRows() + "],");
+            doc.newLine();
+            doc.write("  \"tileSize\": " + tileSize + ",");
+            doc.newLine();
+            doc.write("  \"skirtHeight\": " + skirtHeight + ",");
+            doc.newLine();
+            doc.write("  \"available\": [");
+            doc.newLine();
+            for (int l = 0; l < levels; l++) {
+                // Runs of written tiles per tile row as rectangles:
+                StringBuilder s = new StringBuilder();
+                int nRows = written[l].length / tx[l];
+                for (int y = 0; y < nRows; y++) {
+                    for (int x = 0; x < tx[l]; x++) {
+                        if (!written[l][y * tx[l] + x])
+                            continue;
+                        int x1 = x;
+                        while (x1 + 1 < tx[l] && written[l][y * tx[l] + x1 + 1])
+                            x1++;
+                        if (s.length() > 0)
+                            s.append(", ");
+                        s.append("{\"startX\": " + x + ", \"startY\": " + y 
+                            + ", \"endX\": " + x1 + ", \"endY\": " + y + "}");
+                        x = x1;
+                    }
+                }
+                doc.write("    [" + s + "]" + (l < levels - 1 ? "," : ""));
+                doc.newLine();
+            }
+            doc.write("  ]");
+            doc.newLine();
+            doc.write("}");
+            doc.newLine();
+            doc.close();
+        }
+        catch (IOException e) {
+            throw new T3dException(e.getMessage());
+        }
+    }
+
+    /**
+     * Growable int array.
+     */
+    private static class IntList
+    {
+        private int[] val = new int[64];
+        private int n = 0;
+
+        IntList add(int i) {
+            if (n == val.length) {
+                int[] h = new int[2 * n];
+                System.arraycopy(val, 0, h, 0, n);
+                val = h;
+            }
+            val[n++] = i;
+            return this;
+        }
+
+        IntList add(int a, int b, int c) {
+            return this.add(a).add(b).add(c);
+        }
+
+        int get(int k) {
+            return val[k];
+        }
+
+        int size() {
+            return n;
+        }
+
+        void clear() {
+            n = 0;
+        }
+
+        void reverse() {
+            for (int i = 0, j = n - 1; i < j; i++, j--) {
+                int h = val[i]; val[i] = val[j]; val[j] = h;
+            }
+        }
+    }
+}
@@ -36,9 +36,9 @@ import org.n52.v3d.triturus.core.IoFormatType;
 import org.n52.v3d.triturus.core.T3dException;
 import org.n52.v3d.triturus.core.T3dNotYetImplException;
 import org.n52.v3d.triturus.vgis.VgIndexedTIN;
+import org.n52.v3d.triturus.vgis.VgPoint;
 
 import java.io.*;
-import java.text.DecimalFormat;
 
 /** 
  * Writer which exports TINs to files or streams. Various formats such as
@@ -55,7 +55,6 @@ public class IoTINWriter extends IoAbstractWriter
 
     private String logString = "";
     private String format;
-    private BufferedWriter doc;
     
     /**
      * Constructor. As a parameter, the format type has to be set. For 
@@ -67,6 +66,7 @@ public class IoTINWriter extends IoAbstractWriter
      * <li><i>X3D:</i> X3D scene (as IndexedFaceSet without viewpoint setting)</li>
      * <li><i>X3DOM:</i> X3D scene (as IndexedFaceSet without viewpoint setting)</li>
      * <li><i>OBJ:</i> Wavefront OBJ file</li>
+     * <li><i>GLB:</i> Binary glTF 2.0 file</li>
      * </ul>
      * 
      * @param format Format string (e.g. <tt></tt>&quot;AcGeo&quot;</tt>)
@@ -75,6 +75,7 @@ public class IoTINWriter extends IoAbstractWriter
      * @see IoFormatType#X3D
      * @see IoFormatType#X3DOM
      * @see IoFormatType#OBJ
+     * @see IoFormatType#GLB
      */
     public IoTINWriter(String format) {
         logString = this.getClass().getName();
@@ -112,6 +113,7 @@ public class IoTINWriter extends IoAbstractWriter
         if (format.equalsIgnoreCase(IoFormatType.X3D)) i = 3;
         if (format.equalsIgnoreCase(IoFormatType.X3DOM)) i = 4;
         if (format.equalsIgnoreCase(IoFormatType.OBJ)) i = 5;
+        if (format.equalsIgnoreCase(IoFormatType.GLB)) i = 6;
         // --> add more formats here...
 
         try {
@@ -121,6 +123,7 @@ public class IoTINWriter extends IoAbstractWriter
                 case 3: this.writeSimpleX3d(tin, filename); break;
                 case 4: this.writeSimpleX3Dom(tin, filename); break;
                 case 5: this.writeSimpleObj(tin, filename); break;
+                case 6: new IoGlbWriter().writeToFile(tin, filename); break;
                 // --> add more formats here...
 
                 default: throw new T3dNotYetImplException("Unsupported file format");
@@ -134,34 +137,37 @@ public class IoTINWriter extends IoAbstractWriter
     private void writeAcadGeoTIN(GmSimpleTINFeature tin, String filename) throws T3dException
     {
         try {
-            doc = new BufferedWriter(new FileWriter(filename));
+            FileOutputStream os = new FileOutputStream(filename);
+            try {
+                NumberEmitter out = this.createNumberEmitter(os);
             
-            //GmSimpleTINGeometry geom = (GmSimpleTINGeometry) tin.getGeometry();
-            VgIndexedTIN geom = (VgIndexedTIN) tin.getGeometry();
+                //GmSimpleTINGeometry geom = (GmSimpleTINGeometry) tin.getGeometry();
+                VgIndexedTIN geom = (VgIndexedTIN) tin.getGeometry();
             
-            wl("TINBEGIN");
-            wl("FORMAT R=OFF C=OFF");
-            wl("TIN:");
+                out.append("TINBEGIN").newLine();
+                out.append("FORMAT R=OFF C=OFF").newLine();
+                out.append("TIN:").newLine();
             
-            DecimalFormat dfXY = this.getDecimalFormatZ();
-            DecimalFormat dfZ = this.getDecimalFormatZ();
+                // Note: The z-precision is used for x and y, too.
+                out.append("POINTS ").append(geom.numberOfPoints()).newLine();
+                for (int i = 0; i < geom.numberOfPoints(); i++) {
+                    VgPoint pt = geom.getPoint(i);
+                    out.z(pt.getX()).append(' ');
+                    out.z(pt.getY()).append(' ');
+                    out.z(pt.getZ()).newLine();
+                }
             
-            wl("POINTS " + geom.numberOfPoints());
-            for (int i = 0; i < geom.numberOfPoints(); i++) {
-                w(dfXY.format(geom.getPoint(i).getX()));
-                w(" " + dfXY.format(geom.getPoint(i).getY()));
-                wl(" " + dfZ.format(geom.getPoint(i).getZ()));
+                out.append("TRIANGLES ").append(geom.numberOfTriangles()).newLine();
+                for (int i = 0; i < geom.numberOfTriangles(); i++) {
+                    int[] crn = geom.getTriangleVertexIndices(i);
+                    out.append(crn[0]).append(' ').append(crn[1]).append(' ').append(crn[2]).newLine();
+                }
+                out.append("END").newLine();
+                out.flush();
             }
-            
-            wl("TRIANGLES " + geom.numberOfTriangles());
-            for (int i = 0; i < geom.numberOfTriangles(); i++) {
-                w("" + geom.getTriangleVertexIndices(i)[0]);
-                w(" " + geom.getTriangleVertexIndices(i)[1]);
-                wl(" " + geom.getTriangleVertexIndices(i)[2]);
+            finally {
+                os.close();
             }
-            wl("END");
-            
-            doc.close();
         }
         catch (IOException e) {
             e.printStackTrace();
@@ -171,65 +177,71 @@ public class IoTINWriter extends IoAbstractWriter
     private void writeSimpleVrml(GmSimpleTINFeature tin, String filename) throws T3dException
     {
         try {
-            doc = new BufferedWriter(new FileWriter(filename));
-            
-            GmSimpleTINGeometry geom = (GmSimpleTINGeometry) tin.getGeometry();
+            FileOutputStream os = new FileOutputStream(filename);
+            try {
+                NumberEmitter out = this.createNumberEmitter(os);
             
-            wl("#VRML V1.0 ascii"); 
-            wl();
-            wl("Separator {"); 
-            wl();
-            wl("  DEF SceneInfo Info {"); 
-            wl("    string \"Generated by 52n Triturus\""); 
-            wl("  }"); 
-            wl("  ShapeHints {"); 
-            wl("    vertexOrdering CLOCKWISE"); 
-            wl("    shapeType SOLID"); 
-            wl("    faceType CONVEX"); 
-            wl("    creaseAngle 0.0"); 
-            wl("  }"); 
-            wl();
-            wl("  DEF Green_DEM Separator {"); 
-            wl("    Material {");
-            wl("      diffuseColor 0.0 1.0 0.0"); 
-            wl("      ambientColor 0.0 0.1 0.0"); 
-            wl("      specularColor 0.8 0.8 0.8"); 
-            wl("      shininess 0.1"); 
-            wl("    }"); 
-            wl("    Coordinate3 {"); 
-            wl("      point ["); 
+                GmSimpleTINGeometry geom = (GmSimpleTINGeometry) tin.getGeometry();
             
-            // VRML Section 1 (vertices):
+                out.append("#VRML V1.0 ascii").newLine(); 
+                out.newLine();
+                out.append("Separator {").newLine(); 
+                out.newLine();
+                out.append("  DEF SceneInfo Info {").newLine(); 
+                out.append("    string \"Generated by 52n Triturus\"").newLine(); 
+                out.append("  }").newLine(); 
+                out.append("  ShapeHints {").newLine(); 
+                out.append("    vertexOrdering CLOCKWISE").newLine(); 
+                out.append("    shapeType SOLID").newLine(); 
+                out.append("    faceType CONVEX").newLine(); 
+                out.append("    creaseAngle 0.0").newLine(); 
+                out.append("  }").newLine(); 
+                out.newLine();
+                out.append("  DEF Green_DEM Separator {").newLine(); 
+                out.append("    Material {").newLine();
+                out.append("      diffuseColor 0.0 1.0 0.0").newLine(); 
+                out.append("      ambientColor 0.0 0.1 0.0").newLine(); 
+                out.append("      specularColor 0.8 0.8 0.8").newLine(); 
+                out.append("      shininess 0.1").newLine(); 
+                out.append("    }").newLine(); 
+                out.append("    Coordinate3 {").newLine(); 
+                out.append("      point [").newLine(); 
             
-            DecimalFormat dfXY = this.getDecimalFormatZ();
-            DecimalFormat dfZ = this.getDecimalFormatZ();
+                // VRML Section 1 (vertices):
+                // Note: The z-precision is used for x and y, too.
+                for (int i = 0; i < geom.numberOfPoints(); i++) {
+                    VgPoint pt = geom.getPoint(i);
+                    out.append("        ");
+                    out.z(pt.getX()).append(' ');
+                    out.z(pt.getY()).append(' ');
+                    out.z(pt.getZ()).newLine();
+                }
             
-            for (int i = 0; i < geom.numberOfPoints(); i++) {
-                GmPoint pt = new GmPoint(geom.getPoint(i));
-                wl("        " + dfXY.format(pt.getX()) + " " + dfXY.format(pt.getY()) + " " + dfZ.format(pt.getZ()));
-            }
+                out.append("      ]").newLine(); 
+                out.append("    }").newLine(); 
+                out.newLine();
             
-            wl("      ]"); 
-            wl("    }"); 
-            wl();
+                // VRML Section 2 (triangulation):
             
-            // VRML Section 2 (triangulation):
+                out.append("    IndexedFaceSet {").newLine(); 
+                out.append("      coordIndex [").newLine(); 
             
-            wl("    IndexedFaceSet {"); 
-            wl("      coordIndex ["); 
+                int crn[];
+                for (int i = 0; i < geom.numberOfTriangles(); i++) {
+                    crn = geom.getTriangleVertexIndices(i);
+                    out.append("        ").append(crn[0]).append(", ").append(crn[1])
+                        .append(", ").append(crn[2]).append(", -1,").newLine(); 
+                }
             
-            int crn[];
-            for (int i = 0; i < geom.numberOfTriangles(); i++) {
-                crn = geom.getTriangleVertexIndices(i);
-                wl("        " + crn[0] + ", " + crn[1] + ", " + crn[2] + ", -1,"); 
+                out.append("      ]").newLine(); 
+                out.append("    }").newLine(); 
+                out.append("  }").newLine(); 
+                out.append("}").newLine(); 
+                out.flush();
+            }
+            finally {
+                os.close();
             }
-            
-            wl("      ]"); 
-            wl("    }"); 
-            wl("  }"); 
-            wl("}"); 
-            
-            doc.close();
         }
         catch (FileNotFoundException e) {
             throw new T3dException("Could not access file \"" + filename + "\".");
@@ -245,47 +257,53 @@ public class IoTINWriter extends IoAbstractWriter
     private void writeSimpleX3d(GmSimpleTINFeature tin, String filename) throws T3dException
     {
         try {
-            doc = new BufferedWriter(new FileWriter(filename));
+            FileOutputStream os = new FileOutputStream(filename);
+            try {
+                NumberEmitter out = this.createNumberEmitter(os);
             
-            GmSimpleTINGeometry geom = (GmSimpleTINGeometry) tin.getGeometry();
+                GmSimpleTINGeometry geom = (GmSimpleTINGeometry) tin.getGeometry();
             
-            wl("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"); 
-            wl("<!DOCTYPE X3D PUBLIC \"ISO//Web3D//DTD X3D 3.2//EN\" \"http://www.web3d.org/specifications/x3d-3.2.dtd\">"); 
-            wl("<X3D profile=\"Interchange\">"); 
-            wl("  <Scene>"); 
-            wl("    <Shape>"); 
-            wl("      <Appearance><Material/></Appearance>"); 
+                out.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>").newLine(); 
+                out.append("<!DOCTYPE X3D PUBLIC \"ISO//Web3D//DTD X3D 3.2//EN\" \"http://www.web3d.org/specifications/x3d-3.2.dtd\">").newLine(); 
+                out.append("<X3D profile=\"Interchange\">").newLine(); 
+                out.append("  <Scene>").newLine(); 
+                out.append("    <Shape>").newLine(); 
+                out.append("      <Appearance><Material/></Appearance>").newLine(); 
             
-            wl("        <IndexedFaceSet solid=\"TRUE\" coordIndex=\""); 
-            int crn[];
-            for (int i = 0; i < geom.numberOfTriangles(); i++) {
-                crn = geom.getTriangleVertexIndices(i);
-                w(crn[0] + " " + crn[1] + " " + crn[2] + " -1"); 
-                if (i < geom.numberOfTriangles() - 1) 
-                     w(", "); 
-                wl();
-            }
-            wl("        \">"); 
+                out.append("        <IndexedFaceSet solid=\"TRUE\" coordIndex=\"").newLine(); 
+                int crn[];
+                for (int i = 0; i < geom.numberOfTriangles(); i++) {
+                    crn = geom.getTriangleVertexIndices(i);
+                    out.append(crn[0]).append(' ').append(crn[1]).append(' ').append(crn[2]).append(" -1"); 
+                    if (i < geom.numberOfTriangles() - 1) 
+                        out.append(", "); 
+                    out.newLine();
+                }
+                out.append("        \">").newLine(); 
              
-            wl("          <Coordinate point=\""); 
-            DecimalFormat dfXY = this.getDecimalFormatZ();
-            DecimalFormat dfZ = this.getDecimalFormatZ();
-            for (int i = 0; i < geom.numberOfPoints(); i++) {
-                GmPoint pt = new GmPoint(geom.getPoint(i));
-                w(dfXY.format(pt.getX()) + " " + dfXY.format(pt.getY()) + " " + dfZ.format(pt.getZ()));
-                if (i < geom.numberOfPoints() - 1) 
-                    w(", "); 
-                wl();
-            }
-            wl("          \"/>"); 
+                // Note: The z-precision is used for x and y, too.
+                out.append("          <Coordinate point=\"").newLine(); 
+                for (int i = 0; i < geom.numberOfPoints(); i++) {
+                    VgPoint pt = geom.getPoint(i);
+                    out.z(pt.getX()).append(' ');
+                    out.z(pt.getY()).append(' ');
+                    out.z(pt.getZ());
+                    if (i < geom.numberOfPoints() - 1) 
+                        out.append(", "); 
+                    out.newLine();
+                }
+                out.append("          \"/>").newLine(); 
             
-            wl("        </Coordinate>"); 
-            wl("      </IndexedFaceSet>"); 
-            wl("    </Shape>"); 
-            wl("  </Scene>"); 
-            wl("</X3D>"); 
-   
-            doc.close();
+                out.append("        </Coordinate>").newLine(); 
+                out.append("      </IndexedFaceSet>").newLine(); 
+                out.append("    </Shape>").newLine(); 
+                out.append("  </Scene>").newLine(); 
+                out.append("</X3D>").newLine(); 
+                out.flush();
+            }
+            finally {
+                os.close();
+            }
         }
         catch (FileNotFoundException e) {
             throw new T3dException("Could not access file \"" + filename + "\".");
@@ -301,59 +319,65 @@ public class IoTINWriter extends IoAbstractWriter
     private void writeSimpleX3Dom(GmSimpleTINFeature tin, String filename) throws T3dException
     {
         try {
-            doc = new BufferedWriter(new FileWriter(filename));
+            FileOutputStream os = new FileOutputStream(filename);
+            try {
+                NumberEmitter out = this.createNumberEmitter(os);
             
-            GmSimpleTINGeometry geom = (GmSimpleTINGeometry) tin.getGeometry();
+                GmSimpleTINGeometry geom = (GmSimpleTINGeometry) tin.getGeometry();
             
-            wl("<html>"); 
-            wl("  <head>"); 
-            wl("    <meta http-equiv=\"X-UA-Compatible\" content=\"IE=edge\"/>"); 
-            wl("    <title>52n Triturus TIN</title>"); 
-            wl("    <script type='text/javascript' src='https://www.x3dom.org/download/x3dom.js'> </script>"); 
-            wl("    <link rel='stylesheet' type='text/css' href='https://www.x3dom.org/download/x3dom.css'></link>"); 
-            wl("  </head>"); 
-            wl("  <body>"); 
-            wl("    <h1>52n Triturus TIN export page</h1>"); 
-            wl("    <p>This HTML page contains an interactive 3D scene (Internet connection required).</p>"); 
-            wl("    <x3d width='500px' height='400px'>"); 
-            wl("      <scene>"); 
-            wl("        <shape>"); 
-            wl("          <appearance>"); 
-            wl("            <material diffuseColor='1 0 0'></material>"); 
-            wl("          </appearance>"); 
-            wl("          <IndexedFaceSet solid='false' coordIndex='"); 
+                out.append("<html>").newLine(); 
+                out.append("  <head>").newLine(); 
+                out.append("    <meta http-equiv=\"X-UA-Compatible\" content=\"IE=edge\"/>").newLine(); 
+                out.append("    <title>52n Triturus TIN</title>").newLine(); 
+                out.append("    <script type='text/javascript' src='https://www.x3dom.org/download/x3dom.js'> </script>").newLine(); 
+                out.append("    <link rel='stylesheet' type='text/css' href='https://www.x3dom.org/download/x3dom.css'></link>").newLine(); 
+                out.append("  </head>").newLine(); 
+                out.append("  <body>").newLine(); 
+                out.append("    <h1>52n Triturus TIN export page</h1>").newLine(); 
+                out.append("    <p>This HTML page contains an interactive 3D scene (Internet connection required).</p>").newLine(); 
+                out.append("    <x3d width='500px' height='400px'>").newLine(); 
+                out.append("      <scene>").newLine(); 
+                out.append("        <shape>").newLine(); 
+                out.append("          <appearance>").newLine(); 
+                out.append("            <material diffuseColor='1 0 0'></material>").newLine(); 
+                out.append("          </appearance>").newLine(); 
+                out.append("          <IndexedFaceSet solid='false' coordIndex='").newLine(); 
  
-            int crn[];
-            for (int i = 0; i < geom.numberOfTriangles(); i++) {
-                crn = geom.getTriangleVertexIndices(i);
-                w(crn[0] + " " + crn[1] + " " + crn[2]); 
-                if (i < geom.numberOfTriangles() - 1) 
-                    w(" -1"); 
-                wl();
-            }
-            wl("          '>"); 
+                int crn[];
+                for (int i = 0; i < geom.numberOfTriangles(); i++) {
+                    crn = geom.getTriangleVertexIndices(i);
+                    out.append(crn[0]).append(' ').append(crn[1]).append(' ').append(crn[2]); 
+                    if (i < geom.numberOfTriangles() - 1) 
+                        out.append(" -1"); 
+                    out.newLine();
+                }
+                out.append("          '>").newLine(); 
          
-            wl("            <Coordinate point='"); 
-            DecimalFormat dfXY = this.getDecimalFormatZ();
-            DecimalFormat dfZ = this.getDecimalFormatZ();
-            for (int i = 0; i < geom.numberOfPoints(); i++) {
-                GmPoint pt = new GmPoint(geom.getPoint(i));
-                w(dfXY.format(pt.getX()) + " " + dfXY.format(pt.getY()) + " " + dfZ.format(pt.getZ()));
-                if (i < geom.numberOfPoints() - 1) 
-                    w(","); 
-                wl();
-            }
-            wl("            '>"); 
-            wl("            </Coordinate>");
+                // Note: The z-precision is used for x and y, too.
+                out.append("            <Coordinate point='").newLine(); 
+                for (int i = 0; i < geom.numberOfPoints(); i++) {
+                    VgPoint pt = geom.getPoint(i);
+                    out.z(pt.getX()).append(' ');
+                    out.z(pt.getY()).append(' ');
+                    out.z(pt.getZ());
+                    if (i < geom.numberOfPoints() - 1) 
+                        out.append(','); 
+                    out.newLine();
+                }
+                out.append("            '>").newLine(); 
+                out.append("            </Coordinate>").newLine();
         
-            wl("          </IndexedFaceSet>"); 
-            wl("        </shape>"); 
-            wl("      </scene>"); 
-            wl("    </x3d>"); 
-            wl("  </body>"); 
-            wl("</html>"); 
-            
-            doc.close();
+                out.append("          </IndexedFaceSet>").newLine(); 
+                out.append("        </shape>").newLine(); 
+                out.append("      </scene>").newLine(); 
+                out.append("    </x3d>").newLine(); 
+                out.append("  </body>").newLine(); 
+                out.append("</html>").newLine(); 
+                out.flush();
+            }
+            finally {
+                os.close();
+            }
         }
         catch (FileNotFoundException e) {
             throw new T3dException("Could not access file \"" + filename + "\".");
@@ -369,83 +393,62 @@ public class IoTINWriter extends IoAbstractWriter
     private void writeSimpleObj(GmSimpleTINFeature tin, String filename) throws T3dException
     {
         try {
-        	doc = new BufferedWriter(new FileWriter(filename));
+            FileOutputStream os = new FileOutputStream(filename);
+            try {
+                NumberEmitter out = this.createNumberEmitter(os);
         	
-            GmSimpleTINGeometry geom = (GmSimpleTINGeometry) tin.getGeometry();
+                GmSimpleTINGeometry geom = (GmSimpleTINGeometry) tin.getGeometry();
             
-            double 
-            	scale = 1.0,
-            	offsetX = 0.0,
-            	offsetY = 0.0;  
+                double 
+                    scale = 1.0,
+                    offsetX = 0.0,
+                    offsetY = 0.0;  
 /*
-            double extX = geom.envelope().getExtentX();
-            double extY = geom.envelope().getExtentY();              
+                double extX = geom.envelope().getExtentX();
+                double extY = geom.envelope().getExtentY();              
 
-            // see calculateNormTransformation() of VsSimpleScene
-            if (Math.abs(extX) > Math.abs(extY)) {
-          	  scale = 2./extX; 
-          	  offsetX = -(geom.envelope().getXMin() + geom.envelope().getXMax()) / extX;
-              offsetY = -(geom.envelope().getYMin() + geom.envelope().getYMax()) / extX;
-            }
-            else{
-            	scale = 2./extY; 
-            	offsetX = -(geom.envelope().getXMin() + geom.envelope().getXMax()) / extY;
-                offsetY = -(geom.envelope().getYMin() + geom.envelope().getYMax()) / extY;
-            }
+                // see calculateNormTransformation() of VsSimpleScene
+                if (Math.abs(extX) > Math.abs(extY)) {
+                    scale = 2./extX; 
+                    offsetX = -(geom.envelope().getXMin() + geom.envelope().getXMax()) / extX;
+                    offsetY = -(geom.envelope().getYMin() + geom.envelope().getYMax()) / extX;
+                }
+                else{
+                    scale = 2./extY; 
+                    offsetX = -(geom.envelope().getXMin() + geom.envelope().getXMax()) / extY;
+                    offsetY = -(geom.envelope().getYMin() + geom.envelope().getYMax()) / extY;
+                }
 */
             
-            wl("# test file");
-            wl("o TIN");
+                out.append("# test file").newLine();
+                out.append("o TIN").newLine();
             
-            // Write vertex information:
-            // DecimalFormat dfXY = this.getDecimalFormatXY();
-            // DecimalFormat dfZ = this.getDecimalFormatZ();
-            for (int i = 0; i < geom.numberOfPoints(); i++){
-            	GmPoint pt = new GmPoint(geom.getPoint(i));
-            	wl("v "+ (pt.getX() * scale + offsetX) + " " + (pt.getY() * scale + offsetY) + " " + (pt.getZ() * scale) );
-
-            }
+                // Write vertex information. Note that OBJ coordinates are 
+                // written with full precision (Double.toString()), i.e. the 
+                // precision settings are not applied:
+                for (int i = 0; i < geom.numberOfPoints(); i++){
+                    VgPoint pt = geom.getPoint(i);
+                    out.append("v ").append(Double.toString(pt.getX() * scale + offsetX));
+                    out.append(' ').append(Double.toString(pt.getY() * scale + offsetY));
+                    out.append(' ').append(Double.toString(pt.getZ() * scale)).newLine();
+                }
             
-            wl("s off"); // disable smoothing 
+                out.append("s off").newLine(); // disable smoothing 
             
-            // Write triangle face information:
-            int crn[];
-            for (int i = 0; i < geom.numberOfTriangles(); i++){
-            	crn = geom.getTriangleVertexIndices(i);
-            	wl("f " + (crn[0] + 1) + " " + (crn[1] + 1) + " " + (crn[2] + 1));
+                // Write triangle face information:
+                int crn[];
+                for (int i = 0; i < geom.numberOfTriangles(); i++){
+                    crn = geom.getTriangleVertexIndices(i);
+                    out.append("f ").append(crn[0] + 1).append(' ').append(crn[1] + 1)
+                        .append(' ').append(crn[2] + 1).newLine();
+                }
+                out.flush();
+            }
+            finally {
+                os.close();
             }
-            
-			doc.close();
 		} catch (IOException e) {
 			throw new T3dException(e.getMessage());
 		}
     }
-    
-    private void w(String line) {
-        try {
-            doc.write(line);
-        }
-        catch (IOException e) {
-            throw new T3dException(e.getMessage());
-        }
-    }
-
-    private void wl(String line) {
-        try {
-            doc.write(line);
-            doc.newLine();
-        }
-        catch (IOException e) {
-            throw new T3dException(e.getMessage());
-        }
-    }
-
-    private void wl() {
-        try {
-            doc.newLine();
-        }
-        catch (IOException e) {
-            throw new T3dException(e.getMessage());
-        }
-    }
 }
@@ -38,7 +38,6 @@ import org.n52.v3d.triturus.core.T3dNotYetImplException;
 import org.n52.v3d.triturus.vgis.VgIndexedTetrMesh;
 
 import java.io.*;
-import java.text.DecimalFormat;
 
 /** 
  * Writer which exports indexed tetrahedronal meshes to files or streams. 
@@ -49,7 +48,6 @@ public class IoTetrMeshWriter extends IoAbstractWriter
 {
     private String logString = "";
     private String format;
-    private BufferedWriter doc;
     
     public boolean 
     	exportTetrId = false, 
@@ -143,76 +141,80 @@ public class IoTetrMeshWriter extends IoAbstractWriter
         throws T3dException
     {
         try {
-            doc = new BufferedWriter(new FileWriter(filename));
-            
-            wl("# vtk DataFile Version 3.0 generated by 52N Triturus");
-            wl("vtk output");
-            wl("ASCII");
-            wl("DATASET UNSTRUCTURED_GRID");
-            
-            DecimalFormat dfXY = this.getDecimalFormatXY();
-            DecimalFormat dfZ = this.getDecimalFormatZ();
-            
-            wl("POINTS " + mesh.numberOfPoints() + " float");
-            for (int i = 0; i < mesh.numberOfPoints(); i++) {
-                w(dfXY.format(mesh.getPoint(i).getX()));
-                w(" " + dfXY.format(mesh.getPoint(i).getY()));
-                wl(" " + dfZ.format(mesh.getPoint(i).getZ()));
+            FileOutputStream os = new FileOutputStream(filename);
+            try {
+                NumberEmitter out = this.createNumberEmitter(os);
+
+                out.append("# vtk DataFile Version 3.0 generated by 52N Triturus").newLine();
+                out.append("vtk output").newLine();
+                out.append("ASCII").newLine();
+                out.append("DATASET UNSTRUCTURED_GRID").newLine();
+
+                out.append("POINTS ").append(mesh.numberOfPoints()).append(" float").newLine();
+                for (int i = 0; i < mesh.numberOfPoints(); i++) {
+                    out.xy(mesh.getPoint(i).getX()).append(' ');
+                    out.xy(mesh.getPoint(i).getY()).append(' ');
+                    out.z(mesh.getPoint(i).getZ()).newLine();
+                }
+
+                out.append("CELLS ").append(mesh.numberOfTetrahedrons());
+                out.append(' ').append(5 * mesh.numberOfTetrahedrons()).newLine();
+                for (int i = 0; i < mesh.numberOfTetrahedrons(); i++) {
+                    out.append('4'); // number of a tetrahedron's vertices
+                    int[] v = mesh.getTetrahedronVertexIndices(i);
+                    out.append(' ').append(v[0]).append(' ').append(v[1])
+                        .append(' ').append(v[2]).append(' ').append(v[3]).newLine();
+                }
+
+                out.append("CELL_TYPES ").append(mesh.numberOfTetrahedrons()).newLine();
+                for (int i = 0; i < mesh.numberOfTetrahedrons(); i++) {
+                    out.append("10").newLine(); // VTK type number
+                }
+
+                if (this.exportTetrId || this.exportVerticalThickness) 
+                {
+                    out.append("CELL_DATA ").append(mesh.numberOfTetrahedrons()).newLine();
+
+                    if (this.exportTetrId) {
+                        out.append("SCALARS TETR_ID int 1").newLine();
+                        out.append("LOOKUP_TABLE default").newLine();
+                        for (int i = 0; i < mesh.numberOfTetrahedrons(); i++) {
+                            out.append(i).newLine();
+                        }
+                    }
+
+                    if (this.exportVerticalThickness) {
+                        out.append("SCALARS VERTICAL_THICKNESS float 1").newLine();
+                        out.append("LOOKUP_TABLE default").newLine();
+                        for (int i = 0; i < mesh.numberOfTetrahedrons(); i++) {
+                            int[] v = mesh.getTetrahedronVertexIndices(i);
+                            double
+                                z0 = mesh.getPoint(v[0]).getZ(),
+                                z1 = mesh.getPoint(v[1]).getZ(),
+                                z2 = mesh.getPoint(v[2]).getZ(),
+                                z3 = mesh.getPoint(v[3]).getZ();
+                            double dz = this.max(z0, z1, z2, z3) - this.min(z0, z1, z2, z3);
+                            out.append(Double.toString(Math.abs(dz))).newLine();
+                        }
+                    }
+                }
+
+                if (this.exportZ)
+                {
+                    out.append("POINT_DATA ").append(mesh.numberOfPoints()).newLine();
+
+                    out.append("SCALARS Z float 1").newLine();
+                    out.append("LOOKUP_TABLE default").newLine();
+                    for (int i = 0; i < mesh.numberOfPoints(); i++) {
+                        out.append(Double.toString(mesh.getPoint(i).getZ())).newLine();
+                    }
+                }
+
+                out.flush();
             }
-            
-            w("CELLS " + mesh.numberOfTetrahedrons());
-            wl(" " + (5 * mesh.numberOfTetrahedrons()));
-            for (int i = 0; i < mesh.numberOfTetrahedrons(); i++) {
-                w("4"); // number of a tetrahedron's vertices
-                int[] v = mesh.getTetrahedronVertexIndices(i);
-                wl(" " + v[0] + " " + v[1] + " " + v[2] + " " + v[3]);
+            finally {
+                os.close();
             }
-
-            wl("CELL_TYPES " + mesh.numberOfTetrahedrons());
-            for (int i = 0; i < mesh.numberOfTetrahedrons(); i++) {
-                wl("10"); // VTK type number
-            }
-
-            if (this.exportTetrId || this.exportVerticalThickness) 
-            {
-	          	wl("CELL_DATA " + mesh.numberOfTetrahedrons());            	
-	
-	          	if (this.exportTetrId) {
-		        	wl("SCALARS TETR_ID int 1");
-		        	wl("LOOKUP_TABLE default");
-		            for (int i = 0; i < mesh.numberOfTetrahedrons(); i++) {
-		                wl("" + i);
-		            }
-	          	}
-	          	
-	          	if (this.exportVerticalThickness) {
-		        	wl("SCALARS VERTICAL_THICKNESS float 1");
-		        	wl("LOOKUP_TABLE default");
-		            for (int i = 0; i < mesh.numberOfTetrahedrons(); i++) {
-		                int[] v = mesh.getTetrahedronVertexIndices(i);
-		                double
-		                	z0 = mesh.getPoint(v[0]).getZ(),
-		                	z1 = mesh.getPoint(v[1]).getZ(),
-		                	z2 = mesh.getPoint(v[2]).getZ(),
-		                	z3 = mesh.getPoint(v[3]).getZ();
-		                double dz = this.max(z0, z1, z2, z3) - this.min(z0, z1, z2, z3);
-		                wl("" + Math.abs(dz));
-		            }
-	            }            
-            }
-            
-          	if (this.exportZ)
-          	{
-	          	wl("POINT_DATA " + mesh.numberOfPoints());            	
-
-	        	wl("SCALARS Z float 1");
-	        	wl("LOOKUP_TABLE default");
-	            for (int i = 0; i < mesh.numberOfPoints(); i++) {
-	                wl("" + mesh.getPoint(i).getZ());
-	            }
-            }
-
-            doc.close();
         }
         catch (IOException e) {
             e.printStackTrace();
@@ -230,32 +232,4 @@ public class IoTetrMeshWriter extends IoAbstractWriter
     	max = z2 > max ? z2 : max;
     	return z3 > max ? z3 : max;
     }
-
-    private void w(String line) {
-        try {
-            doc.write(line);
-        }
-        catch (IOException e) {
-            throw new T3dException(e.getMessage());
-        }
-    }
-
-    private void wl(String line) {
-        try {
-            doc.write(line);
-            doc.newLine();
-        }
-        catch (IOException e) {
-            throw new T3dException(e.getMessage());
-        }
-    }
-
-    private void wl() {
-        try {
-            doc.newLine();
-        }
-        catch (IOException e) {
-            throw new T3dException(e.getMessage());
-        }
-    }
 }
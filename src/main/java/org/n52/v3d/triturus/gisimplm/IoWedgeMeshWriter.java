@@ -39,7 +39,6 @@ import org.n52.v3d.triturus.t3dutil.T3dVector;
 import org.n52.v3d.triturus.vgis.VgIndexedWedgeMesh;
 
 import java.io.*;
-import java.text.DecimalFormat;
 
 /** 
  * Writer which exports indexed 3-D wedge meshes to files or streams. 
@@ -50,7 +49,6 @@ public class IoWedgeMeshWriter extends IoAbstractWriter
 {
     private String logString = "";
     private String format;
-    private BufferedWriter doc;
     
     public boolean 
     	exportWedgeId = false, 
@@ -164,93 +162,96 @@ public class IoWedgeMeshWriter extends IoAbstractWriter
         throws T3dException
     {
         try {
-            doc = new BufferedWriter(new FileWriter(filename));
-            
-            wl("# vtk DataFile Version 3.0 generated by 52N Triturus");
-            wl("vtk output");
-            wl("ASCII");
-            wl("DATASET UNSTRUCTURED_GRID");
-            
-            DecimalFormat dfXY = this.getDecimalFormatXY();
-            DecimalFormat dfZ = this.getDecimalFormatZ();
-            
-            wl("POINTS " + mesh.numberOfPoints() + " float");
-            for (int i = 0; i < mesh.numberOfPoints(); i++) {
-                w(dfXY.format(mesh.getPoint(i).getX()));
-                w(" " + dfXY.format(mesh.getPoint(i).getY()));
-                wl(" " + dfZ.format(mesh.getPoint(i).getZ()));
-            }
-            
-            w("CELLS " + mesh.numberOfWedges());
-            wl(" " + (7 * mesh.numberOfWedges()));
-            for (int i = 0; i < mesh.numberOfWedges(); i++) {
-                w("6"); // number of a wedges's vertices
-                int[] v = mesh.getWedgeVertexIndices(i);
-                wl(
-                	" " + v[0] + 
-                	" " + v[1] + 
-                	" " + v[2] + 
-                	" " + v[3] + 
-                	" " + v[4] + 
-                	" " + v[5]);
-            }
+            FileOutputStream os = new FileOutputStream(filename);
+            try {
+                NumberEmitter out = this.createNumberEmitter(os);
 
-            wl("CELL_TYPES " + mesh.numberOfWedges());
-            for (int i = 0; i < mesh.numberOfWedges(); i++) {
-                wl("13"); // VTK type number
-            }
+                out.append("# vtk DataFile Version 3.0 generated by 52N Triturus").newLine();
+                out.append("vtk output").newLine();
+                out.append("ASCII").newLine();
+                out.append("DATASET UNSTRUCTURED_GRID").newLine();
+
+                out.append("POINTS ").append(mesh.numberOfPoints()).append(" float").newLine();
+                for (int i = 0; i < mesh.numberOfPoints(); i++) {
+                    out.xy(mesh.getPoint(i).getX()).append(' ');
+                    out.xy(mesh.getPoint(i).getY()).append(' ');
+                    out.z(mesh.getPoint(i).getZ()).newLine();
+                }
+
+                out.append("CELLS ").append(mesh.numberOfWedges());
+                out.append(' ').append(7 * mesh.numberOfWedges()).newLine();
+                for (int i = 0; i < mesh.numberOfWedges(); i++) {
+                    out.append('6'); // number of a wedges's vertices
+                    int[] v = mesh.getWedgeVertexIndices(i);
+                    out
+                        .append(' ').append(v[0])
+                        .append(' ').append(v[1])
+                        .append(' ').append(v[2])
+                        .append(' ').append(v[3])
+                        .append(' ').append(v[4])
+                        .append(' ').append(v[5]).newLine();
+                }
+
+                out.append("CELL_TYPES ").append(mesh.numberOfWedges()).newLine();
+                for (int i = 0; i < mesh.numberOfWedges(); i++) {
+                    out.append("13").newLine(); // VTK type number
+                }
+
+                if (
+                    this.exportWedgeId || 
+                    this.exportVerticalThickness || 
+                    this.exportAssumedThickness || 
+                    this.exportThicknessDelta) 
+                {
+                    out.append("CELL_DATA ").append(mesh.numberOfWedges()).newLine();
 
-            if (
-            	this.exportWedgeId || 
-            	this.exportVerticalThickness || 
-            	this.exportAssumedThickness || 
-            	this.exportThicknessDelta) 
-            {
-	          	wl("CELL_DATA " + mesh.numberOfWedges());            	
-	
-	          	if (this.exportWedgeId) {
-		        	wl("SCALARS WEDG_ID int 1");
-		        	wl("LOOKUP_TABLE default");
-		            for (int i = 0; i < mesh.numberOfWedges(); i++) {
-		                wl("" + i);
-		            }
-	          	}
-	          	
-	          	if (this.exportVerticalThickness) {
-		        	wl("SCALARS VERTICAL_THICKNESS float 1");
-		        	wl("LOOKUP_TABLE default");
-		            for (int i = 0; i < mesh.numberOfWedges(); i++) {
-		                int[] v = mesh.getWedgeVertexIndices(i);
-		                double dz = verticalThickness(mesh, v);
-		                wl("" + dz);
-		            }
-	            }            
+                    if (this.exportWedgeId) {
+                        out.append("SCALARS WEDG_ID int 1").newLine();
+                        out.append("LOOKUP_TABLE default").newLine();
+                        for (int i = 0; i < mesh.numberOfWedges(); i++) {
+                            out.append(i).newLine();
+                        }
+                    }
 
-	          	if (this.exportAssumedThickness) {
-		        	wl("SCALARS ASSUMED_THICKNESS float 1");
-		        	wl("LOOKUP_TABLE default");
-		            for (int i = 0; i < mesh.numberOfWedges(); i++) {
-		                int[] v = mesh.getWedgeVertexIndices(i);
-		                double t = assumedThickness(mesh, v);
-		                wl("" + t);
-		            }
-	            }            
+                    if (this.exportVerticalThickness) {
+                        out.append("SCALARS VERTICAL_THICKNESS float 1").newLine();
+                        out.append("LOOKUP_TABLE default").newLine();
+                        for (int i = 0; i < mesh.numberOfWedges(); i++) {
+                            int[] v = mesh.getWedgeVertexIndices(i);
+                            double dz = verticalThickness(mesh, v);
+                            out.append(Double.toString(dz)).newLine();
+                        }
+                    }
 
-	          	if (this.exportThicknessDelta) {
-		        	wl("SCALARS THICKNESS_DELTA float 1");
-		        	wl("LOOKUP_TABLE default");
-		            for (int i = 0; i < mesh.numberOfWedges(); i++) {
-		                int[] v = mesh.getWedgeVertexIndices(i);
-		                double 
-		                	dz = verticalThickness(mesh, v),
-		                	t = assumedThickness(mesh, v),
-		                	delta = dz - t;
-		                wl("" + delta);
-		            }
-	            }            
+                    if (this.exportAssumedThickness) {
+                        out.append("SCALARS ASSUMED_THICKNESS float 1").newLine();
+                        out.append("LOOKUP_TABLE default").newLine();
+                        for (int i = 0; i < mesh.numberOfWedges(); i++) {
+                            int[] v = mesh.getWedgeVertexIndices(i);
+                            double t = assumedThickness(mesh, v);
+                            out.append(Double.toString(t)).newLine();
+                        }
+                    }
+
+                    if (this.exportThicknessDelta) {
+                        out.append("SCALARS THICKNESS_DELTA float 1").newLine();
+                        out.append("LOOKUP_TABLE default").newLine();
+                        for (int i = 0; i < mesh.numberOfWedges(); i++) {
+                            int[] v = mesh.getWedgeVertexIndices(i);
+                            double 
+                                dz = verticalThickness(mesh, v),
+                                t = assumedThickness(mesh, v),
+                                delta = dz - t;
+                            out.append(Double.toString(delta)).newLine();
+                        }
+                    }
+                }
+
+                out.flush();
+            }
+            finally {
+                os.close();
             }
-            
-            doc.close();
         }
         catch (IOException e) {
             e.printStackTrace();
@@ -313,32 +314,4 @@ public class IoWedgeMeshWriter extends IoAbstractWriter
     	max = z4 > max ? z4 : max;
     	return z5 > max ? z5 : max;
     }
-
-    private void w(String line) {
-        try {
-            doc.write(line);
-        }
-        catch (IOException e) {
-            throw new T3dException(e.getMessage());
-        }
-    }
-
-    private void wl(String line) {
-        try {
-            doc.write(line);
-            doc.newLine();
-        }
-        catch (IOException e) {
-            throw new T3dException(e.getMessage());
-        }
-    }
-
-    private void wl() {
-        try {
-            doc.newLine();
-        }
-        catch (IOException e) {
-            throw new T3dException(e.getMessage());
-        }
-    }
 }
@@ -0,0 +1,294 @@
+/**
+ * Copyright (C) 2007-2016 52North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+
+/**
+ * Buffered text output for writers that emit large numbers of coordinates. 
+ * Numbers will be written with a fixed number of decimal places directly 
+ * into a reusable byte buffer, which will be written to the target channel 
+ * if it is full or if <tt>this.flush()</tt> is called. The output is the 
+ * same as the output of the <tt>DecimalFormat</tt>-objects provided by 
+ * {@link IoAbstractWriter#getDecimalFormatXY()} and 
+ * {@link IoAbstractWriter#getDecimalFormatZ()}, i.e. '.' will be used as 
+ * decimal point and the values will be rounded <i>half-even</i>; however, 
+ * <tt>DecimalFormat</tt> will be used only for values that can not be 
+ * formatted exactly by the fast path (e.g. exact ties or very large 
+ * values).<p>
+ * Note that the emitter has to be flushed before the target is closed.
+ * 
+ * @author Benno Schmidt
+ * @see IoAbstractWriter#createNumberEmitter(OutputStream)
+ */
+public class NumberEmitter 
+{
+    private final static int cBufferSize = 1 << 16;
+    private final static double cMaxScaled = (double) (1L << 40); // fast path limit for scaled values
+    private final static double[] cPow10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15};
+    private final static byte[] cLineSeparator = System.getProperty("line.separator").getBytes();
+
+    private final WritableByteChannel mChannel;
+    private final byte[] mBuf = new byte[cBufferSize];
+    private final ByteBuffer mByteBuf = ByteBuffer.wrap(mBuf);
+    private int mPos = 0;
+    private final byte[] mDigits = new byte[24];
+
+    private int mPrecisionXY, mPrecisionZ;
+    private DecimalFormat[] mFormats = new DecimalFormat[cPow10.length];
+
+    /**
+     * Constructor.
+     * 
+     * @param pChannel Target channel
+     * @param pPrecisionXY Number of decimal places for x- and y-coordinates
+     * @param pPrecisionZ Number of decimal places for z-coordinates
+     */
+    public NumberEmitter(WritableByteChannel pChannel, int pPrecisionXY, int pPrecisionZ) 
+    {
+        mChannel = pChannel;
+        mPrecisionXY = pPrecisionXY;
+        mPrecisionZ = pPrecisionZ;
+    }
+
+    /**
+     * Constructor. For file output streams, the stream's file channel will 
+     * be used. Note that the stream will not be closed by the emitter.
+     * 
+     * @param pStream Target stream
+     * @param pPrecisionXY Number of decimal places for x- and y-coordinates
+     * @param pPrecisionZ Number of decimal places for z-coordinates
+     */
+    public NumberEmitter(OutputStream pStream, int pPrecisionXY, int pPrecisionZ) 
+    {
+        this(pStream instanceof FileOutputStream ? 
+                ((FileOutputStream) pStream).getChannel() : Channels.newChannel(pStream), 
+            pPrecisionXY, pPrecisionZ);
+    }
+
+    /**
+     * writes an x- or y-coordinate using the x-y-precision.
+     * 
+     * @param pVal Coordinate value
+     * @return The emitter itself
+     */
+    public NumberEmitter xy(double pVal) throws IOException {
+        return this.number(pVal, mPrecisionXY);
+    }
+
+    /**
+     * writes a z-coordinate using the z-precision.
+     * 
+     * @param pVal Coordinate value
+     * @return The emitter itself
+     */
+    public NumberEmitter z(double pVal) throws IOException {
+        return this.number(pVal, mPrecisionZ);
+    }
+
+    /**
+     * writes a number using the given number of decimal places.
+     * 
+     * @param pVal Value
+     * @param pPrecision Number of decimal places
+     * @return The emitter itself
+     */
+    public NumberEmitter number(double pVal, int pPrecision) throws IOException
+    {
+        if (pPrecision >= cPow10.length)
+            return this.append(this.format(pPrecision).format(pVal));
+
+        double a = Math.abs(pVal) * cPow10[pPrecision];
+        if (!(a < cMaxScaled)) // large values, NaN and infinity
+            return this.append(this.format(pPrecision).format(pVal));
+        double r = Math.floor(a), frac = a - r;
+        if (Math.abs(frac - 0.5) <= Math.ulp(a)) // (nearly) exact tie
+            return this.append(this.format(pPrecision).format(pVal));
+        long n = (long) r;
+        if (frac > 0.5) 
+            n++;
+
+        // Generate digits (in reverse order):
+        int k = 0;
+        for (int i = 0; i < pPrecision; i++) {
+            mDigits[k++] = (byte) ('0' + (int) (n % 10));
+            n /= 10;
+        }
+        if (pPrecision > 0)
+            mDigits[k++] = '.';
+        do {
+            mDigits[k++] = (byte) ('0' + (int) (n % 10));
+            n /= 10;
+        } while (n > 0);
+        if (pVal < 0. || (pVal == 0. && 1. / pVal < 0.)) // including -0.
+            mDigits[k++] = '-';
+
+        this.ensure(k);
+        while (k > 0)
+            mBuf[mPos++] = mDigits[--k];
+        return this;
+    }
+
+    /**
+     * writes an integer number.
+     * 
+     * @param pVal Value
+     * @return The emitter itself
+     */
+    public NumberEmitter append(long pVal) throws IOException
+    {
+        if (pVal == Long.MIN_VALUE) 
+            return this.append(Long.toString(pVal));
+        long n = Math.abs(pVal);
+        int k = 0;
+        do {
+            mDigits[k++] = (byte) ('0' + (int) (n % 10));
+            n /= 10;
+        } while (n > 0);
+        if (pVal < 0)
+            mDigits[k++] = '-';
+        this.ensure(k);
+        while (k > 0)
+            mBuf[mPos++] = mDigits[--k];
+        return this;
+    }
+
+    /**
+     * writes a character.
+     * 
+     * @param pChar Character
+     * @return The emitter itself
+     */
+    public NumberEmitter append(char pChar) throws IOException
+    {
+        if (pChar >= 128)
+            return this.append(String.valueOf(pChar));
+        this.ensure(1);
+        mBuf[mPos++] = (byte) pChar;
+        return this;
+    }
+
+    /**
+     * writes a string. Non-ASCII characters will be encoded using the 
+     * platform's default charset.
+     * 
+     * @param pStr String
+     * @return The emitter itself
+     */
+    public NumberEmitter append(String pStr) throws IOException
+    {
+        int len = pStr.length();
+        for (int i = 0; i < len; i++) {
+            if (pStr.charAt(i) >= 128)
+                return this.append(pStr.getBytes());
+        }
+        for (int i = 0; i < len; ) {
+            this.ensure(1);
+            int n = Math.min(len - i, mBuf.length - mPos);
+            for (int j = 0; j < n; j++)
+                mBuf[mPos++] = (byte) pStr.charAt(i++);
+        }
+        return this;
+    }
+
+    /**
+     * writes a line separator (as <tt>BufferedWriter.newLine()</tt> does).
+     * 
+     * @return The emitter itself
+     */
+    public NumberEmitter newLine() throws IOException {
+        return this.append(cLineSeparator);
+    }
+
+    /**
+     * writes a byte array (e.g., a pre-encoded block of text).
+     * 
+     * @param pBytes Bytes to be written
+     * @return The emitter itself
+     */
+    public NumberEmitter append(byte[] pBytes) throws IOException
+    {
+        for (int i = 0; i < pBytes.length; ) {
+            this.ensure(1);
+            int n = Math.min(pBytes.length - i, mBuf.length - mPos);
+            System.arraycopy(pBytes, i, mBuf, mPos, n);
+            mPos += n;
+            i += n;
+        }
+        return this;
+    }
+
+    /**
+     * writes the buffered output to the target channel.
+     * 
+     * @throws IOException
+     */
+    public void flush() throws IOException
+    {
+        mByteBuf.clear();
+        mByteBuf.limit(mPos);
+        while (mByteBuf.hasRemaining())
+            mChannel.write(mByteBuf);
+        mPos = 0;
+    }
+
+    private void ensure(int pNumberOfBytes) throws IOException {
+        if (mPos + pNumberOfBytes > mBuf.length)
+            this.flush();
+    }
+
+    private DecimalFormat format(int pPrecision)
+    {
+        if (pPrecision < mFormats.length && mFormats[pPrecision] != null)
+            return mFormats[pPrecision];
+        StringBuilder format = new StringBuilder("0");
+        if (pPrecision > 0)
+            format.append('.');
+        for (int i = 0; i < pPrecision; i++)
+            format.append('0');
+        DecimalFormatSymbols sym = new DecimalFormatSymbols();
+        sym.setDecimalSeparator('.');
+        DecimalFormat df = new DecimalFormat(format.toString(), sym);
+        if (pPrecision < mFormats.length)
+            mFormats[pPrecision] = df;
+        return df;
+    }
+}
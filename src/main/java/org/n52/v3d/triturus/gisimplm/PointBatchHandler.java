@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2007-2016 52North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+/**
+ * Interface for consumers of point streams. Large point sets can be 
+ * processed in batches of primitive coordinate values without materializing 
+ * a list of {@link org.n52.v3d.triturus.vgis.VgPoint} objects.
+ * 
+ * @author Benno Schmidt
+ * @see IoPointListReader#readFromFile(String, PointBatchHandler)
+ * @see FltPointSet2ElevationGrid
+ */
+public interface PointBatchHandler 
+{
+	/**
+	 * processes a batch of points. Note that the coordinate array might be 
+	 * re-used by the caller after this method returned.
+	 * 
+	 * @param pXYZ Point coordinates <i>(x<sub>0</sub>, y<sub>0</sub>, 
+	 * z<sub>0</sub>, x<sub>1</sub>, ...)</i>
+	 * @param pCount Number of points held in the array
+	 */
+	public abstract void processBatch(double[] pXYZ, int pCount);
+}
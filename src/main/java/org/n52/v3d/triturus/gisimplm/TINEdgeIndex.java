@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2007-2016 52North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+/**
+ * Helper to build the edge-based topology of an indexed TIN. Each edge is 
+ * identified by its vertex pair packed into a <tt>long</tt> value; the edge 
+ * numbers are kept in a primitive open-addressing hash table. Thus, the 
+ * computation requires O(T) runtime and memory (T = number of triangles).
+ * <br/>
+ * The edges are numbered in the order of their first occurrence. For each 
+ * triangle, the vertex indices are sorted ascending (<i>v<sub>0</sub> &lt; 
+ * v<sub>1</sub> &lt; v<sub>2</sub></i>); then, the edges 
+ * <i>(v<sub>0</sub>, v<sub>1</sub>)</i>, <i>(v<sub>1</sub>, 
+ * v<sub>2</sub>)</i> and <i>(v<sub>0</sub>, v<sub>2</sub>)</i> are 
+ * inspected in this order.
+ * 
+ * @author Benno Schmidt
+ * @see GmTopoTIN
+ * @see GmDoubleIndexTIN
+ */
+class TINEdgeIndex 
+{
+    private int mNumberOfEdges = 0;
+    private int[] mEdges; // vertex references, pairs
+    private int[] mTriangles; // edge references, triples
+
+    private long[] mKeys;
+    private int[] mValues;
+    private int mMask;
+
+    /**
+     * Constructor.
+     * 
+     * @param pTIN TIN geometry
+     */
+    TINEdgeIndex(GmSimpleTINGeometry pTIN) 
+    {
+        int nTri = pTIN.numberOfTriangles();
+        mTriangles = new int[3 * nTri];
+        mEdges = new int[2 * (3 * nTri)];
+
+        this.allocateTable(3 * nTri / 2 + 16);
+
+        int[] tr;
+        int a, b, c, h;
+        for (int i = 0; i < nTri; i++) {
+            tr = pTIN.getTriangleVertexIndices(i);
+            a = tr[0]; b = tr[1]; c = tr[2];
+            if (a > b) { h = a; a = b; b = h; }
+            if (b > c) { h = b; b = c; c = h; }
+            if (a > b) { h = a; a = b; b = h; }
+            mTriangles[3 * i] = this.edgeNumber(a, b);
+            mTriangles[3 * i + 1] = this.edgeNumber(b, c);
+            mTriangles[3 * i + 2] = this.edgeNumber(a, c);
+        }
+
+        int[] temp = new int[2 * mNumberOfEdges];
+        System.arraycopy(mEdges, 0, temp, 0, 2 * mNumberOfEdges);
+        mEdges = temp;
+        mKeys = null;
+        mValues = null;
+    }
+
+    int numberOfEdges() {
+        return mNumberOfEdges;
+    }
+
+    int[] getEdges() {
+        return mEdges;
+    }
+
+    int[] getTriangles() {
+        return mTriangles;
+    }
+
+    private void allocateTable(int pExpectedSize) 
+    {
+        int cap = 16;
+        while (cap < 2 * pExpectedSize) cap <<= 1;
+        mKeys = new long[cap];
+        java.util.Arrays.fill(mKeys, -1L);
+        mValues = new int[cap];
+        mMask = cap - 1;
+    }
+
+    // Returns the edge number for (a, b), a < b; new edges will be registered:
+    private int edgeNumber(int a, int b) 
+    {
+        long key = ((long) a << 32) | (long) b;
+        int pos = hash(key) & mMask;
+        while (mKeys[pos] != -1L) {
+            if (mKeys[pos] == key) 
+                return mValues[pos];
+            pos = (pos + 1) & mMask;
+        }
+        if (2 * (mNumberOfEdges + 1) > mKeys.length) {
+            this.rehash();
+            return this.edgeNumber(a, b);
+        }
+        mKeys[pos] = key;
+        mValues[pos] = mNumberOfEdges;
+        mEdges[2 * mNumberOfEdges] = a;
+        mEdges[2 * mNumberOfEdges + 1] = b;
+        return mNumberOfEdges++;
+    }
+
+    private void rehash() 
+    {
+        long[] keys = mKeys;
+        int[] values = mValues;
+        this.allocateTable(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != -1L) {
+                int pos = hash(keys[i]) & mMask;
+                while (mKeys[pos] != -1L) 
+                    pos = (pos + 1) & mMask;
+                mKeys[pos] = keys[i];
+                mValues[pos] = values[i];
+            }
+        }
+    }
+
+    private static int hash(long pKey) 
+    {
+        long h = pKey * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,432 @@
+/**
+ * Copyright (C) 2007-2016 52North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.gisimplm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.n52.v3d.triturus.core.T3dException;
+
+/**
+ * Layout and tile codec of the native binary elevation-grid format (see 
+ * {@link org.n52.v3d.triturus.core.IoFormatType#BINARY_GRID}). A file 
+ * consists of
+ * <ol>
+ * <li>a header of 64 bytes holding the grid geometry, the value precision, 
+ * the compression method and the tile size,</li>
+ * <li>the tile index, i.e. the file offsets of all tiles followed by the 
+ * end-of-data offset (8 bytes each),</li>
+ * <li>the tile data.</li>
+ * </ol>
+ * The grid is divided into tiles of <i>tileSize x tileSize</i> elements; 
+ * the tiles at the upper and right border might be smaller. The tiles are 
+ * numbered tile-row by tile-row starting at the grid origin. Each tile 
+ * holds its values row by row as big-endian floats or doubles 
+ * (<tt>NaN</tt> for unset elements) and is compressed independently, thus 
+ * arbitrary windows can be read by accessing the relevant tiles only. For 
+ * predictor compression, the values' bit patterns are replaced by their 
+ * differences to the left neighbour (first column: to the first element of 
+ * the preceding row) and stored byte-plane by byte-plane before deflating.
+ * 
+ * @author Benno Schmidt
+ * @see IoElevationGridReader
+ * @see IoElevationGridWriter
+ */
+class TiledGridFile 
+{
+    final static int cMagic = 0x54334447; // "T3DG"
+    final static int cVersion = 1;
+    final static int cHeaderSize = 64;
+
+    int nCols, nRows;
+    double x0, y0, z0, dx, dy;
+    boolean lattice;
+    short precision = GmSimpleElevationGrid.cDoublePrecision;
+    short compression = IoElevationGridWriter.cPredictorDeflate;
+    int tileSize = 256;
+    long[] offsets; // tile offsets followed by end-of-data offset
+
+    int tilesX() {
+        return (nCols + tileSize - 1) / tileSize;
+    }
+
+    int tilesY() {
+        return (nRows + tileSize - 1) / tileSize;
+    }
+
+    int numberOfTiles() {
+        return this.tilesX() * this.tilesY();
+    }
+
+    int tileColumns(int tx) {
+        return Math.min(tileSize, nCols - tx * tileSize);
+    }
+
+    int tileRows(int ty) {
+        return Math.min(tileSize, nRows - ty * tileSize);
+    }
+
+    int bytesPerValue() {
+        return precision == GmSimpleElevationGrid.cSinglePrecision ? 4 : 8;
+    }
+
+    long dataOffset() {
+        return cHeaderSize + 8L * (this.numberOfTiles() + 1);
+    }
+
+    static TiledGridFile readHeader(FileChannel fc) throws IOException, T3dException
+    {
+        ByteBuffer bb = ByteBuffer.allocate(cHeaderSize);
+        readFully(fc, bb, 0L);
+        bb.flip();
+        if (bb.getInt() != cMagic)
+            throw new T3dException("Not a binary elevation-grid file.");
+        int version = bb.getInt();
+        if (version != cVersion)
+            throw new T3dException("Unsupported binary elevation-grid version: " + version);
+
+        TiledGridFile res = new TiledGridFile();
+        res.nCols = bb.getInt();
+        res.nRows = bb.getInt();
+        res.x0 = bb.getDouble();
+        res.y0 = bb.getDouble();
+        res.z0 = bb.getDouble();
+        res.dx = bb.getDouble();
+        res.dy = bb.getDouble();
+        res.lattice = bb.get() != 0;
+        res.precision = bb.get();
+        res.compression = bb.get();
+        bb.get(); // reserved
+        res.tileSize = bb.getInt();
+        if (res.nCols <= 0 || res.nRows <= 0 || res.tileSize <= 0
+            || (long) res.nCols * (long) res.nRows > Integer.MAX_VALUE)
+            throw new T3dException("Illegal binary elevation-grid header.");
+        if (res.precision != GmSimpleElevationGrid.cDoublePrecision 
+            && res.precision != GmSimpleElevationGrid.cSinglePrecision)
+            throw new T3dException("Illegal precision identifier: " + res.precision);
+        if (res.compression < IoElevationGridWriter.cUncompressed 
+            || res.compression > IoElevationGridWriter.cPredictorDeflate)
+            throw new T3dException("Illegal compression identifier: " + res.compression);
+
+        ByteBuffer ib = ByteBuffer.allocate(8 * (res.numberOfTiles() + 1));
+        readFully(fc, ib, cHeaderSize);
+        ib.flip();
+        res.offsets = new long[res.numberOfTiles() + 1];
+        ib.asLongBuffer().get(res.offsets);
+        return res;
+    }
+
+    // Writes header and tile index to the beginning of the file:
+    void writeHeader(FileChannel fc) throws IOException
+    {
+        ByteBuffer bb = ByteBuffer.allocate((int) this.dataOffset());
+        bb.putInt(cMagic);
+        bb.putInt(cVersion);
+        bb.putInt(nCols);
+        bb.putInt(nRows);
+        bb.putDouble(x0);
+        bb.putDouble(y0);
+        bb.putDouble(z0);
+        bb.putDouble(dx);
+        bb.putDouble(dy);
+        bb.put((byte) (lattice ? 1 : 0));
+        bb.put((byte) precision);
+        bb.put((byte) compression);
+        bb.put((byte) 0); // reserved
+        bb.putInt(tileSize);
+        for (int t = 0; t < offsets.length; t++)
+            bb.putLong(offsets[t]);
+        bb.flip();
+        writeFully(fc, bb, 0L);
+    }
+
+    static void readFully(FileChannel fc, ByteBuffer bb, long pos) throws IOException
+    {
+        while (bb.hasRemaining()) {
+            int k = fc.read(bb, pos);
+            if (k < 0)
+                throw new EOFException("Unexpected end of binary elevation-grid file.");
+            pos += k;
+        }
+    }
+
+    static void writeFully(FileChannel fc, ByteBuffer bb, long pos) throws IOException
+    {
+        while (bb.hasRemaining())
+            pos += fc.write(bb, pos);
+    }
+
+    /**
+     * encodes the tile <i>(tx, ty)</i> of the given storage.
+     */
+    byte[] encodeTile(GmElevationGridStorage storage, int tx, int ty)
+    {
+        int w = this.tileColumns(tx), h = this.tileRows(ty), bpv = this.bytesPerValue();
+        int idx = ty * tileSize * nCols + tx * tileSize;
+
+        ByteBuffer plain = ByteBuffer.allocate(w * h * bpv);
+        if (bpv == 4) {
+            FloatBuffer fb = plain.asFloatBuffer();
+            float[] val = null, row = null;
+            if (storage instanceof GmFloatGridStorage)
+                val = ((GmFloatGridStorage) storage).getArray();
+            else
+                row = new float[w];
+            for (int i = 0; i < h; i++, idx += nCols) {
+                if (val != null) 
+                    fb.put(val, idx, w);
+                else {
+                    for (int j = 0; j < w; j++)
+                        row[j] = (float) storage.get(idx + j);
+                    fb.put(row, 0, w);
+                }
+            }
+        }
+        else {
+            DoubleBuffer db = plain.asDoubleBuffer();
+            double[] val = null, row = null;
+            if (storage instanceof GmDoubleGridStorage)
+                val = ((GmDoubleGridStorage) storage).getArray();
+            else
+                row = new double[w];
+            for (int i = 0; i < h; i++, idx += nCols) {
+                if (val != null) 
+                    db.put(val, idx, w);
+                else {
+                    for (int j = 0; j < w; j++)
+                        row[j] = storage.get(idx + j);
+                    db.put(row, 0, w);
+                }
+            }
+        }
+
+        byte[] data = plain.array();
+        if (compression == IoElevationGridWriter.cUncompressed)
+            return data;
+        if (compression == IoElevationGridWriter.cPredictorDeflate)
+            data = this.predict(data, w, h, bpv);
+        return this.deflate(data);
+    }
+
+    /**
+     * reads and decodes the tile <i>(tx, ty)</i>. The result holds the 
+     * tile's values as big-endian floats or doubles row by row.
+     */
+    byte[] decodeTile(FileChannel fc, int tx, int ty) throws IOException, T3dException
+    {
+        int w = this.tileColumns(tx), h = this.tileRows(ty), bpv = this.bytesPerValue();
+        int size = w * h * bpv;
+        int t = ty * this.tilesX() + tx;
+        long len = offsets[t + 1] - offsets[t];
+        if (len < 0 || len > Integer.MAX_VALUE)
+            throw new T3dException("Corrupt tile index (tile " + t + ").");
+
+        ByteBuffer bb = ByteBuffer.allocate((int) len);
+        readFully(fc, bb, offsets[t]);
+        byte[] data = bb.array();
+        if (compression == IoElevationGridWriter.cUncompressed) {
+            if (data.length != size)
+                throw new T3dException("Corrupt tile data (tile " + t + ").");
+            return data;
+        }
+        data = this.inflate(data, size, t);
+        if (compression == IoElevationGridWriter.cPredictorDeflate)
+            data = this.unpredict(data, w, h, bpv);
+        return data;
+    }
+
+    /**
+     * checks, if the tile <i>(tx, ty)</i> contains any of the elements 
+     * <i>(row0 + i * step, col0 + j * step)</i> inside the window 
+     * <i>[row0, row1) x [col0, col1)</i>.
+     */
+    boolean intersects(int tx, int ty, int row0, int row1, int col0, int col1, int step)
+    {
+        int tr0 = ty * tileSize, tc0 = tx * tileSize;
+        return 
+            firstSelected(Math.max(row0, tr0), row0, step) < Math.min(row1, tr0 + this.tileRows(ty)) &&
+            firstSelected(Math.max(col0, tc0), col0, step) < Math.min(col1, tc0 + this.tileColumns(tx));
+    }
+
+    /**
+     * copies the elements <i>(row0 + i * step, col0 + j * step)</i> of the 
+     * decoded tile <i>(tx, ty)</i> that lie inside the window 
+     * <i>[row0, row1) x [col0, col1)</i> to the target storage, which holds 
+     * the selected values in row-major order. The target storage's precision 
+     * must match the file's precision.
+     */
+    void copyTile(byte[] plain, int tx, int ty, 
+        int row0, int row1, int col0, int col1, int step, GmElevationGridStorage target)
+    {
+        int w = this.tileColumns(tx), h = this.tileRows(ty);
+        int tr0 = ty * tileSize, tc0 = tx * tileSize;
+        int r0 = firstSelected(Math.max(row0, tr0), row0, step), r1 = Math.min(row1, tr0 + h);
+        int c0 = firstSelected(Math.max(col0, tc0), col0, step), c1 = Math.min(col1, tc0 + w);
+        if (r0 >= r1 || c0 >= c1)
+            return;
+        int targetCols = (col1 - col0 + step - 1) / step;
+        int n = (c1 - c0 + step - 1) / step; // values per row
+
+        if (target instanceof GmFloatGridStorage) {
+            float[] val = ((GmFloatGridStorage) target).getArray();
+            FloatBuffer fb = ByteBuffer.wrap(plain).asFloatBuffer();
+            for (int r = r0; r < r1; r += step) {
+                int src = (r - tr0) * w + (c0 - tc0);
+                int dst = ((r - row0) / step) * targetCols + (c0 - col0) / step;
+                if (step == 1) {
+                    fb.position(src);
+                    fb.get(val, dst, n);
+                }
+                else {
+                    for (int j = 0; j < n; j++, src += step)
+                        val[dst + j] = fb.get(src);
+                }
+            }
+        }
+        else {
+            double[] val = ((GmDoubleGridStorage) target).getArray();
+            DoubleBuffer db = ByteBuffer.wrap(plain).asDoubleBuffer();
+            for (int r = r0; r < r1; r += step) {
+                int src = (r - tr0) * w + (c0 - tc0);
+                int dst = ((r - row0) / step) * targetCols + (c0 - col0) / step;
+                if (step == 1) {
+                    db.position(src);
+                    db.get(val, dst, n);
+                }
+                else {
+                    for (int j = 0; j < n; j++, src += step)
+                        val[dst + j] = db.get(src);
+                }
+            }
+        }
+    }
+
+    // Returns the first index >= from that is selected when taking every 
+    // step-th index starting at start (from >= start):
+    private static int firstSelected(int from, int start, int step) {
+        return start + (from - start + step - 1) / step * step;
+    }
+
+    private byte[] predict(byte[] plain, int w, int h, int bpv)
+    {
+        int n = w * h;
+        byte[] res = new byte[n * bpv];
+        long prev = 0, rowStart = 0;
+        for (int i = 0, k = 0; i < h; i++) {
+            for (int j = 0; j < w; j++, k++) {
+                long b = 0;
+                for (int m = 0, off = k * bpv; m < bpv; m++, off++)
+                    b = (b << 8) | (plain[off] & 0xff);
+                long d = b - (j > 0 ? prev : rowStart);
+                if (j == 0)
+                    rowStart = b;
+                prev = b;
+                for (int m = 0, s = 8 * (bpv - 1); m < bpv; m++, s -= 8)
+                    res[m * n + k] = (byte) (d >>> s);
+            }
+        }
+        return res;
+    }
+
+    private byte[] unpredict(byte[] coded, int w, int h, int bpv)
+    {
+        int n = w * h;
+        long mask = bpv == 8 ? -1L : 0xffffffffL;
+        byte[] res = new byte[n * bpv];
+        long prev = 0, rowStart = 0;
+        for (int i = 0, k = 0; i < h; i++) {
+            for (int j = 0; j < w; j++, k++) {
+                long d = 0;
+                for (int m = 0; m < bpv; m++)
+                    d = (d << 8) | (coded[m * n + k] & 0xff);
+                long b = (d + (j > 0 ? prev : rowStart)) & mask;
+                if (j == 0)
+                    rowStart = b;
+                prev = b;
+                for (int m = 0, off = k * bpv, s = 8 * (bpv - 1); m < bpv; m++, off++, s -= 8)
+                    res[off] = (byte) (b >>> s);
+            }
+        }
+        return res;
+    }
+
+    private byte[] deflate(byte[] data)
+    {
+        Deflater def = new Deflater();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+        byte[] buf = new byte[1 << 16];
+        try {
+            def.setInput(data);
+            def.finish();
+            while (!def.finished()) {
+                int k = def.deflate(buf);
+                out.write(buf, 0, k);
+            }
+        }
+        finally {
+            def.end();
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] inflate(byte[] data, int size, int t) throws T3dException
+    {
+        Inflater inf = new Inflater();
+        byte[] res = new byte[size];
+        try {
+            inf.setInput(data);
+            int pos = 0;
+            while (pos < size) {
+                int k = inf.inflate(res, pos, size - pos);
+                if (k == 0 && (inf.finished() || inf.needsInput() || inf.needsDictionary()))
+                    throw new T3dException("Corrupt tile data (tile " + t + ").");
+                pos += k;
+            }
+        }
+        catch (DataFormatException e) {
+            throw new T3dException("Corrupt tile data (tile " + t + "): " + e.getMessage());
+        }
+        finally {
+            inf.end();
+        }
+        return res;
+    }
+}
@@ -2,13 +2,14 @@ package org.n52.v3d.triturus.t3dutil;
 
 import java.util.List;
 
-import org.n52.v3d.triturus.core.T3dNotYetImplException;
 import org.n52.v3d.triturus.vgis.VgPoint;
 
 /** 
- * Simple Delaunay triangulation implementation.<br/>
- * <b>Note:</b> This non-efficient O(N^2) implementation has been removed. 
+ * Delaunay triangulation for point sets given as flat coordinate arrays. 
+ * Note that the former non-efficient O(N^2) implementation has been replaced
+ * by {@link DivideAndConquerDelaunay}.
  * @see SimpleDelaunay
+ * @see DivideAndConquerDelaunay
  */
 public class Delaunay 
 {
@@ -28,43 +29,82 @@ public class Delaunay
     	return new SimpleDelaunay(points).getIndices();
 	}
 
-	// Deprecated stuff:
-	static private String deprMsg = 
-		"Method is no longer implemented; see source-code to find a substitute.";
-	/** @deprecated */
+	private double[] p;
+	private int[] indices;
+	private double bound;
+
+	/**
+	 * Constructor. Triangulates the given points using the 
+	 * {@link DivideAndConquerDelaunay} implementation.
+	 * 
+	 * @param p Point coordinates <i>(x<sub>0</sub>, y<sub>0</sub>, 
+	 * x<sub>1</sub>, y<sub>1</sub>, ...)</i>
+	 */
 	public Delaunay(final double[] p) {
-		throw new T3dNotYetImplException(deprMsg);		
+		this.p = p;
+		indices = DivideAndConquerDelaunay.triangulate(p);
+		for (int i = 0; i < p.length; i++) {
+			if (Math.abs(p[i]) > bound) bound = Math.abs(p[i]);
+		}
 	}
-	/** @deprecated */
+
+	/**
+	 * returns an index set containing a Delaunay triangulation for the given 
+	 * point coordinates (see {@link #triangulate(List)}).
+	 * 
+	 * @param p Point coordinates <i>(x<sub>0</sub>, y<sub>0</sub>, 
+	 * x<sub>1</sub>, y<sub>1</sub>, ...)</i>
+	 * @return Triangle index set
+	 */
 	public static int[] triangulate(final double[] p) {
-		throw new T3dNotYetImplException(deprMsg);		
+		return DivideAndConquerDelaunay.triangulate(p);
 	}
-	/** @deprecated */
+
+	/**
+	 * returns the maximal absolute coordinate value of the input points.
+	 */
 	public double getBound() { 
-		throw new T3dNotYetImplException(deprMsg); 
-		}	
-	/** @deprecated */
+		return bound;
+	}	
+
+	/**
+	 * copies the coordinates of the point with the given index to the array
+	 * <tt>point</tt>.
+	 */
 	public void getPoint(int index, double[] point) { 
-		throw new T3dNotYetImplException(deprMsg);
+		point[0] = p[2 * index];
+		point[1] = p[2 * index + 1];
 	}
-	/** @deprecated */
+
+	/**
+	 * returns a copy of the input point coordinates.
+	 */
 	public double[] getPoints() { 
-		throw new T3dNotYetImplException(deprMsg);		
+		double[] res = new double[p.length];
+		System.arraycopy(p, 0, res, 0, p.length);
+		return res;
 	}
-	/** @deprecated */
+
+	/**
+	 * copies the input point coordinates to the array <tt>points</tt>, 
+	 * starting at the position <tt>offset</tt>.
+	 */
 	public void getPoints(double[] points, int offset) { 
-		throw new T3dNotYetImplException(deprMsg);		
+		System.arraycopy(p, 0, points, offset, p.length);
 	}
-	/** @deprecated */
+
 	public int getNumFaces() { 		
-		throw new T3dNotYetImplException(deprMsg);		
+		return indices.length / 3;
 	}
-	/** @deprecated */
+
 	public int getNumPoints() { 		
-		throw new T3dNotYetImplException(deprMsg);		
+		return p.length / 2;
 	}
-	/** @deprecated */
+
+	/**
+	 * returns the triangle index set.
+	 */
 	public int[] getIndices() {
-		throw new T3dNotYetImplException(deprMsg);		
+		return indices;
 	}
 }
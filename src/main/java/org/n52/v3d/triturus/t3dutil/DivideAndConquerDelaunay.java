@@ -0,0 +1,508 @@
+/**
+ * Copyright (C) 2007-2016 52North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.t3dutil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.n52.v3d.triturus.core.T3dException;
+
+/** 
+ * Divide-and-conquer Delaunay triangulation following Guibas &amp; Stolfi 
+ * (1985): Primitives for the manipulation of general subdivisions and the 
+ * computation of Voronoi diagrams, ACM Transactions on Graphics 4(2). The 
+ * implementation works on a flat coordinate array <i>(x<sub>0</sub>, 
+ * y<sub>0</sub>, x<sub>1</sub>, y<sub>1</sub>, ...)</i> and keeps the 
+ * quad-edge structure in primitive arrays. The algorithm requires 
+ * O(N log N) runtime.
+ * <br/>
+ * In parallel mode, the points (sorted by x and y) are split into 
+ * partitions which are triangulated on separate threads. Afterwards, 
+ * neighboring partitions are merged pairwise, again in parallel for each 
+ * merge level. The result is the same as for the sequential mode.
+ * <br/>
+ * Note that z-coordinates are not considered (&quot;2.5-D&quot; 
+ * triangulation) and that duplicate points will not be referenced by the 
+ * resulting triangles.
+ * 
+ * @author Benno Schmidt
+ * @see SimpleDelaunay
+ */
+public class DivideAndConquerDelaunay 
+{
+	private double[] xy; // point coordinates (x0, y0, x1, y1, ...)
+	private int numberOfPoints;
+	private double[] sx, sy; // coordinates of the sorted unique points
+	private int[] indices; // resulting triangles
+
+	// Minimal number of points per partition in parallel mode:
+	private final static int cMinPartitionSize = 4096;
+
+	/**
+	 * Constructor. Performs a sequential triangulation.
+	 * 
+	 * @param p Point coordinates <i>(x<sub>0</sub>, y<sub>0</sub>, 
+	 * x<sub>1</sub>, y<sub>1</sub>, ...)</i>
+	 */
+	public DivideAndConquerDelaunay(double[] p) {
+		this(p, 1);
+	}
+
+	/**
+	 * Constructor. If more than one thread is given, the triangulation will 
+	 * be performed in parallel.
+	 * 
+	 * @param p Point coordinates <i>(x<sub>0</sub>, y<sub>0</sub>, 
+	 * x<sub>1</sub>, y<sub>1</sub>, ...)</i>
+	 * @param numberOfThreads Number of threads to be used
+	 * @throws T3dException if the parallel computation fails
+	 */
+	public DivideAndConquerDelaunay(double[] p, int numberOfThreads) 
+		throws T3dException
+	{
+		xy = p;
+		numberOfPoints = p.length / 2;
+		
+		int[] v = this.sortedUniquePoints();
+		if (v.length < 3) {
+			indices = new int[0];
+			return;
+		}
+
+		int numberOfPartitions = 1;
+		while (
+			numberOfPartitions < numberOfThreads && 
+			v.length / (2 * numberOfPartitions) >= cMinPartitionSize) 
+		{
+			numberOfPartitions *= 2;
+		}
+
+		// Internally, the position inside the sorted list serves as vertex 
+		// index; the coordinates are copied to achieve better cache locality:
+		sx = new double[v.length];
+		sy = new double[v.length];
+		for (int i = 0; i < v.length; i++) {
+			sx[i] = xy[2 * v[i]];
+			sy[i] = xy[2 * v[i] + 1];
+		}
+
+		QuadEdges res;
+		if (numberOfPartitions <= 1) {
+			res = new QuadEdges(v.length);
+			res.hull = this.triangulate(res, 0, v.length);
+		} else {
+			res = this.triangulateParallel(v.length, numberOfPartitions, numberOfThreads);
+		}
+		indices = this.triangles(res);
+		for (int i = 0; i < indices.length; i++) 
+			indices[i] = v[indices[i]];
+		sx = null;
+		sy = null;
+	}
+
+	/**
+	 * returns an index set containing a Delaunay triangulation for the given 
+	 * point coordinates. For the input points <i>p<sub>0</sub> .. 
+	 * p<sub>N-1</sub></i> the indices of the i-th triangle are stored at the 
+	 * output array's positions <i>3i, 3i+1</i> and <i>3i+2</i>. The 
+	 * triangles are oriented counter-clockwise.
+	 * 
+	 * @param p Point coordinates <i>(x<sub>0</sub>, y<sub>0</sub>, 
+	 * x<sub>1</sub>, y<sub>1</sub>, ...)</i>
+	 * @return Triangle index set
+	 */
+	public static int[] triangulate(double[] p) {
+		return new DivideAndConquerDelaunay(p).getIndices();
+	}
+
+	/**
+	 * returns the triangle index set (see {@link #triangulate(double[])}).
+	 * 
+	 * @return Triangle index set
+	 */
+	public int[] getIndices() {
+		return indices;
+	}
+
+	/** 
+	 * gets the number of faces (triangles) inside the triangulation.
+	 */
+	public int numberOfFaces() {
+		return indices.length / 3;
+	}
+
+	/** 
+	 * gets the number of points given as input.
+	 */
+	public int numberOfPoints() {
+		return numberOfPoints;
+	}
+
+	// Geometric predicates:
+
+	private boolean ccw(int a, int b, int c) {
+		double 
+			ax = sx[a], ay = sy[a],
+			bx = sx[b], by = sy[b],
+			cx = sx[c], cy = sy[c];
+		return (bx - ax) * (cy - ay) - (by - ay) * (cx - ax) > 0.;
+	}
+
+	// true, if d lies inside the circumcircle of the ccw-triangle (a, b, c):
+	private boolean inCircle(int a, int b, int c, int d) {
+		double 
+			dx = sx[d], dy = sy[d],
+			ax = sx[a] - dx, ay = sy[a] - dy,
+			bx = sx[b] - dx, by = sy[b] - dy,
+			cx = sx[c] - dx, cy = sy[c] - dy;
+		double 
+			a2 = ax * ax + ay * ay,
+			b2 = bx * bx + by * by,
+			c2 = cx * cx + cy * cy;
+		return 
+			a2 * (bx * cy - cx * by) - 
+			b2 * (ax * cy - cx * ay) + 
+			c2 * (ax * by - bx * ay) > 0.;
+	}
+
+	private boolean less(int a, int b) {
+		double ax = xy[2 * a], bx = xy[2 * b];
+		return ax < bx || (ax == bx && xy[2 * a + 1] < xy[2 * b + 1]);
+	}
+
+	// Point indices sorted by x and y, duplicates removed:
+	private int[] sortedUniquePoints() 
+	{
+		int[] v = new int[numberOfPoints], tmp = new int[numberOfPoints];
+		for (int i = 0; i < numberOfPoints; i++) v[i] = i;
+		this.mergeSort(v, tmp, 0, numberOfPoints);
+
+		int n = 0;
+		for (int i = 0; i < numberOfPoints; i++) {
+			if (n == 0 || 
+				xy[2 * v[i]] != xy[2 * v[n - 1]] || 
+				xy[2 * v[i] + 1] != xy[2 * v[n - 1] + 1]) 
+			{
+				v[n++] = v[i];
+			}
+		}
+		int[] res = new int[n];
+		System.arraycopy(v, 0, res, 0, n);
+		return res;
+	}
+
+	private void mergeSort(int[] v, int[] tmp, int lo, int hi) 
+	{
+		if (hi - lo < 16) {
+			for (int i = lo + 1; i < hi; i++) {
+				int k = v[i], j = i - 1;
+				while (j >= lo && less(k, v[j])) { v[j + 1] = v[j]; j--; }
+				v[j + 1] = k;
+			}
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		this.mergeSort(v, tmp, lo, mid);
+		this.mergeSort(v, tmp, mid, hi);
+		System.arraycopy(v, lo, tmp, lo, hi - lo);
+		int i = lo, j = mid, k = lo;
+		while (i < mid && j < hi) 
+			v[k++] = less(tmp[j], tmp[i]) ? tmp[j++] : tmp[i++];
+		while (i < mid) v[k++] = tmp[i++];
+		while (j < hi) v[k++] = tmp[j++];
+	}
+
+	// Divide-and-conquer core. Returns the hull edges {ldo, rdo}:
+	private int[] triangulate(QuadEdges q, int lo, int hi) 
+	{
+		int n = hi - lo;
+		if (n == 2) {
+			int a = q.makeEdge(lo, lo + 1);
+			return new int[] {a, sym(a)};
+		}
+		if (n == 3) {
+			int s1 = lo, s2 = lo + 1, s3 = lo + 2;
+			int a = q.makeEdge(s1, s2), b = q.makeEdge(s2, s3);
+			q.splice(sym(a), b);
+			if (ccw(s1, s2, s3)) {
+				q.connect(b, a);
+				return new int[] {a, sym(b)};
+			} 
+			if (ccw(s1, s3, s2)) {
+				int c = q.connect(b, a);
+				return new int[] {sym(c), c};
+			}
+			return new int[] {a, sym(b)}; // collinear points
+		}
+		int mid = (lo + hi) >>> 1;
+		int[] l = this.triangulate(q, lo, mid), r = this.triangulate(q, mid, hi);
+		return this.merge(q, l[0], l[1], r[0], r[1]);
+	}
+
+	// Merges two adjacent triangulations. Returns the hull edges {ldo, rdo}:
+	private int[] merge(QuadEdges q, int ldo, int ldi, int rdi, int rdo) 
+	{
+		// Compute lower common tangent:
+		while (true) {
+			if (ccw(q.org(rdi), q.org(ldi), q.dest(ldi))) 
+				ldi = q.lnext(ldi);
+			else if (ccw(q.org(ldi), q.dest(rdi), q.org(rdi))) 
+				rdi = q.rprev(rdi);
+			else 
+				break;
+		}
+
+		int basel = q.connect(sym(rdi), ldi);
+		if (q.org(ldi) == q.org(ldo)) ldo = sym(basel);
+		if (q.org(rdi) == q.org(rdo)) rdo = basel;
+
+		// Merge loop:
+		while (true) {
+			int lcand = q.onext(sym(basel));
+			boolean lValid = this.valid(q, lcand, basel);
+			if (lValid) {
+				while (inCircle(q.dest(basel), q.org(basel), q.dest(lcand), q.dest(q.onext(lcand)))) {
+					int t = q.onext(lcand);
+					q.deleteEdge(lcand);
+					lcand = t;
+				}
+			}
+			int rcand = q.oprev(basel);
+			boolean rValid = this.valid(q, rcand, basel);
+			if (rValid) {
+				while (inCircle(q.dest(basel), q.org(basel), q.dest(rcand), q.dest(q.oprev(rcand)))) {
+					int t = q.oprev(rcand);
+					q.deleteEdge(rcand);
+					rcand = t;
+				}
+			}
+			lValid = this.valid(q, lcand, basel);
+			rValid = this.valid(q, rcand, basel);
+			if (!lValid && !rValid)
+				break;
+			if (!lValid || 
+				(rValid && inCircle(q.dest(lcand), q.org(lcand), q.org(rcand), q.dest(rcand))))
+				basel = q.connect(rcand, sym(basel));
+			else
+				basel = q.connect(sym(basel), sym(lcand));
+		}
+		return new int[] {ldo, rdo};
+	}
+
+	// Extraction of the ccw-oriented triangles (the outer face is skipped):
+	private int[] triangles(QuadEdges q) 
+	{
+		int[] res = new int[q.size];
+		int n = 0;
+		for (int e = 0; e < q.size; e += 2) {
+			if (q.deleted[e >> 2]) 
+				continue;
+			int e1 = q.lnext(e), e2 = q.lnext(e1);
+			if (q.lnext(e2) != e || e1 < e || e2 < e) 
+				continue;
+			int a = q.org(e), b = q.org(e1), c = q.org(e2);
+			if (!ccw(a, b, c))
+				continue;
+			res[n++] = a; 
+			res[n++] = b; 
+			res[n++] = c;
+		}
+		int[] r = new int[n];
+		System.arraycopy(res, 0, r, 0, n);
+		return r;
+	}
+
+	private boolean valid(QuadEdges q, int e, int basel) {
+		return ccw(q.dest(e), q.dest(basel), q.org(basel));
+	}
+
+	private QuadEdges triangulateParallel(
+		int numberOfVertices, int numberOfPartitions, int numberOfThreads) 
+		throws T3dException
+	{
+		ExecutorService exec = Executors.newFixedThreadPool(numberOfThreads);
+		try {
+			// Triangulate partitions:
+			List<Future<QuadEdges>> parts = new ArrayList<Future<QuadEdges>>();
+			for (int k = 0; k < numberOfPartitions; k++) {
+				final int 
+					lo = (int) ((long) numberOfVertices * k / numberOfPartitions),
+					hi = (int) ((long) numberOfVertices * (k + 1) / numberOfPartitions);
+				parts.add(exec.submit(new Callable<QuadEdges>() {
+					public QuadEdges call() {
+						QuadEdges q = new QuadEdges(hi - lo);
+						q.hull = triangulate(q, lo, hi);
+						return q;
+					}
+				}));
+			}
+
+			// Merge neighboring partitions level by level:
+			while (parts.size() > 1) {
+				List<Future<QuadEdges>> merged = new ArrayList<Future<QuadEdges>>();
+				for (int k = 0; k < parts.size(); k += 2) {
+					final QuadEdges 
+						left = parts.get(k).get(), 
+						right = parts.get(k + 1).get();
+					merged.add(exec.submit(new Callable<QuadEdges>() {
+						public QuadEdges call() {
+							int offset = left.append(right);
+							left.hull = merge(
+								left, left.hull[0], left.hull[1], 
+								right.hull[0] + offset, right.hull[1] + offset);
+							return left;
+						}
+					}));
+				}
+				parts = merged;
+			}
+			return parts.get(0).get();
+		}
+		catch (InterruptedException e) {
+			throw new T3dException("Triangulation interrupted.");
+		}
+		catch (ExecutionException e) {
+			throw new T3dException("Triangulation failed: " + e.getCause());
+		}
+		finally {
+			exec.shutdown();
+		}
+	}
+
+	// Quad-edge navigation (edge records consist of 4 consecutive quarter-edges):
+
+	private static int rot(int e) { return (e & ~3) | ((e + 1) & 3); }
+
+	private static int sym(int e) { return (e & ~3) | ((e + 2) & 3); }
+
+	private static int rotInv(int e) { return (e & ~3) | ((e + 3) & 3); }
+
+	/**
+	 * Array-based quad-edge structure. For each quarter-edge, the 
+	 * <i>onext</i> pointer and (for primal edges) the origin vertex are 
+	 * stored.
+	 */
+	private static class QuadEdges 
+	{
+		int[] next, org;
+		boolean[] deleted;
+		int size = 0; // number of quarter-edges
+		int[] hull; // {ldo, rdo} of the triangulation held
+
+		QuadEdges(int numberOfPoints) {
+			int cap = 16 * (numberOfPoints + 4);
+			next = new int[cap];
+			org = new int[cap];
+			deleted = new boolean[cap / 4];
+		}
+
+		private void ensureCapacity(int cap) {
+			if (cap <= next.length) 
+				return;
+			int c = Math.max(cap, 2 * next.length);
+			int[] n1 = new int[c], o1 = new int[c];
+			boolean[] d1 = new boolean[c / 4];
+			System.arraycopy(next, 0, n1, 0, size);
+			System.arraycopy(org, 0, o1, 0, size);
+			System.arraycopy(deleted, 0, d1, 0, size / 4);
+			next = n1; 
+			org = o1; 
+			deleted = d1;
+		}
+
+		int onext(int e) { return next[e]; }
+
+		int oprev(int e) { return rot(next[rot(e)]); }
+
+		int lnext(int e) { return rot(next[rotInv(e)]); }
+
+		int rprev(int e) { return next[sym(e)]; }
+
+		int org(int e) { return org[e]; }
+
+		int dest(int e) { return org[sym(e)]; }
+
+		int makeEdge(int a, int b) {
+			this.ensureCapacity(size + 4);
+			int e = size;
+			size += 4;
+			next[e] = e;
+			next[e + 1] = e + 3;
+			next[e + 2] = e + 2;
+			next[e + 3] = e + 1;
+			org[e] = a;
+			org[e + 2] = b;
+			return e;
+		}
+
+		void splice(int a, int b) {
+			int 
+				alpha = rot(next[a]), beta = rot(next[b]),
+				t1 = next[b], t2 = next[a], t3 = next[beta], t4 = next[alpha];
+			next[a] = t1;
+			next[b] = t2;
+			next[alpha] = t3;
+			next[beta] = t4;
+		}
+
+		int connect(int a, int b) {
+			int e = this.makeEdge(this.dest(a), this.org(b));
+			this.splice(e, this.lnext(a));
+			this.splice(sym(e), b);
+			return e;
+		}
+
+		void deleteEdge(int e) {
+			this.splice(e, this.oprev(e));
+			this.splice(sym(e), this.oprev(sym(e)));
+			deleted[e >> 2] = true;
+		}
+		// Appends the edges of another structure and returns the index offset:
+		int append(QuadEdges other) {
+			int offset = size;
+			this.ensureCapacity(size + other.size);
+			for (int i = 0; i < other.size; i++) {
+				next[offset + i] = other.next[i] + offset;
+				org[offset + i] = other.org[i];
+			}
+			System.arraycopy(other.deleted, 0, deleted, offset / 4, other.size / 4);
+			size += other.size;
+			return offset;
+		}
+	}
+}
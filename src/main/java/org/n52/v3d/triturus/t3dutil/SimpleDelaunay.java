@@ -32,7 +32,9 @@
  */
 package org.n52.v3d.triturus.t3dutil;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import org.n52.v3d.triturus.vgis.VgPoint;
 
@@ -43,9 +45,15 @@ import org.n52.v3d.triturus.vgis.VgPoint;
  * Berlin/Heidelberg: Springer and J. Ruppert's implementation.
  * <br/>  
  * The algorithm can construct a Delaunay triangulation for a given set of N 
- * points. Further, boundaries can be subscribed. <b>Important note:</b> This 
- * is a non-efficient O(N^2) implementation. Thus, it will be suitable for for
- * simple geometric structures only.
+ * points. Further, boundaries can be subscribed. 
+ * <br/>
+ * The triangle containing a new point is located by a walk through the 
+ * triangulation starting at the face that has been created last. If the 
+ * points are inserted in a spatially coherent order, the walks will be 
+ * short. For this purpose, a &quot;biased randomized insertion order&quot;
+ * (BRIO) with Hilbert-curve ordering inside each round can be used (see 
+ * {@link SimpleDelaunay#SimpleDelaunay(List, boolean)}), which results in 
+ * an expected runtime of about O(N log N) for typical survey data.
  * <br/>
  * Also note that z-coordinates will be ignored (this is a so-called 
  * &quot;2.5-D&quot; triangulation).
@@ -93,8 +101,32 @@ public class SimpleDelaunay
 		// All points lie within a square of side length 2*mXyBound (origin as
 		// center point).
 	private boolean hasExteriorPoints = true;
-	
+	private int[] order = null; // insertion index -> input index (if sorted)
+	private int lastFace = 0; // start face for point location
+	private int walkSeed = 0x2545F491; // seed for stochastic walk
+
+	/**
+	 * Constructor. The points will be inserted in the given order.
+	 * 
+	 * @param points Point list
+	 */
 	public SimpleDelaunay(List <VgPoint> points) {
+		this(points, false);
+	}
+	
+	/**
+	 * Constructor. If <tt>brio</tt> is set, the points will be inserted in 
+	 * a biased randomized insertion order, where the points inside each round 
+	 * are sorted along a Hilbert curve. This keeps the point location walks 
+	 * short and is recommended for large point sets. Note that the indices 
+	 * returned by {@link #getIndices()} always refer to the given point list.
+	 * 
+	 * @param points Point list
+	 * @param brio <i>true</i> for BRIO/Hilbert-sorted insertion
+	 */
+	public SimpleDelaunay(List <VgPoint> points, boolean brio) {
+		if (brio)
+			order = brioOrder(points);
 		init(points);
 		eatExterior();	
 	}
@@ -115,9 +147,26 @@ public class SimpleDelaunay
     	return new SimpleDelaunay(points).getIndices();
 	}
 
+	/**
+	 * returns an index set containing a Delaunay triangulation for the given 
+	 * set of points (see {@link #triangulate(List)}). If <tt>brio</tt> is 
+	 * set, the points will be inserted in BRIO/Hilbert-sorted order, which 
+	 * is recommended for large point sets.
+	 * 
+	 * @param points Point list
+	 * @param brio <i>true</i> for BRIO/Hilbert-sorted insertion
+	 * @return Triangle index set
+	 */
+	public static int[] triangulate(List<VgPoint> points, boolean brio) {
+    	return new SimpleDelaunay(points, brio).getIndices();
+	}
+
 	public int[] getIndices() {
 		int[] r = new int[3 * numberOfFaces];
-		for (int ii = 0; ii < 3 * numberOfFaces; ii++) r[ii] = face[ii];
+		if (order == null)
+			for (int ii = 0; ii < 3 * numberOfFaces; ii++) r[ii] = face[ii];
+		else
+			for (int ii = 0; ii < 3 * numberOfFaces; ii++) r[ii] = order[face[ii]];
 		return r;
 	}
 
@@ -165,11 +214,84 @@ public class SimpleDelaunay
 		neigh[2] = -1;
 
 		for (int i = 0; i < N; i++) {
-			Vec2 p = new Vec2(points.get(i).getX(), points.get(i).getY());
+			VgPoint q = points.get(order == null ? i : order[i]);
+			Vec2 p = new Vec2(q.getX(), q.getY());
 			this.addPoint(p);
 		}
 	}
 
+	// Biased randomized insertion order, rounds sorted along Hilbert curve:
+	private static int[] brioOrder(List<VgPoint> points) 
+	{
+		int N = points.size();
+		double 
+			xMin = Double.MAX_VALUE, xMax = -Double.MAX_VALUE,
+			yMin = Double.MAX_VALUE, yMax = -Double.MAX_VALUE;
+		double[] x = new double[N], y = new double[N];
+		for (int i = 0; i < N; i++) {
+			VgPoint q = points.get(i);
+			x[i] = q.getX(); 
+			y[i] = q.getY();
+			if (x[i] < xMin) xMin = x[i];
+			if (x[i] > xMax) xMax = x[i];
+			if (y[i] < yMin) yMin = y[i];
+			if (y[i] > yMax) yMax = y[i];
+		}
+		double 
+			sx = xMax > xMin ? 65535. / (xMax - xMin) : 0.,
+			sy = yMax > yMin ? 65535. / (yMax - yMin) : 0.;
+
+		// Random permutation (fixed seed to get reproducible results):
+		int[] perm = new int[N];
+		for (int i = 0; i < N; i++) perm[i] = i;
+		Random rnd = new Random(42L);
+		for (int i = N - 1; i > 0; i--) {
+			int j = rnd.nextInt(i + 1), h = perm[i]; 
+			perm[i] = perm[j]; 
+			perm[j] = h;
+		}
+
+		// Hilbert keys in the upper 32 bits, point indices in the lower bits:
+		long[] key = new long[N];
+		for (int i = 0; i < N; i++) {
+			int k = perm[i];
+			long h = hilbertIndex(
+				(int) ((x[k] - xMin) * sx), (int) ((y[k] - yMin) * sy));
+			key[i] = (h << 31) | k;
+		}
+
+		// Rounds [N/2, N), [N/4, N/2), ..., [0, small) get sorted separately:
+		int hi = N;
+		while (hi > 0) {
+			int lo = hi > 64 ? hi / 2 : 0;
+			Arrays.sort(key, lo, hi);
+			hi = lo;
+		}
+
+		int[] res = new int[N];
+		for (int i = 0; i < N; i++) res[i] = (int) (key[i] & 0x7fffffffL);
+		return res;
+	}
+
+	// Position of (x, y) on a Hilbert curve of order 16:
+	private static long hilbertIndex(int x, int y) 
+	{
+		long d = 0;
+		for (int s = 1 << 15; s > 0; s >>= 1) {
+			int rx = (x & s) > 0 ? 1 : 0;
+			int ry = (y & s) > 0 ? 1 : 0;
+			d += (long) s * (long) s * ((3 * rx) ^ ry);
+			if (ry == 0) {
+				if (rx == 1) {
+					x = s - 1 - x;
+					y = s - 1 - y;
+				}
+				int t = x; x = y; y = t;
+			}
+		}
+		return d;
+	}
+
     /**
      * adds a point to the triangulation (core method of this implementation). 
      * Note that the point must lie inside (!) the given triangulation.
@@ -194,6 +316,7 @@ public class SimpleDelaunay
 
 		splitTriangle(f);
 		legalizeNewFaces();
+		lastFace = f;
 	}
 
 	private void addPoint(Vec2 p, int f, int e) {
@@ -203,6 +326,7 @@ public class SimpleDelaunay
 
 		splitEdge(f, e);
 		legalizeNewFaces();
+		lastFace = f;
 	}
 
 	private int[] 
@@ -250,6 +374,10 @@ public class SimpleDelaunay
 	}
 
 	private int searchTriangle(Vec2 p) {
+		int f = walk(p);
+		if (f >= 0 && checkTriangle(f, p))
+			return f;
+		// Fallback, if the walk failed:
 		for (int i = 0; i < numberOfFaces; i++) {
 			if (checkTriangle(i, p))
 				return i;
@@ -257,6 +385,36 @@ public class SimpleDelaunay
 		return -1;
 	}
 
+	// Remembering stochastic walk from the last modified face towards p. 
+	// Returns -1 if the walk leaves the triangulation.
+	private int walk(Vec2 p) {
+		int f = lastFace < numberOfFaces ? lastFace : 0;
+		for (int step = 0; step <= numberOfFaces; step++) {
+			int fp = 3 * f;
+			walkSeed ^= walkSeed << 13; 
+			walkSeed ^= walkSeed >>> 17; 
+			walkSeed ^= walkSeed << 5;
+			int r = (walkSeed >>> 1) % 3;
+			int next = -1;
+			for (int k = 0; k < 3; k++) {
+				int e = (r + k) % 3;
+				Vec2 
+					a = point[face[fp + (e + 1) % 3]],
+					b = point[face[fp + (e + 2) % 3]];
+				if ((b.x - a.x) * (p.y - a.y) - (b.y - a.y) * (p.x - a.x) < 0) {
+					next = neigh[fp + e];
+					if (next < 0)
+						return -1;
+					break;
+				}
+			}
+			if (next < 0)
+				return f; // p is inside f or on its boundary
+			f = next;
+		}
+		return -1;
+	}
+
 	private int pointOnEdge; // = -1, if the point is _inside_ triangle	
 	// If a point lies within a 3-degree-angle of an edge, it is considered to 
 	// be _on_ the edge:
@@ -272,18 +430,18 @@ public class SimpleDelaunay
 			p0 = point[pi0],
 			p1 = point[pi1],
 			p2 = point[pi2]; 
-		Vec2 
-			e0 = new Vec2(p2.x - p1.x, p2.y - p1.y),
-			e1 = new Vec2(p0.x - p2.x, p0.y - p2.y),
-			e2 = new Vec2(p1.x - p0.x, p1.y - p0.y);			
-		Vec2 
-			v0 = new Vec2(p.x - p1.x, p.y - p1.y),
-			v1 = new Vec2(p.x - p2.x, p.y - p2.y),
-			v2 = new Vec2(p.x - p0.x, p.y - p0.y);			
 		double 
-			n0 = e0.x * v0.y - e0.y * v0.x,
-			n1 = e1.x * v1.y - e1.y * v1.x,
-			n2 = e2.x * v2.y - e2.y * v2.x;
+			e0x = p2.x - p1.x, e0y = p2.y - p1.y,
+			e1x = p0.x - p2.x, e1y = p0.y - p2.y,
+			e2x = p1.x - p0.x, e2y = p1.y - p0.y;			
+		double 
+			v0x = p.x - p1.x, v0y = p.y - p1.y,
+			v1x = p.x - p2.x, v1y = p.y - p2.y,
+			v2x = p.x - p0.x, v2y = p.y - p0.y;			
+		double 
+			n0 = e0x * v0y - e0y * v0x,
+			n1 = e1x * v1y - e1y * v1x,
+			n2 = e2x * v2y - e2y * v2x;
 
 		if ((n0 < 0 || n1 < 0) || n2 < 0)
 			return false;
@@ -291,17 +449,17 @@ public class SimpleDelaunay
 		pointOnEdge = -1;
 
 		double 
-			v0d = v0.x * v0.x + v0.y * v0.y,
-			v1d = v1.x * v1.x + v1.y * v1.y,
-			v2d = v2.x * v2.x + v2.y * v2.y;
+			v0d = v0x * v0x + v0y * v0y,
+			v1d = v1x * v1x + v1y * v1y,
+			v2d = v2x * v2x + v2y * v2y;
 		double 
-			e0d = e0.x * e0.x + e0.y * e0.y,
-			e1d = e1.x * e1.x + e1.y * e1.y,
-			e2d = e2.x * e2.x + e2.y * e2.y;
+			e0d = e0x * e0x + e0y * e0y,
+			e1d = e1x * e1x + e1y * e1y,
+			e2d = e2x * e2x + e2y * e2y;
 		double 
-			s0 = e0.x * v0.x + e0.y * v0.y,
-			s1 = e1.x * v1.x + e1.y * v1.y,
-			s2 = e2.x * v2.x + e2.y * v2.y;
+			s0 = e0x * v0x + e0y * v0y,
+			s1 = e1x * v1x + e1y * v1y,
+			s2 = e2x * v2x + e2y * v2y;
 		double 
 			cos0 = s0 / Math.sqrt(e0d * v0d),
 			cos1 = s1 / Math.sqrt(e1d * v1d),
@@ -338,12 +496,12 @@ public class SimpleDelaunay
 
 		int pi = face[getNeighborPtr(n, f)];
 		Vec2 p0 = point[pi]; 
-		Vec2 
-			e = new Vec2(p.x - p0.x, p.y - p0.y),
-			e1 = new Vec2(p1.x - p0.x, p1.y - p0.y),
-			e2 = new Vec2(p2.x - p0.x, p2.y - p0.y);
+		double 
+			dx = p.x - p0.x, dy = p.y - p0.y,
+			e1x = p1.x - p0.x, e1y = p1.y - p0.y,
+			e2x = p2.x - p0.x, e2y = p2.y - p0.y;
 
-		if (e.x * e1.y - e.y * e1.x > 0. && e2.x * e.y - e2.y * e.x > 0.)
+		if (dx * e1y - dy * e1x > 0. && e2x * dy - e2y * dx > 0.)
 			return ex;
 		else
 			return -1;
@@ -521,18 +679,18 @@ public class SimpleDelaunay
 
 	private void computeCircumcircle(Vec2 p0, Vec2 p1, Vec2 p2) 
 	{
-		Vec2 
-			e = new Vec2(p1.x - p0.x, p1.y - p0.y), 
-			n = new Vec2(p2.y - p1.y, p1.x - p2.x);
+		double 
+			ex = p1.x - p0.x, ey = p1.y - p0.y, 
+			nx = p2.y - p1.y, ny = p1.x - p2.x;
 		double 
 			dx = (p0.x - p2.x) / 2.,
 			dy = (p0.y - p2.y) / 2.,
-			s = (e.x * dx + e.y * dy) / (e.x * n.x + e.y * n.y);
-		cirX = (p1.x + p2.x) / 2. + s * n.x;
-		cirY = (p1.y + p2.y) / 2. + s * n.y;
-		Vec2 
-			r = new Vec2(p0.x - cirX, p0.y - cirY);
-		cirR2 = r.x * r.x + r.y * r.y;
+			s = (ex * dx + ey * dy) / (ex * nx + ey * ny);
+		cirX = (p1.x + p2.x) / 2. + s * nx;
+		cirY = (p1.y + p2.y) / 2. + s * ny;
+		double 
+			rx = p0.x - cirX, ry = p0.y - cirY;
+		cirR2 = rx * rx + ry * ry;
 	}
 
 	private boolean pointInCircle(Vec2 p, int f) {
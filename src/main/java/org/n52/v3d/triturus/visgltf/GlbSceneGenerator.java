@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2007-2016 52North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.visgltf;
+
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.core.T3dNotYetImplException;
+import org.n52.v3d.triturus.gisimplm.GmSimpleElevationGrid;
+import org.n52.v3d.triturus.gisimplm.IoGlbWriter;
+import org.n52.v3d.triturus.vgis.VgElevationGrid;
+import org.n52.v3d.triturus.vscene.MultiTerrainScene;
+import org.n52.v3d.triturus.vscene.VsScene;
+
+/**
+ * glTF scene generator. The current implementation takes 
+ * {@link MultiTerrainScene}-objects as input. Every terrain will be written 
+ * as separate mesh node; the nodes' transformations correspond to the 
+ * scene's normalization, i.e. the coordinate space is the same as for 
+ * the scenes generated by 
+ * {@link org.n52.v3d.triturus.visx3d.VrmlX3dSceneGenerator}. Note that 
+ * markers, viewpoints and light-sources are not exported yet.
+ *
+ * @author Benno Schmidt
+ * @see MultiTerrainScene
+ * @see IoGlbWriter
+ */
+public class GlbSceneGenerator
+{
+    private String mLogString = "";
+
+    private VsScene mScene;
+    private boolean mQuantization = false;
+
+    /**
+     * Constructor.
+     *
+     * @param pScene {@link MultiTerrainScene}-object
+     */
+    public GlbSceneGenerator(VsScene pScene)
+    {
+        mLogString = this.getClass().getName();
+
+        mScene = pScene;
+
+        if (!(mScene instanceof MultiTerrainScene)) {
+            throw new T3dNotYetImplException(
+            		"MultiTerrainScene expected for glTF visualization...");
+        }
+    }
+
+    public String log() {
+        return mLogString;
+    }
+
+    /**
+     * enables the quantization of vertex positions (see 
+     * {@link IoGlbWriter#setQuantization(boolean)}).
+     *
+     * @param pQuantization <i>true</i> to enable quantization
+     */
+    public void setQuantization(boolean pQuantization) {
+        mQuantization = pQuantization;
+    }
+
+    /**
+     * generates a GLB file representing the content of the scene that has 
+     * been passed to the constructor.
+     *
+     * @param pFilename Output-file name (complete file path)
+     * @throws T3dException
+     */
+    public void writeToGlbFile(String pFilename) throws T3dException
+    {
+        MultiTerrainScene s = (MultiTerrainScene) mScene;
+
+        if (s.getTerrains() == null || s.getTerrains().size() <= 0)
+            throw new T3dException("Scene does not contain any terrains.");
+
+        IoGlbWriter w = new IoGlbWriter();
+        w.setHypsometricColorMapper(s.getHypsometricColorMapper());
+        w.setDefaultColor(s.getDefaultReliefColor());
+        w.setExaggeration(s.getDefaultExaggeration());
+        w.setQuantization(mQuantization);
+
+        // Normalization x' = x * scale + offset, mapped to glTF axes:
+        double scale = s.getScale();
+        double[] translation = new double[] {
+            s.getOffset().getX(), 0., -s.getOffset().getY()};
+
+        for (VgElevationGrid terr : s.getTerrains()) {
+            if (!(terr instanceof GmSimpleElevationGrid))
+                throw new T3dNotYetImplException("Unsupported terrain type.");
+            w.addNode((GmSimpleElevationGrid) terr, translation, new double[] {scale, scale, scale});
+        }
+        w.writeNodes(pFilename);
+    }
+}
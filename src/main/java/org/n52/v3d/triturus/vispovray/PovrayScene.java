@@ -44,7 +44,6 @@ import java.io.*;
 import java.lang.Process;
 import java.lang.Runtime;
 import java.util.ArrayList;
-import java.util.Collection;
 
 /**
  * Specification of a POV-Ray scene description.<br />
@@ -63,6 +62,7 @@ public class PovrayScene extends VsSimpleScene
     private String mPovrayExec = "bin/pvengine.exe" /* Windows-Vorgabe */;
     private boolean mPovrayWin = true /* Windows-Plattform als Voreinstellung */;
 	private ArrayList mSceneDescription = null;
+    private BufferedWriter mSceneWriter = null; // if set, the scene description will be streamed
 	private String mWrkDir = ".";
     private String mTmpName = "tmp";
 	private String mShell = "cmd.exe";
@@ -327,24 +327,25 @@ public class PovrayScene extends VsSimpleScene
         T3dVector lookUp = this.getCurrentViewpoint().getLookUp();
         double fovy = this.getCurrentCamera().getFovy();
 
-    	mSceneDescription = new ArrayList(); // ggf. anzupassen!
+        if (mSceneWriter == null)
+    	    mSceneDescription = new ArrayList(); // ggf. anzupassen!
 
-    	mSceneDescription.add("// Persistence Of Vision Ray Tracer Scene Description File");
-    	mSceneDescription.add("// This file was generated automatically by the M�nsterian Triturus framework!");
-    	mSceneDescription.add("#version 3.5;");
-    	mSceneDescription.add("global_settings {");
-    	mSceneDescription.add("  assumed_gamma 1");
-    	mSceneDescription.add("  max_trace_level 25");
-    	mSceneDescription.add("}");
-    	mSceneDescription.add("camera {");
+    	this.add("// Persistence Of Vision Ray Tracer Scene Description File");
+    	this.add("// This file was generated automatically by the M�nsterian Triturus framework!");
+    	this.add("#version 3.5;");
+    	this.add("global_settings {");
+    	this.add("  assumed_gamma 1");
+    	this.add("  max_trace_level 25");
+    	this.add("}");
+    	this.add("camera {");
 
         if (orthographicView) {
-            mSceneDescription.add("  orthographic");
+            this.add("  orthographic");
             fovy = 0.;
         }
         else {
             if (projType.equalsIgnoreCase(VsCamera.PerspectiveView))
-                mSceneDescription.add("  perspective");
+                this.add("  perspective");
             else
                 throw new T3dNotYetImplException("Unknown camera projection \"" + projType + "\"");
         }
@@ -352,59 +353,59 @@ public class PovrayScene extends VsSimpleScene
         double cx = 0.5 * (lookFrom.getX() + 1.);
         double cy = 0.5 * (lookFrom.getY() + 1.);
         double cz = lookFrom.getZ() * 0.5 * this.getDefaultExaggeration();
-        mSceneDescription.add("  location <" + cx + ", " + cz + ", " + cy + ">");
-        mSceneDescription.add("  sky <" +
+        this.add("  location <" + cx + ", " + cz + ", " + cy + ">");
+        this.add("  sky <" +
             lookUp.getX() + ", " +
             lookUp.getZ() + ", " +
             lookUp.getY() + ">");
-        mSceneDescription.add("  right <" + ((double) mImageWidth)/((double) mImageHeight) + ", 0.0 ,0.0>");
+        this.add("  right <" + ((double) mImageWidth)/((double) mImageHeight) + ", 0.0 ,0.0>");
         if (orthographicView)
-            mSceneDescription.add("  // Note: Omitting angle specification.");
+            this.add("  // Note: Omitting angle specification.");
         else
-            mSceneDescription.add("  angle " + fovy);
-        mSceneDescription.add("  look_at <" +
+            this.add("  angle " + fovy);
+        this.add("  look_at <" +
             0.5 * (lookAt.getX() + 1.) + ", " +
             lookAt.getZ() * 0.5 * this.getDefaultExaggeration() + ", " +
             0.5 * (lookAt.getY() + 1.) + ">");
 
-    	mSceneDescription.add("}");
-    	mSceneDescription.add("light_source {");
-    	mSceneDescription.add("  <" + cx + ", " + cz + ", " + cy + ">"); // Punktlicht in Kameraposition
-    	mSceneDescription.add("  color rgb <1.0, 1.0, 1.0>*" + mLightIntensity); // helles wei�es Licht
-    	mSceneDescription.add("}");
-        mSceneDescription.add("background { color rgb <"
+    	this.add("}");
+    	this.add("light_source {");
+    	this.add("  <" + cx + ", " + cz + ", " + cy + ">"); // Punktlicht in Kameraposition
+    	this.add("  color rgb <1.0, 1.0, 1.0>*" + mLightIntensity); // helles wei�es Licht
+    	this.add("}");
+        this.add("background { color rgb <"
             + this.getBackgroundColor().getRed() + ","
             + this.getBackgroundColor().getGreen() + ","
             + this.getBackgroundColor().getBlue() + "> }");
 
         if (this.getDrape() !=  null && this.getDrape().length() > 0) {
-            mSceneDescription.add("#declare T_Terrain =");
-            mSceneDescription.add("  texture {");
-            mSceneDescription.add("    pigment {");
-    	    mSceneDescription.add("      image_map {");
+            this.add("#declare T_Terrain =");
+            this.add("  texture {");
+            this.add("    pigment {");
+    	    this.add("      image_map {");
             String drpFileExt = FileTools.getExtension(this.getDrape());
-            mSceneDescription.add("      "
+            this.add("      "
                 + BitmapTypeHelper.getFileExtension(drpFileExt) + " \"" + this.getDrape() + "\""
                 + " map_type 0 interpolate 2 once transmit all 0.0 }");
-    	    mSceneDescription.add("    }");
-            mSceneDescription.add("    rotate x*90");
-            mSceneDescription.add("  }");
+    	    this.add("    }");
+            this.add("    rotate x*90");
+            this.add("  }");
         }
         else
-            mSceneDescription.add("  // Note: No drape texture specified.");
+            this.add("  // Note: No drape texture specified.");
 
-    	mSceneDescription.add("#declare Terrain_Obj =");
-    	mSceneDescription.add("  height_field {");
-    	mSceneDescription.add("    gif \"" + mGifEncodedDEM + "\"");
+    	this.add("#declare Terrain_Obj =");
+    	this.add("  height_field {");
+    	this.add("    gif \"" + mGifEncodedDEM + "\"");
 
         if (this.getReliefSmoothingMode())
-            mSceneDescription.add("    smooth");
+            this.add("    smooth");
         else
-            mSceneDescription.add("    //smooth");
+            this.add("    //smooth");
         if (this.getDrape() !=  null && this.getDrape().length() > 0)
-    	    mSceneDescription.add("    texture { T_Terrain }");
+    	    this.add("    texture { T_Terrain }");
         else
-            mSceneDescription.add("    pigment { color rgb <0.2,0.7,0.2> }");
+            this.add("    pigment { color rgb <0.2,0.7,0.2> }");
             // TODO: Farbe evtl. von au�en konfigurierbar machen
 
         // height_field wird f�r x, y und z auf Bereich 0..1 abgebildet; daher ist inverse Transf. nachzuschalten:
@@ -421,13 +422,13 @@ public class PovrayScene extends VsSimpleScene
         double sz = 256./220. * (this.normZMax() - this.normZMin()) * 0.5 * this.getDefaultExaggeration();
         // todo: 256./220.-Problem dokumentieren (durchg�ngig!) -> bs
         double tz = this.normZMin() * 0.5 * this.getDefaultExaggeration();
-    	mSceneDescription.add("    scale <" + sx + ", " + sz + ", " + sy + ">");
-        mSceneDescription.add("    translate <" + tx + ", " + tz + ", " + ty + ">");
+    	this.add("    scale <" + sx + ", " + sz + ", " + sy + ">");
+        this.add("    translate <" + tx + ", " + tz + ", " + ty + ">");
 
-    	mSceneDescription.add("  }");
-    	mSceneDescription.add("object {");
-    	mSceneDescription.add("  Terrain_Obj");
-    	mSceneDescription.add("}");
+    	this.add("  }");
+    	this.add("object {");
+    	this.add("  Terrain_Obj");
+    	this.add("}");
 
     	if (this.drawBBox()) {
      		double zMin = this.normZMin() * 0.5 * this.getDefaultExaggeration();
@@ -440,10 +441,10 @@ public class PovrayScene extends VsSimpleScene
 	    			x_ = ((double) x) + delta;
 	    			_y = ((double) y) - delta;
 	    			y_ = ((double) y) + delta;
-	    			mSceneDescription.add("box {");
-	    			mSceneDescription.add("  <" + _x + "," + zMin + "," + _y + "><" + x_ + "," + zMax + "," + y_ + ">");
-			    	mSceneDescription.add("  texture { pigment { color rgb <1,0,0> } }");
-			    	mSceneDescription.add("}");
+	    			this.add("box {");
+	    			this.add("  <" + _x + "," + zMin + "," + _y + "><" + x_ + "," + zMax + "," + y_ + ">");
+			    	this.add("  texture { pigment { color rgb <1,0,0> } }");
+			    	this.add("}");
     			}
     		}
     		for (int x = 0; x <= 1; x++) {
@@ -458,10 +459,10 @@ public class PovrayScene extends VsSimpleScene
 	    				_z = zMax - delta;
 		    			z_ = zMax + delta;
 		    		}
-	    			mSceneDescription.add("box {");
-     				mSceneDescription.add("  <" + _x + "," + _z + "," + 0 + "><" + x_ + "," + z_ + "," + 1 + ">");
-			    	mSceneDescription.add("  texture { pigment { color rgb <0,1,0> } }");
-			    	mSceneDescription.add("}");
+	    			this.add("box {");
+     				this.add("  <" + _x + "," + _z + "," + 0 + "><" + x_ + "," + z_ + "," + 1 + ">");
+			    	this.add("  texture { pigment { color rgb <0,1,0> } }");
+			    	this.add("}");
     			}
     		}
     		for (int y = 0; y <= 1; y++) {
@@ -476,46 +477,64 @@ public class PovrayScene extends VsSimpleScene
 	    				_z = zMax - delta;
 		    			z_ = zMax + delta;
 		    		}
-	    			mSceneDescription.add("box {");
-    				mSceneDescription.add("  <0," + _z + "," + _y + "><1," + z_ + "," + y_ + ">");
-			    	mSceneDescription.add("  texture { pigment { color rgb <0,0,1> } }");
-			    	mSceneDescription.add("}");
+	    			this.add("box {");
+    				this.add("  <0," + _z + "," + _y + "><1," + z_ + "," + y_ + ">");
+			    	this.add("  texture { pigment { color rgb <0,0,1> } }");
+			    	this.add("}");
     			}
     		}
     	}
         else
-            mSceneDescription.add("// Note: No directive to draw bounding-box.");
+            this.add("// Note: No directive to draw bounding-box.");
 
         if (this.drawTerrainPedestal()) {
-            mSceneDescription.add("mesh2 {");
-            mSceneDescription.add("  vertex_vectors {");
-            mSceneDescription.add("    " + this.getNumberOfVerticesPedestal() + ",");
-            mSceneDescription.addAll(this.getVertexListPedestal());
-            mSceneDescription.add("  }");
-            mSceneDescription.add("  face_indices {");
-            mSceneDescription.add("    " + this.getNumberOfFacesPedestal() + ",");
-            mSceneDescription.addAll(this.getFaceListPedestal());
-            mSceneDescription.add("  }");
-            mSceneDescription.add("  pigment { color"
+            this.add("mesh2 {");
+            this.add("  vertex_vectors {");
+            this.add("    " + this.getNumberOfVerticesPedestal() + ",");
+            this.addVertexListPedestal();
+            this.add("  }");
+            this.add("  face_indices {");
+            this.add("    " + this.getNumberOfFacesPedestal() + ",");
+            this.addFaceListPedestal();
+            this.add("  }");
+            this.add("  pigment { color"
                 + " red " + this.getPedestalColor().getRed()
                 + " green " + this.getPedestalColor().getGreen()
                 + " blue " +  this.getPedestalColor().getBlue() + " }");
-            mSceneDescription.add("  finish { ambient 0.2 diffuse 0.8 }");
-            mSceneDescription.add("}");
+            this.add("  finish { ambient 0.2 diffuse 0.8 }");
+            this.add("}");
         }
 	}
 
-    private void writePovFile(String pFilename)
+    // Writes a line of the scene description to the .pov file, or adds it 
+    // to the list returned by generateScene():
+    private void add(String pLine)
     {
-    	this.generatePovSceneDescription();
+        if (mSceneWriter == null) {
+            mSceneDescription.add(pLine);
+            return;
+        }
+        try {
+            mSceneWriter.write(pLine);
+            mSceneWriter.newLine();
+        }
+        catch (IOException e) {
+            throw new T3dException(e.getMessage());
+        }
+    }
 
+    private void writePovFile(String pFilename)
+    {
+        // Stream the scene description without building it in memory:
         try {
-            BufferedWriter lDat = new BufferedWriter(new FileWriter(pFilename));
-			for (int i = 0; i < mSceneDescription.size(); i++) {
-            	lDat.write((String) mSceneDescription.get(i));
-                lDat.newLine();
+            mSceneWriter = new BufferedWriter(new FileWriter(pFilename));
+            try {
+                this.generatePovSceneDescription();
+            }
+            finally {
+                mSceneWriter.close();
+                mSceneWriter = null;
             }
-            lDat.close();
         }
         catch (FileNotFoundException e) {
             throw new T3dException("Could not access file \"" + pFilename + "\".");
@@ -799,10 +818,9 @@ public class PovrayScene extends VsSimpleScene
         return 4 * (this.getTerrain().numberOfRows() + this.getTerrain().numberOfColumns() - 2);
     }
 
-    // Liste der Vertizes f�r mesh2-Objekt
-    private Collection getVertexListPedestal()
+    // Vertizes des mesh2-Objekts ausgeben
+    private void addVertexListPedestal()
     {
-        ArrayList list = new ArrayList();
         int nRows = this.getTerrain().numberOfRows();
         int nCols = this.getTerrain().numberOfColumns();
         double zRef = /*1.33 **/ this.getTerrain().minimalElevation() /*- 0.33 * this.getTerrain().maximalElevation()*/;
@@ -812,30 +830,29 @@ public class PovrayScene extends VsSimpleScene
             VgPoint pt0 = new GmPoint(pt1);
             pt1.setZ(this.getTerrain().getValue(0, j));
             pt0.setZ(zRef);
-            list.add(this.vertexHelperPedestal(pt1, pt0));
+            this.add(this.vertexHelperPedestal(pt1, pt0));
         }
         for (int i = 0; i < nRows - 1; i++) {
             VgPoint pt1 = ((GmSimple2dGridGeometry) this.getTerrain().getGeometry()).getVertexCoordinate(i, nCols - 1);
             VgPoint pt0 = new GmPoint(pt1);
             pt1.setZ(this.getTerrain().getValue(i, nCols - 1));
             pt0.setZ(zRef);
-            list.add(this.vertexHelperPedestal(pt1, pt0));
+            this.add(this.vertexHelperPedestal(pt1, pt0));
         }
         for (int j = nCols - 1 ; j >= 1; j--) {
             VgPoint pt1 = ((GmSimple2dGridGeometry) this.getTerrain().getGeometry()).getVertexCoordinate(nRows - 1, j);
             VgPoint pt0 = new GmPoint(pt1);
             pt1.setZ(this.getTerrain().getValue(nRows - 1, j));
             pt0.setZ(zRef);
-            list.add(this.vertexHelperPedestal(pt1, pt0));
+            this.add(this.vertexHelperPedestal(pt1, pt0));
         }
         for (int i = nRows - 1; i >= 1; i--) {
             VgPoint pt1 = ((GmSimple2dGridGeometry) this.getTerrain().getGeometry()).getVertexCoordinate(i, 0);
             VgPoint pt0 = new GmPoint(pt1);
             pt1.setZ(this.getTerrain().getValue(i, 0));
             pt0.setZ(zRef);
-            list.add(this.vertexHelperPedestal(pt1, pt0));
+            this.add(this.vertexHelperPedestal(pt1, pt0));
         }
-        return list;
     }
 
     // String f�r Vertex-Angaben der Punkte am Modellrand (variable H�he pt1.getZ() und Bezugsh�he pt0.getZ()):
@@ -853,19 +870,16 @@ public class PovrayScene extends VsSimpleScene
         return 4 * (this.getTerrain().numberOfRows() + this.getTerrain().numberOfColumns() - 2);
     }
 
-    // Liste der Faces f�r mesh2-Objekt
-    private Collection getFaceListPedestal()
+    // Faces des mesh2-Objekts ausgeben
+    private void addFaceListPedestal()
     {
-        ArrayList list = new ArrayList();
         int nRows = this.getTerrain().numberOfRows();
         int nCols = this.getTerrain().numberOfColumns();
         // TODO: Was ist mit lattice/grid / vertex/cell-based?????
         for (int i = 0; i < 2 * (nRows + nCols - 2) - 1; i++)
-            list.add("    <" + (2*i) + "," + (2*i + 1) + "," + (2*i + 3) + ">, <" + (2*i) + "," + (2*i + 3) + "," + (2*i + 2) + ">, ");
+            this.add("    <" + (2*i) + "," + (2*i + 1) + "," + (2*i + 3) + ">, <" + (2*i) + "," + (2*i + 3) + "," + (2*i + 2) + ">, ");
         int i = 2 * (nRows + nCols - 2) - 1;
-        list.add("    <" + (2*i) + "," + (2*i + 1) + ",1>, <" + (2*i) + ",0,1>");
-        // System.out.println("size faces = " + (2 * list.size()));
-        return list;
+        this.add("    <" + (2*i) + "," + (2*i + 1) + ",1>, <" + (2*i) + ",0,1>");
     }
 
     /**
@@ -37,6 +37,7 @@ import org.n52.v3d.triturus.core.T3dNotYetImplException;
 import org.n52.v3d.triturus.gisimplm.GmPoint;
 import org.n52.v3d.triturus.gisimplm.GmSimple2dGridGeometry;
 import org.n52.v3d.triturus.gisimplm.IoAbstractWriter;
+import org.n52.v3d.triturus.gisimplm.NumberEmitter;
 import org.n52.v3d.triturus.t3dutil.T3dColor;
 import org.n52.v3d.triturus.t3dutil.T3dSymbolInstance;
 import org.n52.v3d.triturus.t3dutil.T3dVector;
@@ -44,15 +45,29 @@ import org.n52.v3d.triturus.vgis.VgElevationGrid;
 import org.n52.v3d.triturus.vscene.MultiTerrainScene;
 import org.n52.v3d.triturus.vscene.VsScene;
 
-import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.text.DecimalFormat;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * VRML/X3D scene generator. The current implementation takes 
  * {@link MultiTerrainScene}-objects as input.
+ * <br/>
+ * The scene will be streamed to the target file, stream or channel while 
+ * it is generated, i.e. memory consumption does not depend on the terrain 
+ * size, and output starts immediately. Optionally, the output will be 
+ * GZIP-compressed (<tt>.wrz</tt> and <tt>.x3dz</tt> files).
  *
  * @author Benno Schmidt
  * @see MultiTerrainScene
@@ -62,7 +77,13 @@ public class VrmlX3dSceneGenerator extends IoAbstractWriter
     private String mLogString = "";
 
     private VsScene mScene;
-    private BufferedWriter mDoc;
+    private boolean mCompression = false;
+    private int mNumberOfThreads = 1;
+    private NumberEmitter mDoc;
+
+    private final static short cVrml = 0;
+    private final static short cX3d = 1;
+    private final static short cX3dom = 2;
 
     /**
      * Constructor.
@@ -85,216 +106,60 @@ public class VrmlX3dSceneGenerator extends IoAbstractWriter
         return mLogString;
     }
 
+    /**
+     * enables GZIP-compression of the generated scene documents. By default, 
+     * the output will not be compressed; however, files with the extensions 
+     * <tt>.wrz</tt>, <tt>.x3dz</tt> or <tt>.gz</tt> will always be 
+     * compressed.
+     *
+     * @param pCompression <i>true</i> for compressed output
+     */
+    public void setCompression(boolean pCompression) {
+        mCompression = pCompression;
+    }
+
+    /**
+     * sets the number of threads that will be used to encode the scene's 
+     * terrains. For values &gt; 1, the terrains' elevation and color blocks 
+     * will be encoded concurrently; the output will be the same as for 
+     * sequential processing. The default value is 1.
+     *
+     * @param pNumberOfThreads Number of threads
+     */
+    public void setNumberOfThreads(int pNumberOfThreads) {
+        mNumberOfThreads = Math.max(1, pNumberOfThreads);
+    }
+
     /**
      * generates a VRML 2.0 file representing the content of the scene that 
      * has been passed to the constructor.
      *
      * @param pFilename Output-file name (complete file path)
      */
-    public void writeToVrmlFile(String pFilename)
-    {
-        MultiTerrainScene s = (MultiTerrainScene) mScene;
-
-        try {
-            mDoc = new BufferedWriter(new FileWriter(pFilename));
-
-            wl("#VRML V2.0 utf8");
-            wl("WorldInfo {");
-            wl("  info [\"Scene generated by 52N Triturus\"]");
-            wl("  title \"MultiTerrainScene\"");
-            wl("}");
-            wl("NavigationInfo {");
-            wl("  type \"EXAMINE\"");
-            wl("}");
-            wl("Background { skyColor " +
-                    s.getBackgroundColor().getRed() + " " +
-                    s.getBackgroundColor().getGreen() + " " +
-                    s.getBackgroundColor().getBlue() + "}");
-            wl("Transform {");
-            wl("  scale 1 " + s.getDefaultExaggeration() + " 1");
-            wl("  children [");
-            wl("    Shape {");
-            wl("      appearance Appearance {");
-            wl("        material Material {");
-            wl("          diffuseColor " +
-                    s.getBBoxColor().getRed() + " " +
-                    s.getBBoxColor().getGreen() + " " +
-                    s.getBBoxColor().getBlue());
-            wl("        }");
-            wl("      }");
-            wl("      geometry IndexedLineSet {");
-
-            T3dVector
-                pos1 = s.norm(new GmPoint(
-                		s.envelope().getXMin(), 
-                		s.envelope().getYMin(), 
-                		s.envelope().getZMin())),
-                pos2 = s.norm(new GmPoint(
-                		s.envelope().getXMax(), 
-                		s.envelope().getYMax(), 
-                		s.envelope().getZMax()));
-
-            wl("        coord Coordinate {");
-            wl("          point [");
-            /*
-            if (false) {
-            wl("            -1 " + s.normZMin() + " -1,");
-            wl("            -1 " + s.normZMin() + " 1,");
-            wl("            -1 " + s.normZMax() + " 1,");
-            wl("            -1 " + s.normZMax() + " -1,");
-            wl("            1 " + s.normZMin() + " -1,");
-            wl("            1 " + s.normZMin() + " 1,");
-            wl("            1 " + s.normZMax() + " 1,");
-            wl("            1 " + s.normZMax() + " -1");
-            } else {
-            */
-            wl("            " + pos1.getX() + " " + pos1.getZ() + " " + (-pos1.getY()) + ",");
-            wl("            " + pos1.getX() + " " + pos1.getZ() + " " + (-pos2.getY()) + ",");
-            wl("            " + pos1.getX() + " " + pos2.getZ() + " " + (-pos2.getY()) + ",");
-            wl("            " + pos1.getX() + " " + pos2.getZ() + " " + (-pos1.getY()) + ",");
-            wl("            " + pos2.getX() + " " + pos1.getZ() + " " + (-pos1.getY()) + ",");
-            wl("            " + pos2.getX() + " " + pos1.getZ() + " " + (-pos2.getY()) + ",");
-            wl("            " + pos2.getX() + " " + pos2.getZ() + " " + (-pos2.getY()) + ",");
-            wl("            " + pos2.getX() + " " + pos2.getZ() + " " + (-pos1.getY()) + ",");
-            // }
-            wl("          ]");
-            wl("        }");
-            wl("        coordIndex [");
-            wl("          0, 1, 2, 3, 0, -1,");
-            wl("          4, 5, 6, 7, 4, -1,");
-            wl("          0, 4, -1,");
-            wl("          1, 5, -1,");
-            wl("          2, 6, -1,");
-            wl("          3, 7, -1");
-            wl("        ]");
-            wl("      }");
-            wl("    },");
-
-            for (int i = 0; i < s.getTerrains().size(); i++) 
-            {
-                VgElevationGrid terr = s.getTerrains().get(i);
-                GmSimple2dGridGeometry terrGeom = (GmSimple2dGridGeometry) terr.getGeometry();
-                double scale = s.getScale();
-
-                T3dVector upperLeftCornerNormalized = s.norm(new GmPoint(
-                        terrGeom.envelope().getXMin(),
-                        terrGeom.envelope().getYMax(),
-                        0.0));
-    
-                double dx = upperLeftCornerNormalized.getX();
-                double dz = -upperLeftCornerNormalized.getY();
-
-                wl("    Transform {");
-                wl("      scale " + scale + " " + scale + " " + scale);
-                wl("      translation " + dx + " 0 " + dz);
-                wl("      children Shape {");
-                wl("        appearance Appearance {");
-                wl("          material Material {");
-
-                T3dColor terrCol = s.getDefaultReliefColor();
-
-                wl("            diffuseColor " +
-                        terrCol.getRed() + " " +
-                        terrCol.getGreen() + " " +
-                        terrCol.getBlue());
-                wl("          }");
-                wl("        }");
-                wl("        geometry ElevationGrid {");
-                wl("          xDimension " + terrGeom.numberOfColumns());
-                wl("          zDimension " + terrGeom.numberOfRows());
-                wl("          xSpacing " + terrGeom.getDeltaX());
-                wl("          zSpacing " + terrGeom.getDeltaY());
-                wl("          height [");
-
-                // Write elevations:
-                DecimalFormat dfZ = this.getDecimalFormatZ();
-                for (int ii = terrGeom.numberOfRows() - 1; ii >= 0; ii--) {
-                    for (int jj = 0; jj < terrGeom.numberOfColumns(); jj++) {
-                        w(dfZ.format(terr.getValue(ii, jj)) + ",");
-                    }
-                    wl();
-                }
-
-                wl("          ]");
-
-                if (s.getHypsometricColorMapper() != null)
-                {
-                    wl("          color Color {");
-                    wl("            color [");
-
-                    for (int ii = terrGeom.numberOfRows() - 1; ii >= 0; ii--) {
-                        for (int jj = 0; jj < terrGeom.numberOfColumns(); jj++) {
-                            T3dColor col = s.getHypsometricColorMapper().transform(
-                            		terr.getValue(ii, jj));
-                            wl(col.getRed() + " " + col.getGreen() + " " + col.getBlue() + ",");
-                        }
-                    }
-
-                    wl("            ]");
-                    wl("          }");
-                }
-
-                wl("        }");
-                wl("      }");
-                wl("    },");
-            }
-
-            wl("  ]");
-            wl("}");
-
-            // Markers:
-
-            if (s.getMarkers() != null)
-            {
-                wl("PROTO MarkerProto [");
-                wl("  exposedField SFColor color 0.5 0.5 0.5");
-                wl("  exposedField SFVec3f position 0 0 0");
-                wl("] {");
-                wl("  Transform {");
-                wl("    translation IS position");
-                wl("    children [");
-                wl("      Shape {");
-                wl("        appearance Appearance {");
-                wl("          material Material {");
-                wl("            diffuseColor IS color");
-                wl("          }");
-                wl("        }");
-                wl("        geometry Sphere {"); 
-                // TODO Currently all markers are visualized using spheres
-                wl("          radius 0.025");
-                wl("        }");
-                wl("      }");
-                wl("    ]");
-                wl("  }");
-                wl("}");
+    public void writeToVrmlFile(String pFilename) {
+        this.writeToFile(pFilename, cVrml);
+    }
 
-                for (int i = 0; i < s.getMarkers().size(); i++) {
-                    T3dSymbolInstance m = s.getMarkers().get(i);
-                    T3dColor col = m.getColor();
-                    T3dVector pos = s.norm(m.getPosition());
-
-                    wl("MarkerProto {");
-                    wl("  color " + 
-                    		col.getRed() + " " + col.getGreen() + " " + col.getBlue());
-                    wl("  position " + 
-                    		pos.getX() + " " + 
-                    		(pos.getZ() * s.getDefaultExaggeration()) + " " + 
-                    		(-pos.getY()));
-                    wl("}");
-                }
-            }
+    /**
+     * writes a VRML 2.0 document representing the content of the scene 
+     * that has been passed to the constructor to an output stream. Note 
+     * that the stream will not be closed.
+     *
+     * @param pStream Target stream
+     */
+    public void writeToVrmlStream(OutputStream pStream) {
+        this.writeToStream(pStream, cVrml);
+    }
 
-            mDoc.close();
-        }
-        catch (FileNotFoundException e) {
-            throw new T3dException("Could not access file \"" + pFilename + "\".");
-        }
-        catch (IOException e) {
-            throw new T3dException(e.getMessage());
-        }
-        catch (T3dException e) {
-            throw new T3dException(e.getMessage());
-        }
+    /**
+     * writes a VRML 2.0 document representing the content of the scene 
+     * that has been passed to the constructor to a channel. Note that the 
+     * channel will not be closed.
+     *
+     * @param pChannel Target channel
+     */
+    public void writeToVrmlStream(WritableByteChannel pChannel) {
+        this.writeToStream(Channels.newOutputStream(pChannel), cVrml);
     }
 
     /**
@@ -329,206 +194,534 @@ public class VrmlX3dSceneGenerator extends IoAbstractWriter
      * @param pFilename Output-file name (complete file path)
      * @param pX3dom controls whether an X3D or an XHTML/X3DOM document will be generated
      */
-    public void writeToX3dFile(String pFilename, boolean pX3dom)
-    {
-        MultiTerrainScene s = (MultiTerrainScene) mScene;
+    public void writeToX3dFile(String pFilename, boolean pX3dom) {
+        this.writeToFile(pFilename, pX3dom ? cX3dom : cX3d);
+    }
+
+    /**
+     * writes an X3D document (or an XHTML document containing an X3DOM 
+     * model, if <tt>pX3dom</tt> is set) representing the content of the 
+     * scene that has been passed to the constructor to an output stream. 
+     * Note that the stream will not be closed.
+     *
+     * @param pStream Target stream
+     * @param pX3dom controls whether an X3D or an XHTML/X3DOM document will be generated
+     */
+    public void writeToX3dStream(OutputStream pStream, boolean pX3dom) {
+        this.writeToStream(pStream, pX3dom ? cX3dom : cX3d);
+    }
+
+    /**
+     * writes an X3D document (or an XHTML document containing an X3DOM 
+     * model, if <tt>pX3dom</tt> is set) representing the content of the 
+     * scene that has been passed to the constructor to a channel. Note that 
+     * the channel will not be closed.
+     *
+     * @param pChannel Target channel
+     * @param pX3dom controls whether an X3D or an XHTML/X3DOM document will be generated
+     */
+    public void writeToX3dStream(WritableByteChannel pChannel, boolean pX3dom) {
+        this.writeToStream(Channels.newOutputStream(pChannel), pX3dom ? cX3dom : cX3d);
+    }
 
+    private void writeToFile(String pFilename, short pFormat)
+    {
+        String ext = pFilename.toLowerCase();
+        boolean compression = mCompression 
+            || ext.endsWith(".wrz") || ext.endsWith(".x3dz") || ext.endsWith(".gz");
         try {
-            mDoc = new BufferedWriter(new FileWriter(pFilename));
-
-            if (pX3dom) {
-                String lTitle = "52N Triturus XHTML/X3DOM document";
-                wl("<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Strict//EN\" \"http://www.w3.org/TR/xhtml1/DTD/xhtml1-strict.dtd\">");
-                wl("<html xmlns=\"http://www.w3.org/1999/xhtml\">");
-                wl("  <head>");
-                wl("    <meta http-equiv=\"X-UA-Compatible\" content=\"chrome=1\" />");
-                wl("    <meta http-equiv=\"Content-Type\" content=\"text/html;charset=utf-8\" />");
-                wl("    <title>" + lTitle + "</title>");
-                wl("<link rel=\"stylesheet\" type=\"text/css\" href=\"https://rawgit.com/kamakshidasan/triturus/master/src/main/resources/css/x3dom.css\" />");
-                wl("<script type=\"text/javascript\" src=\"https://rawgit.com/kamakshidasan/triturus/master/src/main/resources/js/x3dom-full.js\"></script>");    wl("  </head>");
-                wl("  <body>");
-                wl("    <h1>" + lTitle + "</h1>");
-                wl("    <p>");
-                wl("      This XHTML/X3DOM has been generated automatically by the 52N Triturus framework's VrmlX3dGenerator.");
-                wl("    </p>");
-                wl();
-                wl("<X3D xmlns=\"http://www.web3d.org/specifications/x3d-namespace\" showStat=\"false\" showLog=\"true\"");
-                wl("  x=\"0px\" y=\"0px\" width=\"400px\" height=\"400px\">");
+            FileOutputStream os = new FileOutputStream(pFilename);
+            try {
+                this.write(os, pFormat, compression);
             }
-            else {
-                wl("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-                wl("<!DOCTYPE X3D PUBLIC \"ISO//Web3D//DTD X3D 3.2//EN\" \"http://www.web3d.org/specifications/x3d-3.2.dtd\">");
-                wl("<X3D version=\"3.2\" profile=\"Immersive\" xmlns:xsd='http://www.w3.org/2001/XMLSchema-instance' xsd:noNamespaceSchemaLocation='http://www.web3d.org/specifications/x3d-3.2.xsd'>");
+            finally {
+                os.close();
             }
+        }
+        catch (FileNotFoundException e) {
+            throw new T3dException("Could not access file \"" + pFilename + "\".");
+        }
+        catch (IOException e) {
+            throw new T3dException(e.getMessage());
+        }
+    }
 
-            wl("  <Scene>");
-            wl("    <WorldInfo info='Scene generated by 52N Triturus' title='MultiTerrainScene'></WorldInfo>");
-            wl("    <NavigationInfo type=\"EXAMINE\"></NavigationInfo>");
-            wl("    <Background skyColor=\"" +
-                    s.getBackgroundColor().getRed() + " " +
-                    s.getBackgroundColor().getGreen() + " " +
-                    s.getBackgroundColor().getBlue() + "\"></Background>");
-            wl("    <Transform scale=\"1 " + s.getDefaultExaggeration() + " 1\">");
-            wl("      <Shape>");
-            wl("        <Appearance>");
-            wl("          <Material emissiveColor=\"" +
-                    s.getBBoxColor().getRed() + " " +
-                    s.getBBoxColor().getGreen() + " " +
-                    s.getBBoxColor().getBlue() + "\"></Material>");
-            wl("        </Appearance>");
-            wl("        <IndexedLineSet coordIndex='");
-            wl("          0 1 2 3 0 -1,");
-            wl("          4 5 6 7 4 -1,");
-            wl("          0 4 -1,");
-            wl("          1 5 -1,");
-            wl("          2 6 -1,");
-            wl("          3 7 -1");
-            wl("        '>");
-
-            T3dVector
-                pos1 = s.norm(new GmPoint(s.envelope().getXMin(), s.envelope().getYMin(), s.envelope().getZMin())),
-                pos2 = s.norm(new GmPoint(s.envelope().getXMax(), s.envelope().getYMax(), s.envelope().getZMax()));
-
-            wl("          <Coordinate point='");
-            wl("            " + pos1.getX() + " " + pos1.getZ() + " " + (-pos1.getY()) + ",");
-            wl("            " + pos1.getX() + " " + pos1.getZ() + " " + (-pos2.getY()) + ",");
-            wl("            " + pos1.getX() + " " + pos2.getZ() + " " + (-pos2.getY()) + ",");
-            wl("            " + pos1.getX() + " " + pos2.getZ() + " " + (-pos1.getY()) + ",");
-            wl("            " + pos2.getX() + " " + pos1.getZ() + " " + (-pos1.getY()) + ",");
-            wl("            " + pos2.getX() + " " + pos1.getZ() + " " + (-pos2.getY()) + ",");
-            wl("            " + pos2.getX() + " " + pos2.getZ() + " " + (-pos2.getY()) + ",");
-            wl("            " + pos2.getX() + " " + pos2.getZ() + " " + (-pos1.getY()) + ",");
-            wl("            '></Coordinate>");
-            wl("        </IndexedLineSet>");
-            wl("      </Shape>");
-            wl("    </Transform>");
-
-            for (int i = 0; i < s.getTerrains().size(); i++) {
-                VgElevationGrid terr = s.getTerrains().get(i);
-                GmSimple2dGridGeometry terrGeom = (GmSimple2dGridGeometry) terr.getGeometry();
-                double scale = s.getScale();
-
-                T3dVector upperLeftCornerNormalized = s.norm(new GmPoint(
-                        terrGeom.envelope().getXMin(),
-                        terrGeom.envelope().getYMax(),
-                        0.0));
-                double dx = upperLeftCornerNormalized.getX();
-                double dz = -upperLeftCornerNormalized.getY();
-
-                wl("    <Transform scale=\"1 " + s.getDefaultExaggeration() + " 1\">");
-                w("       <Transform scale=\"" + scale + " " + scale + " " + scale + "\"");
-                w(" translation=\"" + dx + " 0 " + dz + "\"");
-                wl(">");
-
-                T3dColor terrCol = s.getDefaultReliefColor();
-
-                wl("        <Shape>");
-                wl("          <Appearance>");
-                wl("            <Material diffuseColor=\"" +
-                        terrCol.getRed() + " " +
-                        terrCol.getGreen() + " " +
-                        terrCol.getBlue() + "\"></Material>");
-                wl("          </Appearance>");
-                wl("          <ElevationGrid " +
-                        "xDimension='" + terrGeom.numberOfColumns() + "' " +
-                        "zDimension='" + terrGeom.numberOfRows() + "' " +
-                        "xSpacing='" + terrGeom.getDeltaX() + "' " +
-                        "zSpacing='" + terrGeom.getDeltaY() + "' " +
-                        "height='");
-
-                // Write elevations:
-                DecimalFormat dfZ = this.getDecimalFormatZ();
-                for (int ii = terrGeom.numberOfRows() - 1; ii >= 0; ii--) {
-                    for (int jj = 0; jj < terrGeom.numberOfColumns(); jj++) {
-                        w(dfZ.format(terr.getValue(ii, jj)) + ",");
-                    }
-                    wl();
-                }
+    private void writeToStream(OutputStream pStream, short pFormat)
+    {
+        try {
+            this.write(pStream, pFormat, mCompression);
+            pStream.flush();
+        }
+        catch (IOException e) {
+            throw new T3dException(e.getMessage());
+        }
+    }
 
-                wl("          '>");
+    private void write(OutputStream pStream, short pFormat, boolean pCompression) 
+        throws IOException
+    {
+        GZIPOutputStream gz = null;
+        if (pCompression)
+            gz = new GZIPOutputStream(pStream, 1 << 16);
+        mDoc = this.createNumberEmitter(gz != null ? gz : pStream);
+        try {
+            if (pFormat == cVrml)
+                this.writeVrml();
+            else
+                this.writeX3d(pFormat == cX3dom);
+            mDoc.flush();
+            if (gz != null)
+                gz.finish();
+        }
+        finally {
+            mDoc = null;
+        }
+    }
 
-                if (s.getHypsometricColorMapper() != null)
-                {
-                    wl("          <Color color='");
+    private void writeVrml() throws IOException
+    {
+        MultiTerrainScene s = (MultiTerrainScene) mScene;
 
-                    for (int ii = terrGeom.numberOfRows() - 1; ii >= 0; ii--) {
-                        for (int jj = 0; jj < terrGeom.numberOfColumns(); jj++) {
-                            T3dColor col = s.getHypsometricColorMapper().transform(terr.getValue(ii, jj));
-                            wl(col.getRed() + " " + col.getGreen() + " " + col.getBlue() + ",");
-                        }
-                    }
+        wl("#VRML V2.0 utf8");
+        wl("WorldInfo {");
+        wl("  info [\"Scene generated by 52N Triturus\"]");
+        wl("  title \"MultiTerrainScene\"");
+        wl("}");
+        wl("NavigationInfo {");
+        wl("  type \"EXAMINE\"");
+        wl("}");
+        wl("Background { skyColor " +
+                s.getBackgroundColor().getRed() + " " +
+                s.getBackgroundColor().getGreen() + " " +
+                s.getBackgroundColor().getBlue() + "}");
+        wl("Transform {");
+        wl("  scale 1 " + s.getDefaultExaggeration() + " 1");
+        wl("  children [");
+        wl("    Shape {");
+        wl("      appearance Appearance {");
+        wl("        material Material {");
+        wl("          diffuseColor " +
+                s.getBBoxColor().getRed() + " " +
+                s.getBBoxColor().getGreen() + " " +
+                s.getBBoxColor().getBlue());
+        wl("        }");
+        wl("      }");
+        wl("      geometry IndexedLineSet {");
+
+        T3dVector
+            pos1 = s.norm(new GmPoint(
+            		s.envelope().getXMin(), 
+            		s.envelope().getYMin(), 
+            		s.envelope().getZMin())),
+            pos2 = s.norm(new GmPoint(
+            		s.envelope().getXMax(), 
+            		s.envelope().getYMax(), 
+            		s.envelope().getZMax()));
+
+        wl("        coord Coordinate {");
+        wl("          point [");
+        /*
+        if (false) {
+        wl("            -1 " + s.normZMin() + " -1,");
+        wl("            -1 " + s.normZMin() + " 1,");
+        wl("            -1 " + s.normZMax() + " 1,");
+        wl("            -1 " + s.normZMax() + " -1,");
+        wl("            1 " + s.normZMin() + " -1,");
+        wl("            1 " + s.normZMin() + " 1,");
+        wl("            1 " + s.normZMax() + " 1,");
+        wl("            1 " + s.normZMax() + " -1");
+        } else {
+        */
+        wl("            " + pos1.getX() + " " + pos1.getZ() + " " + (-pos1.getY()) + ",");
+        wl("            " + pos1.getX() + " " + pos1.getZ() + " " + (-pos2.getY()) + ",");
+        wl("            " + pos1.getX() + " " + pos2.getZ() + " " + (-pos2.getY()) + ",");
+        wl("            " + pos1.getX() + " " + pos2.getZ() + " " + (-pos1.getY()) + ",");
+        wl("            " + pos2.getX() + " " + pos1.getZ() + " " + (-pos1.getY()) + ",");
+        wl("            " + pos2.getX() + " " + pos1.getZ() + " " + (-pos2.getY()) + ",");
+        wl("            " + pos2.getX() + " " + pos2.getZ() + " " + (-pos2.getY()) + ",");
+        wl("            " + pos2.getX() + " " + pos2.getZ() + " " + (-pos1.getY()) + ",");
+        // }
+        wl("          ]");
+        wl("        }");
+        wl("        coordIndex [");
+        wl("          0, 1, 2, 3, 0, -1,");
+        wl("          4, 5, 6, 7, 4, -1,");
+        wl("          0, 4, -1,");
+        wl("          1, 5, -1,");
+        wl("          2, 6, -1,");
+        wl("          3, 7, -1");
+        wl("        ]");
+        wl("      }");
+        wl("    },");
+
+        this.writeTerrains(cVrml);
+
+        wl("  ]");
+        wl("}");
+
+        // Markers:
+
+        if (s.getMarkers() != null)
+        {
+            wl("PROTO MarkerProto [");
+            wl("  exposedField SFColor color 0.5 0.5 0.5");
+            wl("  exposedField SFVec3f position 0 0 0");
+            wl("] {");
+            wl("  Transform {");
+            wl("    translation IS position");
+            wl("    children [");
+            wl("      Shape {");
+            wl("        appearance Appearance {");
+            wl("          material Material {");
+            wl("            diffuseColor IS color");
+            wl("          }");
+            wl("        }");
+            wl("        geometry Sphere {"); 
+            // TODO Currently all markers are visualized using spheres
+            wl("          radius 0.025");
+            wl("        }");
+            wl("      }");
+            wl("    ]");
+            wl("  }");
+            wl("}");
 
-                    wl("          '></Color>");
-                }
+            for (int i = 0; i < s.getMarkers().size(); i++) {
+                T3dSymbolInstance m = s.getMarkers().get(i);
+                T3dColor col = m.getColor();
+                T3dVector pos = s.norm(m.getPosition());
+
+                wl("MarkerProto {");
+                wl("  color " + 
+                		col.getRed() + " " + col.getGreen() + " " + col.getBlue());
+                wl("  position " + 
+                		pos.getX() + " " + 
+                		(pos.getZ() * s.getDefaultExaggeration()) + " " + 
+                		(-pos.getY()));
+                wl("}");
+            }
+        }
+
+    }
+
+    private void writeX3d(boolean pX3dom) throws IOException
+    {
+        MultiTerrainScene s = (MultiTerrainScene) mScene;
 
-                wl("          </ElevationGrid>");
+        if (pX3dom) {
+            String lTitle = "52N Triturus XHTML/X3DOM document";
+            wl("<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Strict//EN\" \"http://www.w3.org/TR/xhtml1/DTD/xhtml1-strict.dtd\">");
+            wl("<html xmlns=\"http://www.w3.org/1999/xhtml\">");
+            wl("  <head>");
+            wl("    <meta http-equiv=\"X-UA-Compatible\" content=\"chrome=1\" />");
+            wl("    <meta http-equiv=\"Content-Type\" content=\"text/html;charset=utf-8\" />");
+            wl("    <title>" + lTitle + "</title>");
+            wl("<link rel=\"stylesheet\" type=\"text/css\" href=\"https://rawgit.com/kamakshidasan/triturus/master/src/main/resources/css/x3dom.css\" />");
+            wl("<script type=\"text/javascript\" src=\"https://rawgit.com/kamakshidasan/triturus/master/src/main/resources/js/x3dom-full.js\"></script>");    wl("  </head>");
+            wl("  <body>");
+            wl("    <h1>" + lTitle + "</h1>");
+            wl("    <p>");
+            wl("      This XHTML/X3DOM has been generated automatically by the 52N Triturus framework's VrmlX3dGenerator.");
+            wl("    </p>");
+            wl();
+            wl("<X3D xmlns=\"http://www.web3d.org/specifications/x3d-namespace\" showStat=\"false\" showLog=\"true\"");
+            wl("  x=\"0px\" y=\"0px\" width=\"400px\" height=\"400px\">");
+        }
+        else {
+            wl("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            wl("<!DOCTYPE X3D PUBLIC \"ISO//Web3D//DTD X3D 3.2//EN\" \"http://www.web3d.org/specifications/x3d-3.2.dtd\">");
+            wl("<X3D version=\"3.2\" profile=\"Immersive\" xmlns:xsd='http://www.w3.org/2001/XMLSchema-instance' xsd:noNamespaceSchemaLocation='http://www.web3d.org/specifications/x3d-3.2.xsd'>");
+        }
 
-                wl("        </Shape>");
-                wl("      </Transform>");
-                wl("    </Transform>");
+        wl("  <Scene>");
+        wl("    <WorldInfo info='Scene generated by 52N Triturus' title='MultiTerrainScene'></WorldInfo>");
+        wl("    <NavigationInfo type=\"EXAMINE\"></NavigationInfo>");
+        wl("    <Background skyColor=\"" +
+                s.getBackgroundColor().getRed() + " " +
+                s.getBackgroundColor().getGreen() + " " +
+                s.getBackgroundColor().getBlue() + "\"></Background>");
+        wl("    <Transform scale=\"1 " + s.getDefaultExaggeration() + " 1\">");
+        wl("      <Shape>");
+        wl("        <Appearance>");
+        wl("          <Material emissiveColor=\"" +
+                s.getBBoxColor().getRed() + " " +
+                s.getBBoxColor().getGreen() + " " +
+                s.getBBoxColor().getBlue() + "\"></Material>");
+        wl("        </Appearance>");
+        wl("        <IndexedLineSet coordIndex='");
+        wl("          0 1 2 3 0 -1,");
+        wl("          4 5 6 7 4 -1,");
+        wl("          0 4 -1,");
+        wl("          1 5 -1,");
+        wl("          2 6 -1,");
+        wl("          3 7 -1");
+        wl("        '>");
+
+        T3dVector
+            pos1 = s.norm(new GmPoint(s.envelope().getXMin(), s.envelope().getYMin(), s.envelope().getZMin())),
+            pos2 = s.norm(new GmPoint(s.envelope().getXMax(), s.envelope().getYMax(), s.envelope().getZMax()));
+
+        wl("          <Coordinate point='");
+        wl("            " + pos1.getX() + " " + pos1.getZ() + " " + (-pos1.getY()) + ",");
+        wl("            " + pos1.getX() + " " + pos1.getZ() + " " + (-pos2.getY()) + ",");
+        wl("            " + pos1.getX() + " " + pos2.getZ() + " " + (-pos2.getY()) + ",");
+        wl("            " + pos1.getX() + " " + pos2.getZ() + " " + (-pos1.getY()) + ",");
+        wl("            " + pos2.getX() + " " + pos1.getZ() + " " + (-pos1.getY()) + ",");
+        wl("            " + pos2.getX() + " " + pos1.getZ() + " " + (-pos2.getY()) + ",");
+        wl("            " + pos2.getX() + " " + pos2.getZ() + " " + (-pos2.getY()) + ",");
+        wl("            " + pos2.getX() + " " + pos2.getZ() + " " + (-pos1.getY()) + ",");
+        wl("            '></Coordinate>");
+        wl("        </IndexedLineSet>");
+        wl("      </Shape>");
+        wl("    </Transform>");
+
+        this.writeTerrains(cX3d);
+
+        // Markers:
+
+        if (s.getMarkers() != null)
+        {
+            wl("    <ProtoDeclare name='MarkerProto'>");
+            wl("      <ProtoInterface>");
+            wl("        <field name=\"color\" value=\"0.5 0.5 0.5\" type=\"SFColor\" accessType=\"inputOutput\"></field>");
+            wl("        <field name=\"position\" value=\"0 0 0\" type=\"SFVec3f\" accessType=\"inputOutput\"></field>");
+            wl("      </ProtoInterface>");
+            wl("      <ProtoBody>");
+            wl("        <Transform>");
+            wl("          <IS><connect nodeField=\"translation\" protoField=\"position\"></connect></IS>");
+            wl("          <Shape>");
+            wl("            <Appearance>");
+            wl("              <Material>");
+            wl("                <IS><connect nodeField=\"diffuseColor\" protoField=\"color\"></connect></IS>");
+            wl("              </Material>");
+            wl("            </Appearance>");
+            wl("            <Sphere radius=\"0.025\"></Sphere>"); // todo bislang werden alle marker als Kugeln dargestellt
+            wl("          </Shape>");
+            wl("        </Transform>");
+            wl("      </ProtoBody>");
+            wl("    </ProtoDeclare>");
+
+            for (int i = 0; i < s.getMarkers().size(); i++) {
+                T3dSymbolInstance m = s.getMarkers().get(i);
+                T3dColor col = m.getColor();
+                T3dVector pos = s.norm(m.getPosition());
+
+                wl("    <ProtoInstance name=\"MarkerProto\">");
+                wl("      <fieldValue name=\"color\" value=\"" + col.getRed() + " " + col.getGreen() + " " + col.getBlue() + "\"></fieldValue>");
+                wl("      <fieldValue name=\"position\" value=\"" + pos.getX() + " " + (pos.getZ() * s.getDefaultExaggeration()) + " " + (-pos.getY())+ "\"></fieldValue>");
+                wl("    </ProtoInstance>");
             }
+        }
+
+        wl("  </Scene>");
+        wl("</X3D>");
+
+        if (pX3dom) {
+            wl();
+            wl("  </body>");
+            wl("</html>");
+        }
+
+    }
+
+    // Writes the terrains in scene order. For more than one thread, the 
+    // terrains will be encoded concurrently into separate buffers, which 
+    // will be written as soon as the preceding terrains have been written. 
+    // To limit memory consumption, at most 2 buffers per thread will be 
+    // pending at a time.
+    private void writeTerrains(final short pFormat) throws IOException
+    {
+        MultiTerrainScene s = (MultiTerrainScene) mScene;
+        int n = s.getTerrains().size();
+
+        if (mNumberOfThreads <= 1 || n <= 1) {
+            for (int i = 0; i < n; i++)
+                this.writeTerrain(this, s.getTerrains().get(i), pFormat);
+            return;
+        }
 
-            // Markers:
-
-            if (s.getMarkers() != null)
-            {
-                wl("    <ProtoDeclare name='MarkerProto'>");
-                wl("      <ProtoInterface>");
-                wl("        <field name=\"color\" value=\"0.5 0.5 0.5\" type=\"SFColor\" accessType=\"inputOutput\"></field>");
-                wl("        <field name=\"position\" value=\"0 0 0\" type=\"SFVec3f\" accessType=\"inputOutput\"></field>");
-                wl("      </ProtoInterface>");
-                wl("      <ProtoBody>");
-                wl("        <Transform>");
-                wl("          <IS><connect nodeField=\"translation\" protoField=\"position\"></connect></IS>");
-                wl("          <Shape>");
-                wl("            <Appearance>");
-                wl("              <Material>");
-                wl("                <IS><connect nodeField=\"diffuseColor\" protoField=\"color\"></connect></IS>");
-                wl("              </Material>");
-                wl("            </Appearance>");
-                wl("            <Sphere radius=\"0.025\"></Sphere>"); // todo bislang werden alle marker als Kugeln dargestellt
-                wl("          </Shape>");
-                wl("        </Transform>");
-                wl("      </ProtoBody>");
-                wl("    </ProtoDeclare>");
-
-                for (int i = 0; i < s.getMarkers().size(); i++) {
-                    T3dSymbolInstance m = s.getMarkers().get(i);
-                    T3dColor col = m.getColor();
-                    T3dVector pos = s.norm(m.getPosition());
-
-                    wl("    <ProtoInstance name=\"MarkerProto\">");
-                    wl("      <fieldValue name=\"color\" value=\"" + col.getRed() + " " + col.getGreen() + " " + col.getBlue() + "\"></fieldValue>");
-                    wl("      <fieldValue name=\"position\" value=\"" + pos.getX() + " " + (pos.getZ() * s.getDefaultExaggeration()) + " " + (-pos.getY())+ "\"></fieldValue>");
-                    wl("    </ProtoInstance>");
+        ExecutorService exec = Executors.newFixedThreadPool(mNumberOfThreads);
+        LinkedList<Future<ByteArrayOutputStream>> pending = new LinkedList<Future<ByteArrayOutputStream>>();
+        try {
+            int next = 0;
+            while (next < n || !pending.isEmpty()) {
+                while (next < n && pending.size() < 2 * mNumberOfThreads) {
+                    final VgElevationGrid terr = s.getTerrains().get(next++);
+                    pending.add(exec.submit(new Callable<ByteArrayOutputStream>() {
+                        public ByteArrayOutputStream call() throws IOException {
+                            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                            VrmlX3dSceneGenerator gen = new VrmlX3dSceneGenerator(mScene);
+                            gen.setPrecisionXY(getPrecisionXY());
+                            gen.setPrecisionZ(getPrecisionZ());
+                            gen.mDoc = gen.createNumberEmitter(buf);
+                            writeTerrain(gen, terr, pFormat);
+                            gen.mDoc.flush();
+                            return buf;
+                        }
+                    }));
                 }
+                mDoc.append(pending.removeFirst().get().toByteArray());
             }
+        }
+        catch (InterruptedException e) {
+            throw new T3dException("Scene generation interrupted.");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof T3dException)
+                throw (T3dException) e.getCause();
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new T3dException("Scene generation failed: " + e.getCause());
+        }
+        finally {
+            exec.shutdownNow();
+        }
+    }
 
-            wl("  </Scene>");
-            wl("</X3D>");
+    private void writeTerrain(VrmlX3dSceneGenerator pGen, VgElevationGrid pTerrain, short pFormat)
+        throws IOException
+    {
+        if (pFormat == cVrml)
+            pGen.writeVrmlTerrain(pTerrain);
+        else
+            pGen.writeX3dTerrain(pTerrain);
+    }
 
-            if (pX3dom) {
-                wl();
-                wl("  </body>");
-                wl("</html>");
+    private void writeVrmlTerrain(VgElevationGrid terr) throws IOException
+    {
+        MultiTerrainScene s = (MultiTerrainScene) mScene;
+        GmSimple2dGridGeometry terrGeom = (GmSimple2dGridGeometry) terr.getGeometry();
+        double scale = s.getScale();
+
+        T3dVector upperLeftCornerNormalized = s.norm(new GmPoint(
+                terrGeom.envelope().getXMin(),
+                terrGeom.envelope().getYMax(),
+                0.0));
+
+        double dx = upperLeftCornerNormalized.getX();
+        double dz = -upperLeftCornerNormalized.getY();
+
+        wl("    Transform {");
+        wl("      scale " + scale + " " + scale + " " + scale);
+        wl("      translation " + dx + " 0 " + dz);
+        wl("      children Shape {");
+        wl("        appearance Appearance {");
+        wl("          material Material {");
+
+        T3dColor terrCol = s.getDefaultReliefColor();
+
+        wl("            diffuseColor " +
+                terrCol.getRed() + " " +
+                terrCol.getGreen() + " " +
+                terrCol.getBlue());
+        wl("          }");
+        wl("        }");
+        wl("        geometry ElevationGrid {");
+        wl("          xDimension " + terrGeom.numberOfColumns());
+        wl("          zDimension " + terrGeom.numberOfRows());
+        wl("          xSpacing " + terrGeom.getDeltaX());
+        wl("          zSpacing " + terrGeom.getDeltaY());
+        wl("          height [");
+
+        // Write elevations:
+        for (int ii = terrGeom.numberOfRows() - 1; ii >= 0; ii--) {
+            for (int jj = 0; jj < terrGeom.numberOfColumns(); jj++) {
+                mDoc.z(terr.getValue(ii, jj)).append(',');
             }
-
-            mDoc.close();
+            mDoc.newLine();
         }
-        catch (FileNotFoundException e) {
-            throw new T3dException("Could not access file \"" + pFilename + "\".");
+
+        wl("          ]");
+
+        if (s.getHypsometricColorMapper() != null)
+        {
+            wl("          color Color {");
+            wl("            color [");
+
+            for (int ii = terrGeom.numberOfRows() - 1; ii >= 0; ii--) {
+                for (int jj = 0; jj < terrGeom.numberOfColumns(); jj++) {
+                    T3dColor col = s.getHypsometricColorMapper().transform(
+                    		terr.getValue(ii, jj));
+                    wl(col.getRed() + " " + col.getGreen() + " " + col.getBlue() + ",");
+                }
+            }
+
+            wl("            ]");
+            wl("          }");
         }
-        catch (IOException e) {
-            throw new T3dException(e.getMessage());
+
+        wl("        }");
+        wl("      }");
+        wl("    },");
+    }
+
+    private void writeX3dTerrain(VgElevationGrid terr) throws IOException
+    {
+        MultiTerrainScene s = (MultiTerrainScene) mScene;
+        GmSimple2dGridGeometry terrGeom = (GmSimple2dGridGeometry) terr.getGeometry();
+        double scale = s.getScale();
+
+        T3dVector upperLeftCornerNormalized = s.norm(new GmPoint(
+                terrGeom.envelope().getXMin(),
+                terrGeom.envelope().getYMax(),
+                0.0));
+        double dx = upperLeftCornerNormalized.getX();
+        double dz = -upperLeftCornerNormalized.getY();
+
+        wl("    <Transform scale=\"1 " + s.getDefaultExaggeration() + " 1\">");
+        w("       <Transform scale=\"" + scale + " " + scale + " " + scale + "\"");
+        w(" translation=\"" + dx + " 0 " + dz + "\"");
+        wl(">");
+
+        T3dColor terrCol = s.getDefaultReliefColor();
+
+        wl("        <Shape>");
+        wl("          <Appearance>");
+        wl("            <Material diffuseColor=\"" +
+                terrCol.getRed() + " " +
+                terrCol.getGreen() + " " +
+                terrCol.getBlue() + "\"></Material>");
+        wl("          </Appearance>");
+        wl("          <ElevationGrid " +
+                "xDimension='" + terrGeom.numberOfColumns() + "' " +
+                "zDimension='" + terrGeom.numberOfRows() + "' " +
+                "xSpacing='" + terrGeom.getDeltaX() + "' " +
+                "zSpacing='" + terrGeom.getDeltaY() + "' " +
+                "height='");
+
+        // Write elevations:
+        for (int ii = terrGeom.numberOfRows() - 1; ii >= 0; ii--) {
+            for (int jj = 0; jj < terrGeom.numberOfColumns(); jj++) {
+                mDoc.z(terr.getValue(ii, jj)).append(',');
+            }
+            mDoc.newLine();
         }
-        catch (T3dException e) {
-            throw new T3dException(e.getMessage());
+
+        wl("          '>");
+
+        if (s.getHypsometricColorMapper() != null)
+        {
+            wl("          <Color color='");
+
+            for (int ii = terrGeom.numberOfRows() - 1; ii >= 0; ii--) {
+                for (int jj = 0; jj < terrGeom.numberOfColumns(); jj++) {
+                    T3dColor col = s.getHypsometricColorMapper().transform(terr.getValue(ii, jj));
+                    wl(col.getRed() + " " + col.getGreen() + " " + col.getBlue() + ",");
+                }
+            }
+
+            wl("          '></Color>");
         }
+
+        wl("          </ElevationGrid>");
+
+        wl("        </Shape>");
+        wl("      </Transform>");
+        wl("    </Transform>");
     }
 
     private void w(String pLine) {
         try {
-            mDoc.write(pLine);
+            mDoc.append(pLine);
         }
         catch (IOException e) {
             throw new T3dException(e.getMessage());
@@ -537,8 +730,7 @@ public class VrmlX3dSceneGenerator extends IoAbstractWriter
 
     private void wl(String pLine) {
         try {
-            mDoc.write(pLine);
-            mDoc.newLine();
+            mDoc.append(pLine).newLine();
         }
         catch (IOException e) {
             throw new T3dException(e.getMessage());
@@ -33,6 +33,7 @@
 package org.n52.v3d.triturus.vscene;
 
 import org.n52.v3d.triturus.core.T3dNotYetImplException;
+import org.n52.v3d.triturus.gisimplm.GmElevationGridPyramid;
 import org.n52.v3d.triturus.gisimplm.GmEnvelope;
 import org.n52.v3d.triturus.gisimplm.GmPoint;
 import org.n52.v3d.triturus.t3dutil.MpHypsometricColor;
@@ -136,6 +137,24 @@ public class MultiTerrainScene extends VsScene
         }
     }
 
+    /**
+     * adds the part of an elevation model that lies inside a given region 
+     * to the current scene. The grid will be taken from the coarsest 
+     * pyramid level that provides the required resolution, i.e. at least 
+     * <tt>width</tt> x <tt>height</tt> vertices for the region, so that no 
+     * resampling of the full-resolution grid is necessary.
+     *
+     * @param pyramid Elevation grid pyramid
+     * @param region Region to be visualized
+     * @param width Required resolution in x-direction
+     * @param height Required resolution in y-direction
+     * @see GmElevationGridPyramid#getGrid(VgEnvelope, int, int)
+     */
+    public void addTerrain(GmElevationGridPyramid pyramid, VgEnvelope region, int width, int height)
+    {
+        this.addTerrain(pyramid.getGrid(region, width, height));
+    }
+
     /**
      * gets the elevation-models to be visualized. If no elevation-models have 
      * been added to the scene, the method will return <i>null</i>.
@@ -0,0 +1,495 @@
+/**
+ * Copyright (C) 2007-2016 52North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *  - Apache License, version 2.0
+ *  - Apache Software License, version 1.0
+ *  - GNU Lesser General Public License, version 3
+ *  - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *  - Common Development and Distribution License (CDDL), version 1.0.
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public License 
+ * version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License 
+ * for more details.
+ *
+ * Contact: Benno Schmidt and Martin May, 52North Initiative for Geospatial 
+ * Open Source Software GmbH, Martin-Luther-King-Weg 24, 48155 Muenster, 
+ * Germany, info@52north.org
+ */
+package org.n52.v3d.triturus.xtin;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.n52.v3d.triturus.core.T3dException;
+import org.n52.v3d.triturus.gisimplm.GmEnvelope;
+import org.n52.v3d.triturus.gisimplm.GmLinearRing;
+import org.n52.v3d.triturus.gisimplm.GmMultiPolygon;
+import org.n52.v3d.triturus.gisimplm.GmPoint;
+import org.n52.v3d.triturus.gisimplm.GmPolygon;
+import org.n52.v3d.triturus.gisimplm.GmSimpleTINFeature;
+import org.n52.v3d.triturus.gisimplm.GmSimpleTINGeometry;
+import org.n52.v3d.triturus.gisimplm.GmTriangle;
+import org.n52.v3d.triturus.vgis.VgEnvelope;
+import org.n52.v3d.triturus.vgis.VgGeomObject;
+import org.n52.v3d.triturus.vgis.VgIndexedTIN;
+import org.n52.v3d.triturus.vgis.VgLinearRing;
+import org.n52.v3d.triturus.vgis.VgPoint;
+import org.n52.v3d.triturus.vgis.VgTriangle;
+
+/**
+ * Compact topological TIN implementation based on a half-edge structure 
+ * that is held in primitive arrays. The half-edges of the i-th triangle 
+ * carry the indices <i>3i</i>, <i>3i+1</i> and <i>3i+2</i>; the half-edge 
+ * <i>3i+k</i> starts at the triangle's k-th vertex. For each half-edge, the 
+ * opposite half-edge (&quot;twin&quot;) of the adjacent triangle is stored, 
+ * for each vertex one outgoing half-edge. Thus, neighbor queries, vertex-star 
+ * traversals and boundary tests can be performed in constant time (per 
+ * visited element), and the structure needs only a small fraction of the 
+ * memory used by {@link XTIN}.
+ * <br/>
+ * The structure is static; it will be built from a 
+ * {@link GmSimpleTINGeometry} in one step. All triangles will be oriented 
+ * counter-clockwise with respect to the x-y plane. Note that non-manifold 
+ * configurations (edges shared by more than two triangles) are not 
+ * supported.
+ * 
+ * @author Benno Schmidt
+ * @see XTIN
+ */
+public class HalfEdgeTIN extends VgIndexedTIN 
+{
+	private int numberOfPoints, numberOfTriangles, numberOfEdges;
+	private int numberOfReferencedPoints;
+	private double[] x, y, z; // vertex positions
+	private int[] tri; // half-edge -> start vertex
+	private int[] twin; // half-edge -> opposite half-edge, -1 on boundary
+	private int[] vtxEdg; // vertex -> outgoing half-edge, -1 if unreferenced
+	private GmEnvelope env = null;
+
+	/**
+	 * Constructor. Builds the half-edge structure for the given TIN geometry.
+	 * 
+	 * @param geom TIN geometry
+	 * @throws T3dException if the TIN is non-manifold
+	 */
+	public HalfEdgeTIN(GmSimpleTINGeometry geom) throws T3dException 
+	{
+		numberOfPoints = geom.numberOfPoints();
+		numberOfTriangles = geom.numberOfTriangles();
+		
+		x = new double[numberOfPoints];
+		y = new double[numberOfPoints];
+		z = new double[numberOfPoints];
+		for (int i = 0; i < numberOfPoints; i++) {
+			VgPoint p = geom.getPoint(i);
+			x[i] = p.getX();
+			y[i] = p.getY();
+			z[i] = p.getZ();
+		}
+
+		int nh = 3 * numberOfTriangles;
+		tri = new int[nh];
+		for (int i = 0; i < numberOfTriangles; i++) {
+			int[] v = geom.getTriangleVertexIndices(i);
+			tri[3 * i] = v[0];
+			if (this.orientation(v[0], v[1], v[2]) < 0.) {
+				tri[3 * i + 1] = v[2];
+				tri[3 * i + 2] = v[1];
+			} else {
+				tri[3 * i + 1] = v[1];
+				tri[3 * i + 2] = v[2];
+			}
+		}
+
+		this.buildTopology();
+	}
+
+	private double orientation(int a, int b, int c) {
+		return (x[b] - x[a]) * (y[c] - y[a]) - (y[b] - y[a]) * (x[c] - x[a]);
+	}
+
+	private void buildTopology() throws T3dException
+	{
+		int nh = tri.length;
+
+		// Outgoing half-edges per vertex (compressed row storage):
+		int[] first = new int[numberOfPoints + 1];
+		for (int h = 0; h < nh; h++) first[tri[h] + 1]++;
+		for (int v = 0; v < numberOfPoints; v++) first[v + 1] += first[v];
+		int[] out = new int[nh], fill = new int[numberOfPoints];
+		for (int h = 0; h < nh; h++) {
+			int v = tri[h];
+			out[first[v] + fill[v]++] = h;
+		}
+		fill = null;
+
+		// Twins: for a -> b, search b -> a among b's outgoing half-edges:
+		twin = new int[nh];
+		numberOfEdges = 0;
+		for (int h = 0; h < nh; h++) {
+			int a = tri[h], b = tri[next(h)], t = -1;
+			for (int k = first[b]; k < first[b + 1]; k++) {
+				int g = out[k];
+				if (tri[next(g)] == a) {
+					if (t >= 0) 
+						throw new T3dException("Non-manifold TIN edge (" + a + ", " + b + ").");
+					t = g;
+				}
+			}
+			twin[h] = t;
+			if (t < 0 || h < t) 
+				numberOfEdges++;
+		}
+
+		// Outgoing half-edge per vertex, on the boundary the most clockwise:
+		vtxEdg = new int[numberOfPoints];
+		numberOfReferencedPoints = 0;
+		for (int v = 0; v < numberOfPoints; v++) {
+			vtxEdg[v] = -1;
+			for (int k = first[v]; k < first[v + 1]; k++) {
+				int h = out[k];
+				if (vtxEdg[v] < 0 || twin[h] < 0) {
+					vtxEdg[v] = h;
+					if (twin[h] < 0) 
+						break;
+				}
+			}
+			if (vtxEdg[v] >= 0) 
+				numberOfReferencedPoints++;
+		}
+	}
+
+	// Half-edge navigation:
+
+	private static int next(int h) { 
+		return (h % 3 == 2) ? h - 2 : h + 1; 
+	}
+
+	private static int prev(int h) { 
+		return (h % 3 == 0) ? h + 2 : h - 1; 
+	}
+
+	public int numberOfPoints() {
+		return numberOfPoints;
+	}
+
+	public int numberOfTriangles() {
+		return numberOfTriangles;
+	}
+
+	/**
+	 * returns the number of (undirected) edges that are part of the TIN.
+	 * 
+	 * @return Number of edges
+	 */
+	public int numberOfEdges() {
+		return numberOfEdges;
+	}
+
+	/**
+	 * computes the number of vertices held in the TIN structure. The 
+	 * resulting array is organized as for {@link XTIN#pointsStatistics()}:
+	 * <table>
+	 *   <tr>
+	 *     <td>res[0]</td><td># used index numbers</td>
+	 *     <td>res[1]</td><td># referenced vertices</td>
+	 *     <td>res[2]</td><td># vertices which are start-vertices of at least 1 edge</td>
+	 *     <td>res[3]</td><td># georeferenced vertices (locations)</td>
+	 *   </tr>
+	 * </table>
+	 * 
+	 * @return Integer array holding the four numbers described above
+	 */
+	public int[] pointsStatistics() {
+		return new int[]{
+			numberOfPoints, numberOfReferencedPoints, 
+			numberOfReferencedPoints, numberOfPoints};
+	}
+
+	public VgPoint getPoint(int i) throws T3dException {
+		if (i < 0 || i >= numberOfPoints)
+			throw new T3dException("Point index " + i + " out of bounds (0 ... " + (numberOfPoints - 1) + ").");
+		return new GmPoint(x[i], y[i], z[i]);
+	}
+
+	public VgTriangle getTriangle(int i) throws T3dException {
+		if (i < 0 || i >= numberOfTriangles)
+			throw new T3dException("Triangle index " + i + " out of bounds (0 ... " + (numberOfTriangles - 1) + ").");
+		return new GmTriangle(
+			this.getPoint(tri[3 * i]), 
+			this.getPoint(tri[3 * i + 1]), 
+			this.getPoint(tri[3 * i + 2]));
+	}
+
+	public int[] getTriangleVertexIndices(int i) throws T3dException {
+		if (i < 0 || i >= numberOfTriangles)
+			throw new T3dException("Triangle index " + i + " out of bounds (0 ... " + (numberOfTriangles - 1) + ").");
+		return new int[] {tri[3 * i], tri[3 * i + 1], tri[3 * i + 2]};
+	}
+
+	/**
+	 * returns the index of the triangle that is adjacent to the k-th edge of 
+	 * the i-th triangle. The k-th edge connects the triangle's k-th and 
+	 * (k+1)-th vertex.
+	 * 
+	 * @param i Triangle index
+	 * @param k Edge number (0, 1, or 2)
+	 * @return Triangle index, or -1 if the edge is part of the TIN boundary
+	 */
+	public int getNeighbor(int i, int k) {
+		int t = twin[3 * i + k];
+		return t < 0 ? -1 : t / 3;
+	}
+
+	/**
+	 * returns <i>true</i>, if the k-th edge of the i-th triangle is part of 
+	 * the TIN boundary.
+	 * 
+	 * @param i Triangle index
+	 * @param k Edge number (0, 1, or 2)
+	 * @return <i>true</i> for boundary edges
+	 */
+	public boolean isBoundaryEdge(int i, int k) {
+		return twin[3 * i + k] < 0;
+	}
+
+	/**
+	 * returns <i>true</i>, if the i-th vertex is part of the TIN boundary.
+	 * 
+	 * @param i Vertex index
+	 * @return <i>true</i> for boundary vertices
+	 */
+	public boolean isBoundaryVertex(int i) {
+		int h = vtxEdg[i];
+		return h >= 0 && twin[h] < 0;
+	}
+
+	/**
+	 * returns the number of edges incident to the i-th vertex.
+	 * 
+	 * @param i Vertex index
+	 * @return Vertex degree
+	 */
+	public int degree(int i) 
+	{
+		int h0 = vtxEdg[i];
+		if (h0 < 0) 
+			return 0;
+		int ct = 0, h = h0;
+		do {
+			ct++;
+			int p = twin[prev(h)];
+			if (p < 0) 
+				return ct + 1; // last edge on the boundary
+			h = p;
+		} while (h != h0);
+		return ct;
+	}
+
+	/**
+	 * returns the indices of the vertices that are connected to the i-th 
+	 * vertex by an edge (&quot;edge star&quot;). The vertices are given in 
+	 * counter-clockwise order.
+	 * 
+	 * @param i Vertex index
+	 * @return Array holding the adjacent vertices' indices
+	 */
+	public int[] getAdjacentVertices(int i) 
+	{
+		int[] res = new int[this.degree(i)];
+		int h0 = vtxEdg[i];
+		if (h0 < 0) 
+			return res;
+		int k = 0, h = h0;
+		do {
+			res[k++] = tri[next(h)];
+			int p = twin[prev(h)];
+			if (p < 0) {
+				res[k] = tri[prev(h)];
+				break;
+			}
+			h = p;
+		} while (h != h0);
+		return res;
+	}
+
+	/**
+	 * returns the indices of the triangles incident to the i-th vertex in 
+	 * counter-clockwise order.
+	 * 
+	 * @param i Vertex index
+	 * @return Array holding triangle indices
+	 */
+	public int[] getIncidentTriangles(int i) 
+	{
+		int h0 = vtxEdg[i];
+		if (h0 < 0) 
+			return new int[0];
+		int ct = this.degree(i);
+		if (twin[h0] < 0) 
+			ct--;
+		int[] res = new int[ct];
+		int k = 0, h = h0;
+		do {
+			res[k++] = h / 3;
+			h = twin[prev(h)];
+		} while (h >= 0 && h != h0);
+		return res;
+	}
+
+	/**
+	 * provides the TIN as {@link GmSimpleTINFeature}.
+	 * 
+	 * @return TIN feature
+	 */
+	public GmSimpleTINFeature asSimpleTINFeature() 
+	{
+		GmSimpleTINGeometry geom = 
+			new GmSimpleTINGeometry(numberOfPoints, numberOfTriangles);
+		for (int i = 0; i < numberOfPoints; i++) {
+			geom.setPoint(i, new GmPoint(x[i], y[i], z[i]));
+		}
+		for (int i = 0; i < numberOfTriangles; i++) {
+			geom.setTriangle(i, tri[3 * i], tri[3 * i + 1], tri[3 * i + 2]);
+		}
+		GmSimpleTINFeature f = new GmSimpleTINFeature();
+		f.setGeometry(geom);
+		return f;
+	}
+
+	public VgEnvelope envelope() 
+	{
+		if (env == null && numberOfPoints > 0) {
+			env = new GmEnvelope(x[0], x[0], y[0], y[0], z[0], z[0]);
+			for (int i = 1; i < numberOfPoints; i++) {
+				env.letContainPoint(new GmPoint(x[i], y[i], z[i]));
+			}
+		}
+		return env;
+	}
+
+	/**
+	 * returns the TIN's footprint, i.e. the area covered by the triangles 
+	 * projected to the x-y plane. The boundary rings will be assembled by 
+	 * walking along the boundary half-edges. Since all triangles are oriented 
+	 * counter-clockwise, counter-clockwise rings are outer boundaries and 
+	 * clockwise rings are holes; each hole will be assigned to the smallest 
+	 * outer boundary containing it.
+	 * 
+	 * @return Footprint as {@link GmMultiPolygon} (one polygon per connected 
+	 * component)
+	 */
+	public VgGeomObject footprint() 
+	{
+		int nh = tri.length;
+		boolean[] visited = new boolean[nh];
+		List<int[]> outer = new ArrayList<int[]>(), holes = new ArrayList<int[]>();
+		List<Double> outerArea = new ArrayList<Double>();
+		int[] ring = new int[16];
+
+		for (int h0 = 0; h0 < nh; h0++) {
+			if (twin[h0] >= 0 || visited[h0]) 
+				continue;
+			int n = 0, h = h0;
+			double area = 0.;
+			do {
+				visited[h] = true;
+				int a = tri[h], b = tri[next(h)];
+				if (n == ring.length) {
+					int[] tmp = new int[2 * n];
+					System.arraycopy(ring, 0, tmp, 0, n);
+					ring = tmp;
+				}
+				ring[n++] = a;
+				area += x[a] * y[b] - x[b] * y[a];
+				// Rotate clockwise around b until the next boundary half-edge:
+				h = next(h);
+				while (twin[h] >= 0) 
+					h = next(twin[h]);
+			} while (h != h0);
+			int[] res = new int[n];
+			System.arraycopy(ring, 0, res, 0, n);
+			if (area > 0.) {
+				outer.add(res);
+				outerArea.add(area);
+			} else 
+				holes.add(res);
+		}
+
+		List<List<VgLinearRing>> holeRings = new ArrayList<List<VgLinearRing>>();
+		for (int i = 0; i < outer.size(); i++) 
+			holeRings.add(new ArrayList<VgLinearRing>());
+		for (int[] hole : holes) {
+			int best = -1;
+			for (int i = 0; i < outer.size(); i++) {
+				if (this.contains(outer.get(i), hole) 
+					&& (best < 0 || outerArea.get(i) < outerArea.get(best)))
+					best = i;
+			}
+			if (best >= 0) 
+				holeRings.get(best).add(this.linearRing(hole));
+		}
+
+		GmMultiPolygon res = new GmMultiPolygon();
+		for (int i = 0; i < outer.size(); i++) 
+			res.addPolygon(new GmPolygon(this.linearRing(outer.get(i)), holeRings.get(i)));
+		return res;
+	}
+
+	// Checks, if the given hole lies inside the given ring. Since the rings 
+	// do not cross, it suffices to test one hole vertex that is not a ring 
+	// vertex (crossing number test).
+	private boolean contains(int[] ring, int[] hole) 
+	{
+		for (int v : hole) {
+			boolean onRing = false;
+			for (int r : ring) {
+				if (r == v) {
+					onRing = true;
+					break;
+				}
+			}
+			if (onRing) 
+				continue;
+			boolean in = false;
+			for (int i = 0, j = ring.length - 1; i < ring.length; j = i++) {
+				int a = ring[i], b = ring[j];
+				if ((y[a] > y[v]) != (y[b] > y[v]) 
+					&& x[v] < (x[b] - x[a]) * (y[v] - y[a]) / (y[b] - y[a]) + x[a])
+					in = !in;
+			}
+			return in;
+		}
+		return false;
+	}
+
+	private GmLinearRing linearRing(int[] ring) 
+	{
+		GmLinearRing res = new GmLinearRing();
+		for (int v : ring) 
+			res.addVertex(new GmPoint(x[v], y[v], 0.));
+		return res;
+	}
+	
+	public String toString() {
+		return "[" +
+			"(" + this.numberOfPoints() + " vertices), " +
+			"(" + this.numberOfEdges() + " edges), " +
+			"(" + this.numberOfTriangles() + " triangles)]";
+	}
+}